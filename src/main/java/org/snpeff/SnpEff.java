@@ -1,11 +1,20 @@
 package org.snpeff;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 import org.snpeff.interval.Chromosome;
 import org.snpeff.interval.Custom;
@@ -25,6 +34,7 @@ import org.snpeff.motif.Jaspar;
 import org.snpeff.motif.Pwm;
 import org.snpeff.pdb.DistanceResult;
 import org.snpeff.serializer.MarkerSerializer;
+import org.snpeff.serializer.SnpEffectPredictorSnapshot;
 import org.snpeff.snpEffect.Config;
 import org.snpeff.snpEffect.SnpEffectPredictor;
 import org.snpeff.snpEffect.commandLine.CommandLine;
@@ -44,6 +54,7 @@ import org.snpeff.snpEffect.commandLine.SnpEffCmdLen;
 import org.snpeff.snpEffect.commandLine.SnpEffCmdPdb;
 import org.snpeff.snpEffect.commandLine.SnpEffCmdProtein;
 import org.snpeff.snpEffect.commandLine.SnpEffCmdSeq;
+import org.snpeff.snpEffect.commandLine.SnpEffCmdServer;
 import org.snpeff.snpEffect.commandLine.SnpEffCmdShow;
 import org.snpeff.snpEffect.commandLine.SnpEffCmdTranslocationsReport;
 import org.snpeff.spliceSites.SnpEffCmdSpliceAnalysis;
@@ -124,7 +135,9 @@ public class SnpEff implements CommandLine {
 	protected boolean noGenome = false; // Do not load genome database
 	protected boolean onlyProtein = false; // Only use protein coding transcripts
 	protected boolean onlyRegulation = false; // Only build regulation tracks
+	protected boolean parallelLoad = false; // Load database files and build interval trees using multiple threads
 	protected boolean quiet; // Be quiet
+	protected boolean snapshot = false; // Use a snapshot of the database (interval forest already built), create it if not available
 	protected boolean strict = false; // Only use transcript that have been validated
 	protected boolean saveOutput = false; // Save output to buffer (instead of printing it to STDOUT)
 	protected boolean suppressOutput = false; // Only used for debugging purposes
@@ -150,6 +163,9 @@ public class SnpEff implements CommandLine {
 	protected ArrayList<String> filterIntervalFiles;// Files used for filter intervals
 	protected HashSet<String> regulationTracks = new HashSet<>();
 	protected Map<String, String> configOverride = new HashMap<>();
+	protected Set<String> loadChromosomes = null; // Only load these chromosomes from the database (null means 'all chromosomes')
+	protected ExecutorService loadExecutor; // Thread pool used when loading database in parallel
+	protected Map<String, Long> loadTimes; // Elapsed time (milliseconds) for each database loading phase
 
 	/**
 	 * Main
@@ -183,6 +199,170 @@ public class SnpEff implements CommandLine {
 		this.args = args;
 	}
 
+	/**
+	 * Add custom interval markers to predictor
+	 * @return Number of markers added
+	 */
+	protected int addCustomMarkers(Markers markers) {
+		// Add all markers to predictor
+		for (Marker m : markers)
+			config.getSnpEffectPredictor().add(m);
+
+		// Number added
+		return markers.size();
+	}
+
+	/**
+	 * Add protein interactions to genes
+	 */
+	void addInteractions(List<DistanceResult> interactions) {
+		// Build transcript map
+		HashMap<String, Transcript> id2tr = new HashMap<>();
+		SnpEffectPredictor sep = config.getSnpEffectPredictor();
+		Genome genome = sep.getGenome();
+		for (Gene g : genome.getGenes())
+			for (Transcript tr : g)
+				id2tr.put(tr.getId(), tr);
+
+		int count = 0, countSkipped = 0;
+		for (DistanceResult dres : interactions) {
+			Chromosome chr1 = genome.getChromosome(dres.chr1);
+			Chromosome chr2 = genome.getChromosome(dres.chr2);
+			Transcript tr1 = id2tr.get(dres.trId1);
+			Transcript tr2 = id2tr.get(dres.trId2);
+
+			String id = dres.getId();
+
+			// All chromosomes and transcript found? => Add entries
+			if (chr1 != null && chr2 != null && tr1 != null && tr2 != null) {
+
+				// Gene1
+				Gene gene1 = (Gene) tr1.getParent();
+				gene1.getId();
+				List<ProteinInteractionLocus> list = ProteinInteractionLocus.factory(tr1, dres.aaPos1, tr2, id);
+				for (Marker m : list)
+					gene1.addPerGene(m);
+
+				// Since they act on different transcript (or different AAs within the transcript), we
+				// need to add two markers (one for each "side" of the interaction
+				Gene gene2 = (Gene) tr2.getParent();
+				gene2.getId();
+				list = ProteinInteractionLocus.factory(tr2, dres.aaPos2, tr1, id);
+				for (Marker m : list)
+					gene2.addPerGene(m);
+				count++;
+			} else countSkipped++;
+		}
+
+		if (verbose) Timer.showStdErr("\tInteractions: " + count + " added, " + countSkipped + " skipped.");
+	}
+
+	/**
+	 * Connect motifs to PWMs and add them to SnpEffectPredictor
+	 */
+	void addMotifs(Jaspar jaspar, Markers motifsDb) {
+		// Add (only) motif markers. The original motifs has to be serialized with Chromosomes, Genomes and other markers (otherwise it could have not been saved)
+		SnpEffectPredictor snpEffectPredictor = config.getSnpEffectPredictor();
+		int countAddded = 0;
+		for (Marker m : motifsDb)
+			if (m instanceof Motif) {
+				Motif motif = (Motif) m;
+
+				// Connect motifs to their respective PWMs
+				Pwm pwm = jaspar.getPwm(motif.getPwmId());
+				if (pwm != null) {
+					// Set PWM and add to snpEffPredictor
+					motif.setPwm(pwm);
+					snpEffectPredictor.add(motif);
+					countAddded++;
+				} else if (debug) Timer.showStdErr("Cannot find PWM for motif '" + motif.getPwmId() + "'");
+			}
+
+		if (verbose) Timer.showStdErr("\tMotif database: " + countAddded + " markers loaded.");
+	}
+
+	/**
+	 * Connect NextProt markers to transcripts and add them to SnpEffectPredictor
+	 */
+	void addNextProt(Markers nextProtDb) {
+		SnpEffectPredictor snpEffectPredictor = config.getSnpEffectPredictor();
+
+		// Create a collection of (only) NextProt markers. The original nextProtDb has Chromosomes, Genomes and other markers (otherwise it could have not been saved)
+		ArrayList<NextProt> nextProts = new ArrayList<>(nextProtDb.size());
+		for (Marker m : nextProtDb)
+			if (m instanceof NextProt) nextProts.add((NextProt) m);
+
+		if (verbose) Timer.showStdErr("NextProt database: " + nextProts.size() + " markers loaded.");
+
+		//---
+		// Connect nextProt annotations to transcripts and exons
+		//---
+		if (verbose) Timer.showStdErr("Adding transcript info to NextProt markers.");
+
+		// Create a list of all transcripts
+		HashMap<String, Transcript> trs = new HashMap<>();
+		for (Gene g : snpEffectPredictor.getGenome().getGenes())
+			for (Transcript tr : g)
+				trs.put(tr.getId(), tr);
+
+		// Add nextprot entries
+		if (nextProtKeepAllTrs) {
+			// Add all nextProt marker to predictor (even if the transcript doesn't exist)
+			// WARNING: This is not recommended
+			for (NextProt np : nextProts)
+				snpEffectPredictor.add(np);
+		} else {
+			// Find the corresponding transcript for each nextProt marker
+			// WARNING: The transcripts might be filtered out by the user
+			//          (e.g. '-cannon' command line option or user defined
+			//          sets). We only keep nextProt markers associated to found
+			//          transcripts. All others are discarded (the user doesn't
+			//          want that info).
+			ArrayList<NextProt> nextProtsToAdd = new ArrayList<>();
+			for (NextProt np : nextProts) {
+				Transcript tr = trs.get(np.getTranscriptId());
+
+				// Found transcript, now try to find an exon
+				if (tr != null) {
+					np.setParent(tr); // Set this transcript as parent
+					nextProtsToAdd.add(np);
+				}
+			}
+
+			// Add all nextProt marker to predictor
+			for (NextProt np : nextProtsToAdd)
+				snpEffectPredictor.add(np);
+
+			// Note: We might end up with more markers than we loaded (just because they map to multiple exons (although it would be highly unusual)
+			if (verbose) Timer.showStdErr("NextProt database: " + nextProtsToAdd.size() + " markers added.");
+		}
+	}
+
+	/**
+	 * Add regulation markers to SnpEffectPredictor
+	 */
+	void addRegulation(Markers regulation) {
+		//---
+		// Are all chromosomes available?
+		//---
+		HashMap<String, Integer> chrs = new HashMap<>();
+		for (Marker r : regulation) {
+			String chr = r.getChromosomeName();
+			int max = chrs.containsKey(chr) ? chrs.get(chr) : 0;
+			max = Math.max(max, r.getEnd());
+			chrs.put(chr, max);
+		}
+
+		// Add all chromosomes
+		for (String chr : chrs.keySet())
+			if (genome.getChromosome(chr) == null) genome.add(new Chromosome(genome, 0, chrs.get(chr), chr));
+
+		//---
+		// Add all markers to predictor
+		//---
+		config.getSnpEffectPredictor().addAll(regulation);
+	}
+
 	public void addRegulationTrack(String cellType) {
 		regulationTracks.add(cellType);
 	}
@@ -300,6 +480,9 @@ public class SnpEff implements CommandLine {
 		case "seq":
 			return new SnpEffCmdSeq();
 
+		case "server":
+			return new SnpEffCmdServer();
+
 		case "show":
 			return new SnpEffCmdShow();
 
@@ -347,7 +530,7 @@ public class SnpEff implements CommandLine {
 	/**
 	 * Copy values to a new command
 	 */
-	void copyValues(SnpEff cmd) {
+	protected void copyValues(SnpEff cmd) {
 		cmd.canonical = canonical;
 		cmd.canonicalFile = canonicalFile;
 		cmd.configFile = configFile;
@@ -376,8 +559,10 @@ public class SnpEff implements CommandLine {
 		cmd.onlyProtein = onlyProtein;
 		cmd.onlyRegulation = onlyRegulation;
 		cmd.onlyTranscriptsFile = onlyTranscriptsFile;
+		cmd.parallelLoad = parallelLoad;
 		cmd.quiet = quiet;
 		cmd.regulationTracks = regulationTracks;
+		cmd.snapshot = snapshot;
 		cmd.spliceSiteSize = spliceSiteSize;
 		cmd.spliceRegionExonSize = spliceRegionExonSize;
 		cmd.spliceRegionIntronMax = spliceRegionIntronMax;
@@ -423,6 +608,27 @@ public class SnpEff implements CommandLine {
 		return output.toString();
 	}
 
+	/**
+	 * Are motif and PWM files available?
+	 */
+	boolean hasMotifFiles() {
+		String pwmsFileName = config.getDirDataGenomeVersion() + "/pwms.bin";
+		String motifBinFileName = config.getBaseFileNameMotif() + ".bin";
+
+		if (!Gpr.exists(pwmsFileName) || !Gpr.exists(motifBinFileName)) {
+			if (verbose) Timer.showStdErr("Loading Motifs and PWMs");
+
+			// OK, we don't have motif annotations, no problem
+			if (debug) {
+				if (!Gpr.exists(pwmsFileName)) warning("Warning: Cannot open PWMs file ", pwmsFileName);
+				if (!Gpr.exists(motifBinFileName)) warning("Warning: Cannot open Motifs file ", motifBinFileName);
+			}
+			return false;
+		}
+
+		return true;
+	}
+
 	/**
 	 * Is this a command line option (e.g. "-tfam" is a command line option, but "-" means STDIN)
 	 */
@@ -468,14 +674,7 @@ public class SnpEff implements CommandLine {
 	 * Read a custom interval file
 	 */
 	protected int loadCustomFile(String fileName) {
-		Markers markers = loadMarkers(fileName);
-
-		// Add all markers to predictor
-		for (Marker m : markers)
-			config.getSnpEffectPredictor().add(m);
-
-		// Number added
-		return markers.size();
+		return addCustomMarkers(loadMarkers(fileName));
 	}
 
 	/**
@@ -487,7 +686,62 @@ public class SnpEff implements CommandLine {
 			return; // Already loaded
 		}
 
+		Timer timer = new Timer();
+		loadTimes = new LinkedHashMap<>();
+		if (parallelLoad) {
+			if (verbose) Timer.showStdErr("Loading database using " + numWorkers + " threads");
+			loadExecutor = Executors.newFixedThreadPool(Math.max(1, numWorkers), new ThreadFactory() {
+				int threadNum = 0;
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "LoadDb-" + (threadNum++));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		try {
+			if (!loadDbSnapshot()) {
+				loadDbFiles();
+				if (snapshot) saveDbSnapshot();
+			}
+		} finally {
+			if (loadExecutor != null) loadExecutor.shutdownNow();
+			loadExecutor = null;
+		}
+
+		// Show some genome stats. Chromosome names are shown, a lot of people has
+		// problems with the correct chromosome names.
+		if (verbose) {
+			Timer.showStdErr("Genome stats :");
+			Genome genome = config.getGenome();
+
+			// When in debug mode, try to show detailed errors
+			StringBuilder errors = debug ? new StringBuilder() : null;
+			System.err.println(genome.toString(errors));
+			if (errors != null && (errors.length() > 0)) System.err.println(errors);
+		}
+
+		genome = config.getSnpEffectPredictor().getGenome();
+		genome.getGenomicSequences().setVerbose(verbose);
+
+		loadTime("Total", timer.elapsed());
+		if (verbose) showLoadTimes();
+	}
+
+	/**
+	 * Load database files and build interval forest.
+	 *
+	 * Files that don't depend on each other (database, custom intervals, regulation
+	 * tracks, NextProt, motifs, interactions) are read by 'loadAsync' tasks. Reading
+	 * is done in parallel if 'loadExecutor' is available. Markers are added to the
+	 * predictor in the same order as a sequential load (so the results are the same).
+	 */
+	void loadDbFiles() {
 		// Read database (or create a new one)
+		FutureTask<SnpEffectPredictor> sepFuture = null;
 		if (noGenome) {
 			if (verbose) Timer.showStdErr("Creating empty database (no genome).");
 			SnpEffectPredictor snpEffectPredictor = new SnpEffectPredictor(new Genome());
@@ -516,31 +770,102 @@ public class SnpEff implements CommandLine {
 				else if (verbose) Timer.showStdErr("Database installed.");
 			}
 
-			config.loadSnpEffectPredictor(); // Read snpEffect predictor
+			if (loadChromosomes != null && verbose) Timer.showStdErr("Loading only chromosomes: " + loadChromosomes);
+			sepFuture = loadAsync("Read database", new Callable<SnpEffectPredictor>() {
+				@Override
+				public SnpEffectPredictor call() {
+					return config.loadSnpEffectPredictor(loadChromosomes); // Read snpEffect predictor
+				}
+			});
+		}
+
+		// Read other database files
+		List<FutureTask<Markers>> customFutures = new ArrayList<>();
+		for (final String intFile : customIntervalFiles) {
+			customFutures.add(loadAsync("Read interval file '" + intFile + "'", new Callable<Markers>() {
+				@Override
+				public Markers call() {
+					if (verbose) Timer.showStdErr("Reading interval file '" + intFile + "'");
+					return loadMarkers(intFile);
+				}
+			}));
+		}
+
+		List<FutureTask<Markers>> regulationFutures = new ArrayList<>();
+		for (final String regTrack : regulationTracks) {
+			regulationFutures.add(loadAsync("Read regulation track '" + regTrack + "'", new Callable<Markers>() {
+				@Override
+				public Markers call() {
+					return readRegulationTrack(regTrack);
+				}
+			}));
+		}
+
+		FutureTask<Markers> nextProtFuture = null;
+		if (nextProt) {
+			nextProtFuture = loadAsync("Read NextProt", new Callable<Markers>() {
+				@Override
+				public Markers call() {
+					return readNextProt();
+				}
+			});
+		}
+
+		FutureTask<Jaspar> pwmsFuture = null;
+		FutureTask<Markers> motifsFuture = null;
+		if (motif && hasMotifFiles()) {
+			pwmsFuture = loadAsync("Read PWMs", new Callable<Jaspar>() {
+				@Override
+				public Jaspar call() {
+					return readPwms();
+				}
+			});
+
+			motifsFuture = loadAsync("Read motifs", new Callable<Markers>() {
+				@Override
+				public Markers call() {
+					return readMotifs();
+				}
+			});
+		}
+
+		FutureTask<List<DistanceResult>> interactionsFuture = null;
+		if (interaction) {
+			interactionsFuture = loadAsync("Read interactions", new Callable<List<DistanceResult>>() {
+				@Override
+				public List<DistanceResult> call() {
+					return readInteractions();
+				}
+			});
+		}
+
+		// Wait for database
+		if (sepFuture != null) {
+			loadResult(sepFuture);
 			genome = config.getSnpEffectPredictor().getGenome();
 			if (verbose) Timer.showStdErr("done");
 		}
 
 		// Set 'treatAllAsProteinCoding'
-		if (treatAllAsProteinCoding != null) config.setTreatAllAsProteinCoding(treatAllAsProteinCoding);
-		else {
-			// treatAllAsProteinCoding was set to 'auto'
-			// I.e.: Use 'true' if there is protein coding info, otherwise use false.
-			boolean tapc = !config.getGenome().hasCodingInfo();
-			if (debug) Timer.showStdErr("Setting '-treatAllAsProteinCoding' to '" + tapc + "'");
-			config.setTreatAllAsProteinCoding(tapc);
-		}
-
-		// Read custom interval files
-		for (String intFile : customIntervalFiles) {
-			if (verbose) Timer.showStdErr("Reading interval file '" + intFile + "'");
-			int count = loadCustomFile(intFile);
+		setTreatAllAsProteinCoding();
+
+		// Add custom interval files
+		Timer timer = new Timer();
+		for (FutureTask<Markers> customFuture : customFutures) {
+			Markers markers = loadResult(customFuture);
+			timer.start();
+			int count = addCustomMarkers(markers);
+			loadTime("Add intervals", timer.elapsed());
 			if (verbose) Timer.showStdErr("done (" + count + " intervals loaded). ");
 		}
 
-		// Read regulation tracks
-		for (String regTrack : regulationTracks)
-			loadRegulationTrack(regTrack);
+		// Add regulation tracks
+		for (FutureTask<Markers> regulationFuture : regulationFutures) {
+			Markers regulation = loadResult(regulationFuture);
+			timer.start();
+			addRegulation(regulation);
+			loadTime("Add regulation", timer.elapsed());
+		}
 
 		// Set upstream-downstream interval length
 		config.getSnpEffectPredictor().setUpDownStreamLength(upDownStreamLength);
@@ -552,6 +877,7 @@ public class SnpEff implements CommandLine {
 		config.getSnpEffectPredictor().setSpliceRegionIntronMax(spliceRegionIntronMax);
 
 		// Filter canonical transcripts
+		timer.start();
 		if (canonical || (canonicalFile != null && !canonicalFile.isEmpty())) canonical();
 
 		// Filter transcripts by TSL
@@ -602,95 +928,84 @@ public class SnpEff implements CommandLine {
 			int removed = config.getSnpEffectPredictor().keepTranscriptsProteinCoding();
 			if (verbose) Timer.showStdErr("Done: " + removed + " transcripts removed.");
 		}
-
-		// Load NextProt database
-		if (nextProt) loadNextProt();
-
-		// Load Motif databases
-		if (motif) loadMotif();
-
-		// Load Motif databases
-		if (interaction) loadInteractions();
-
-		// Build tree
-		if (verbose) Timer.showStdErr("Building interval forest");
-		config.getSnpEffectPredictor().buildForest();
-		if (verbose) Timer.showStdErr("done.");
-
-		// Show some genome stats. Chromosome names are shown, a lot of people has
-		// problems with the correct chromosome names.
-		if (verbose) {
-			Timer.showStdErr("Genome stats :");
-			Genome genome = config.getGenome();
-
-			// When in debug mode, try to show detailed errors
-			StringBuilder errors = debug ? new StringBuilder() : null;
-			System.err.println(genome.toString(errors));
-			if (errors != null && (errors.length() > 0)) System.err.println(errors);
+		loadTime("Filter transcripts", timer.elapsed());
+
+		// Add NextProt database
+		if (nextProtFuture != null) {
+			Markers nextProtDb = loadResult(nextProtFuture);
+			timer.start();
+			if (nextProtDb != null) addNextProt(nextProtDb);
+			loadTime("Add NextProt", timer.elapsed());
 		}
 
-		genome = config.getSnpEffectPredictor().getGenome();
-		genome.getGenomicSequences().setVerbose(verbose);
-	}
-
-	/**
-	 * Load protein interaction database
-	 */
-	void loadInteractions() {
-		//---
-		// Sanity checks
-		//---
-		String intFileName = config.getDirDataGenomeVersion() + "/" + SnpEffCmdPdb.PROTEIN_INTERACTION_FILE;
-		if (!Gpr.exists(intFileName)) {
-			if (debug) if (!Gpr.exists(intFileName)) warning("Warning: Cannot open interactions file ", intFileName);
-			return;
+		// Add Motif databases
+		if (pwmsFuture != null) {
+			Jaspar jaspar = loadResult(pwmsFuture);
+			Markers motifsDb = loadResult(motifsFuture);
+			timer.start();
+			addMotifs(jaspar, motifsDb);
+			loadTime("Add motifs", timer.elapsed());
 		}
 
-		// Build transcript map
-		HashMap<String, Transcript> id2tr = new HashMap<>();
-		SnpEffectPredictor sep = config.getSnpEffectPredictor();
-		Genome genome = sep.getGenome();
-		for (Gene g : genome.getGenes())
-			for (Transcript tr : g)
-				id2tr.put(tr.getId(), tr);
-
-		//---
-		// Load all interactions
-		//---
-		if (verbose) Timer.showStdErr("Loading interactions from : " + intFileName);
-		String lines[] = Gpr.readFile(intFileName, true).split("\n");
-		int count = 0, countSkipped = 0;
-		for (String line : lines) {
-			DistanceResult dres = new DistanceResult(line);
-			Chromosome chr1 = genome.getChromosome(dres.chr1);
-			Chromosome chr2 = genome.getChromosome(dres.chr2);
-			Transcript tr1 = id2tr.get(dres.trId1);
-			Transcript tr2 = id2tr.get(dres.trId2);
-
-			String id = dres.getId();
-
-			// All chromosomes and transcript found? => Add entries
-			if (chr1 != null && chr2 != null && tr1 != null && tr2 != null) {
+		// Add interactions database
+		if (interactionsFuture != null) {
+			List<DistanceResult> interactions = loadResult(interactionsFuture);
+			timer.start();
+			if (interactions != null) addInteractions(interactions);
+			loadTime("Add interactions", timer.elapsed());
+		}
 
-				// Gene1
-				Gene gene1 = (Gene) tr1.getParent();
-				gene1.getId();
-				List<ProteinInteractionLocus> list = ProteinInteractionLocus.factory(tr1, dres.aaPos1, tr2, id);
-				for (Marker m : list)
-					gene1.addPerGene(m);
+		// Build tree
+		if (verbose) Timer.showStdErr("Building interval forest");
+		timer.start();
+		config.getSnpEffectPredictor().buildForest(loadExecutor);
+		loadTime("Build interval forest", timer.elapsed());
+		if (verbose) Timer.showStdErr("done.");
+	}
 
-				// Since they act on different transcript (or different AAs within the transcript), we
-				// need to add two markers (one for each "side" of the interaction
-				Gene gene2 = (Gene) tr2.getParent();
-				gene2.getId();
-				list = ProteinInteractionLocus.factory(tr2, dres.aaPos2, tr1, id);
-				for (Marker m : list)
-					gene2.addPerGene(m);
-				count++;
-			} else countSkipped++;
+	/**
+	 * Load database from a snapshot (see 'snapshotKey')
+	 * @return true if the snapshot was loaded
+	 */
+	boolean loadDbSnapshot() {
+		if (!snapshot || noGenome || onlyRegulation) return false;
+
+		String snapshotFile = config.getFileSnpEffectPredictorSnapshot();
+		if (!Gpr.canRead(snapshotFile)) return false;
+
+		if (verbose) Timer.showStdErr("Reading database snapshot from file '" + snapshotFile + "'");
+		Timer timer = new Timer();
+		SnpEffectPredictor sep = config.loadSnpEffectPredictorSnapshot(snapshotKey());
+		if (sep == null) {
+			if (verbose) Timer.showStdErr("Snapshot is outdated or incompatible, ignoring it");
+			return false;
 		}
+		loadTime("Read snapshot", timer.elapsed());
+		if (verbose) Timer.showStdErr("done");
 
-		if (verbose) Timer.showStdErr("\tInteractions: " + count + " added, " + countSkipped + " skipped.");
+		genome = sep.getGenome();
+		setTreatAllAsProteinCoding();
+		return true;
+	}
+
+	/**
+	 * Run a database loading task, the elapsed time is recorded as 'phase'.
+	 * If 'loadExecutor' is available, the task is submitted (i.e. run in parallel).
+	 * Otherwise, it is run when the result is needed (see 'loadResult')
+	 */
+	<T> FutureTask<T> loadAsync(final String phase, final Callable<T> task) {
+		FutureTask<T> future = new FutureTask<>(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				Timer timer = new Timer();
+				T result = task.call();
+				loadTime(phase, timer.elapsed());
+				return result;
+			}
+		});
+
+		if (loadExecutor != null) loadExecutor.execute(future);
+		return future;
 	}
 
 	/**
@@ -719,163 +1034,27 @@ public class SnpEff implements CommandLine {
 	}
 
 	/**
-	 * Read regulation motif files
-	 */
-	void loadMotif() {
-		//---
-		// Sanity checks
-		//---
-		String pwmsFileName = config.getDirDataGenomeVersion() + "/pwms.bin";
-		String motifBinFileName = config.getBaseFileNameMotif() + ".bin";
-
-		if (!Gpr.exists(pwmsFileName) || !Gpr.exists(motifBinFileName)) {
-			if (verbose) Timer.showStdErr("Loading Motifs and PWMs");
-
-			// OK, we don't have motif annotations, no problem
-			if (debug) {
-				if (!Gpr.exists(pwmsFileName)) warning("Warning: Cannot open PWMs file ", pwmsFileName);
-				if (!Gpr.exists(motifBinFileName)) warning("Warning: Cannot open Motifs file ", motifBinFileName);
-			}
-			return;
-		}
-
-		//---
-		// Load all PWMs
-		//---
-		if (verbose) Timer.showStdErr("Loading PWMs from : " + pwmsFileName);
-		Jaspar jaspar = new Jaspar();
-		jaspar.load(pwmsFileName);
-
-		//---
-		// Read motifs
-		//---
-		if (verbose) Timer.showStdErr("Loading Motifs from file '" + motifBinFileName + "'");
-
-		MarkerSerializer markerSerializer = new MarkerSerializer();
-		Markers motifsDb = markerSerializer.load(motifBinFileName);
-
-		// Add (only) motif markers. The original motifs has to be serialized with Chromosomes, Genomes and other markers (otherwise it could have not been saved)
-		SnpEffectPredictor snpEffectPredictor = config.getSnpEffectPredictor();
-		int countAddded = 0;
-		for (Marker m : motifsDb)
-			if (m instanceof Motif) {
-				Motif motif = (Motif) m;
-
-				// Connect motifs to their respective PWMs
-				Pwm pwm = jaspar.getPwm(motif.getPwmId());
-				if (pwm != null) {
-					// Set PWM and add to snpEffPredictor
-					motif.setPwm(pwm);
-					snpEffectPredictor.add(motif);
-					countAddded++;
-				} else if (debug) Timer.showStdErr("Cannot find PWM for motif '" + motif.getPwmId() + "'");
-			}
-
-		if (verbose) Timer.showStdErr("\tMotif database: " + countAddded + " markers loaded.");
-	}
-
-	/**
-	 * Read regulation track and update SnpEffectPredictor
+	 * Wait for a database loading task and get its result
 	 */
-	void loadNextProt() {
-		SnpEffectPredictor snpEffectPredictor = config.getSnpEffectPredictor();
-
-		//---
-		// Read nextProt binary file
-		//---
-		String nextProtBinFile = config.getDirDataGenomeVersion() + "/nextProt.bin";
-		if (!Gpr.canRead(nextProtBinFile)) {
-			if (debug) Timer.showStdErr("NextProt database '" + nextProtBinFile + "' doesn't exist. Ignoring.");
-			return;
-		}
-		if (verbose) Timer.showStdErr("Reading NextProt database from file '" + nextProtBinFile + "'");
-
-		MarkerSerializer markerSerializer = new MarkerSerializer();
-		Markers nextProtDb = markerSerializer.load(nextProtBinFile);
-
-		// Create a collection of (only) NextProt markers. The original nextProtDb has Chromosomes, Genomes and other markers (otherwise it could have not been saved)
-		ArrayList<NextProt> nextProts = new ArrayList<>(nextProtDb.size());
-		for (Marker m : nextProtDb)
-			if (m instanceof NextProt) nextProts.add((NextProt) m);
-
-		if (verbose) Timer.showStdErr("NextProt database: " + nextProts.size() + " markers loaded.");
-
-		//---
-		// Connect nextProt annotations to transcripts and exons
-		//---
-		if (verbose) Timer.showStdErr("Adding transcript info to NextProt markers.");
-
-		// Create a list of all transcripts
-		HashMap<String, Transcript> trs = new HashMap<>();
-		for (Gene g : snpEffectPredictor.getGenome().getGenes())
-			for (Transcript tr : g)
-				trs.put(tr.getId(), tr);
-
-		// Add nextprot entries
-		if (nextProtKeepAllTrs) {
-			// Add all nextProt marker to predictor (even if the transcript doesn't exist)
-			// WARNING: This is not recommended
-			for (NextProt np : nextProts)
-				snpEffectPredictor.add(np);
-		} else {
-			// Find the corresponding transcript for each nextProt marker
-			// WARNING: The transcripts might be filtered out by the user
-			//          (e.g. '-cannon' command line option or user defined
-			//          sets). We only keep nextProt markers associated to found
-			//          transcripts. All others are discarded (the user doesn't
-			//          want that info).
-			ArrayList<NextProt> nextProtsToAdd = new ArrayList<>();
-			for (NextProt np : nextProts) {
-				Transcript tr = trs.get(np.getTranscriptId());
-
-				// Found transcript, now try to find an exon
-				if (tr != null) {
-					np.setParent(tr); // Set this transcript as parent
-					nextProtsToAdd.add(np);
-				}
-			}
-
-			// Add all nextProt marker to predictor
-			for (NextProt np : nextProtsToAdd)
-				snpEffectPredictor.add(np);
+	<T> T loadResult(FutureTask<T> future) {
+		if (loadExecutor == null) future.run(); // Not running in parallel: Run it now (does nothing if it already ran)
 
-			// Note: We might end up with more markers than we loaded (just because they map to multiple exons (although it would be highly unusual)
-			if (verbose) Timer.showStdErr("NextProt database: " + nextProtsToAdd.size() + " markers added.");
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
 		}
-
 	}
 
 	/**
-	 * Read regulation track and update SnpEffectPredictor
+	 * Record elapsed time for a database loading phase
 	 */
-	void loadRegulationTrack(String regTrack) {
-		//---
-		// Read file
-		//---
-		if (verbose) Timer.showStdErr("Reading regulation track '" + regTrack + "'");
-		String regFile = config.getDirDataGenomeVersion() + "/regulation_" + regTrack + ".bin";
-		Markers regulation = new Markers();
-		regulation.load(regFile);
-
-		//---
-		// Are all chromosomes available?
-		//---
-		HashMap<String, Integer> chrs = new HashMap<>();
-		for (Marker r : regulation) {
-			String chr = r.getChromosomeName();
-			int max = chrs.containsKey(chr) ? chrs.get(chr) : 0;
-			max = Math.max(max, r.getEnd());
-			chrs.put(chr, max);
-		}
-
-		// Add all chromosomes
-		for (String chr : chrs.keySet())
-			if (genome.getChromosome(chr) == null) genome.add(new Chromosome(genome, 0, chrs.get(chr), chr));
-
-		//---
-		// Add all markers to predictor
-		//---
-		config.getSnpEffectPredictor().addAll(regulation);
+	synchronized void loadTime(String phase, long elapsedMs) {
+		Long prev = loadTimes.get(phase);
+		loadTimes.put(phase, (prev != null ? prev : 0L) + elapsedMs);
 	}
 
 	/**
@@ -911,6 +1090,7 @@ public class SnpEff implements CommandLine {
 				|| args[0].equalsIgnoreCase("pdb") //
 				|| args[0].equalsIgnoreCase("protein") //
 				|| args[0].equalsIgnoreCase("seq") //
+				|| args[0].equalsIgnoreCase("server") //
 				|| args[0].equalsIgnoreCase("show") //
 				|| args[0].equalsIgnoreCase("test") //
 				|| args[0].equalsIgnoreCase("translocreport") //
@@ -1057,6 +1237,14 @@ public class SnpEff implements CommandLine {
 					onlyProtein = true;
 					break;
 
+				case "-parallelload":
+					parallelLoad = true;
+					break;
+
+				case "-snapshot":
+					snapshot = true;
+					break;
+
 				case "-onlytr":
 					if ((i + 1) < args.length) onlyTranscriptsFile = args[++i]; // Only use the transcripts in this file
 					else usage("Option '-onltTr' without file argument");
@@ -1157,6 +1345,82 @@ public class SnpEff implements CommandLine {
 		else if (!suppressOutput) System.out.println(o.toString());
 	}
 
+	/**
+	 * Read protein interaction database
+	 * @return Interactions or null if the database is not available
+	 */
+	List<DistanceResult> readInteractions() {
+		//---
+		// Sanity checks
+		//---
+		String intFileName = config.getDirDataGenomeVersion() + "/" + SnpEffCmdPdb.PROTEIN_INTERACTION_FILE;
+		if (!Gpr.exists(intFileName)) {
+			if (debug) if (!Gpr.exists(intFileName)) warning("Warning: Cannot open interactions file ", intFileName);
+			return null;
+		}
+
+		//---
+		// Load all interactions
+		//---
+		if (verbose) Timer.showStdErr("Loading interactions from : " + intFileName);
+		String lines[] = Gpr.readFile(intFileName, true).split("\n");
+		List<DistanceResult> interactions = new ArrayList<>(lines.length);
+		for (String line : lines)
+			interactions.add(new DistanceResult(line));
+
+		return interactions;
+	}
+
+	/**
+	 * Read motifs database
+	 */
+	Markers readMotifs() {
+		String motifBinFileName = config.getBaseFileNameMotif() + ".bin";
+		if (verbose) Timer.showStdErr("Loading Motifs from file '" + motifBinFileName + "'");
+
+		MarkerSerializer markerSerializer = new MarkerSerializer();
+		return markerSerializer.load(motifBinFileName);
+	}
+
+	/**
+	 * Read NextProt database
+	 * @return NextProt markers or null if the database is not available
+	 */
+	Markers readNextProt() {
+		String nextProtBinFile = config.getDirDataGenomeVersion() + "/nextProt.bin";
+		if (!Gpr.canRead(nextProtBinFile)) {
+			if (debug) Timer.showStdErr("NextProt database '" + nextProtBinFile + "' doesn't exist. Ignoring.");
+			return null;
+		}
+		if (verbose) Timer.showStdErr("Reading NextProt database from file '" + nextProtBinFile + "'");
+
+		MarkerSerializer markerSerializer = new MarkerSerializer();
+		return markerSerializer.load(nextProtBinFile);
+	}
+
+	/**
+	 * Read all PWMs
+	 */
+	Jaspar readPwms() {
+		String pwmsFileName = config.getDirDataGenomeVersion() + "/pwms.bin";
+		if (verbose) Timer.showStdErr("Loading PWMs from : " + pwmsFileName);
+
+		Jaspar jaspar = new Jaspar();
+		jaspar.load(pwmsFileName);
+		return jaspar;
+	}
+
+	/**
+	 * Read regulation track
+	 */
+	Markers readRegulationTrack(String regTrack) {
+		if (verbose) Timer.showStdErr("Reading regulation track '" + regTrack + "'");
+		String regFile = config.getDirDataGenomeVersion() + "/regulation_" + regTrack + ".bin";
+		Markers regulation = new Markers();
+		regulation.load(regFile);
+		return regulation;
+	}
+
 	/**
 	 * Additional values to be reported
 	 */
@@ -1225,6 +1489,24 @@ public class SnpEff implements CommandLine {
 		return ok;
 	}
 
+	/**
+	 * Save a database snapshot (interval forest already built)
+	 */
+	void saveDbSnapshot() {
+		String snapshotFile = config.getFileSnpEffectPredictorSnapshot();
+		if (verbose) Timer.showStdErr("Saving database snapshot to file '" + snapshotFile + "'");
+
+		Timer timer = new Timer();
+		try {
+			SnpEffectPredictorSnapshot.save(snapshotFile, snapshotKey(), config.getSnpEffectPredictor());
+			if (verbose) Timer.showStdErr("done");
+		} catch (RuntimeException e) {
+			// Not being able to save a snapshot is not fatal (e.g. data directory is read-only)
+			warning("Cannot save database snapshot: ", e.getMessage());
+		}
+		loadTime("Save snapshot", timer.elapsed());
+	}
+
 	public void setCanonical(boolean canonical) {
 		this.canonical = canonical;
 	}
@@ -1269,6 +1551,20 @@ public class SnpEff implements CommandLine {
 		this.suppressOutput = suppressOutput;
 	}
 
+	/**
+	 * Set 'treatAllAsProteinCoding' in config (resolve 'auto' value)
+	 */
+	void setTreatAllAsProteinCoding() {
+		if (treatAllAsProteinCoding != null) config.setTreatAllAsProteinCoding(treatAllAsProteinCoding);
+		else {
+			// treatAllAsProteinCoding was set to 'auto'
+			// I.e.: Use 'true' if there is protein coding info, otherwise use false.
+			boolean tapc = !config.getGenome().hasCodingInfo();
+			if (debug) Timer.showStdErr("Setting '-treatAllAsProteinCoding' to '" + tapc + "'");
+			config.setTreatAllAsProteinCoding(tapc);
+		}
+	}
+
 	public void setUpDownStreamLength(int upDownStreamLength) {
 		this.upDownStreamLength = upDownStreamLength;
 	}
@@ -1277,6 +1573,80 @@ public class SnpEff implements CommandLine {
 		this.verbose = verbose;
 	}
 
+	/**
+	 * Show elapsed time for each database loading phase
+	 * Note: When loading in parallel, phases overlap, so times do not add up to 'Total'
+	 */
+	void showLoadTimes() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Database loading times" + (parallelLoad ? " (parallel, " + numWorkers + " threads)" : "") + ":");
+		for (String phase : loadTimes.keySet())
+			sb.append(String.format("\n\t\t%-50s: %s", phase, Timer.toString(loadTimes.get(phase), true)));
+		Timer.showStdErr(sb.toString());
+	}
+
+	/**
+	 * A key identifying a database snapshot: It includes every file and
+	 * parameter used to load the database and build the interval forest.
+	 * Files are identified by path, size and modification time, so a
+	 * snapshot is rebuilt when any of them changes.
+	 */
+	String snapshotKey() {
+		String dir = config.getDirDataGenomeVersion();
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("version: " + VERSION + "\n");
+		sb.append("database: " + snapshotKeyFile(config.getFileSnpEffectPredictor()) + "\n");
+
+		// Files
+		if (canonicalFile != null) sb.append("canonicalFile: " + snapshotKeyFile(canonicalFile) + "\n");
+		if (onlyTranscriptsFile != null) sb.append("onlyTranscriptsFile: " + snapshotKeyFile(onlyTranscriptsFile) + "\n");
+		for (String intFile : customIntervalFiles)
+			sb.append("interval: " + snapshotKeyFile(intFile) + "\n");
+
+		List<String> regTracks = new ArrayList<>(regulationTracks);
+		Collections.sort(regTracks);
+		for (String regTrack : regTracks)
+			sb.append("regulation: " + snapshotKeyFile(dir + "/regulation_" + regTrack + ".bin") + "\n");
+
+		if (nextProt) sb.append("nextProt: " + snapshotKeyFile(dir + "/nextProt.bin") + "\n");
+		if (motif) {
+			sb.append("pwms: " + snapshotKeyFile(dir + "/pwms.bin") + "\n");
+			sb.append("motif: " + snapshotKeyFile(config.getBaseFileNameMotif() + ".bin") + "\n");
+		}
+		if (interaction) sb.append("interaction: " + snapshotKeyFile(dir + "/" + SnpEffCmdPdb.PROTEIN_INTERACTION_FILE) + "\n");
+
+		// Parameters
+		if (loadChromosomes != null) {
+			List<String> chrs = new ArrayList<>(loadChromosomes);
+			Collections.sort(chrs);
+			sb.append("loadChromosomes: " + chrs + "\n");
+		}
+
+		sb.append("canonical: " + canonical + "\n");
+		sb.append("maxTSL: " + maxTranscriptSupportLevel + "\n");
+		sb.append("nextProtKeepAllTrs: " + nextProtKeepAllTrs + "\n");
+		sb.append("onlyProtein: " + onlyProtein + "\n");
+		sb.append("spliceRegionExonSize: " + spliceRegionExonSize + "\n");
+		sb.append("spliceRegionIntronMax: " + spliceRegionIntronMax + "\n");
+		sb.append("spliceRegionIntronMin: " + spliceRegionIntronMin + "\n");
+		sb.append("spliceSiteSize: " + spliceSiteSize + "\n");
+		sb.append("strict: " + strict + "\n");
+		sb.append("treatAllAsProteinCoding: " + treatAllAsProteinCoding + "\n");
+		sb.append("upDownStreamLength: " + upDownStreamLength + "\n");
+
+		return sb.toString();
+	}
+
+	/**
+	 * File identification for a snapshot key: path, size and modification time
+	 */
+	String snapshotKeyFile(String fileName) {
+		File file = new File(fileName);
+		if (!file.exists()) return fileName + "\tmissing";
+		return file.getAbsolutePath() + "\t" + file.length() + "\t" + file.lastModified();
+	}
+
 	/**
 	 * Show 'usage' message and exit with an error code '-1'
 	 * @param message
@@ -1302,6 +1672,7 @@ public class SnpEff implements CommandLine {
 		System.err.println("\tpdb                          : Build interaction database (based on PDB data).");
 		System.err.println("\tprotein                      : Compare protein sequences calculated form a SnpEff database to the one in a FASTA file. Used for checking databases correctness.");
 		System.err.println("\tseq                          : Show sequence (from command line) translation.");
+		System.err.println("\tserver                       : Annotation server: Load databases once and annotate variants using a local HTTP API.");
 		System.err.println("\tshow                         : Show a text representation of genes or transcripts coordiantes, DNA sequence and protein sequence.");
 		System.err.println("\ttranslocReport               : Create a translocations report (from VCF file).");
 		// System.err.println("\tspliceAnalysis               : Perform an analysis of splice sites. Experimental feature.");
@@ -1331,7 +1702,9 @@ public class SnpEff implements CommandLine {
 		System.err.println("\t-onlyReg                     : Only use regulation tracks.");
 		System.err.println("\t-onlyProtein                 : Only use protein coding transcripts. Default: " + onlyProtein);
 		System.err.println("\t-onlyTr <file.txt>           : Only use the transcripts in this file. Format: One transcript ID per line.");
+		System.err.println("\t-parallelLoad                : Load database files and build interval trees using multiple threads. Default: " + parallelLoad);
 		System.err.println("\t-reg <name>                  : Regulation track to use (this option can be used add several times).");
+		System.err.println("\t-snapshot                    : Use a snapshot of the database (interval trees already built). The snapshot is created if missing or outdated. Default: " + snapshot);
 		System.err.println("\t-ss , -spliceSiteSize <int>  : Set size for splice sites (donor and acceptor) in bases. Default: " + spliceSiteSize);
 		System.err.println("\t-spliceRegionExonSize <int>  : Set size for splice site region within exons. Default: " + spliceRegionExonSize + " bases");
 		System.err.println("\t-spliceRegionIntronMin <int> : Set minimum number of bases for splice site region within intron. Default: " + spliceRegionIntronMin + " bases");
@@ -1353,7 +1726,7 @@ public class SnpEff implements CommandLine {
 		System.err.println("\t-nodownload                  : Do not download a SnpEff database, if not available locally.");
 		System.err.println("\t-h , -help                   : Show this help and exit");
 		System.err.println("\t-noLog                       : Do not report usage statistics to server");
-		System.err.println("\t-t                           : Use multiple threads (implies '-noStats'). Default 'off'");
+		System.err.println("\t-t                           : Use multiple threads. Default 'off'");
 		System.err.println("\t-q , -quiet                  : Quiet mode (do not show any messages or errors)");
 		System.err.println("\t-v , -verbose                : Verbose mode");
 		System.err.println("\t-version                     : Show version number and exit");
@@ -18,6 +18,13 @@ public class NeedlemanWunsch {
 	int bestScore = 0;
 	boolean useSpace; // Use spaces when calculating alignment
 
+	/**
+	 * Constructor for sub-classes that set sequences ('a' and 'b') later
+	 */
+	protected NeedlemanWunsch() {
+		useSpace = true;
+	}
+
 	public NeedlemanWunsch(String a, String b) {
 		this.a = a.toCharArray();
 		this.b = b.toCharArray();
@@ -3,7 +3,6 @@ package org.snpeff.align;
 import org.snpeff.binseq.GenomicSequences;
 import org.snpeff.interval.Genome;
 import org.snpeff.interval.Marker;
-import org.snpeff.interval.MarkerSeq;
 import org.snpeff.interval.Variant;
 import org.snpeff.util.Gpr;
 
@@ -13,6 +12,12 @@ import org.snpeff.util.Gpr;
  * Note: We perform a 'progressive' realignment, asking for more
  *       reference sequence as we need it
  *
+ * Note: Reference and alternative sequences are not created on each
+ *       iteration. Instead, they are accessed using indexes on a
+ *       reference 'window' (see 'refBase()' and 'altBase()'). The
+ *       window is only queried again when it has to grow, and
+ *       'ref' / 'alt' strings are created once, after realignment.
+ *
  * @author pcingola
  */
 public class VariantRealign {
@@ -24,6 +29,7 @@ public class VariantRealign {
 	public static final int PROGRESSIVE_BASES_EXTRA = 1;
 
 	public static final int MAX_ITERATIONS = 100;
+	public static final int WINDOW_GROWTH_ITERATIONS = 2; // When the window needs to grow, make it large enough for these many iterations
 
 	boolean debug = false;
 	boolean alignLeft = true; // By default, align to the left
@@ -35,6 +41,13 @@ public class VariantRealign {
 	int maxBasesLeft, maxBasesRight; // Maximum number of bases we can add on each side before running out of sequence
 	String sequenceRef, sequenceAlt;
 	String refRealign, altRealign; // Ref and Alt after realignment
+	String window; // Reference sequence window (lower case, same as sequences from 'genSeqs')
+	int windowStart, windowEnd; // Window's genomic coordinates
+	int seqIntervalStart, seqIntervalEnd; // Genomic interval having sequence, includes the variant
+	int seqStart, seqLeft; // Reference sequence starts at 'seqStart' (genomic coordinate), variant starts at index 'seqLeft'
+	int lenRef, lenAlt; // Length of (virtual) reference and alternative sequences
+	int refLen, altLen; // Variant's ref and alt lengths
+	String vref, valt; // Variant's ref and alt
 	GenomicSequences genSeqs; // Provides sequences
 	Genome genome; // Reference genome
 	Variant variant;
@@ -49,17 +62,25 @@ public class VariantRealign {
 		this.variant = variant;
 	}
 
+	/**
+	 * Base at position 'idx' in (virtual) alternative sequence
+	 * Alternative sequence is: refSeq[0, seqLeft) + alt + refSeq[seqLeft + refLen, lenRef)
+	 */
+	char altBase(int idx) {
+		if (idx < seqLeft) return refBase(idx);
+		idx -= seqLeft;
+		if (idx < altLen) return Character.toLowerCase(valt.charAt(idx));
+		return refBase(seqLeft + refLen + idx - altLen);
+	}
+
 	/**
 	 * Calculate how many bases to add on each side of the sequence in order to
 	 * give some 'anchor' or 'context' to the variant
 	 */
 	boolean basesToAdd(int addBasesLeft, int addBasesRight) {
-		MarkerSeq ms = genSeqs.queryMarkerSequence(variant);
-		if (ms == null) return false;
-
 		// Minimum and maximum base number to request (we only have sequence within these positions)
-		maxBasesLeft = variant.getStart() - ms.getStart();
-		maxBasesRight = ms.getEnd() - variant.getEnd();
+		maxBasesLeft = variant.getStart() - seqIntervalStart;
+		maxBasesRight = seqIntervalEnd - variant.getEnd();
 
 		// Calculate bases to left & right
 		basesAddedLeft = variant.getStart() - (variant.getStart() - addBasesLeft);
@@ -73,30 +94,16 @@ public class VariantRealign {
 	}
 
 	/**
-	 * Create alt sequence
+	 * Create alt sequence: Only lengths are calculated, bases
+	 * are accessed using 'altBase()'
 	 */
 	boolean createAltSeq() {
-		// First sequence base is variant.start
-		String seqPre = sequenceRef.substring(0, basesAddedLeft); // These bases do not change
-		String seqVar = sequenceRef.substring(basesAddedLeft); // This is where the variant is
-
-		// Remove 'ref' part
-		String vref = variant.getReference().toLowerCase();
-		if (!vref.isEmpty()) {
-			// Sanity check
-			if (!seqVar.startsWith(vref)) {
-				if (debug) Gpr.debug("Variant not found in reference sequence. This should never happen!" //
-						+ "\n\tSeq: '" + seqVar //
-						+ "'\n\tVariant's ref: '" + vref + "'" //
-				);
-				return false;
-			}
+		// Sanity check: Variant's 'ref' must match reference sequence
+		if (lenRef - seqLeft < refLen) return refNotFound();
+		for (int i = 0; i < refLen; i++)
+			if (refBase(seqLeft + i) != Character.toLowerCase(vref.charAt(i))) return refNotFound();
 
-			seqVar = seqVar.substring(vref.length()); // Remove 'ref' part
-		}
-
-		// Combine 'alt' part
-		sequenceAlt = seqPre + variant.getAlt().toLowerCase() + seqVar;
+		lenAlt = lenRef - refLen + altLen;
 		return true;
 	}
 
@@ -122,12 +129,37 @@ public class VariantRealign {
 	}
 
 	/**
-	 * Create reference sequence
+	 * Create reference sequence: Make sure the window includes the
+	 * reference sequence, bases are accessed using 'refBase()'
 	 */
 	boolean createRefSeq() {
-		Marker m = new Marker(variant.getChromosome(), variant.getStart() - basesAddedLeft, variant.getEnd() + basesAddedRight);
-		sequenceRef = genSeqs.querySequence(m);
-		return sequenceRef != null;
+		int start = variant.getStart() - basesAddedLeft;
+		int end = variant.getEnd() + basesAddedRight;
+
+		// Window does not include the sequence? Query a new one
+		if (window == null || start < windowStart || end > windowEnd) {
+			int wstart = start, wend = end;
+			if (window != null) {
+				// Make the window large enough for the next iterations (within sequence interval)
+				int left = basesAddedLeft, right = basesAddedRight;
+				for (int i = 0; i < WINDOW_GROWTH_ITERATIONS; i++) {
+					left = PROGRESSIVE_BASES_MULTIPLIER * left + PROGRESSIVE_BASES_EXTRA;
+					right = PROGRESSIVE_BASES_MULTIPLIER * right + PROGRESSIVE_BASES_EXTRA;
+				}
+				wstart = Math.max(variant.getStart() - left, seqIntervalStart);
+				wend = Math.min(variant.getEnd() + right, seqIntervalEnd);
+			}
+
+			window = genSeqs.querySequence(new Marker(variant.getChromosome(), wstart, wend));
+			if (window == null) return false;
+			windowStart = wstart;
+			windowEnd = wend;
+		}
+
+		seqStart = start;
+		seqLeft = basesAddedLeft;
+		lenRef = end - start + 1;
+		return true;
 	}
 
 	public String getAltRealign() {
@@ -163,6 +195,17 @@ public class VariantRealign {
 	public boolean realign() {
 		int basesAddedLeftPrev = 0, basesAddedRightPrev = 0;
 
+		// Interval having sequence (we cannot add bases outside this interval)
+		Marker ms = genSeqs.querySequenceInterval(variant);
+		if (ms == null) return false;
+		seqIntervalStart = ms.getStart();
+		seqIntervalEnd = ms.getEnd();
+
+		vref = variant.getReference();
+		valt = variant.getAlt();
+		refLen = vref.length();
+		altLen = valt.length();
+
 		// Progressive realignment
 		// Require more bases to the right or left if needed
 		boolean needMoreBases = true;
@@ -172,7 +215,7 @@ public class VariantRealign {
 			//---
 			if (i == 0) {
 				// First iteration? Initialize using a 'guess' and let basesToAdd() method make a proper calculation
-				int maxVarLen = INITIAL_BASES_MULTIPLIER * Math.max(variant.getReference().length(), variant.getAlt().length());
+				int maxVarLen = INITIAL_BASES_MULTIPLIER * Math.max(refLen, altLen);
 				basesAddedLeft = basesAddedRight = Math.max(maxVarLen, INITIAL_BASES_EXTRA);
 			} else {
 				// Increment values
@@ -196,7 +239,7 @@ public class VariantRealign {
 			if (!createAltSeq()) return false;
 
 			// Realign
-			realignSeqs();
+			realignWindow();
 
 			// Prepare for next iteration
 			needMoreBases = needMoreBases();
@@ -204,6 +247,10 @@ public class VariantRealign {
 			basesAddedRightPrev = basesAddedRight;
 		}
 
+		// Create realigned 'ref' and 'alt' (from the last realignment)
+		refRealign = trimedSequence(true);
+		altRealign = trimedSequence(false);
+
 		// Create new variant
 		realigned = createRealignedVariant();
 		if (debug) Gpr.debug("Realign:\n" + this);
@@ -235,6 +282,52 @@ public class VariantRealign {
 		altRealign = trimedSequence(sequenceAlt).toUpperCase();
 	}
 
+	/**
+	 * Realignment using (virtual) sequences on the reference window
+	 * Note: Only indexes are calculated, see 'trimedSequence(boolean)'
+	 */
+	void realignWindow() {
+		basesTrimLeft = basesTrimRight = 0;
+
+		// Calculate how many bases to remove form each end
+		if (alignLeft) {
+			basesTrimLeft = trimWindowLeft();
+			basesTrimRight = trimWindowRight();
+		} else {
+			basesTrimRight = trimWindowRight();
+			basesTrimLeft = trimWindowLeft();
+		}
+	}
+
+	/**
+	 * Base at position 'idx' in (virtual) reference sequence
+	 */
+	char refBase(int idx) {
+		return window.charAt(seqStart + idx - windowStart);
+	}
+
+	/**
+	 * Variant's reference does not match reference sequence
+	 */
+	boolean refNotFound() {
+		if (debug) Gpr.debug("Variant not found in reference sequence. This should never happen!" //
+				+ "\n\tSeq: '" + sequence(true).substring(seqLeft) //
+				+ "'\n\tVariant's ref: '" + vref.toLowerCase() + "'" //
+		);
+		return false;
+	}
+
+	/**
+	 * Create (virtual) reference or alternative sequence (only used for debugging)
+	 */
+	String sequence(boolean ref) {
+		int len = ref ? lenRef : lenAlt;
+		StringBuilder sb = new StringBuilder(len);
+		for (int i = 0; i < len; i++)
+			sb.append(ref ? refBase(i) : altBase(i));
+		return sb.toString();
+	}
+
 	public void setAlignLeft() {
 		alignLeft = true;
 	}
@@ -257,6 +350,12 @@ public class VariantRealign {
 
 	@Override
 	public String toString() {
+		String sequenceRef = this.sequenceRef, sequenceAlt = this.sequenceAlt;
+		if (sequenceRef == null && window != null) {
+			sequenceRef = sequence(true);
+			sequenceAlt = sequence(false);
+		}
+
 		StringBuilder sb = new StringBuilder();
 		sb.append("Realigned: " + (realigned ? "Yes" : "No") + "\n");
 		sb.append("\tVariant (original)   : " + variant + "\n");
@@ -296,9 +395,42 @@ public class VariantRealign {
 		return bases;
 	}
 
+	/**
+	 * Calculate 'left' indexes by removing identical bases from the left end (reference window)
+	 */
+	int trimWindowLeft() {
+		int bases = 0;
+		for (int refIdx = 0, altIdx = 0; refIdx < lenRef && altIdx < lenAlt; refIdx++, altIdx++, bases++)
+			if (refBase(refIdx) != altBase(altIdx)) return bases;
+		return bases;
+	}
+
+	/**
+	 * Calculate 'right' indexes by removing identical bases from the right end (reference window)
+	 */
+	int trimWindowRight() {
+		int bases = 0;
+		for (int refIdx = lenRef - 1, altIdx = lenAlt - 1; refIdx >= basesTrimLeft && altIdx >= basesTrimLeft; refIdx--, altIdx--, bases++)
+			if (refBase(refIdx) != altBase(altIdx)) return bases;
+		return bases;
+	}
+
 	String trimedSequence(String seq) {
 		int end = seq.length() - basesTrimRight;
 		if (basesTrimLeft <= end) return seq.substring(basesTrimLeft, end);
 		return "";
 	}
+
+	/**
+	 * Trimmed (upper case) sequence from the last realignment on the reference window
+	 * Note: Sequences are the ones used in the last 'realignWindow()', because
+	 *       'realign()' only breaks before querying new sequences
+	 */
+	String trimedSequence(boolean ref) {
+		int end = (ref ? lenRef : lenAlt) - basesTrimRight;
+		StringBuilder sb = new StringBuilder(Math.max(0, end - basesTrimLeft));
+		for (int i = basesTrimLeft; i < end; i++)
+			sb.append(Character.toUpperCase(ref ? refBase(i) : altBase(i)));
+		return sb.toString();
+	}
 }
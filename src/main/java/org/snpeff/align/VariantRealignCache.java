@@ -0,0 +1,117 @@
+package org.snpeff.align;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.snpeff.interval.Variant;
+
+/**
+ * Cache realignment results (least recently used)
+ *
+ * Recurrent variants (e.g. the same InDel in many samples or VCF
+ * files) are realigned only once. Results are indexed by
+ * chromosome, position, reference and alternative.
+ *
+ * Note: A cache should only be used for one reference genome
+ *       (e.g. see GenomicSequences.getRealignCache())
+ *
+ * @author pcingola
+ */
+public class VariantRealignCache {
+
+	public static int CACHE_SIZE = 100 * 1000;
+
+	/**
+	 * Realignment result
+	 */
+	class Realigned {
+		int start; // Realigned variant's start
+		String ref, alt; // Realigned variant's ref and alt (null if the variant was not realigned)
+	}
+
+	LinkedHashMap<String, Realigned> cache; // Realignments by variant
+	long hits, misses;
+
+	public VariantRealignCache() {
+		this(CACHE_SIZE);
+	}
+
+	public VariantRealignCache(final int maxSize) {
+		// Least recently used cache
+		cache = new LinkedHashMap<String, Realigned>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Realigned> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	public synchronized void clear() {
+		cache.clear();
+	}
+
+	synchronized Realigned get(String key) {
+		Realigned realigned = cache.get(key);
+		if (realigned != null) hits++;
+		else misses++;
+		return realigned;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Cache key
+	 */
+	String key(Variant variant) {
+		return variant.getChromosomeName() + ":" + variant.getStart() + "-" + variant.getEnd() + ":" + variant.getReference() + ":" + variant.getAlt();
+	}
+
+	synchronized void put(String key, Realigned realigned) {
+		cache.put(key, realigned);
+	}
+
+	/**
+	 * Realign variant towards the leftmost position
+	 * @return A new (realigned) variant or the same variant if it was not realigned
+	 */
+	public Variant realignLeft(Variant variant, boolean debug) {
+		String key = key(variant);
+		Realigned realigned = get(key);
+
+		if (realigned == null) {
+			// Not in cache: Realign
+			realigned = new Realigned();
+			VariantRealign vr = new VariantRealign(variant);
+			vr.setDebug(debug);
+			if (vr.realign()) {
+				Variant variantRealigned = vr.getVariantRealigned();
+				realigned.start = variantRealigned.getStart();
+				realigned.ref = variantRealigned.getReference();
+				realigned.alt = variantRealigned.getAlt();
+			}
+			put(key, realigned);
+
+			return realigned.ref != null ? vr.getVariantRealigned() : variant;
+		}
+
+		// Found in cache: Create realigned variant (same as VariantRealign.createRealignedVariant)
+		if (realigned.ref == null) return variant;
+		Variant variantRealigned = new Variant(variant.getParent(), realigned.start, realigned.ref, realigned.alt, variant.getId());
+		variantRealigned.setGenotype(variant.getGenotype());
+		variantRealigned.line = variant.line;
+		return variantRealigned;
+	}
+
+	public synchronized int size() {
+		return cache.size();
+	}
+
+}
@@ -6,6 +6,11 @@ import org.snpeff.interval.Variant.VariantType;
  * Needleman-Wunsch (global sequence alignment) algorithm for sequence  alignment
  * Only used for short strings (algorithm is not optimized)
  *
+ * Most REF / ALT pairs are resolved by trimming common bases at the start
+ * and end (see 'simpleAlign()'). Trimming is done using indexes on the
+ * original strings, so no intermediate strings or arrays are created.
+ * Sequences are only copied to arrays if a full alignment is required.
+ *
  * @author pcingola
  */
 public class VcfRefAltAlign extends NeedlemanWunsch {
@@ -13,12 +18,15 @@ public class VcfRefAltAlign extends NeedlemanWunsch {
 	public static final int MAX_SIZE = 10 * 1024;
 
 	String stringA, stringB;
+	int endA, endB; // Length of stringA and stringB, after trimming common bases at the end
 	VariantType variantType;
 
 	public VcfRefAltAlign(String a, String b) {
-		super(a, b);
+		super();
 		stringA = a;
 		stringB = b;
+		endA = a.length();
+		endB = b.length();
 	}
 
 	@Override
@@ -28,17 +36,19 @@ public class VcfRefAltAlign extends NeedlemanWunsch {
 				// OK Nothing else to do
 			} else {
 				// Perform alignment only of sequences are not too long (we don't want an 'out of memory' issue)
-				long size = ((long) stringA.length()) * stringB.length();
+				long size = ((long) endA) * endB;
 				if ((size > 0) && (size < MAX_SIZE)) {
+					a = stringA.toCharArray();
+					b = stringB.toCharArray();
 					scoreMatrix();
 					calcAlignment();
 
-					if (stringB.length() > stringA.length()) {
+					if (endB > endA) {
 						if (alignment.startsWith("-")) {
 							variantType = VariantType.DEL;
 							return alignment;
 						}
-					} else if (stringB.length() < stringA.length()) {
+					} else if (endB < endA) {
 						if (alignment.startsWith("+")) {
 							variantType = VariantType.INS;
 							return alignment;
@@ -50,7 +60,7 @@ public class VcfRefAltAlign extends NeedlemanWunsch {
 				substitution();
 			}
 		} catch (Throwable t) {
-			throw new RuntimeException("Error aligning sequences:\n\tSequence 1: " + new String(a) + "\n\tSequence 2: " + new String(b), t);
+			throw new RuntimeException("Error aligning sequences:\n\tSequence 1: " + stringA + "\n\tSequence 2: " + stringB, t);
 		}
 
 		return alignment;
@@ -64,7 +74,7 @@ public class VcfRefAltAlign extends NeedlemanWunsch {
 	 * Min position with a common base between stringA and stringB
 	 */
 	int minCommonBase() {
-		int min = Math.min(stringA.length(), stringB.length());
+		int min = Math.min(endA, endB);
 		int i;
 		for (i = 0; i < min; i++)
 			if (stringA.charAt(i) != stringB.charAt(i)) return i;
@@ -81,13 +91,13 @@ public class VcfRefAltAlign extends NeedlemanWunsch {
 	 */
 	boolean simpleAlign() {
 
-		if (stringA.length() == stringB.length()) {
+		if (endA == endB) {
 			offset = 0;
 			if (stringA.equals(stringB)) {
 				// No variant
 				variantType = VariantType.INTERVAL;
 				return true;
-			} else if (stringA.length() == 1) {
+			} else if (endA == 1) {
 				// SNP
 				variantType = VariantType.SNP;
 				return true;
@@ -102,23 +112,23 @@ public class VcfRefAltAlign extends NeedlemanWunsch {
 		offset = minCommonBase();
 		trimCommonBasesEnd();
 
-		if (stringA.length() < stringB.length()) {
+		if (endA < endB) {
 			// A has a deletion respect to B
-			if (stringB.startsWith(stringA)) {
+			if (stringB.regionMatches(0, stringA, 0, endA)) {
 				variantType = VariantType.DEL;
-				offset = stringA.length();
-				alignment = "-" + stringB.substring(stringA.length(), stringB.length());
+				offset = endA;
+				alignment = new StringBuilder(endB - endA + 1).append('-').append(stringB, endA, endB).toString();
 				return true;
 			}
 
 			variantType = VariantType.MIXED;
 			return true;
-		} else if (stringA.length() > stringB.length()) {
+		} else if (endA > endB) {
 			// A has an insertion respect to B
-			if (stringA.startsWith(stringB)) {
+			if (stringA.regionMatches(0, stringB, 0, endB)) {
 				variantType = VariantType.INS;
-				offset = stringB.length();
-				alignment = "+" + stringA.substring(stringB.length(), stringA.length());
+				offset = endB;
+				alignment = new StringBuilder(endA - endB + 1).append('+').append(stringA, endB, endA).toString();
 				return true;
 			}
 
@@ -137,7 +147,7 @@ public class VcfRefAltAlign extends NeedlemanWunsch {
 
 		// Offset
 		// Note: There must be a difference, otherwise this would be an InDel, captured in 'simpleAlign() method
-		int min = Math.min(stringA.length(), stringB.length());
+		int min = Math.min(endA, endB);
 		for (int i = 0; i < min; i++)
 			if (stringA.charAt(i) == stringB.charAt(i)) offset = i;
 			else break;
@@ -145,18 +155,15 @@ public class VcfRefAltAlign extends NeedlemanWunsch {
 
 	/**
 	 * Trim bases that are equal at the end of stringA / stringB
+	 * Note: Strings are not modified, only their lengths (endA, endB) are updated
 	 */
 	void trimCommonBasesEnd() {
-		int ia = stringA.length() - 1;
-		int ib = stringB.length() - 1;
-		int count = 0;
-		for (; ia >= offset && ib >= offset; ia--, ib--, count++)
+		int ia = endA - 1;
+		int ib = endB - 1;
+		for (; ia >= offset && ib >= offset; ia--, ib--)
 			if (stringA.charAt(ia) != stringB.charAt(ib)) break;
 
-		// Trim last bases (they are equal)
-		if (count > 0) {
-			stringA = stringA.substring(0, ia + 1);
-			stringB = stringB.substring(0, ib + 1);
-		}
+		endA = ia + 1;
+		endB = ib + 1;
 	}
 }
@@ -3,10 +3,18 @@ package org.snpeff.binseq;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.snpeff.align.VariantRealignCache;
 import org.snpeff.interval.Chromosome;
 import org.snpeff.interval.Exon;
 import org.snpeff.interval.Gene;
@@ -30,6 +38,15 @@ import org.snpeff.util.Timer;
  * 		ii) Store genomic sequences for those regions of interest
  * 		iii) Retrieve genomic sequences by interval
  *
+ * Sequences can be stored in a memory mapped 2-bit file (see GenomicSequencesMmap),
+ * which is preferred over 'sequence.bin' files when available.
+ *
+ * Thread safety: Loading a chromosome's sequences is done only once (under a
+ * lock). After a chromosome's tree is loaded and built, it is published in
+ * 'readyTrees' and all subsequent queries for that chromosome are lock-free.
+ * All methods adding sequences are synchronized and never modify a tree that
+ * readers may hold: a new tree is created (see 'replaceTree') and the
+ * chromosome is removed from 'readyTrees', so it is re-published by 'loadTree'.
  *
  * @author pcingola
  */
@@ -43,29 +60,36 @@ public class GenomicSequences implements Iterable<MarkerSeq>, Serializable {
 	boolean verbose = false;
 	boolean allSmallLoaded; // Have all "small" chromosomes been loaded? (i.e. have we already loaded 'sequence.bin' file?)
 	boolean disableLoad = false; // Do not load sequences from disk. Used minly for test cases
+	transient Config config; // Config used to find sequence files (null means 'Config.get()'). Needed when several genomes are loaded
 	Genome genome; // Reference genome
 	IntervalForest intervalForest; // This is an interval forest of 'MarkerSeq' (genomic markers that have sequences)
+	ConcurrentHashMap<String, Itree> readyTrees; // Trees already loaded and built (can be queried without locking)
+	transient GenomicSequencesMmap sequencesMmap; // Memory mapped sequences (null if not available)
+	transient volatile boolean sequencesMmapOpened; // Have we tried to open memory mapped sequences?
+	transient volatile VariantRealignCache realignCache; // Cache variant realignments (created on first use)
 
 	public GenomicSequences(Genome genome) {
 		this.genome = genome;
 		intervalForest = new IntervalForest();
+		readyTrees = new ConcurrentHashMap<>();
 	}
 
 	/**
 	 * Create a sequence for the whole chromsome (mostly used in test cases)
 	 */
-	public void addChromosomeSequence(String chr, String chrSeq) {
+	public synchronized void addChromosomeSequence(String chr, String chrSeq) {
 		MarkerSeq ms = new MarkerSeq(genome.getOrCreateChromosome(chr), 0, chrSeq.length() - 1, chrSeq);
-		intervalForest.add(ms);
-		build();
+		Itree tree = replaceTree(ms.getChromosomeName());
+		tree.add(ms);
+		tree.build();
 	}
 
 	/**
 	 * Add sequences from genome's exons
 	 */
-	boolean addExonSequences(String chr) {
+	synchronized boolean addExonSequences(String chr) {
 		if (verbose) Timer.showStdErr("Creating sequences from exon information '" + chr + "'");
-		Itree tree = intervalForest.getOrCreateTreeChromo(chr);
+		Itree tree = replaceTree(chr);
 
 		// Add all exon sequences. Collapse them if possible
 		Markers exonMarkers = exonMarkers(chr);
@@ -76,7 +100,7 @@ public class GenomicSequences implements Iterable<MarkerSeq>, Serializable {
 
 		// Build tree
 		if (verbose) Timer.showStdErr("Building sequence tree for chromosome '" + chr + "'");
-		build();
+		tree.build();
 		if (verbose) Timer.showStdErr("Done. Loaded " + tree.getIntervals().size() + " sequences.");
 
 		return !tree.isEmpty();
@@ -86,54 +110,100 @@ public class GenomicSequences implements Iterable<MarkerSeq>, Serializable {
 	 * Add sequences for each gene in the genome
 	 */
 	public int addGeneSequences(String chr, String chrSeq) {
-		int seqsAdded = 0;
+		return addGeneSequences(chr, genome.getGenes(), chrSeq);
+	}
+
+	/**
+	 * Add sequences for each gene in 'genes' (e.g. all genes in chromosome 'chr')
+	 */
+	public int addGeneSequences(String chr, Iterable<Gene> genes, String chrSeq) {
+		return addGeneSequences(chr, genesMarkers(genes, chr, chrSeq.length()), chrSeq, null);
+	}
+
+	/**
+	 * Add sequences for each gene in 'genes' (e.g. all genes in chromosome 'chr').
+	 * Sequences are sliced from an indexed FASTA file
+	 */
+	public int addGeneSequences(String chr, Iterable<Gene> genes, IndexedFasta fasta) {
+		return addGeneSequences(chr, genesMarkers(genes, chr, fasta.getLength(chr)), null, fasta);
+	}
 
-		// Get all genes in this chromosome
-		Markers markers = genesMarkers(chr, chrSeq.length());
+	/**
+	 * Add sequences for each marker. Sequences are either sub-strings of 'chrSeq' or
+	 * they are sliced from 'fasta' (when 'chrSeq' is null)
+	 */
+	int addGeneSequences(String chr, Markers markers, String chrSeq, IndexedFasta fasta) {
+		int chrLen = (chrSeq != null ? chrSeq.length() : fasta.getLength(chr));
 
 		// Merge (collapse) overlapping markers
 		markers = markers.merge();
 
-		// Find and add sequences for all markers
+		// Find sequences for all markers
+		List<MarkerSeq> markerSeqs = new ArrayList<>();
 		for (Marker genes : markers) {
 			if (!genes.getChromosomeName().equalsIgnoreCase(chr)) continue; // Different chromosome? => Skip
 
 			int ssStart = genes.getStart();
 			int ssEnd = genes.getEnd() + 1; // String.substring does not include the last character in the interval (so we have to add 1)
 
-			if ((ssStart < 0) || (ssEnd > chrSeq.length())) {
-				System.err.println("Ignoring gene outside chromosome range (chromo length: " + chrSeq.length() + "). Sequence (merged genes): " + genes.toStr());
+			if ((ssStart < 0) || (ssEnd > chrLen)) {
+				System.err.println("Ignoring gene outside chromosome range (chromo length: " + chrLen + "). Sequence (merged genes): " + genes.toStr());
 			} else {
 				try {
-					String seq = chrSeq.substring(ssStart, ssEnd).toUpperCase();
-					seqsAdded++;
+					String seq = (chrSeq != null ? chrSeq.substring(ssStart, ssEnd) : fasta.getSequence(chr, ssStart, ssEnd - 1)).toUpperCase();
 
-					// Create a marker sequence and add it to interval forest
+					// Create a marker sequence
 					MarkerSeq m = new MarkerSeq(genes.getChromosome(), genes.getStart(), genes.getEnd(), false, genes.getChromosomeName() + ":" + genes.getStart() + "-" + genes.getEnd());
 					m.setSequence(seq);
-					intervalForest.add(m);
+					markerSeqs.add(m);
 				} catch (Throwable t) {
 					t.printStackTrace();
-					throw new RuntimeException("Error trying to add sequence for gene:\n\tChromosome sequence length: " + chrSeq.length() + "\n\tGene: " + genes.toStr());
+					throw new RuntimeException("Error trying to add sequence for gene:\n\tChromosome sequence length: " + chrLen + "\n\tGene: " + genes.toStr());
 				}
 			}
 		}
 
-		build();
-		return seqsAdded;
+		// Add them to interval forest
+		// Note: Sequences for several chromosomes can be created in parallel (e.g. database build)
+		synchronized (this) {
+			Set<String> chrNames = new HashSet<>();
+			for (MarkerSeq m : markerSeqs)
+				chrNames.add(m.getChromosomeName());
+
+			for (String chrName : chrNames) {
+				Itree tree = replaceTree(chrName);
+				for (MarkerSeq m : markerSeqs)
+					if (m.getChromosomeName().equals(chrName)) tree.add(m);
+				tree.build();
+			}
+		}
+
+		return markerSeqs.size();
 	}
 
 	/**
 	 * Build interval forest
 	 */
-	public void build() {
+	public synchronized void build() {
 		if (verbose) Timer.showStdErr("Building sequence tree for genome sequences");
 		intervalForest.build();
+		realignCache = null; // Sequences changed: Realignments are no longer valid
 		if (verbose) Timer.showStdErr("Done.");
 	}
 
-	public void clear() {
+	public synchronized void clear() {
 		intervalForest = new IntervalForest();
+		readyTrees.clear();
+		sequencesMmap = null;
+		sequencesMmapOpened = false;
+		realignCache = null;
+	}
+
+	/**
+	 * Config used to find sequence files
+	 */
+	Config config() {
+		return config != null ? config : Config.get();
 	}
 
 	/**
@@ -171,9 +241,9 @@ public class GenomicSequences implements Iterable<MarkerSeq>, Serializable {
 	/**
 	 * Create a list of markers
 	 */
-	Markers genesMarkers(String chr, int chrLen) {
+	Markers genesMarkers(Iterable<Gene> genes, String chr, int chrLen) {
 		Markers markers = new Markers();
-		for (Gene gene : genome.getGenes()) {
+		for (Gene gene : genes) {
 			if (!gene.getChromosomeName().equalsIgnoreCase(chr)) continue; // Different chromosome? => Skip
 
 			int ssStart = gene.getStart();
@@ -196,6 +266,39 @@ public class GenomicSequences implements Iterable<MarkerSeq>, Serializable {
 		return markers;
 	}
 
+	/**
+	 * Cache for variant realignments using these sequences
+	 */
+	public VariantRealignCache getRealignCache() {
+		VariantRealignCache rc = realignCache;
+		if (rc != null) return rc;
+
+		synchronized (this) {
+			if (realignCache == null) realignCache = new VariantRealignCache();
+			return realignCache;
+		}
+	}
+
+	/**
+	 * Get memory mapped sequences, if they are available for chromosome 'chr'
+	 */
+	GenomicSequencesMmap getSequencesMmap(String chr) {
+		if (!sequencesMmapOpened) openSequencesMmap();
+		if (sequencesMmap == null || !sequencesMmap.hasChromosome(chr)) return null;
+		return sequencesMmap;
+	}
+
+	/**
+	 * Get the (built) interval tree for a chromosome, loading it if needed.
+	 * Only the first call for each chromosome acquires a lock, once the tree
+	 * has been published in 'readyTrees' no synchronization is needed.
+	 */
+	Itree getTree(String chr) {
+		Itree tree = readyTrees.get(Chromosome.simpleName(chr));
+		if (tree != null) return tree;
+		return loadTree(chr);
+	}
+
 	/**
 	 * Do we have sequence information for this chromosome?
 	 */
@@ -235,26 +338,30 @@ public class GenomicSequences implements Iterable<MarkerSeq>, Serializable {
 		if (allSmallLoaded) return false;
 
 		// File does not exists?  Cannot load...
-		String fileName = Config.get().getFileNameSequence();
+		String fileName = config().getFileNameSequence();
 		if (!Gpr.exists(fileName)) {
-			if (Config.get().isDebug()) Timer.showStdErr("Attempting to load sequences from file '" + fileName + "' failed, nothing done.");
+			if (config().isDebug()) Timer.showStdErr("Attempting to load sequences from file '" + fileName + "' failed, nothing done.");
 			return false;
 		}
 
 		// Load markers
 		if (verbose) Timer.showStdErr("Loading sequences from file '" + fileName + "'");
 		Markers markers = new Markers();
-		Set<Itree> toBuild = new HashSet<>();
+		Map<String, Itree> toBuild = new HashMap<>();
 		markers.load(fileName, genome);
 		for (Marker m : markers) {
 			if (m instanceof Genome || m instanceof Chromosome) continue;
-			Itree tree = intervalForest.getOrCreateTreeChromo(m.getChromosomeName());
+			String chrName = Chromosome.simpleName(m.getChromosomeName());
+			Itree tree = toBuild.get(chrName);
+			if (tree == null) {
+				tree = replaceTree(chrName);
+				toBuild.put(chrName, tree);
+			}
 			tree.add(m);
-			toBuild.add(tree);
 		}
 
 		// Build all trees
-		for (Itree itree : toBuild) {
+		for (Itree itree : toBuild.values()) {
 			if (itree.getIntervals().size() > 0 && verbose) Timer.showStdErr("Building sequence tree for chromosome '" + itree.getIntervals().get(0).getChromosomeName() + "'");
 			itree.build();
 
@@ -273,15 +380,15 @@ public class GenomicSequences implements Iterable<MarkerSeq>, Serializable {
 		if (disableLoad) return false; // Loading form database disabled?
 
 		// File does not exists?  Cannot load...
-		String fileName = Config.get().getFileNameSequence(chr);
+		String fileName = config().getFileNameSequence(chr);
 		if (!Gpr.exists(fileName)) {
-			if (Config.get().isDebug()) Timer.showStdErr("Attempting to load sequences for chromosome '" + chr + "' from file '" + fileName + "' failed, nothing done.");
+			if (config().isDebug()) Timer.showStdErr("Attempting to load sequences for chromosome '" + chr + "' from file '" + fileName + "' failed, nothing done.");
 			return false;
 		}
 
 		// Load markers
 		if (verbose) Timer.showStdErr("Loading sequences for chromosome '" + chr + "' from file '" + fileName + "'");
-		Itree tree = intervalForest.getOrCreateTreeChromo(chr);
+		Itree tree = replaceTree(chr);
 		tree.load(fileName, genome);
 		if (verbose) Timer.showStdErr("Building sequence tree for chromosome '" + chr + "'");
 		tree.build();
@@ -304,18 +411,58 @@ public class GenomicSequences implements Iterable<MarkerSeq>, Serializable {
 		return addExonSequences(chr);
 	}
 
+	/**
+	 * Load (or create) sequences for a chromosome, build the tree and
+	 * publish it so that it can be queried without locking.
+	 * The tree is published even when empty, this avoids trying to
+	 * load missing sequences over and over again.
+	 */
+	synchronized Itree loadTree(String chr) {
+		String chrName = Chromosome.simpleName(chr);
+
+		// Another thread may have loaded it while we were waiting for the lock
+		Itree tree = readyTrees.get(chrName);
+		if (tree != null) return tree;
+
+		if (!intervalForest.hasTree(chrName)) loadOrCreateFromGenome(chrName);
+		tree = intervalForest.getOrCreateTreeChromo(chrName);
+		if (!tree.isInSync()) tree.build();
+
+		readyTrees.put(chrName, tree);
+		return tree;
+	}
+
+	/**
+	 * Open memory mapped sequences file (if available)
+	 */
+	synchronized void openSequencesMmap() {
+		if (sequencesMmapOpened) return;
+
+		if (!disableLoad && config() != null) {
+			String fileName = config().getFileNameSequenceMmap();
+			if (Gpr.exists(fileName)) {
+				GenomicSequencesMmap gsm = new GenomicSequencesMmap(fileName);
+				gsm.setVerbose(verbose);
+				gsm.open();
+				sequencesMmap = gsm;
+			} else if (config().isDebug()) Timer.showStdErr("Sequence file '" + fileName + "' not found, using 'sequence.bin' files.");
+		}
+
+		sequencesMmapOpened = true;
+	}
+
 	/**
 	 * Find a marker (with sequence) containing query 'marker'
 	 * Could trigger loading sequences form database
 	 *
+	 * Note: This method does not lock, except the first time a
+	 *       chromosome is queried (see 'loadTree')
+	 *
 	 * @return A markerSeq containing 'marker' or null if nothing is found
 	 */
-	public synchronized MarkerSeq queryMarkerSequence(Marker marker) {
-		String chr = marker.getChromosomeName();
-
+	public MarkerSeq queryMarkerSequence(Marker marker) {
 		// Get or load interval tree
-		if (!intervalForest.hasTree(chr)) loadOrCreateFromGenome(chr);
-		Itree tree = intervalForest.getTreeChromo(chr);
+		Itree tree = getTree(marker.getChromosomeName());
 
 		// Nothing available
 		if (tree == null || tree.isEmpty()) return null;
@@ -335,32 +482,88 @@ public class GenomicSequences implements Iterable<MarkerSeq>, Serializable {
 		return null;
 	}
 
+	/**
+	 * Find the interval (having sequence) that includes 'marker'
+	 * Could trigger loading sequences form database
+	 *
+	 * @return A marker containing 'marker' or null if nothing is found
+	 */
+	public Marker querySequenceInterval(Marker marker) {
+		GenomicSequencesMmap gsm = getSequencesMmap(marker.getChromosomeName());
+		if (gsm != null) return gsm.queryInterval(marker);
+		return queryMarkerSequence(marker);
+	}
+
 	/**
 	 * Get sequence for a marker
 	 */
 	public String querySequence(Marker marker) {
+		GenomicSequencesMmap gsm = getSequencesMmap(marker.getChromosomeName());
+		if (gsm != null) return gsm.querySequence(marker);
+
 		MarkerSeq ms = queryMarkerSequence(marker);
 		if (ms == null) return null;
 
 		// Calculate start and end coordiantes
+		// Note: Only decode the bases we need, not the whole sequence
 		int sstart = marker.getStart() - ms.getStart();
 		int ssend = marker.size() + sstart;
-		String seq = ms.getSequence().substring(sstart, ssend);
+		String seq = ms.isStrandPlus() ? ms.basesAt(sstart, marker.size()) : ms.getSequence().substring(sstart, ssend);
 
 		// Return sequence in same direction as 'marker'
 		if (marker.isStrandMinus()) seq = GprSeq.reverseWc(seq);
 		return seq;
 	}
 
-	public void reset() {
+	/**
+	 * Create a new tree for chromosome 'chr', having all intervals from the current tree.
+	 * The current tree is not modified (readers may be using it) and the chromosome
+	 * is removed from 'readyTrees', so the new tree is published by 'loadTree'
+	 * Note: The new tree must be built after adding intervals
+	 */
+	synchronized Itree replaceTree(String chr) {
+		String chrName = Chromosome.simpleName(chr);
+		readyTrees.remove(chrName);
+		realignCache = null; // Sequences changed: Realignments are no longer valid
+
+		Itree old = intervalForest.getTreeChromo(chrName);
+		Itree tree = intervalForest.newTreeChromo(chrName);
+		if (old != null) tree.add(old.getIntervals());
+		return tree;
+	}
+
+	public synchronized void reset() {
 		intervalForest = new IntervalForest();
+		readyTrees.clear();
+		sequencesMmap = null;
+		sequencesMmapOpened = false;
+		realignCache = null;
 	}
 
 	/**
 	 * Save genomic sequence into separate files (per chromosome)
+	 * and into a memory mapped 2-bit file
 	 */
 	public void save(Config config) {
+		save(config, null);
+	}
+
+	/**
+	 * Save genomic sequence into separate files (per chromosome)
+	 * and into a memory mapped 2-bit file
+	 * @param executor : Used to write files concurrently. If null, files are written sequentially
+	 */
+	public void save(final Config config, ExecutorService executor) {
 		if (isEmpty()) return; // Nothing to do
+		List<Runnable> tasks = new ArrayList<>();
+
+		// Save all sequences to a 2-bit (memory mapped) file
+		tasks.add(new Runnable() {
+			@Override
+			public void run() {
+				saveMmap(config);
+			}
+		});
 
 		// Sort chromomse names
 		ArrayList<String> chrNames = new ArrayList<String>();
@@ -368,31 +571,80 @@ public class GenomicSequences implements Iterable<MarkerSeq>, Serializable {
 		Collections.sort(chrNames);
 
 		// Save 'long' chromsomes in separate files
-		Genome genome = config.getGenome();
-		ArrayList<String> toSaveOneFile = new ArrayList<String>();
-		for (String chrName : chrNames) {
+		final Genome genome = config.getGenome();
+		final ArrayList<String> toSaveOneFile = new ArrayList<String>();
+		for (final String chrName : chrNames) {
 			int seqLen = sequenceLen(chrName);
-			if (seqLen >= CHR_LEN_SEPARATE_FILE) save(chrName); // Save in separate file
-			else toSaveOneFile.add(chrName); // Save all small chromosomes in one file
+			if (seqLen >= CHR_LEN_SEPARATE_FILE) { // Save in separate file
+				tasks.add(new Runnable() {
+					@Override
+					public void run() {
+						save(chrName);
+					}
+				});
+			} else toSaveOneFile.add(chrName); // Save all small chromosomes in one file
 		}
 
 		// Save all remaining ones in one file
 		if (!toSaveOneFile.isEmpty()) {
-			Markers markers = new Markers();
-			markers.add(genome);
-
-			for (String chrName : toSaveOneFile) {
-				if (intervalForest.hasTree(chrName)) {
-					Itree tree = intervalForest.getTreeChromo(chrName);
-					markers.addAll(tree.getIntervals());
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					saveSmall(genome, toSaveOneFile);
 				}
+			});
+		}
+
+		// Run all tasks
+		if (executor == null) {
+			for (Runnable task : tasks)
+				task.run();
+		} else {
+			List<Future<?>> futures = new ArrayList<>();
+			for (Runnable task : tasks)
+				futures.add(executor.submit(task));
+
+			try {
+				for (Future<?> future : futures)
+					future.get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
 			}
+		}
+	}
 
-			// Save to file
-			String fileName = Config.get().getFileNameSequence();
-			if (verbose) Timer.showStdErr("Saving sequences for small chromosmes to file '" + fileName + "'");
-			markers.save(fileName);
+	/**
+	 * Save all sequences to a 2-bit (memory mapped) file
+	 */
+	void saveMmap(Config config) {
+		String fileNameMmap = config.getFileNameSequenceMmap();
+		if (verbose) Timer.showStdErr("Saving sequences to file '" + fileNameMmap + "'");
+		ArrayList<Marker> markerSeqs = new ArrayList<>();
+		for (Itree tree : intervalForest)
+			markerSeqs.addAll(tree.getIntervals());
+		GenomicSequencesMmap.save(fileNameMmap, markerSeqs);
+	}
+
+	/**
+	 * Save sequences from all 'small' chromosomes in one file
+	 */
+	void saveSmall(Genome genome, List<String> chrNames) {
+		Markers markers = new Markers();
+		markers.add(genome);
+
+		for (String chrName : chrNames) {
+			if (intervalForest.hasTree(chrName)) {
+				Itree tree = intervalForest.getTreeChromo(chrName);
+				markers.addAll(tree.getIntervals());
+			}
 		}
+
+		// Save to file
+		String fileName = config().getFileNameSequence();
+		if (verbose) Timer.showStdErr("Saving sequences for small chromosmes to file '" + fileName + "'");
+		markers.save(fileName);
 	}
 
 	/**
@@ -406,7 +658,7 @@ public class GenomicSequences implements Iterable<MarkerSeq>, Serializable {
 
 		// OK, there is something to save => Save markers to file
 		Itree tree = intervalForest.getTreeChromo(chr);
-		String fileName = Config.get().getFileNameSequence(chr);
+		String fileName = config().getFileNameSequence(chr);
 		if (verbose) Timer.showStdErr("Saving sequences for chromosome '" + chr + "' to file '" + fileName + "'");
 		tree.getIntervals().save(fileName, chr);
 	}
@@ -429,6 +681,10 @@ public class GenomicSequences implements Iterable<MarkerSeq>, Serializable {
 		return size;
 	}
 
+	public void setConfig(Config config) {
+		this.config = config;
+	}
+
 	public void setDisableLoad(boolean disableLoad) {
 		this.disableLoad = disableLoad;
 	}
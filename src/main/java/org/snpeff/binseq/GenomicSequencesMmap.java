@@ -0,0 +1,423 @@
+package org.snpeff.binseq;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.snpeff.binseq.coder.DnaCoder;
+import org.snpeff.interval.Chromosome;
+import org.snpeff.interval.Marker;
+import org.snpeff.interval.MarkerSeq;
+import org.snpeff.util.GprSeq;
+import org.snpeff.util.Timer;
+
+/**
+ * Genomic sequences stored in a 2-bit packed binary file that is
+ * accessed using memory mapping (i.e. sequences are not loaded
+ * into the heap, several processes share the same OS page cache).
+ *
+ * File format (all numbers are big endian):
+ *
+ * 		Header:
+ * 			int		MAGIC
+ * 			int		VERSION
+ * 			int		Number of chromosomes
+ * 			For each chromosome:
+ * 				UTF		Chromosome name
+ * 				long	Offset of chromosome section (from file start)
+ * 				long	Length of chromosome section (bytes)
+ *
+ * 		Chromosome section:
+ * 			int		Number of sequence runs (regions having sequence, sorted, non-overlapping)
+ * 			For each run:
+ * 				int		Start (genomic coordinate)
+ * 				int		End (genomic coordinate)
+ * 				long	Index of the run's first base in the packed bases
+ * 			int		Number of N-blocks (bases that cannot be 2-bit coded, sorted, non-overlapping)
+ * 			For each N-block:
+ * 				int		Start (genomic coordinate)
+ * 				int		End (genomic coordinate)
+ * 			byte[]	Packed bases, 4 bases per byte (first base in the highest bits)
+ *
+ * Sequences are always stored in the reference genome's positive strand.
+ *
+ * @author pcingola
+ */
+public class GenomicSequencesMmap {
+
+	public static final int MAGIC = 0x53455132; // 'SEQ2'
+	public static final int VERSION = 1;
+	public static final int BASES_PER_BYTE = 4;
+	public static final char[] TO_BASE = DnaCoder.TO_BASE;
+
+	/**
+	 * Sequences for one chromosome
+	 */
+	static class ChrSequences {
+		int starts[], ends[]; // Sequence runs
+		long baseIdx[]; // Index of each run's first base in 'bases'
+		int nStarts[], nEnds[]; // N-blocks
+		ByteBuffer bases; // Packed bases (memory mapped)
+
+		/**
+		 * Find the index of the run that includes [start, end]
+		 * @return Run index or -1 if not found
+		 */
+		int findRun(int start, int end) {
+			int idx = findLastStartBefore(starts, start);
+			if (idx < 0 || ends[idx] < end) return -1;
+			return idx;
+		}
+
+		/**
+		 * Replace bases by 'N' if they are in an N-block
+		 */
+		void maskN(char seq[], int start) {
+			int end = start + seq.length - 1;
+			int idx = findLastStartBefore(nStarts, start);
+			if (idx < 0) idx = 0;
+
+			for (int i = idx; i < nStarts.length && nStarts[i] <= end; i++) {
+				int s = Math.max(nStarts[i], start);
+				int e = Math.min(nEnds[i], end);
+				for (int pos = s; pos <= e; pos++)
+					seq[pos - start] = 'N';
+			}
+		}
+
+		/**
+		 * Decode bases [start, end] from run 'idx'
+		 */
+		char[] sequence(int idx, int start, int end) {
+			char seq[] = new char[end - start + 1];
+			long bidx = baseIdx[idx] + (start - starts[idx]);
+
+			for (int i = 0; i < seq.length; i++, bidx++) {
+				int b = bases.get((int) (bidx / BASES_PER_BYTE));
+				int shift = 2 * (BASES_PER_BYTE - 1 - (int) (bidx % BASES_PER_BYTE));
+				seq[i] = TO_BASE[(b >> shift) & 0x03];
+			}
+
+			if (nStarts.length > 0) maskN(seq, start);
+			return seq;
+		}
+	}
+
+	boolean verbose = false;
+	String fileName;
+	HashMap<String, long[]> sections; // Offset and length for each chromosome section in the file
+	ConcurrentHashMap<String, ChrSequences> chrSequences; // Chromosome sequences (mapped on demand)
+
+	/**
+	 * Two bit code for a base
+	 * @return Base code or -1 if the base cannot be coded using two bits (e.g. 'N')
+	 */
+	static int code(char base) {
+		switch (base) {
+		case 'a':
+		case 'A':
+			return 0;
+		case 'c':
+		case 'C':
+			return 1;
+		case 'g':
+		case 'G':
+			return 2;
+		case 't':
+		case 'T':
+		case 'u':
+		case 'U':
+			return 3;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Find the index of the last entry in a sorted array such that 'array[idx] <= value'
+	 * @return Index or -1 if all entries are greater than 'value'
+	 */
+	static int findLastStartBefore(int array[], int value) {
+		int lo = 0, hi = array.length - 1, idx = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (array[mid] <= value) {
+				idx = mid;
+				lo = mid + 1;
+			} else hi = mid - 1;
+		}
+		return idx;
+	}
+
+	/**
+	 * Save all sequences in 'markerSeqs' to a file
+	 *
+	 * Note: MarkerSeq's sequences are expected to be in positive strand
+	 * direction (this is how GenomicSequences stores them)
+	 */
+	public static void save(String fileName, Collection<? extends Marker> markerSeqs) {
+		// Group markers by chromosome
+		HashMap<String, List<MarkerSeq>> byChr = new HashMap<>();
+		for (Marker m : markerSeqs) {
+			if (!(m instanceof MarkerSeq)) continue;
+			String chr = Chromosome.simpleName(m.getChromosomeName());
+			List<MarkerSeq> list = byChr.get(chr);
+			if (list == null) {
+				list = new ArrayList<>();
+				byChr.put(chr, list);
+			}
+			list.add((MarkerSeq) m);
+		}
+
+		ArrayList<String> chrNames = new ArrayList<>(byChr.keySet());
+		Collections.sort(chrNames);
+
+		try (RandomAccessFile raf = new RandomAccessFile(fileName, "rw")) {
+			raf.setLength(0);
+
+			// Write a header with placeholder offsets (we'll re-write it at the end)
+			long offsets[] = new long[chrNames.size()];
+			long lengths[] = new long[chrNames.size()];
+			byte header[] = header(chrNames, offsets, lengths);
+			raf.write(header);
+
+			// Write each chromosome section
+			for (int i = 0; i < chrNames.size(); i++) {
+				byte section[] = section(byChr.get(chrNames.get(i)));
+				offsets[i] = raf.getFilePointer();
+				lengths[i] = section.length;
+				raf.write(section);
+			}
+
+			// Update header
+			raf.seek(0);
+			raf.write(header(chrNames, offsets, lengths));
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing file '" + fileName + "'", e);
+		}
+	}
+
+	/**
+	 * Create a file header
+	 */
+	static byte[] header(List<String> chrNames, long offsets[], long lengths[]) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(chrNames.size());
+		for (int i = 0; i < chrNames.size(); i++) {
+			out.writeUTF(chrNames.get(i));
+			out.writeLong(offsets[i]);
+			out.writeLong(lengths[i]);
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Create a chromosome section: Sort and merge sequence runs, pack bases and find N-blocks
+	 */
+	static byte[] section(List<MarkerSeq> markerSeqs) throws IOException {
+		Collections.sort(markerSeqs);
+
+		// Merge overlapping runs
+		ArrayList<int[]> runs = new ArrayList<>();
+		ArrayList<StringBuilder> runSeqs = new ArrayList<>();
+		for (MarkerSeq ms : markerSeqs) {
+			String seq = ms.getSequence();
+			if (seq == null || seq.isEmpty()) continue;
+			int start = ms.getStart();
+			int end = start + seq.length() - 1;
+
+			int last[] = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+			if (last != null && start <= last[1] + 1) {
+				// Overlapping or adjacent run: Extend last one
+				if (end > last[1]) {
+					runSeqs.get(runSeqs.size() - 1).append(seq, last[1] + 1 - start, seq.length());
+					last[1] = end;
+				}
+			} else {
+				runs.add(new int[] { start, end });
+				runSeqs.add(new StringBuilder(seq));
+			}
+		}
+
+		// Pack bases and collect N-blocks
+		long totalBases = 0;
+		for (StringBuilder sb : runSeqs)
+			totalBases += sb.length();
+
+		byte packed[] = new byte[(int) ((totalBases + BASES_PER_BYTE - 1) / BASES_PER_BYTE)];
+		ArrayList<int[]> nBlocks = new ArrayList<>();
+		long baseIdx[] = new long[runs.size()];
+		long bidx = 0;
+		for (int i = 0; i < runs.size(); i++) {
+			baseIdx[i] = bidx;
+			int start = runs.get(i)[0];
+			StringBuilder seq = runSeqs.get(i);
+			for (int j = 0; j < seq.length(); j++, bidx++) {
+				int code = code(seq.charAt(j));
+				if (code < 0) {
+					// Add to N-block (extend last block if possible)
+					int pos = start + j;
+					int last[] = nBlocks.isEmpty() ? null : nBlocks.get(nBlocks.size() - 1);
+					if (last != null && last[1] == pos - 1) last[1] = pos;
+					else nBlocks.add(new int[] { pos, pos });
+					code = 0;
+				}
+
+				int shift = 2 * (BASES_PER_BYTE - 1 - (int) (bidx % BASES_PER_BYTE));
+				packed[(int) (bidx / BASES_PER_BYTE)] |= code << shift;
+			}
+		}
+
+		// Write section
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(packed.length + 16 * runs.size() + 8 * nBlocks.size() + 8);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(runs.size());
+		for (int i = 0; i < runs.size(); i++) {
+			out.writeInt(runs.get(i)[0]);
+			out.writeInt(runs.get(i)[1]);
+			out.writeLong(baseIdx[i]);
+		}
+
+		out.writeInt(nBlocks.size());
+		for (int nb[] : nBlocks) {
+			out.writeInt(nb[0]);
+			out.writeInt(nb[1]);
+		}
+
+		out.write(packed);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	public GenomicSequencesMmap(String fileName) {
+		this.fileName = fileName;
+		chrSequences = new ConcurrentHashMap<>();
+	}
+
+	public Collection<String> getChromosomeNames() {
+		return sections.keySet();
+	}
+
+	public boolean hasChromosome(String chr) {
+		return sections.containsKey(Chromosome.simpleName(chr));
+	}
+
+	/**
+	 * Map a chromosome section and read sequence runs and N-blocks
+	 */
+	ChrSequences map(String chr) {
+		long section[] = sections.get(chr);
+		if (section == null) return null;
+
+		if (verbose) Timer.showStdErr("Mapping sequences for chromosome '" + chr + "' from file '" + fileName + "'");
+		try (RandomAccessFile raf = new RandomAccessFile(fileName, "r"); FileChannel channel = raf.getChannel()) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, section[0], section[1]);
+
+			ChrSequences cs = new ChrSequences();
+			int numRuns = buffer.getInt();
+			cs.starts = new int[numRuns];
+			cs.ends = new int[numRuns];
+			cs.baseIdx = new long[numRuns];
+			for (int i = 0; i < numRuns; i++) {
+				cs.starts[i] = buffer.getInt();
+				cs.ends[i] = buffer.getInt();
+				cs.baseIdx[i] = buffer.getLong();
+			}
+
+			int numN = buffer.getInt();
+			cs.nStarts = new int[numN];
+			cs.nEnds = new int[numN];
+			for (int i = 0; i < numN; i++) {
+				cs.nStarts[i] = buffer.getInt();
+				cs.nEnds[i] = buffer.getInt();
+			}
+
+			cs.bases = buffer.slice(); // Packed bases start here
+			return cs;
+		} catch (IOException e) {
+			throw new RuntimeException("Error mapping chromosome '" + chr + "' from file '" + fileName + "'", e);
+		}
+	}
+
+	/**
+	 * Open file and read header
+	 */
+	public void open() {
+		if (verbose) Timer.showStdErr("Opening sequence file '" + fileName + "'");
+		try (RandomAccessFile raf = new RandomAccessFile(new File(fileName), "r")) {
+			if (raf.readInt() != MAGIC) throw new RuntimeException("File '" + fileName + "' is not a sequence file");
+			int version = raf.readInt();
+			if (version != VERSION) throw new RuntimeException("Unsupported version " + version + " in sequence file '" + fileName + "'");
+
+			int numChr = raf.readInt();
+			sections = new HashMap<>();
+			for (int i = 0; i < numChr; i++) {
+				String chr = raf.readUTF();
+				long offset = raf.readLong();
+				long len = raf.readLong();
+				sections.put(chr, new long[] { offset, len });
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading file '" + fileName + "'", e);
+		}
+	}
+
+	/**
+	 * Get (map on demand) sequences for a chromosome
+	 */
+	ChrSequences getChrSequences(String chr) {
+		String chrName = Chromosome.simpleName(chr);
+		ChrSequences cs = chrSequences.get(chrName);
+		if (cs != null) return cs;
+		if (!sections.containsKey(chrName)) return null;
+		return chrSequences.computeIfAbsent(chrName, this::map);
+	}
+
+	/**
+	 * Find the interval (having sequence) that includes 'marker'
+	 * @return A marker or null if no sequence includes 'marker'
+	 */
+	public Marker queryInterval(Marker marker) {
+		ChrSequences cs = getChrSequences(marker.getChromosomeName());
+		if (cs == null) return null;
+
+		int idx = cs.findRun(marker.getStart(), marker.getEnd());
+		if (idx < 0) return null;
+		return new Marker(marker.getChromosome(), cs.starts[idx], cs.ends[idx]);
+	}
+
+	/**
+	 * Get sequence for a marker (in the same direction as 'marker')
+	 * @return The sequence or null if it is not available
+	 */
+	public String querySequence(Marker marker) {
+		ChrSequences cs = getChrSequences(marker.getChromosomeName());
+		if (cs == null) return null;
+
+		int idx = cs.findRun(marker.getStart(), marker.getEnd());
+		if (idx < 0) return null;
+
+		String seq = new String(cs.sequence(idx, marker.getStart(), marker.getEnd()));
+		if (marker.isStrandMinus()) seq = GprSeq.reverseWc(seq);
+		return seq;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+}
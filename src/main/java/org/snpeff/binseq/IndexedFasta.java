@@ -0,0 +1,361 @@
+package org.snpeff.binseq;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.snpeff.interval.Chromosome;
+import org.snpeff.util.Gpr;
+
+/**
+ * Random access to sequences in a FASTA file using a 'faidx' index
+ * (see "samtools faidx" command). The FASTA file is memory mapped,
+ * so sequences are sliced by coordinate without loading whole
+ * chromosomes into the heap.
+ *
+ * Index file format ('.fai', tab separated, one line per sequence):
+ *
+ * 		name	length	offset	lineBases	lineBytes
+ *
+ * If the index file does not exist (or is older than the FASTA file),
+ * it is created by scanning the FASTA file once (and saved if possible).
+ *
+ * Note: Only plain (uncompressed) FASTA files having the same number of
+ *       bases in every line (except the last line of each sequence) can be
+ *       indexed. Otherwise 'open()' returns false and sequences should be
+ *       read using FastaFileIterator.
+ *
+ * Note: Sequence names are converted using Chromosome.simpleName(), same
+ *       as FastaFileIterator.getName()
+ *
+ * @author pcingola
+ */
+public class IndexedFasta {
+
+	/**
+	 * An entry in a 'faidx' index
+	 */
+	static class FaiEntry {
+		String name; // Sequence name (as in FASTA header)
+		int length; // Number of bases
+		long offset; // File offset of the first base
+		int lineBases; // Number of bases per line
+		int lineBytes; // Number of bytes per line (including new line characters)
+
+		/**
+		 * File position of base number 'idx'
+		 */
+		long position(int idx) {
+			return offset + ((long) (idx / lineBases)) * lineBytes + (idx % lineBases);
+		}
+
+		@Override
+		public String toString() {
+			return name + "\t" + length + "\t" + offset + "\t" + lineBases + "\t" + lineBytes;
+		}
+	}
+
+	public static final String FAI_EXTENSION = ".fai";
+	public static final int SEGMENT_BITS = 30; // Memory mapped segments are 1GB
+	private static final int BUFF_SIZE = 1024 * 1024;
+
+	boolean verbose = false;
+	boolean debug = false;
+	String fastaFileName;
+	long size;
+	RandomAccessFile file;
+	int segmentBits = SEGMENT_BITS;
+	MappedByteBuffer segments[]; // Memory mapped file segments
+	LinkedHashMap<String, FaiEntry> entries; // Index entries by sequence name (in file order)
+
+	/**
+	 * Can this file be indexed? Only plain (uncompressed) files can be memory mapped
+	 */
+	public static boolean canIndex(String fastaFileName) {
+		File f = new File(fastaFileName);
+		if (!f.exists() || !f.isFile() || !f.canRead() || fastaFileName.endsWith(".gz")) return false;
+
+		// Check gzip magic number (compressed files don't always have a '.gz' extension)
+		try (InputStream is = new FileInputStream(f)) {
+			return !(is.read() == 0x1f && is.read() == 0x8b);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	public IndexedFasta(String fastaFileName) {
+		this.fastaFileName = fastaFileName;
+		entries = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Add an index entry
+	 */
+	void add(FaiEntry fe) {
+		entries.put(Chromosome.simpleName(fe.name), fe);
+	}
+
+	/**
+	 * Unmap file
+	 */
+	public void close() {
+		try {
+			segments = null;
+			if (file != null) file.close();
+			file = null;
+		} catch (IOException e) {
+			throw new RuntimeException("Error closing file '" + fastaFileName + "'", e);
+		}
+	}
+
+	/**
+	 * Sequence names (in the same order as the FASTA file)
+	 */
+	public Collection<String> getChromosomeNames() {
+		return entries.keySet();
+	}
+
+	FaiEntry getEntry(String chr) {
+		FaiEntry fe = entries.get(chr);
+		if (fe == null) throw new RuntimeException("Sequence '" + chr + "' not found in file '" + fastaFileName + "'");
+		return fe;
+	}
+
+	public String getFaiFileName() {
+		return fastaFileName + FAI_EXTENSION;
+	}
+
+	/**
+	 * Sequence length
+	 */
+	public int getLength(String chr) {
+		return getEntry(chr).length;
+	}
+
+	/**
+	 * Get sequence in zero-based coordinates [start, end] (both inclusive)
+	 * Bases are returned as they appear in the FASTA file (case is not changed)
+	 */
+	public String getSequence(String chr, int start, int end) {
+		FaiEntry fe = getEntry(chr);
+		if (start < 0 || end >= fe.length || end < start - 1) throw new RuntimeException("Coordinates out of range: " + chr + ":" + start + "-" + end + ", sequence length " + fe.length + ", file '" + fastaFileName + "'");
+
+		char seq[] = new char[end - start + 1];
+		if (seq.length == 0) return "";
+
+		long segmentMask = (1L << segmentBits) - 1;
+		long pos = fe.position(start);
+		int col = start % fe.lineBases;
+		for (int i = 0; i < seq.length; i++, pos++, col++) {
+			// Skip new line characters
+			if (col == fe.lineBases) {
+				pos += fe.lineBytes - fe.lineBases;
+				col = 0;
+			}
+
+			// Absolute 'get' does not change buffer's position (no need to synchronize)
+			seq[i] = (char) (segments[(int) (pos >>> segmentBits)].get((int) (pos & segmentMask)) & 0xff);
+		}
+
+		return new String(seq);
+	}
+
+	public boolean hasSequence(String chr) {
+		return entries.containsKey(chr);
+	}
+
+	/**
+	 * Create an index by scanning the FASTA file
+	 * @return false if the file cannot be indexed (e.g. lines having different lengths)
+	 */
+	boolean index() throws IOException {
+		entries.clear();
+		if (verbose) System.err.println("\tIndexing FASTA file '" + fastaFileName + "'");
+
+		FaiEntry fe = null;
+		StringBuilder header = null; // Not null while reading a header line
+		long pos = 0; // File position
+		int lineLen = 0, lineBytes = 0; // Current line's bases and bytes
+		boolean lastLine = false; // A line shorter than 'lineBases' must be the last one
+
+		try (InputStream is = new BufferedInputStream(new FileInputStream(fastaFileName), BUFF_SIZE)) {
+			for (int c = is.read(); c >= 0; c = is.read(), pos++) {
+				if (header != null) {
+					// Reading header line
+					if (c == '\n') {
+						fe = new FaiEntry();
+						fe.name = header.toString().trim().split("\\s+")[0];
+						fe.offset = pos + 1;
+						header = null;
+						lastLine = false;
+					} else if (c != '\r') header.append((char) c);
+					continue;
+				}
+
+				if (lineBytes == 0 && c == '>') {
+					// New sequence
+					if (fe != null) add(fe);
+					header = new StringBuilder();
+					continue;
+				}
+
+				lineBytes++;
+				if (c == '\n') {
+					// End of line
+					if (!indexLine(fe, lineLen, lineBytes, lastLine)) return false;
+					if (fe != null && lineLen < fe.lineBases) lastLine = true;
+					lineLen = lineBytes = 0;
+				} else if (c == ' ' || c == '\t') {
+					if (debug) Gpr.debug("Whitespace in sequence line, file position " + pos);
+					return false;
+				} else if (c != '\r') {
+					lineLen++;
+				}
+			}
+		}
+
+		// Last line (no new line at the end of the file)
+		if (lineBytes > 0) {
+			if (fe != null && fe.lineBytes > 0) lineBytes = fe.lineBytes; // Missing new line characters are not an error
+			if (!indexLine(fe, lineLen, lineBytes, lastLine)) return false;
+		}
+		if (fe != null) add(fe);
+
+		return !entries.isEmpty();
+	}
+
+	/**
+	 * Update index entry using a sequence line
+	 * @return false if the file cannot be indexed
+	 */
+	boolean indexLine(FaiEntry fe, int lineLen, int lineBytes, boolean lastLine) {
+		if (fe == null) return lineLen == 0; // Sequence before the first header?
+		if (lineLen == 0) return fe.lineBases > 0; // Empty lines are only allowed after the last line
+
+		if (lastLine) {
+			if (debug) Gpr.debug("Line after a short line, sequence '" + fe.name + "'");
+			return false;
+		}
+
+		if (fe.lineBases == 0) {
+			// First line defines line length
+			fe.lineBases = lineLen;
+			fe.lineBytes = lineBytes;
+		} else if (lineLen > fe.lineBases || (lineLen == fe.lineBases && lineBytes != fe.lineBytes)) {
+			if (debug) Gpr.debug("Line length does not match, sequence '" + fe.name + "'");
+			return false;
+		}
+
+		fe.length += lineLen;
+		return true;
+	}
+
+	/**
+	 * Load index from a '.fai' file
+	 * @return false if the index cannot be loaded
+	 */
+	boolean load(String faiFileName) {
+		entries.clear();
+		if (verbose) System.err.println("\tLoading FASTA index file '" + faiFileName + "'");
+
+		String lines[] = Gpr.readFile(faiFileName).split("\n");
+		for (String line : lines) {
+			if (line.isEmpty()) continue;
+			String fields[] = line.split("\t");
+			if (fields.length < 5) return false;
+
+			FaiEntry fe = new FaiEntry();
+			fe.name = fields[0];
+			fe.length = Gpr.parseIntSafe(fields[1]);
+			fe.offset = Gpr.parseLongSafe(fields[2]);
+			fe.lineBases = Gpr.parseIntSafe(fields[3]);
+			fe.lineBytes = Gpr.parseIntSafe(fields[4]);
+
+			// Sanity check
+			if (fe.length > 0 && (fe.lineBases <= 0 || fe.lineBytes < fe.lineBases || fe.position(fe.length - 1) >= size)) return false;
+			add(fe);
+		}
+
+		return !entries.isEmpty();
+	}
+
+	/**
+	 * Load (or create) index and map FASTA file
+	 * @return false if the file cannot be indexed
+	 */
+	public boolean open() {
+		try {
+			File f = new File(fastaFileName);
+			size = f.length();
+
+			// Load index file if it is up to date, otherwise create (and save) it
+			File fai = new File(getFaiFileName());
+			boolean indexed = fai.exists() && (fai.lastModified() >= f.lastModified()) && load(fai.getPath());
+			if (!indexed) {
+				if (!index()) return false;
+				save();
+			}
+
+			// Map file segments
+			file = new RandomAccessFile(f, "r");
+			FileChannel channel = file.getChannel();
+			long segmentSize = 1L << segmentBits;
+			int numSegments = (int) ((size + segmentSize - 1) / segmentSize);
+			segments = new MappedByteBuffer[numSegments];
+			for (int i = 0; i < numSegments; i++) {
+				long start = i * segmentSize;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, size - start));
+			}
+		} catch (FileNotFoundException e) {
+			System.err.println("File not found '" + fastaFileName + "'");
+			throw new RuntimeException(e);
+		} catch (IOException e) {
+			throw new RuntimeException("Error mapping file '" + fastaFileName + "'", e);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Save index to '.fai' file
+	 * Note: Failing to save is not an error (e.g. read-only directory)
+	 */
+	void save() {
+		String faiFileName = getFaiFileName();
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(faiFileName))) {
+			for (FaiEntry fe : entries.values())
+				out.write(fe.toString() + "\n");
+			if (verbose) System.err.println("\tSaved FASTA index file '" + faiFileName + "'");
+		} catch (IOException e) {
+			if (verbose) System.err.println("\tCannot save FASTA index file '" + faiFileName + "': " + e.getMessage());
+		}
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	@Override
+	public String toString() {
+		List<String> lines = new ArrayList<>();
+		for (FaiEntry fe : entries.values())
+			lines.add(fe.toString());
+		return String.join("\n", lines);
+	}
+}
@@ -99,11 +99,10 @@ public class FindRareAaIntervals {
 		}
 
 		// Create markers. There might be more than one interval since an intron can be in the middle of the codon.
-		int cds2pos[] = tr.baseNumberCds2Pos();
 		int pos = 0, posPrev = 0, start = -1;
 		int step = tr.isStrandPlus() ? 1 : -1;
 		for( int cds = aaIdx * 3; cds < (aaIdx + 1) * 3; cds++ ) {
-			pos = cds2pos[cds];
+			pos = tr.cdsBaseNumber2Pos(cds);
 			if( start < 0 ) start = pos;
 			else if( pos != posPrev + step ) {
 				// Non-contiguous: Create a new marker and add it to the list
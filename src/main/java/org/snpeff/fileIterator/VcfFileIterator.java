@@ -77,6 +77,11 @@ public class VcfFileIterator extends MarkerFileIterator<VcfEntry> implements Par
 		init();
 	}
 
+	public VcfFileIterator(BufferedReader reader, Genome genome) {
+		super(reader, genome, 1);
+		init();
+	}
+
 	public VcfFileIterator(String fileName) {
 		super(fileName, 1);
 		init();
@@ -0,0 +1,130 @@
+package org.snpeff.interval;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Map CDS base numbers to genomic positions (and back) for a transcript
+ *
+ * Instead of storing one genomic position per CDS base, we store
+ * the coding part of each exon (a 'segment'), in transcript's strand
+ * order. Conversions are binary searches over segments, so memory
+ * is O(exons) instead of O(CDS bases).
+ *
+ * @author pcingola
+ */
+public class CdsSegmentMap implements Serializable {
+
+	private static final long serialVersionUID = 2896117307718216545L;
+
+	boolean strandPlus; // Transcript's strand
+	int cdsOffsets[]; // CDS base number of the first base in each segment
+	int firsts[]; // Genomic position of the first base in each segment (i.e. start if strand is positive, end otherwise)
+	int lengths[]; // Number of bases in each segment
+	int size; // Number of CDS bases in all segments
+
+	/**
+	 * Create segments from exons (sorted by strand) and CDS start / end coordinates
+	 */
+	public CdsSegmentMap(List<Exon> exonsSortedStrand, int cdsMin, int cdsMax, boolean strandPlus) {
+		this.strandPlus = strandPlus;
+
+		int numExons = exonsSortedStrand.size();
+		cdsOffsets = new int[numExons];
+		firsts = new int[numExons];
+		lengths = new int[numExons];
+
+		int num = 0;
+		for (Exon exon : exonsSortedStrand) {
+			// Coding part of this exon
+			int start = Math.max(exon.getStart(), cdsMin);
+			int end = Math.min(exon.getEnd(), cdsMax);
+			if (start > end) continue; // Non-coding exon
+
+			cdsOffsets[num] = size;
+			firsts[num] = strandPlus ? start : end;
+			lengths[num] = end - start + 1;
+			size += lengths[num];
+			num++;
+		}
+
+		// Trim arrays
+		if (num < numExons) {
+			cdsOffsets = Arrays.copyOf(cdsOffsets, num);
+			firsts = Arrays.copyOf(firsts, num);
+			lengths = Arrays.copyOf(lengths, num);
+		}
+	}
+
+	/**
+	 * CDS base number for genomic position 'pos'
+	 * @return CDS base number or -1 if 'pos' is not a coding base
+	 */
+	public int cdsBaseNumber(int pos) {
+		// Find last segment whose first base is at (or before, in strand direction) 'pos'
+		int lo = 0, hi = firsts.length - 1, idx = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (strandPlus ? firsts[mid] <= pos : firsts[mid] >= pos) {
+				idx = mid;
+				lo = mid + 1;
+			} else hi = mid - 1;
+		}
+		if (idx < 0) return -1;
+
+		int dist = strandPlus ? pos - firsts[idx] : firsts[idx] - pos;
+		if (dist >= lengths[idx]) return -1; // Position is after segment's last base (e.g. intron or UTR)
+		return cdsOffsets[idx] + dist;
+	}
+
+	/**
+	 * Genomic position of CDS base number 'cdsBaseNum'
+	 * @return Genomic position or -1 if out of range
+	 */
+	public int pos(int cdsBaseNum) {
+		if (cdsBaseNum < 0 || cdsBaseNum >= size) return -1;
+
+		int idx = segment(cdsBaseNum);
+		int dist = cdsBaseNum - cdsOffsets[idx];
+		return strandPlus ? firsts[idx] + dist : firsts[idx] - dist;
+	}
+
+	/**
+	 * Number of segments
+	 */
+	public int numSegments() {
+		return firsts.length;
+	}
+
+	/**
+	 * Segment including CDS base number 'cdsBaseNum' (i.e. last segment starting at or before 'cdsBaseNum')
+	 */
+	int segment(int cdsBaseNum) {
+		int lo = 0, hi = cdsOffsets.length - 1, idx = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (cdsOffsets[mid] <= cdsBaseNum) {
+				idx = mid;
+				lo = mid + 1;
+			} else hi = mid - 1;
+		}
+		return idx;
+	}
+
+	/**
+	 * Number of CDS bases
+	 */
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < firsts.length; i++)
+			sb.append((i > 0 ? ", " : "") + cdsOffsets[i] + ":" + firsts[i] + "+" + lengths[i]);
+		return sb.toString();
+	}
+
+}
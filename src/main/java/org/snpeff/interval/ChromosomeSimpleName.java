@@ -1,6 +1,6 @@
 package org.snpeff.interval;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Convert chromosome names to simple names
@@ -11,7 +11,7 @@ public class ChromosomeSimpleName {
 	public static final String CHROMO_PREFIX[] = { "chromosome", "chromo", "chr" }; //, "group", "scaffold", "contig", "supercontig", "supercont", "0" }; // Must be lower case (see method)
 	private static ChromosomeSimpleName instance = new ChromosomeSimpleName();
 
-	private final HashMap<String, String> map;
+	private final ConcurrentHashMap<String, String> map; // Accessed concurrently (e.g. when parsing VCF entries in multi-threaded mode)
 
 	/**
 	 * Get a simple name for the chromosome
@@ -21,7 +21,7 @@ public class ChromosomeSimpleName {
 	}
 
 	private ChromosomeSimpleName() {
-		map = new HashMap<String, String>();
+		map = new ConcurrentHashMap<String, String>();
 	}
 
 	/**
@@ -82,6 +82,7 @@ public class ChromosomeSimpleName {
 	 * Query cache before simplifying name
 	 */
 	protected String simpleNameCache(String chrName) {
+		if (chrName == null) return ""; // Null keys are not allowed in ConcurrentHashMap
 		String chr = map.get(chrName);
 		if (chr == null) {
 			chr = simpleName(chrName);
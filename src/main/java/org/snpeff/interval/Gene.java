@@ -113,10 +113,14 @@ public class Gene extends IntervalAndSubIntervals<Transcript> implements Seriali
 	}
 
 	/**
-	 * Build gene dependent interval tree
+	 * Build gene dependent interval tree and freeze transcripts (pre-calculate caches and indexes)
 	 */
 	public void buildPerGene() {
 		if (intervalTreeGene != null) intervalTreeGene.build();
+
+		for (Transcript tr : this)
+			tr.freeze();
+		freeze();
 	}
 
 	/**
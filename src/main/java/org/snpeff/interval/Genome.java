@@ -5,11 +5,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.snpeff.binseq.GenomicSequences;
 import org.snpeff.fileIterator.FastaFileIterator;
@@ -37,7 +37,7 @@ public class Genome extends Marker implements Serializable, Iterable<Chromosome>
 	String fastaDir;
 	List<String> chromosomeNamesSorted = null;
 	String chromoFastaFiles[];
-	HashMap<String, Chromosome> chromosomes;
+	ConcurrentHashMap<String, Chromosome> chromosomes; // Chromosomes may be created while other threads are reading (e.g. multi-threaded annotations)
 	Genes genes; // All genes, transcripts, exons, UTRs, CDS, etc.
 	Boolean codingInfo = null; // Do we have coding info from genes?
 	Boolean transcriptSupportLevelInfo = null; // Do we have 'TranscriptSupportLevel' info in transcripts?
@@ -74,7 +74,7 @@ public class Genome extends Marker implements Serializable, Iterable<Chromosome>
 		id = version = "";
 		type = EffectType.GENOME;
 		// chromosomeNames = new ArrayList<String>();
-		chromosomes = new HashMap<>();
+		chromosomes = new ConcurrentHashMap<>();
 		genes = new Genes(this);
 		genomicSequences = new GenomicSequences(this);
 		genomicSequences.build();
@@ -85,7 +85,7 @@ public class Genome extends Marker implements Serializable, Iterable<Chromosome>
 		super(null, 0, Integer.MAX_VALUE, false, version);
 		this.version = version;
 		type = EffectType.GENOME;
-		chromosomes = new HashMap<>();
+		chromosomes = new ConcurrentHashMap<>();
 		genes = new Genes(this);
 		genomicSequences = new GenomicSequences(this);
 		genomicSequences.build();
@@ -113,7 +113,7 @@ public class Genome extends Marker implements Serializable, Iterable<Chromosome>
 		if (properties.getProperty(version + ".chromo_fasta_files") != null) chromoFastaFiles = propertyToStringArray(properties, version + ".chromo_fasta_files");
 		else chromoFastaFiles = new String[0];
 
-		chromosomes = new HashMap<>();
+		chromosomes = new ConcurrentHashMap<>();
 		for (String chName : chromosomeNames)
 			add(new Chromosome(this, 0, 0, chName));
 
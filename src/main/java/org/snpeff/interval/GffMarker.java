@@ -38,11 +38,28 @@ public class GffMarker extends Custom {
 		// Ignore empty lines and comment lines
 		if (line == null || line.isEmpty() || line.startsWith("#")) return false;
 
-		// Split fields
-		String fields[] = line.split("\t");
-		if (fields.length < 9) return false;
+		// Count fields (without splitting the line)
+		int numFields = 1;
+		for (int idx = line.indexOf('\t'); idx >= 0 && numFields < 9; idx = line.indexOf('\t', idx + 1))
+			numFields++;
 
-		return true;
+		return numFields >= 9;
+	}
+
+	/**
+	 * Split a line into (at most) 'maxFields' tab separated fields, without using
+	 * regular expressions (String.split). Missing fields are null.
+	 */
+	static String[] fields(String line, int maxFields) {
+		String fields[] = new String[maxFields];
+		int start = 0;
+		for (int i = 0; i < maxFields && start <= line.length(); i++) {
+			int end = line.indexOf('\t', start);
+			if (end < 0) end = line.length();
+			fields[i] = line.substring(start, end);
+			start = end + 1;
+		}
+		return fields;
 	}
 
 	public GffMarker() {
@@ -204,6 +221,15 @@ public class GffMarker extends Custom {
 		return true;
 	}
 
+	/**
+	 * Is there any character other than '=' in attrStr[start, end)?
+	 */
+	boolean hasValue(String attrStr, int start, int end) {
+		for (int i = start; i < end; i++)
+			if (attrStr.charAt(i) != '=') return true;
+		return false;
+	}
+
 	public boolean hasAttr(String key) {
 		key = key.toLowerCase();
 		return keyValues.containsKey(key) && (keyValues.get(key) != null);
@@ -238,7 +264,8 @@ public class GffMarker extends Custom {
 	 */
 	protected void parse(Genome genome, String line) {
 		// Split fields
-		String fields[] = line.split("\t");
+		String fields[] = fields(line, 9);
+		if (fields[7] == null) throw new RuntimeException("Expecting at least 8 fields, line: '" + line + "'");
 
 		// Parse chromosome
 		String chromo = fields[0];
@@ -265,8 +292,7 @@ public class GffMarker extends Custom {
 		frame = FrameType.GFF.convertFrame(frame);
 
 		// Parse attributes
-		if (fields.length >= 8) parseAttributes(fields[8]);
-		else parseAttributes(null);
+		parseAttributes(fields[8]);
 
 		// Parse some special fields
 		id = parseId();
@@ -285,18 +311,23 @@ public class GffMarker extends Custom {
 
 		// Parse and add all key-value pairs
 		if (attrStr != null) {
-			if (attrStr.length() > 0) {
-				String attrs[] = attrStr.split(";");
-				for (int i = 0; i < attrs.length; i++) {
-					// Split key value pair
-					String kv[] = attrs[i].split("=");
-					if (kv.length > 1) {
-						String key = kv[0].trim();
-						String value = kv[1].trim();
-
-						if (!hasAttr(key)) add(key, value);
-					}
+			int len = attrStr.length();
+			for (int start = 0; start < len;) {
+				int end = attrStr.indexOf(';', start);
+				if (end < 0) end = len;
+
+				// Split key value pair: Value ends at the next '=' (if any)
+				int eq = attrStr.indexOf('=', start);
+				if (eq >= 0 && eq < end) {
+					int valEnd = attrStr.indexOf('=', eq + 1);
+					if (valEnd < 0 || valEnd > end) valEnd = end;
+
+					String key = attrStr.substring(start, eq).trim();
+					String value = attrStr.substring(eq + 1, valEnd).trim();
+					if (hasValue(attrStr, eq + 1, end) && !hasAttr(key)) add(key, value);
 				}
+
+				start = end + 1;
 			}
 		}
 	}
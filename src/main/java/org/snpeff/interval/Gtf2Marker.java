@@ -38,7 +38,7 @@ public class Gtf2Marker extends GffMarker {
 		keyValues = new HashMap<>();
 		keys = new HashSet<String>();
 
-		if (attrStr.length() > 0) {
+		if (attrStr != null && attrStr.length() > 0) {
 			Matcher matcher = ATTRIBUTE_PATTERN.matcher(attrStr);
 			while (matcher.find()) {
 				if (matcher.groupCount() >= 2) {
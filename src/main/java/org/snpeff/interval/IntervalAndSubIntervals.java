@@ -22,6 +22,7 @@ public class IntervalAndSubIntervals<T extends Marker> extends Marker implements
 	Map<String, T> subIntervals;
 	List<T> sorted;
 	List<T> sortedStrand;
+	protected volatile boolean frozen; // Caches are calculated and must only be read (see 'freeze()')
 
 	public IntervalAndSubIntervals() {
 		super();
@@ -139,6 +140,17 @@ public class IntervalAndSubIntervals<T extends Marker> extends Marker implements
 		return subIntervals.containsKey(id);
 	}
 
+	/**
+	 * Pre-calculate lazy caches (e.g. sorted sub intervals), so they are only read from now on.
+	 * Threads querying a 'frozen' marker do not need to synchronize on it.
+	 * Note: Adding or removing sub intervals 'un-freezes' the marker
+	 */
+	public void freeze() {
+		sorted();
+		sortedStrand();
+		frozen = true;
+	}
+
 	/**
 	 * Obtain a subinterval
 	 */
@@ -150,9 +162,14 @@ public class IntervalAndSubIntervals<T extends Marker> extends Marker implements
 	 * Invalidate sorted collections
 	 */
 	protected void invalidateSorted() {
+		frozen = false;
 		sorted = sortedStrand = null;
 	}
 
+	public boolean isFrozen() {
+		return frozen;
+	}
+
 	@Override
 	public Iterator<T> iterator() {
 		return subIntervals().iterator();
@@ -253,31 +270,39 @@ public class IntervalAndSubIntervals<T extends Marker> extends Marker implements
 	/**
 	 * Return a collection of sub intervals sorted by natural order
 	 */
-	public synchronized List<T> sorted() {
-		if (sorted != null) return sorted;
-		ArrayList<T> sorted = new ArrayList<>();
-		sorted.addAll(subIntervals());
-		Collections.sort(sorted);
-
-		this.sorted = sorted;
-		return sorted;
+	public List<T> sorted() {
+		if (frozen) return sorted;
+
+		synchronized (this) {
+			if (sorted != null) return sorted;
+			ArrayList<T> sorted = new ArrayList<>();
+			sorted.addAll(subIntervals());
+			Collections.sort(sorted);
+
+			this.sorted = sorted;
+			return sorted;
+		}
 	}
 
 	/**
 	 * Return a collection of sub intervals sorted by start position (if strand is >= 0) or
 	 * by reverse end position (if strans < 0)
 	 */
-	public synchronized List<T> sortedStrand() {
-		if (sortedStrand != null) return sortedStrand;
+	public List<T> sortedStrand() {
+		if (frozen) return sortedStrand;
 
-		ArrayList<T> sortedStrand = new ArrayList<>();
-		sortedStrand.addAll(subIntervals());
+		synchronized (this) {
+			if (sortedStrand != null) return sortedStrand;
 
-		if (isStrandPlus()) Collections.sort(sortedStrand, new IntervalComparatorByStart()); // Sort by start position
-		else Collections.sort(sortedStrand, new IntervalComparatorByEnd(true)); // Sort by end position (reversed)
+			ArrayList<T> sortedStrand = new ArrayList<>();
+			sortedStrand.addAll(subIntervals());
 
-		this.sortedStrand = sortedStrand;
-		return sortedStrand;
+			if (isStrandPlus()) Collections.sort(sortedStrand, new IntervalComparatorByStart()); // Sort by start position
+			else Collections.sort(sortedStrand, new IntervalComparatorByEnd(true)); // Sort by end position (reversed)
+
+			this.sortedStrand = sortedStrand;
+			return sortedStrand;
+		}
 	}
 
 	/**
@@ -576,7 +576,7 @@ public class Marker extends Interval implements TxtSerializable {
 	 */
 	@Override
 	public void serializeParse(MarkerSerializer markerSerializer) {
-		type = EffectType.valueOf(markerSerializer.getNextField());
+		type = markerSerializer.getNextFieldEffectType();
 		markerSerializer.getNextFieldInt();
 		parent = new MarkerParentId(markerSerializer.getNextFieldInt()); // Create a 'fake' parent. It will be replaced after all objects are in memory.
 		start = markerSerializer.getNextFieldInt();
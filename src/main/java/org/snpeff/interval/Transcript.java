@@ -2,13 +2,12 @@ package org.snpeff.interval;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.snpeff.interval.codonChange.CodonChange;
+import org.snpeff.interval.tree.IntervalTreeFlat;
 import org.snpeff.serializer.MarkerSerializer;
 import org.snpeff.snpEffect.Config;
 import org.snpeff.snpEffect.EffectType;
@@ -57,7 +56,8 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	Upstream upstream; // Upstream interval
 	Downstream downstream; // Downstream interval
 	Exon firstCodingExon; // First coding exon. I.e. where transcription start site (TSS) is.
-	int cds2pos[], aa2pos[];
+	volatile CdsSegmentMap cdsSegmentMap; // Map CDS base numbers to genomic positions (lazy cache, only published once fully calculated)
+	IntervalTreeFlat index; // Sub-markers (exons, UTRs, CDSs and introns) sorted by position. See 'buildIndex()'
 	TranscriptSupportLevel transcriptSupportLevel = null;
 
 	public Transcript() {
@@ -74,50 +74,32 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 
 	/**
 	 * Calculate chromosome position as function of Amino Acid number
+	 * Note: The array is created on every invocation (it is not cached),
+	 *       use 'aaNumber2Pos(aaNum)' to map only one amino acid
 	 *
 	 * @returns An array mapping 'pos[aaNumber] = chromosmalPos'
 	 */
-	public synchronized int[] aaNumber2Pos() {
-		if (aa2pos != null) return aa2pos;
+	public int[] aaNumber2Pos() {
+		CdsSegmentMap cdsSegmentMap = cdsSegmentMap();
 
-		calcCdsStartEnd();
-
-		aa2pos = new int[protein().length()];
-		for (int i = 0; i < aa2pos.length; i++)
-			aa2pos[i] = -1;
+		int aa2pos[] = new int[protein().length()];
+		for (int aaNum = 0; aaNum < aa2pos.length; aaNum++)
+			aa2pos[aaNum] = cdsSegmentMap.pos(3 * aaNum);
 
+		// Update exons' AA indexes
+		calcCdsStartEnd();
 		int cdsMin = Math.min(cdsStart, cdsEnd);
 		int cdsMax = Math.max(cdsStart, cdsEnd);
-
-		// For each exon, add CDS position to array
-		int aaNum = 0;
-		int step = isStrandPlus() ? 1 : -1;
-		int codonFrame = 0;
+		int cdsBaseNum = 0;
 		for (Exon exon : sortedStrand()) {
-			int min = isStrandPlus() ? exon.getStart() : exon.getEnd();
-
-			int aaIdxStart = -1, aaIdxEnd = -1;
+			int len = Math.min(exon.getEnd(), cdsMax) - Math.max(exon.getStart(), cdsMin) + 1;
+			if (len <= 0) continue; // Non-coding exon
 
-			for (int pos = min; exon.intersects(pos) && aaNum < aa2pos.length; pos += step) {
-				// Is this within a CDS?
-				if ((cdsMin <= pos) && (pos <= cdsMax)) {
-					// Update AA indexes for this exon
-					if (aaIdxStart < 0) aaIdxStart = aaNum;
-					aaIdxEnd = aaNum;
+			int aaIdxStart = cdsBaseNum / 3;
+			int aaIdxEnd = Math.min((cdsBaseNum + len - 1) / 3, aa2pos.length - 1);
+			if (aaIdxStart < aa2pos.length) exon.setAaIdx(aaIdxStart, aaIdxEnd);
 
-					// First codon base? Add to map
-					if (codonFrame == 0) aa2pos[aaNum] = pos;
-
-					// Last base in this codon? Increment AA number
-					if (codonFrame == 2) aaNum++;
-
-					// Update codon base
-					codonFrame = (codonFrame + 1) % 3;
-				}
-			}
-
-			// Update exons' AA indexes
-			if (aaIdxStart >= 0) exon.setAaIdx(aaIdxStart, aaIdxEnd);
+			cdsBaseNum += len;
 		}
 
 		return aa2pos;
@@ -125,11 +107,11 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 
 	/**
 	 * Find a genomic position of the first base in a Amino Acid 'aaNum'
+	 * @return Genomic position or -1 if 'aaNum' is out of range
 	 */
 	public int aaNumber2Pos(int aaNum) {
-		aaNumber2Pos();
-
-		return -1;
+		if (aaNum < 0 || aaNum >= protein().length()) return -1;
+		return cdsSegmentMap().pos(3 * aaNum);
 	}
 
 	/**
@@ -138,6 +120,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	public void add(Cds cdsInt) {
 		cdss.add(cdsInt);
 		cds = null;
+		index = null;
 	}
 
 	/**
@@ -146,6 +129,8 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	public void add(Intron intron) {
 		if (introns == null) introns = new ArrayList<>();
 		introns.add(intron);
+		index = null;
+		frozen = false;
 
 		// Introns should be sorted by strand
 		if (isStrandPlus()) Collections.sort(introns);
@@ -169,6 +154,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	public void add(Utr utr) {
 		utrs.add(utr);
 		cds = null;
+		index = null;
 	}
 
 	/**
@@ -295,6 +281,9 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 		for (Utr utr : utrs) {
 			Utr newUtr = (Utr) utr.apply(variant);
 			if (newUtr != null) {
+				// Make sure we don't modify the original UTR (it is shared by all threads annotating this transcript)
+				if (newUtr == utr) newUtr = (Utr) utr.cloneShallow();
+
 				Exon newExon = newTr.findExon(newUtr);
 
 				if (newExon != null) {
@@ -348,7 +337,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * mRNA is roughly the same than cDNA. Strictly speaking mRNA
 	 * has a poly-A tail and 5'cap.
 	 */
-	public synchronized int baseNumber2MRnaPos(int pos) {
+	public int baseNumber2MRnaPos(int pos) {
 		int count = 0;
 		for (Exon eint : sortedStrand()) {
 			if (eint.intersects(pos)) {
@@ -377,7 +366,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 *
 	 * @returns Base number or '-1' if it does not map to a coding base
 	 */
-	public synchronized int baseNumberCds(int pos, boolean usePrevBaseIntron) {
+	public int baseNumberCds(int pos, boolean usePrevBaseIntron) {
 		// Doesn't hit this transcript?
 		if (!intersects(pos)) return -1;
 
@@ -425,86 +414,98 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 
 	/**
 	 * Calculate chromosome position as function of CDS number
+	 * Note: The array is created on every invocation (it is not cached),
+	 *       use 'cdsBaseNumber2Pos(cdsBaseNum)' to map only one base
 	 *
 	 * @returns An array mapping 'cds2pos[cdsBaseNumber] = chromosmalPos'
 	 */
-	public synchronized int[] baseNumberCds2Pos() {
-		if (cds2pos != null) return cds2pos;
-
-		calcCdsStartEnd();
+	public int[] baseNumberCds2Pos() {
+		CdsSegmentMap cdsSegmentMap = cdsSegmentMap();
 
-		cds2pos = new int[cds().length()];
-		for (int i = 0; i < cds2pos.length; i++)
-			cds2pos[i] = -1;
+		int cds2pos[] = new int[cds().length()];
+		for (int cdsBaseNum = 0; cdsBaseNum < cds2pos.length; cdsBaseNum++)
+			cds2pos[cdsBaseNum] = cdsSegmentMap.pos(cdsBaseNum);
 
-		int cdsMin = Math.min(cdsStart, cdsEnd);
-		int cdsMax = Math.max(cdsStart, cdsEnd);
+		return cds2pos;
+	}
 
-		// For each exon, add CDS position to array
-		int cdsBaseNum = 0;
-		for (Exon exon : sortedStrand()) {
-			int min = isStrandPlus() ? exon.getStart() : exon.getEnd();
-			int step = isStrandPlus() ? 1 : -1;
-			for (int pos = min; exon.intersects(pos) && cdsBaseNum < cds2pos.length; pos += step)
-				if ((cdsMin <= pos) && (pos <= cdsMax)) cds2pos[cdsBaseNum++] = pos;
-		}
+	/**
+	 * Build an index of all sub-markers (exons, UTRs, CDSs and introns) sorted by position.
+	 * Once the index is built, 'query' and 'find' methods use binary search instead of
+	 * iterating over all sub-markers. Any change in the sub-markers invalidates the index.
+	 */
+	public void buildIndex() {
+		IntervalTreeFlat index = new IntervalTreeFlat();
+		for (Exon ex : this)
+			index.add(ex);
+		for (Utr utr : utrs)
+			index.add(utr);
+		for (Cds c : cdss)
+			index.add(c);
+		for (Intron intr : introns())
+			index.add(intr);
+		index.build();
 
-		return cds2pos;
+		this.index = index;
 	}
 
 	/**
 	 * Calculate CDS start and CDS end
 	 */
-	synchronized void calcCdsStartEnd() {
-		// Do we need to calculate these values?
-		// Note: In circular genomes, one of cdsStart / cdsEnd might be less
-		//       than zero (we must check both)
-		if ((cdsStart < 0) && (cdsEnd < 0)) {
-			// Calculate coding start (after 5 prime UTR)
-
-			if (utrs.isEmpty()) {
-				// No UTRs => Use all exons
-				cdsStart = (isStrandPlus() ? end : start); // cdsStart is the position of the first base in the CDS (i.e. the first base after all 5'UTR)
-				cdsEnd = (isStrandPlus() ? start : end); // cdsEnd is the position of the last base in the CDS (i.e. the first base before all 3'UTR)
+	void calcCdsStartEnd() {
+		if (frozen) return; // Already calculated (see 'freeze()')
+
+		synchronized (this) {
+			// Do we need to calculate these values?
+			// Note: In circular genomes, one of cdsStart / cdsEnd might be less
+			//       than zero (we must check both)
+			if ((cdsStart < 0) && (cdsEnd < 0)) {
+				// Calculate coding start (after 5 prime UTR)
+
+				if (utrs.isEmpty()) {
+					// No UTRs => Use all exons
+					cdsStart = (isStrandPlus() ? end : start); // cdsStart is the position of the first base in the CDS (i.e. the first base after all 5'UTR)
+					cdsEnd = (isStrandPlus() ? start : end); // cdsEnd is the position of the last base in the CDS (i.e. the first base before all 3'UTR)
+
+					for (Exon ex : this) {
+						if (isStrandPlus()) {
+							cdsStart = Math.min(cdsStart, ex.getStart());
+							cdsEnd = Math.max(cdsEnd, ex.getEnd());
+						} else {
+							cdsStart = Math.max(cdsStart, ex.getEnd());
+							cdsEnd = Math.min(cdsEnd, ex.getStart());
+						}
+					}
+				} else {
+					// We have to take into account UTRs
+					cdsStart = (isStrandPlus() ? start : end); // cdsStart is the position of the first base in the CDS (i.e. the first base after all 5'UTR)
+					cdsEnd = (isStrandPlus() ? end : start); // cdsEnd is the position of the last base in the CDS (i.e. the first base before all 3'UTR)
+					int cdsStartNotExon = cdsStart;
+
+					for (Utr utr : utrs) {
+						if (utr instanceof Utr5prime) {
+							if (isStrandPlus()) cdsStart = Math.max(cdsStart, utr.getEnd() + 1);
+							else cdsStart = Math.min(cdsStart, utr.getStart() - 1);
+						} else if (utr instanceof Utr3prime) {
+							if (isStrandPlus()) cdsEnd = Math.min(cdsEnd, utr.getStart() - 1);
+							else cdsEnd = Math.max(cdsEnd, utr.getEnd() + 1);
+						}
+					}
 
-				for (Exon ex : this) {
+					// Make sure cdsStart and cdsEnd lie within an exon
 					if (isStrandPlus()) {
-						cdsStart = Math.min(cdsStart, ex.getStart());
-						cdsEnd = Math.max(cdsEnd, ex.getEnd());
+						cdsStart = firstExonPositionAfter(cdsStart);
+						cdsEnd = lastExonPositionBefore(cdsEnd);
 					} else {
-						cdsStart = Math.max(cdsStart, ex.getEnd());
-						cdsEnd = Math.min(cdsEnd, ex.getStart());
+						cdsStart = lastExonPositionBefore(cdsStart);
+						cdsEnd = firstExonPositionAfter(cdsEnd);
 					}
-				}
-			} else {
-				// We have to take into account UTRs
-				cdsStart = (isStrandPlus() ? start : end); // cdsStart is the position of the first base in the CDS (i.e. the first base after all 5'UTR)
-				cdsEnd = (isStrandPlus() ? end : start); // cdsEnd is the position of the last base in the CDS (i.e. the first base before all 3'UTR)
-				int cdsStartNotExon = cdsStart;
-
-				for (Utr utr : utrs) {
-					if (utr instanceof Utr5prime) {
-						if (isStrandPlus()) cdsStart = Math.max(cdsStart, utr.getEnd() + 1);
-						else cdsStart = Math.min(cdsStart, utr.getStart() - 1);
-					} else if (utr instanceof Utr3prime) {
-						if (isStrandPlus()) cdsEnd = Math.min(cdsEnd, utr.getStart() - 1);
-						else cdsEnd = Math.max(cdsEnd, utr.getEnd() + 1);
-					}
-				}
 
-				// Make sure cdsStart and cdsEnd lie within an exon
-				if (isStrandPlus()) {
-					cdsStart = firstExonPositionAfter(cdsStart);
-					cdsEnd = lastExonPositionBefore(cdsEnd);
-				} else {
-					cdsStart = lastExonPositionBefore(cdsStart);
-					cdsEnd = firstExonPositionAfter(cdsEnd);
+					// We were not able to find cdsStart & cdsEnd within exon limits.
+					// Probably there is something wrong with the database and the transcript does
+					// not have a single coding base (e.g. all of it is UTR).
+					if (cdsStart < 0 || cdsEnd < 0) cdsStart = cdsEnd = cdsStartNotExon;
 				}
-
-				// We were not able to find cdsStart & cdsEnd within exon limits.
-				// Probably there is something wrong with the database and the transcript does
-				// not have a single coding base (e.g. all of it is UTR).
-				if (cdsStart < 0 || cdsEnd < 0) cdsStart = cdsEnd = cdsStartNotExon;
 			}
 		}
 	}
@@ -512,7 +513,8 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	/**
 	 * Retrieve coding sequence
 	 */
-	public synchronized String cds() {
+	public String cds() {
+		String cds = this.cds;
 		if (cds != null) return cds;
 
 		// Concatenate all exons
@@ -546,13 +548,15 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 			else cds = sequence.substring(utr5len, subEnd);
 		}
 
+		this.cds = cds;
 		return cds;
 	}
 
 	/**
 	 * Retrieve extended coding sequence
 	 */
-	public synchronized String cdsExtended() {
+	public String cdsExtended() {
+		String cds = this.cds;
 		if (cds != null) return cds;
 
 		// Concatenate all exons
@@ -578,9 +582,19 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 			cds = sequence.substring(utr5len);
 		}
 
+		this.cds = cds;
 		return cds;
 	}
 
+	/**
+	 * Genomic position of CDS base number 'cdsBaseNum'
+	 * @return Genomic position or -1 if 'cdsBaseNum' is out of range
+	 */
+	public int cdsBaseNumber2Pos(int cdsBaseNum) {
+		if (cdsBaseNum >= cds().length()) return -1;
+		return cdsSegmentMap().pos(cdsBaseNum);
+	}
+
 	/**
 	 * Create a marker of the coding region in this transcript
 	 */
@@ -591,6 +605,20 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 		;
 	}
 
+	/**
+	 * Map between CDS base numbers and genomic positions (lazy init)
+	 */
+	public CdsSegmentMap cdsSegmentMap() {
+		CdsSegmentMap cdsSegmentMap = this.cdsSegmentMap;
+		if (cdsSegmentMap != null) return cdsSegmentMap;
+
+		calcCdsStartEnd();
+		cdsSegmentMap = new CdsSegmentMap(sortedStrand(), Math.min(cdsStart, cdsEnd), Math.max(cdsStart, cdsEnd), isStrandPlus());
+
+		this.cdsSegmentMap = cdsSegmentMap;
+		return cdsSegmentMap;
+	}
+
 	@Override
 	public Transcript cloneShallow() {
 		Transcript clone = (Transcript) super.cloneShallow();
@@ -614,14 +642,15 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 *         it could a base in the codon could not be mapped.
 	 */
 	public int[] codonNumber2Pos(int codonNum) {
-		if (cds2pos == null) baseNumberCds2Pos();
+		CdsSegmentMap cdsSegmentMap = cdsSegmentMap();
+		int cdsLen = cds().length();
 
 		// Initialize
 		int codon[] = new int[3];
 		int step = isStrandPlus() ? 1 : -1;
 		int idxStart = isStrandPlus() ? 0 : 2;
-		for (int i = idxStart, j = 3 * codonNum; (i < codon.length) && (i >= 0) && j < cds2pos.length; i += step, j++) {
-			codon[i] = cds2pos[j];
+		for (int i = idxStart, j = 3 * codonNum; (i < codon.length) && (i >= 0) && j < cdsLen; i += step, j++) {
+			codon[i] = cdsSegmentMap.pos(j);
 		}
 
 		return codon;
@@ -637,6 +666,8 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 
 		boolean ret = false;
 		introns = null; // These need to be recalculated
+		index = null;
+		frozen = false;
 
 		//---
 		// Collapse Exons
@@ -783,6 +814,8 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	public boolean deleteRedundant() {
 		boolean ret = false;
 		introns = null; // These need to be recalculated
+		index = null;
+		frozen = false;
 
 		//---
 		// Delete redundant exons
@@ -829,6 +862,8 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * Return the an exon that intersects 'pos'
 	 */
 	public Exon findExon(int pos) {
+		if (index != null) return (Exon) index.queryFirst(pos, pos, Exon.class);
+
 		for (Exon exon : this)
 			if (exon.intersects(pos)) return exon;
 		return null;
@@ -838,15 +873,35 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * Return an exon intersecting 'marker' (first exon found)
 	 */
 	public Exon findExon(Marker marker) {
+		if (index != null) return queryFirst(marker, Exon.class);
+
 		for (Exon exon : this)
 			if (exon.intersects(marker)) return exon;
 		return null;
 	}
 
+	/**
+	 * Find first coding exon (i.e. exon intersecting transcription start site)
+	 * @return First coding exon or null if not found
+	 */
+	Exon findFirstCodingExon() {
+		// Get transcription start position
+		long cstart = getCdsStart();
+
+		// Pick exon intersecting cdsStart (TSS)
+		Exon firstCodingExon = null;
+		for (Exon exon : sortedStrand())
+			if (exon.intersects(cstart)) firstCodingExon = exon;
+
+		return firstCodingExon;
+	}
+
 	/**
 	 * Return an intron overlapping position 'pos'
 	 */
 	public Intron findIntron(int pos) {
+		if (index != null) return (Intron) index.queryFirst(pos, pos, Intron.class);
+
 		// Is 'pos' in intron?
 		for (Intron intron : introns())
 			if (intron.intersects(pos)) return intron;
@@ -858,6 +913,8 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * @return An UTR intersecting 'pos' (null if not found)
 	 */
 	public Utr findUtr(int pos) {
+		if (index != null) return (Utr) index.queryFirst(pos, pos, Utr.class);
+
 		// Is it in UTR?
 		for (Utr utr : utrs)
 			if (utr.intersects(pos)) return utr;
@@ -868,13 +925,13 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * Return the UTR that intersects 'marker' (null if not found)
 	 */
 	public List<Utr> findUtrs(Marker marker) {
-		List<Utr> utrs = new LinkedList<>();
+		List<Utr> utrsHit = new LinkedList<>();
 
 		// Is it in UTR instead of CDS?
 		for (Utr utr : utrs)
-			if (utr.intersects(marker)) utrs.add(utr);
+			if (utr.intersects(marker)) utrsHit.add(utr);
 
-		return utrs.isEmpty() ? null : utrs;
+		return utrsHit.isEmpty() ? null : utrsHit;
 	}
 
 	/**
@@ -1148,6 +1205,27 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 		return cdsStart;
 	}
 
+	/**
+	 * Pre-calculate lazy caches (sorted exons, introns, CDS start and end,
+	 * first coding exon, CDS segment map and sub-marker index). Once 'frozen', these
+	 * caches are only read, so annotation threads do not synchronize on the transcript.
+	 *
+	 * Sequence caches (cds, mRna and protein) are still
+	 * calculated lazily (they are too large to pre-calculate for every
+	 * transcript), but they are only published once fully calculated.
+	 *
+	 * Note: Changing exons, UTRs or CDSs 'un-freezes' the transcript
+	 */
+	@Override
+	public void freeze() {
+		introns();
+		calcCdsStartEnd();
+		if (firstCodingExon == null) firstCodingExon = findFirstCodingExon();
+		cdsSegmentMap();
+		buildIndex();
+		super.freeze();
+	}
+
 	public Downstream getDownstream() {
 		return downstream;
 	}
@@ -1155,19 +1233,16 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	/**
 	 * Get first coding exon
 	 */
-	public synchronized Exon getFirstCodingExon() {
-		if (firstCodingExon == null) {
-			// Get transcription start position
-			long cstart = getCdsStart();
+	public Exon getFirstCodingExon() {
+		if (frozen && firstCodingExon != null) return firstCodingExon; // Already calculated (see 'freeze()')
 
-			// Pick exon intersecting cdsStart (TSS)
-			for (Exon exon : sortedStrand())
-				if (exon.intersects(cstart)) firstCodingExon = exon;
+		synchronized (this) {
+			if (firstCodingExon == null) firstCodingExon = findFirstCodingExon();
 
 			// Sanity check
 			if (firstCodingExon == null) throw new RuntimeException("Error: Cannot find first coding exon for transcript:\n" + this);
+			return firstCodingExon;
 		}
-		return firstCodingExon;
 	}
 
 	public TranscriptSupportLevel getTranscriptSupportLevel() {
@@ -1227,41 +1302,51 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	/**
 	 * Get all introns (lazy init)
 	 */
-	public synchronized List<Intron> introns() {
-		if (introns == null) {
-			introns = new ArrayList<>();
+	public List<Intron> introns() {
+		if (frozen) return introns;
+
+		synchronized (this) {
+			if (introns == null) {
+				introns = new ArrayList<>();
+
+				Exon exBefore = null;
+				for (Exon ex : sortedStrand()) {
+					if (exBefore != null) {
+						// Create intron
+						Intron intron;
+						int rank = introns.size() + 1;
+
+						// Find intron start and end
+						int start, end;
+						if (isStrandPlus()) {
+							start = exBefore.getEnd() + 1;
+							end = ex.getStart() - 1;
+						} else {
+							start = ex.getEnd() + 1;
+							end = exBefore.getStart() - 1;
+						}
 
-			Exon exBefore = null;
-			for (Exon ex : sortedStrand()) {
-				if (exBefore != null) {
-					// Create intron
-					Intron intron;
-					int rank = introns.size() + 1;
+						int size = end - start + 1;
+						if (size > 0) {
+							// Add intron to list
+							intron = new Intron(this, start, end, strandMinus, id + "_intron_" + rank, exBefore, ex);
 
-					// Find intron start and end
-					int start, end;
-					if (isStrandPlus()) {
-						start = exBefore.getEnd() + 1;
-						end = ex.getStart() - 1;
-					} else {
-						start = ex.getEnd() + 1;
-						end = exBefore.getStart() - 1;
+							intron.setRank(rank);
+							introns.add(intron);
+						}
 					}
 
-					int size = end - start + 1;
-					if (size > 0) {
-						// Add intron to list
-						intron = new Intron(this, start, end, strandMinus, id + "_intron_" + rank, exBefore, ex);
-
-						intron.setRank(rank);
-						introns.add(intron);
-					}
+					exBefore = ex;
 				}
-
-				exBefore = ex;
 			}
+			return introns;
 		}
-		return introns;
+	}
+
+	@Override
+	protected void invalidateSorted() {
+		super.invalidateSorted();
+		index = null; // Exons changed: Index is no longer valid
 	}
 
 	public boolean isAaCheck() {
@@ -1451,7 +1536,8 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * Retrieve coding sequence AND the UTRs (mRNA = 5'UTR + CDS + 3'UTR)
 	 * I.e. Concatenate all exon sequences
 	 */
-	public synchronized String mRna() {
+	public String mRna() {
+		String mRna = this.mRna;
 		if (mRna != null) return mRna;
 
 		List<Exon> exons = sortedStrand();
@@ -1462,6 +1548,7 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 			sequence.append(ex.getSequence());
 
 		mRna = sequence.toString();
+		this.mRna = mRna;
 		return mRna;
 	}
 
@@ -1469,9 +1556,11 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 * Protein sequence (amino acid sequence produced by this transcripts)
 	 */
 	public String protein() {
+		String protein = this.protein;
 		if (protein == null) {
 			if (!(Config.get() != null && Config.get().isTreatAllAsProteinCoding()) && !isProteinCoding()) protein = "";
 			else protein = codonTable().aa(cds(), true);
+			this.protein = protein;
 		}
 		return protein;
 	}
@@ -1492,52 +1581,80 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 	 */
 	@Override
 	public Markers query(Marker marker) {
-		Set<Marker> results = new HashSet<>();
-
-		// Add exons
-		for (Exon ex : this)
-			if (ex.intersects(marker)) {
-				results.add(ex);
-
-				// Query deeper
-				for (Marker ee : ex.query(marker))
-					results.add(ee);
-			}
+		Markers results = new Markers();
+		query(marker, results);
+		return results;
+	}
 
-		// Ad UTRs
-		for (Utr u : utrs)
-			if (u.intersects(marker)) results.add(u);
+	/**
+	 * Query all genomic regions that intersect 'marker', adding them to 'results'
+	 * If the index has been built (see 'buildIndex()'), no memory is allocated (other than growing 'results')
+	 */
+	public void query(Marker marker, Markers results) {
+		int first = results.size();
 
-		// Add CDSs
-		for (Cds m : cdss)
-			if (m.intersects(marker)) results.add(m);
+		if (index != null) {
+			if (!marker.getChromosomeName().equals(getChromosomeName())) return;
+			index.query(marker, results);
+		} else {
+			for (Exon ex : this)
+				if (ex.intersects(marker)) results.add(ex);
 
-		// Add introns
-		for (Intron intr : introns())
-			if (intr.intersects(marker)) {
-				results.add(intr);
+			for (Utr u : utrs)
+				if (u.intersects(marker)) results.add(u);
 
-				// Query deeper
-				for (Marker ee : intr.query(marker))
-					results.add(ee);
-			}
+			for (Cds m : cdss)
+				if (m.intersects(marker)) results.add(m);
 
-		// Get results into markers
-		Markers markers = new Markers();
-		markers.addAll(results);
+			for (Intron intr : introns())
+				if (intr.intersects(marker)) results.add(intr);
+		}
 
-		return markers;
+		// Query deeper: Splice sites in exons and introns
+		for (int i = first, last = results.size(); i < last; i++) {
+			Marker m = results.get(i);
+			if (m instanceof Exon) querySpliceSites(((Exon) m).getSpliceSites(), marker, results, first);
+			else if (m instanceof Intron) querySpliceSites(((Intron) m).getSpliceSites(), marker, results, first);
+		}
 	}
 
 	/**
 	 * Return the first exon that intersects 'interval' (null if not found)
 	 */
 	public Exon queryExon(Marker interval) {
+		if (index != null) return queryFirst(interval, Exon.class);
+
 		for (Exon ei : this)
 			if (ei.intersects(interval)) return ei;
 		return null;
 	}
 
+	/**
+	 * Query the index: Return the first sub-marker of class 'clazz' intersecting 'marker' (null if not found)
+	 */
+	@SuppressWarnings("unchecked")
+	<T extends Marker> T queryFirst(Marker marker, Class<T> clazz) {
+		if (!marker.getChromosomeName().equals(getChromosomeName())) return null;
+		return (T) index.queryFirst(marker.getStart(), marker.getEnd(), clazz);
+	}
+
+	/**
+	 * Add splice sites intersecting 'marker' to 'results'.
+	 * A splice site can be shared by an exon and an intron, so we
+	 * make sure it is added only once (only results after 'first' are checked)
+	 */
+	void querySpliceSites(List<SpliceSite> spliceSites, Marker marker, Markers results, int first) {
+		for (SpliceSite ss : spliceSites) {
+			if (!ss.intersects(marker)) continue;
+
+			boolean found = false;
+			for (int i = first; i < results.size() && !found; i++)
+				found = (results.get(i) == ss);
+
+			if (!found) results.add(ss);
+		}
+	}
+
 	/**
 	 * Assign ranks to exons
 	 */
@@ -1561,20 +1678,22 @@ public class Transcript extends IntervalAndSubIntervals<Exon> {
 		utrs = new ArrayList<>();
 		cdss = new ArrayList<>();
 		introns = null;
+		index = null;
 		upstream = null;
 		downstream = null;
 		resetCache();
 	}
 
 	public void resetCache() {
+		frozen = false;
 		cdsStart = -1;
 		cdsEnd = -1;
 		firstCodingExon = null;
 		cds = null;
-		cds2pos = null;
-		aa2pos = null;
+		cdsSegmentMap = null;
 		mRna = null;
 		protein = null;
+		index = null;
 	}
 
 	public void resetExons() {
@@ -3,7 +3,6 @@ package org.snpeff.interval;
 import java.util.LinkedList;
 import java.util.List;
 
-import org.snpeff.align.VariantRealign;
 import org.snpeff.binseq.GenomicSequences;
 import org.snpeff.snpEffect.Config;
 import org.snpeff.snpEffect.EffectType;
@@ -452,15 +451,12 @@ public class Variant extends Marker {
 
 	/**
 	 * Create a new variant realigning it towards the leftmost position
+	 * Note: Realignments are cached (see VariantRealignCache)
 	 */
 	public Variant realignLeft() {
 		GenomicSequences gs = getGenome().getGenomicSequences();
 		if (gs == null) return this;
-
-		VariantRealign vr = new VariantRealign(this);
-		vr.setDebug(Config.get().isDebug());
-		if (!vr.realign()) return this;
-		return vr.getVariantRealigned();
+		return gs.getRealignCache().realignLeft(this, Config.get().isDebug());
 	}
 
 	/**
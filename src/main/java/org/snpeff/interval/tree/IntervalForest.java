@@ -4,9 +4,14 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.snpeff.interval.Chromosome;
 import org.snpeff.interval.Marker;
@@ -23,6 +28,7 @@ public class IntervalForest implements Serializable, Iterable<Itree> {
 	private static final long serialVersionUID = 1L;
 
 	boolean debug;
+	boolean flat; // Use flattened interval trees (IntervalTreeFlat)
 	String name;
 	HashMap<String, Itree> forest;
 
@@ -67,10 +73,79 @@ public class IntervalForest implements Serializable, Iterable<Itree> {
 		for (String key : forest.keySet()) {
 			if (debug) Gpr.debug("Building interval tree for '" + key + "'");
 			Itree tree = forest.get(key);
+
+			// Convert to a flat tree?
+			if (flat && !(tree instanceof IntervalTreeFlat)) {
+				tree = new IntervalTreeFlat(tree.getIntervals());
+				forest.put(key, tree);
+			}
+
 			tree.build();
 		}
 	}
 
+	/**
+	 * Build all trees
+	 * @param flat : If true, use flattened interval trees (IntervalTreeFlat)
+	 */
+	public void build(boolean flat) {
+		this.flat = flat;
+		build();
+	}
+
+	/**
+	 * Build all trees, each tree is built by a task in 'executor'
+	 * @param flat : If true, use flattened interval trees (IntervalTreeFlat)
+	 * @param executor : Executor used to build trees. If null, trees are built sequentially
+	 */
+	public void build(boolean flat, ExecutorService executor) {
+		if (executor == null) {
+			build(flat);
+			return;
+		}
+		this.flat = flat;
+
+		// Largest trees first, so that threads are balanced
+		List<Itree> trees = new ArrayList<>();
+		for (String key : forest.keySet()) {
+			Itree tree = forest.get(key);
+
+			// Convert to a flat tree?
+			if (flat && !(tree instanceof IntervalTreeFlat)) {
+				tree = new IntervalTreeFlat(tree.getIntervals());
+				forest.put(key, tree);
+			}
+
+			trees.add(tree);
+		}
+		Collections.sort(trees, new Comparator<Itree>() {
+			@Override
+			public int compare(Itree t1, Itree t2) {
+				return Integer.compare(t2.size(), t1.size());
+			}
+		});
+
+		// Build trees
+		List<Future<?>> futures = new ArrayList<>();
+		for (final Itree tree : trees)
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					tree.build();
+				}
+			}));
+
+		// Wait until all trees are built
+		try {
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -90,6 +165,16 @@ public class IntervalForest implements Serializable, Iterable<Itree> {
 		return itree;
 	}
 
+	/**
+	 * Create a new (empty) interval tree for 'chromo', replacing the existing tree (if any).
+	 * The old tree is not modified (other threads may still be using it)
+	 */
+	public Itree newTreeChromo(String chromo) {
+		Itree itree = newItree();
+		forest.put(Chromosome.simpleName(chromo), itree);
+		return itree;
+	}
+
 	/**
 	 * Get (or create) an interval tree based for "chromo" (chromosome name)
 	 */
@@ -152,6 +237,10 @@ public class IntervalForest implements Serializable, Iterable<Itree> {
 		return forest.values().iterator();
 	}
 
+	public boolean isFlat() {
+		return flat;
+	}
+
 	public Collection<String> keySet() {
 		return forest.keySet();
 	}
@@ -161,6 +250,7 @@ public class IntervalForest implements Serializable, Iterable<Itree> {
 	 * In oder to change the implementation, only this method should be changed.
 	 */
 	protected Itree newItree() {
+		if (flat) return new IntervalTreeFlat();
 		return new IntervalTree();
 	}
 
@@ -171,6 +261,15 @@ public class IntervalForest implements Serializable, Iterable<Itree> {
 		return getOrCreateTreeChromo(marker.getChromosomeName()).query(marker);
 	}
 
+	/**
+	 * Invoke 'visitor' for all intervals that intersect with 'marker'
+	 * Note: Trees are not created if missing (this method does not modify the forest)
+	 */
+	public void query(Marker marker, MarkerVisitor visitor) {
+		Itree tree = getTreeChromo(marker.getChromosomeName());
+		if (tree != null) tree.query(marker, visitor);
+	}
+
 	/**
 	 * Query all intervals that intersect with any interval in 'intervals'
 	 */
@@ -237,6 +336,14 @@ public class IntervalForest implements Serializable, Iterable<Itree> {
 		return getOrCreateTreeChromo(chromo).stab(point);
 	}
 
+	/**
+	 * Invoke 'visitor' for all intervals that intersect with 'point'
+	 */
+	public void stab(String chromo, int point, MarkerVisitor visitor) {
+		Itree tree = getTreeChromo(chromo);
+		if (tree != null) tree.stab(point, visitor);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
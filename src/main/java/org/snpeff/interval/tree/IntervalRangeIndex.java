@@ -0,0 +1,302 @@
+package org.snpeff.interval.tree;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import org.snpeff.interval.Chromosome;
+import org.snpeff.interval.Interval;
+import org.snpeff.interval.Marker;
+import org.snpeff.interval.Markers;
+
+/**
+ * An index of intervals sorted by start position (one per chromosome).
+ *
+ * Queries are performed using a binary search and a range scan: all
+ * intervals intersecting [start, end] have a start coordinate in the
+ * range [start - maxLength, end], where 'maxLength' is the length of
+ * the largest interval in the chromosome.
+ *
+ * This works well for intervals of similar sizes, that are queried
+ * using large regions (e.g. finding genes hit by a large structural
+ * variant).
+ *
+ * Range scans are O(n) when a few intervals are much longer than the
+ * rest (e.g. one chromosome-long interval). If the longest interval in
+ * a chromosome is more than LONG_INTERVAL_FACTOR times the median
+ * length, overlap queries in that chromosome use an interval tree
+ * (IntervalTreeFlat) instead.
+ *
+ * The index also answers 'nearest interval' queries: intervals are
+ * kept sorted by start and by end, and a prefix maximum of end
+ * coordinates (in start order) is used to prune the overlap scan.
+ * Non-overlapping candidates are found by walking backwards from the
+ * last interval ending before the query and forward from the first
+ * interval starting after it, so finding the k closest intervals is
+ * O(log n + k).
+ *
+ * @author pcingola
+ */
+public class IntervalRangeIndex implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int LONG_INTERVAL_FACTOR = 100; // Use an interval tree if the longest interval is this many times longer than the median
+
+	/**
+	 * Intervals in one chromosome, sorted by start position
+	 */
+	static class ChrIndex implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		List<Marker> markerList = new ArrayList<>();
+		Marker markers[]; // Intervals sorted by start
+		int starts[], ends[];
+		int maxEnds[]; // Maximum end coordinate of markers[0 .. i]
+		Marker markersByEnd[]; // Intervals sorted by end
+		int endsSorted[]; // End coordinates of 'markersByEnd'
+		int maxLen;
+		IntervalTreeFlat tree; // Used for overlap queries when some intervals are too long for range scans (null otherwise)
+
+		void build() {
+			// Sort by start position
+			Collections.sort(markerList, new Comparator<Marker>() {
+				@Override
+				public int compare(Marker m1, Marker m2) {
+					return Integer.compare(m1.getStart(), m2.getStart());
+				}
+			});
+
+			int size = markerList.size();
+			markers = markerList.toArray(new Marker[size]);
+			starts = new int[size];
+			ends = new int[size];
+			maxEnds = new int[size];
+			maxLen = 0;
+			for (int i = 0; i < size; i++) {
+				starts[i] = markers[i].getStart();
+				ends[i] = markers[i].getEnd();
+				maxEnds[i] = (i > 0 ? Math.max(maxEnds[i - 1], ends[i]) : ends[i]);
+				maxLen = Math.max(maxLen, ends[i] - starts[i]);
+			}
+
+			// A few long intervals make range scans slow: use an interval tree
+			tree = null;
+			if (maxLen > LONG_INTERVAL_FACTOR * Math.max(1, medianLen())) {
+				tree = new IntervalTreeFlat();
+				for (Marker m : markers)
+					tree.add(m);
+				tree.build();
+			}
+
+			// Sort by end position
+			Collections.sort(markerList, new Comparator<Marker>() {
+				@Override
+				public int compare(Marker m1, Marker m2) {
+					return Integer.compare(m1.getEnd(), m2.getEnd());
+				}
+			});
+			markersByEnd = markerList.toArray(new Marker[size]);
+			endsSorted = new int[size];
+			for (int i = 0; i < size; i++)
+				endsSorted[i] = markersByEnd[i].getEnd();
+		}
+
+		/**
+		 * Index of the first interval having 'start >= pos'
+		 */
+		int firstStartAfter(int pos) {
+			int lo = 0, hi = starts.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (starts[mid] < pos) lo = mid + 1;
+				else hi = mid;
+			}
+			return lo;
+		}
+
+		/**
+		 * Index of the last interval (in 'markersByEnd') having 'end <= pos', -1 if none
+		 */
+		int lastEndBefore(int pos) {
+			int lo = 0, hi = endsSorted.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (endsSorted[mid] <= pos) lo = mid + 1;
+				else hi = mid;
+			}
+			return lo - 1;
+		}
+
+		/**
+		 * Median interval length
+		 */
+		int medianLen() {
+			if (starts.length == 0) return 0;
+			int lens[] = new int[starts.length];
+			for (int i = 0; i < lens.length; i++)
+				lens[i] = ends[i] - starts[i];
+			Arrays.sort(lens);
+			return lens[lens.length / 2];
+		}
+
+		/**
+		 * Add all intervals at minimum distance from [start, end]
+		 */
+		void nearest(int start, int end, Markers results) {
+			if (overlaps(start, end, Integer.MAX_VALUE, results) > 0) return;
+
+			int left = lastEndBefore(start - 1);
+			int right = firstStartAfter(end + 1);
+			int distLeft = (left >= 0 ? start - endsSorted[left] : Integer.MAX_VALUE);
+			int distRight = (right < starts.length ? starts[right] - end : Integer.MAX_VALUE);
+			int minDist = Math.min(distLeft, distRight);
+			if (minDist == Integer.MAX_VALUE) return; // Empty index
+
+			for (; left >= 0 && start - endsSorted[left] == minDist; left--)
+				results.add(markersByEnd[left]);
+			for (; right < starts.length && starts[right] - end == minDist; right++)
+				results.add(markers[right]);
+		}
+
+		/**
+		 * Add the 'k' intervals closest to [start, end], sorted by distance
+		 */
+		void nearest(int start, int end, int k, Markers results) {
+			int count = overlaps(start, end, k, results);
+
+			// Merge intervals on the left (sorted by end) and on the right (sorted by start)
+			int left = lastEndBefore(start - 1);
+			int right = firstStartAfter(end + 1);
+			for (; count < k && (left >= 0 || right < starts.length); count++) {
+				int distLeft = (left >= 0 ? start - endsSorted[left] : Integer.MAX_VALUE);
+				int distRight = (right < starts.length ? starts[right] - end : Integer.MAX_VALUE);
+				if (distLeft <= distRight) results.add(markersByEnd[left--]);
+				else results.add(markers[right++]);
+			}
+		}
+
+		/**
+		 * Add (at most 'max') intervals intersecting [start, end]
+		 * @return Number of intervals added
+		 */
+		int overlaps(int start, int end, int max, Markers results) {
+			if (tree != null) {
+				Markers found = new Markers();
+				tree.query(start, end, 0, tree.markers.length, found);
+				int count = Math.min(max, found.size());
+				for (int i = 0; i < count; i++)
+					results.add(found.get(i));
+				return count;
+			}
+
+			int count = 0;
+			for (int i = firstStartAfter(end + 1) - 1; i >= 0 && maxEnds[i] >= start && count < max; i--)
+				if (ends[i] >= start) {
+					results.add(markers[i]);
+					count++;
+				}
+			return count;
+		}
+
+		void query(int start, int end, Markers results) {
+			if (tree != null) {
+				tree.query(start, end, 0, tree.markers.length, results);
+				return;
+			}
+
+			for (int i = firstStartAfter(start - maxLen); i < starts.length && starts[i] <= end; i++)
+				if (ends[i] >= start) results.add(markers[i]);
+		}
+	}
+
+	HashMap<String, ChrIndex> indexByChr;
+
+	public IntervalRangeIndex() {
+		indexByChr = new HashMap<>();
+	}
+
+	/**
+	 * Add an interval
+	 */
+	public void add(Marker interval) {
+		if (interval == null) return;
+		String chr = Chromosome.simpleName(interval.getChromosomeName());
+		ChrIndex idx = indexByChr.get(chr);
+		if (idx == null) {
+			idx = new ChrIndex();
+			indexByChr.put(chr, idx);
+		}
+		idx.markerList.add(interval);
+	}
+
+	/**
+	 * Build index (sort intervals)
+	 */
+	public void build() {
+		for (ChrIndex idx : indexByChr.values()) {
+			idx.build();
+			idx.markerList = null;
+		}
+	}
+
+	/**
+	 * Get chromosome's index, null if not available
+	 */
+	ChrIndex getChrIndex(Interval interval) {
+		ChrIndex idx = indexByChr.get(Chromosome.simpleName(interval.getChromosomeName()));
+		if (idx == null || idx.markers == null) return null;
+		return idx;
+	}
+
+	/**
+	 * Find all intervals at minimum distance from 'interval'
+	 * (i.e. all intersecting intervals, if any)
+	 */
+	public Markers nearest(Interval interval) {
+		Markers results = new Markers();
+		ChrIndex idx = getChrIndex(interval);
+		if (idx != null) idx.nearest(interval.getStart(), interval.getEnd(), results);
+		return results;
+	}
+
+	/**
+	 * Find the 'k' intervals closest to 'interval', sorted by distance
+	 */
+	public Markers nearest(Interval interval, int k) {
+		Markers results = new Markers();
+		ChrIndex idx = getChrIndex(interval);
+		if (idx != null) idx.nearest(interval.getStart(), interval.getEnd(), k, results);
+		return results;
+	}
+
+	/**
+	 * Query all intervals that intersect 'interval'
+	 */
+	public Markers query(Interval interval) {
+		Markers results = new Markers();
+		query(interval, results);
+		return results;
+	}
+
+	/**
+	 * Query all intervals that intersect 'interval', add them to 'results'
+	 */
+	public void query(Interval interval, Markers results) {
+		ChrIndex idx = getChrIndex(interval);
+		if (idx == null) return;
+		idx.query(interval.getStart(), interval.getEnd(), results);
+	}
+
+	public int size() {
+		int size = 0;
+		for (ChrIndex idx : indexByChr.values())
+			size += (idx.markers != null ? idx.markers.length : idx.markerList.size());
+		return size;
+	}
+
+}
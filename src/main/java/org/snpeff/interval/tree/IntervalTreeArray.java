@@ -167,6 +167,12 @@ public class IntervalTreeArray implements Itree {
 		return results;
 	}
 
+	@Override
+	public void query(Interval interval, MarkerVisitor visitor) {
+		for (Marker m : query(interval))
+			visitor.visit(m);
+	}
+
 	/**
 	 * Query index to find all VCF entries intersecting 'marker', starting from node 'idx'
 	 * Store VCF entries in 'results'
@@ -259,6 +265,12 @@ public class IntervalTreeArray implements Itree {
 		return results;
 	}
 
+	@Override
+	public void stab(int point, MarkerVisitor visitor) {
+		for (Marker m : stab(point))
+			visitor.visit(m);
+	}
+
 	protected void stab(int point, int idx, Markers results) {
 		if (debug) Gpr.debug("stab( " + point + ", " + idx + " )\t" + toString(idx));
 
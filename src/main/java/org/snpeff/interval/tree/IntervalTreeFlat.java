@@ -0,0 +1,247 @@
+package org.snpeff.interval.tree;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.snpeff.interval.Genome;
+import org.snpeff.interval.Interval;
+import org.snpeff.interval.IntervalComparatorByStart;
+import org.snpeff.interval.Marker;
+import org.snpeff.interval.Markers;
+
+/**
+ * Interval tree stored in flat (primitive) arrays
+ *
+ * Intervals are sorted by start position and the tree is implicit: the
+ * root of the sub-array [lo, hi) is the element in the middle. For each
+ * node we store the maximum 'end' coordinate in its sub-tree (augmented
+ * interval tree), so whole sub-trees are skipped when they cannot
+ * reach the query.
+ *
+ * Starts, ends and max-ends are stored in parallel 'int' arrays, so
+ * queries do not dereference Marker objects until a match is found.
+ * Queries using a MarkerVisitor do not allocate any memory.
+ *
+ * @author pcingola
+ */
+public class IntervalTreeFlat implements Itree, Serializable {
+
+	private static final long serialVersionUID = -2420385117618311154L;
+
+	/**
+	 * Collect query results into a Markers object
+	 */
+	static class Collector implements MarkerVisitor {
+		Markers results = new Markers();
+
+		@Override
+		public void visit(Marker marker) {
+			results.add(marker);
+		}
+	}
+
+	protected Markers intervals; // Intervals to add
+	protected boolean inSync; // Do we need to build the tree?
+	protected Marker markers[]; // Intervals sorted by start position
+	protected int starts[]; // Start coordinates (sorted)
+	protected int ends[]; // End coordinates
+	protected int maxEnds[]; // Maximum 'end' coordinate in the sub-tree rooted at each element
+
+	public IntervalTreeFlat() {
+		this(null);
+	}
+
+	/**
+	 * Instantiate an interval tree with a list of intervals
+	 */
+	public IntervalTreeFlat(Markers intervals) {
+		this.intervals = new Markers();
+		if (intervals != null) this.intervals.add(intervals);
+		markers = new Marker[0];
+		starts = ends = maxEnds = new int[0];
+		inSync = (intervals == null);
+	}
+
+	@Override
+	public void add(Marker interval) {
+		intervals.add(interval);
+		inSync = false;
+	}
+
+	@Override
+	public void add(Markers markers) {
+		intervals.add(markers);
+		inSync = false;
+	}
+
+	@Override
+	public void build() {
+		if (inSync) return;
+
+		// Sort by start position
+		markers = intervals.toArray();
+		Arrays.sort(markers, new IntervalComparatorByStart());
+
+		int size = markers.length;
+		starts = new int[size];
+		ends = new int[size];
+		maxEnds = new int[size];
+		for (int i = 0; i < size; i++) {
+			starts[i] = markers[i].getStart();
+			ends[i] = markers[i].getEnd();
+		}
+
+		buildMaxEnd(0, size);
+		inSync = true;
+	}
+
+	/**
+	 * Calculate 'maxEnds' for the sub-tree [lo, hi)
+	 * @return Maximum end coordinate in the sub-tree
+	 */
+	int buildMaxEnd(int lo, int hi) {
+		if (lo >= hi) return Integer.MIN_VALUE;
+
+		int mid = (lo + hi) >>> 1;
+		int maxEnd = Math.max(ends[mid], Math.max(buildMaxEnd(lo, mid), buildMaxEnd(mid + 1, hi)));
+		maxEnds[mid] = maxEnd;
+		return maxEnd;
+	}
+
+	@Override
+	public Markers getIntervals() {
+		return intervals;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return intervals.isEmpty();
+	}
+
+	@Override
+	public boolean isInSync() {
+		return inSync;
+	}
+
+	@Override
+	public Iterator<Marker> iterator() {
+		return intervals.iterator();
+	}
+
+	@Override
+	public void load(String fileName, Genome genome) {
+		intervals.load(fileName, genome);
+		inSync = false;
+	}
+
+	@Override
+	public Markers query(Interval interval) {
+		Collector collector = new Collector();
+		query(interval, collector);
+		return collector.results;
+	}
+
+	@Override
+	public void query(Interval interval, MarkerVisitor visitor) {
+		if (!inSync) throw new RuntimeException("Interval tree needs to be updated!");
+		query(interval.getStart(), interval.getEnd(), 0, markers.length, visitor);
+	}
+
+	/**
+	 * Find all intervals in the sub-tree [lo, hi) intersecting [start, end]
+	 */
+	protected void query(int start, int end, int lo, int hi, MarkerVisitor visitor) {
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+
+			// No interval in this sub-tree reaches 'start'
+			if (maxEnds[mid] < start) return;
+
+			// Left sub-tree
+			query(start, end, lo, mid, visitor);
+
+			// This node and the right sub-tree start after 'end'
+			if (starts[mid] > end) return;
+
+			if (ends[mid] >= start) visitor.visit(markers[mid]);
+
+			// Right sub-tree (iterate instead of recursing)
+			lo = mid + 1;
+		}
+	}
+
+	/**
+	 * Add all intervals intersecting 'interval' to 'results'
+	 * Note: No memory is allocated (other than growing 'results')
+	 */
+	public void query(Interval interval, Markers results) {
+		if (!inSync) throw new RuntimeException("Interval tree needs to be updated!");
+		query(interval.getStart(), interval.getEnd(), 0, markers.length, results);
+	}
+
+	/**
+	 * Add all intervals in the sub-tree [lo, hi) intersecting [start, end] to 'results'
+	 */
+	protected void query(int start, int end, int lo, int hi, Markers results) {
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (maxEnds[mid] < start) return;
+			query(start, end, lo, mid, results);
+			if (starts[mid] > end) return;
+			if (ends[mid] >= start) results.add(markers[mid]);
+			lo = mid + 1;
+		}
+	}
+
+	/**
+	 * Find the first interval (i.e. lowest start) of class 'clazz' intersecting [start, end]
+	 * @return Interval found or null if there is none
+	 */
+	public Marker queryFirst(int start, int end, Class<? extends Marker> clazz) {
+		if (!inSync) throw new RuntimeException("Interval tree needs to be updated!");
+		return queryFirst(start, end, 0, markers.length, clazz);
+	}
+
+	/**
+	 * Find the first interval of class 'clazz' in the sub-tree [lo, hi) intersecting [start, end]
+	 */
+	protected Marker queryFirst(int start, int end, int lo, int hi, Class<? extends Marker> clazz) {
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (maxEnds[mid] < start) return null;
+
+			Marker first = queryFirst(start, end, lo, mid, clazz);
+			if (first != null) return first;
+
+			if (starts[mid] > end) return null;
+			if (ends[mid] >= start && clazz.isInstance(markers[mid])) return markers[mid];
+			lo = mid + 1;
+		}
+		return null;
+	}
+
+	@Override
+	public int size() {
+		return intervals.size();
+	}
+
+	@Override
+	public Markers stab(int point) {
+		Collector collector = new Collector();
+		stab(point, collector);
+		return collector.results;
+	}
+
+	@Override
+	public void stab(int point, MarkerVisitor visitor) {
+		if (!inSync) throw new RuntimeException("Interval tree needs to be updated!");
+		query(point, point, 0, markers.length, visitor);
+	}
+
+	@Override
+	public String toString() {
+		return "Size: " + markers.length + ", in sync: " + inSync;
+	}
+
+}
@@ -129,6 +129,12 @@ public class IntervalTreeOri implements Itree, Serializable {
 		return head.query(interval);
 	}
 
+	@Override
+	public void query(Interval interval, MarkerVisitor visitor) {
+		for (Marker m : query(interval))
+			visitor.visit(m);
+	}
+
 	/**
 	 * Size: number of entries in the interval list
 	 */
@@ -147,6 +153,12 @@ public class IntervalTreeOri implements Itree, Serializable {
 		return head.stab(point);
 	}
 
+	@Override
+	public void stab(int point, MarkerVisitor visitor) {
+		for (Marker m : stab(point))
+			visitor.visit(m);
+	}
+
 	@Override
 	public String toString() {
 		return nodeString(head, 0);
@@ -49,6 +49,12 @@ public interface Itree extends Iterable<Marker> {
 	 */
 	public Markers query(Interval interval);
 
+	/**
+	 * Perform an interval query, invoking 'visitor' for each
+	 * interval that intersects 'interval'
+	 */
+	public void query(Interval interval, MarkerVisitor visitor);
+
 	/**
 	 * Size: number of entries in this tree
 	 */
@@ -60,4 +66,10 @@ public interface Itree extends Iterable<Marker> {
 	 */
 	public Markers stab(int point);
 
+	/**
+	 * Perform a stabbing query, invoking 'visitor' for each
+	 * interval intersecting 'point'
+	 */
+	public void stab(int point, MarkerVisitor visitor);
+
 }
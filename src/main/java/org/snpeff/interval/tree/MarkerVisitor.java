@@ -0,0 +1,18 @@
+package org.snpeff.interval.tree;
+
+import org.snpeff.interval.Marker;
+
+/**
+ * Receives intervals found by a query, instead of collecting
+ * them into a (newly allocated) Markers object
+ *
+ * @author pcingola
+ */
+public interface MarkerVisitor {
+
+	/**
+	 * An interval matches the query
+	 */
+	public void visit(Marker marker);
+
+}
@@ -1,5 +1,7 @@
 package org.snpeff.motif;
 
+import java.io.Serializable;
+
 import org.snpeff.util.Gpr;
 
 /**
@@ -9,7 +11,9 @@ import org.snpeff.util.Gpr;
  *
  * @author pcingola
  */
-public class Pwm {
+public class Pwm implements Serializable {
+
+	private static final long serialVersionUID = 6913409548376012354L;
 
 	public static final int SCALE = 100;
 	static final double LOG2 = Math.log(2);
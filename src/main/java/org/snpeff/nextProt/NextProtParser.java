@@ -771,17 +771,17 @@ public class NextProtParser {
 
 					if ((aaStart >= 0) && (aaEnd >= aaStart)) {
 						// Try to map to chromosome position
-						int cdsBase2Pos[] = tr.baseNumberCds2Pos();
+						int cdsLen = tr.cds().length();
 						int codonStart = aaStart * 3;
 						int codonEnd = (aaEnd + 1) * 3 - 1;
 
-						if (codonStart < cdsBase2Pos.length && codonEnd < cdsBase2Pos.length) {
+						if (codonStart < cdsLen && codonEnd < cdsLen) {
 							if (tr.isStrandPlus()) {
-								trData.chrPosStart = cdsBase2Pos[codonStart];
-								trData.chrPosEnd = cdsBase2Pos[codonEnd];
+								trData.chrPosStart = tr.cdsBaseNumber2Pos(codonStart);
+								trData.chrPosEnd = tr.cdsBaseNumber2Pos(codonEnd);
 							} else {
-								trData.chrPosStart = cdsBase2Pos[codonEnd];
-								trData.chrPosEnd = cdsBase2Pos[codonStart];
+								trData.chrPosStart = tr.cdsBaseNumber2Pos(codonEnd);
+								trData.chrPosEnd = tr.cdsBaseNumber2Pos(codonStart);
 							}
 
 							trData.chrName = tr.getChromosomeName();
@@ -25,10 +25,18 @@ public class BedOutputFormatter extends OutputFormatter {
 	 * @param marker
 	 */
 	@Override
-	public String endSection(Marker marker) {
+	public boolean endSection(Marker marker, StringBuilder sb) {
 		// Ignore other markers (e.g. seqChanges)
-		if (marker instanceof Variant) return super.endSection(marker);
-		return null;
+		if (marker instanceof Variant) return super.endSection(marker, sb);
+		return false;
+	}
+
+	/**
+	 * BED coordinates are zero-based: Sequence, start and end columns
+	 */
+	@Override
+	protected TabixIndexer newTabixIndexer() {
+		return new TabixIndexer(TabixIndexer.PRESET_GENERIC | TabixIndexer.PRESET_ZERO_BASED, 1, 2, 3);
 	}
 
 	@Override
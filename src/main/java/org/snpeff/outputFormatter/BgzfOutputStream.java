@@ -0,0 +1,314 @@
+package org.snpeff.outputFormatter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Write BGZF compressed data (i.e. 'bgzip' format)
+ *
+ * Data is split into blocks (up to BLOCK_SIZE uncompressed bytes)
+ * which are compressed in parallel by a pool of threads and written
+ * in order.
+ *
+ * Positions in the uncompressed stream are reported as 'block offsets',
+ * i.e. (blockNumber << 16 | offsetInBlock), because compressed addresses
+ * are not known until blocks are compressed. Block offsets can be
+ * converted to BGZF virtual file offsets after the stream has been
+ * written (see 'virtualOffset()').
+ *
+ * Reference: SAM format specification, section 4.1 "The BGZF compression format"
+ *
+ * Note: Only one thread should write to a BgzfOutputStream
+ *
+ * @author pcingola
+ */
+public class BgzfOutputStream extends OutputStream {
+
+	public static final int BLOCK_SIZE = 0xff00; // Max uncompressed bytes per block (same as bgzip)
+	public static final int MAX_BLOCK_SIZE = 64 * 1024; // Max compressed block size (including header and footer)
+	public static final int BLOCK_HEADER_SIZE = 18;
+	public static final int BLOCK_FOOTER_SIZE = 8;
+	public static int COMPRESSION_LEVEL = 5;
+	public static final int BLOCKS_PER_THREAD = 4; // Max number of blocks being compressed (per thread)
+
+	// Empty block, marks the end of a BGZF file
+	public static final byte EOF_BLOCK[] = { 0x1f, (byte) 0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff, 0x06, 0x00, 0x42, 0x43, 0x02, 0x00, 0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00 };
+
+	/**
+	 * A block: Uncompressed and compressed data
+	 */
+	class Block implements Callable<Block> {
+		byte data[] = new byte[BLOCK_SIZE];
+		int len; // Uncompressed length
+		byte compressed[] = new byte[MAX_BLOCK_SIZE];
+		int compressedLen;
+
+		@Override
+		public Block call() {
+			compress(this);
+			return this;
+		}
+	}
+
+	OutputStream out;
+	int numThreads;
+	boolean closed;
+	long blockNum; // Current block number
+	long address; // Compressed bytes written so far
+	long blockAddress[]; // Compressed address of each block
+	Block block; // Current (uncompressed) block
+	ArrayDeque<Future<Block>> pending; // Blocks being compressed, in output order
+	ArrayDeque<Block> freeBlocks; // Blocks that can be reused
+	ExecutorService executor;
+	Deflater deflater; // Used when compressing in this thread
+	ThreadLocal<Deflater> deflaters; // Used by compressing threads
+	List<Deflater> threadDeflaters; // All deflaters created by compressing threads (released in 'close()')
+
+	/**
+	 * Constructor
+	 * @param out : Output stream (compressed blocks are written here)
+	 * @param numThreads : Number of compressing threads (if less than 2, blocks are compressed in this thread)
+	 */
+	public BgzfOutputStream(OutputStream out, int numThreads) {
+		this.out = out;
+		this.numThreads = numThreads;
+		blockAddress = new long[1024];
+		block = new Block();
+		pending = new ArrayDeque<>();
+		freeBlocks = new ArrayDeque<>();
+
+		if (numThreads > 1) {
+			executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "BgzfOutputStream");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+			threadDeflaters = new ArrayList<>();
+			deflaters = new ThreadLocal<Deflater>() {
+				@Override
+				protected Deflater initialValue() {
+					Deflater deflater = new Deflater(COMPRESSION_LEVEL, true);
+					synchronized (threadDeflaters) {
+						threadDeflaters.add(deflater);
+					}
+					return deflater;
+				}
+			};
+		} else deflater = new Deflater(COMPRESSION_LEVEL, true);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+
+		try {
+			flush();
+			out.write(EOF_BLOCK);
+			out.close();
+		} finally {
+			if (executor != null) executor.shutdown();
+			endDeflaters();
+		}
+	}
+
+	/**
+	 * Compress a block
+	 */
+	void compress(Block block) {
+		Deflater deflater = (deflaters != null ? deflaters.get() : this.deflater);
+		byte compressed[] = block.compressed;
+		int maxLen = MAX_BLOCK_SIZE - BLOCK_HEADER_SIZE - BLOCK_FOOTER_SIZE;
+
+		// Compress
+		deflater.reset();
+		deflater.setLevel(COMPRESSION_LEVEL);
+		deflater.setInput(block.data, 0, block.len);
+		deflater.finish();
+		int len = deflater.deflate(compressed, BLOCK_HEADER_SIZE, maxLen);
+
+		// Could not compress into one block? Data is incompressible: Just store it
+		if (!deflater.finished()) {
+			deflater.reset();
+			deflater.setLevel(Deflater.NO_COMPRESSION);
+			deflater.setInput(block.data, 0, block.len);
+			deflater.finish();
+			len = deflater.deflate(compressed, BLOCK_HEADER_SIZE, maxLen);
+			if (!deflater.finished()) throw new RuntimeException("Cannot compress BGZF block: Block too large");
+		}
+
+		// Header
+		int blockSize = BLOCK_HEADER_SIZE + len + BLOCK_FOOTER_SIZE;
+		compressed[0] = 0x1f; // GZIP identifier
+		compressed[1] = (byte) 0x8b;
+		compressed[2] = 8; // Compression method: Deflate
+		compressed[3] = 4; // Flags: Extra field
+		writeInt(compressed, 4, 0); // Modification time
+		compressed[8] = 0; // Extra flags
+		compressed[9] = (byte) 0xff; // OS: Unknown
+		writeShort(compressed, 10, 6); // Extra field length
+		compressed[12] = 'B'; // BGZF sub-field: Total block size - 1
+		compressed[13] = 'C';
+		writeShort(compressed, 14, 2);
+		writeShort(compressed, 16, blockSize - 1);
+
+		// Footer
+		CRC32 crc = new CRC32();
+		crc.update(block.data, 0, block.len);
+		writeInt(compressed, BLOCK_HEADER_SIZE + len, (int) crc.getValue());
+		writeInt(compressed, BLOCK_HEADER_SIZE + len + 4, block.len);
+
+		block.compressedLen = blockSize;
+	}
+
+	/**
+	 * Release deflaters' native memory
+	 * Note: No blocks must be being compressed (all pending blocks are written by 'flush()')
+	 */
+	void endDeflaters() {
+		if (deflater != null) deflater.end();
+		if (threadDeflaters != null) {
+			synchronized (threadDeflaters) {
+				for (Deflater d : threadDeflaters)
+					d.end();
+				threadDeflaters.clear();
+			}
+		}
+	}
+
+	/**
+	 * Flush: Compress and write current block (even if it is not full)
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (block.len > 0) nextBlock();
+		while (!pending.isEmpty())
+			writeNextPending();
+		out.flush();
+	}
+
+	/**
+	 * Current position (in the uncompressed stream) as a block offset, i.e. (blockNumber << 16 | offsetInBlock)
+	 */
+	public long getBlockOffset() {
+		if (block.len >= BLOCK_SIZE) return (blockNum + 1) << 16; // Block is full: Next byte will be in the next block
+		return (blockNum << 16) | block.len;
+	}
+
+	/**
+	 * Submit current block for compression and start a new block
+	 */
+	void nextBlock() throws IOException {
+		if (executor != null) {
+			// Too many blocks being compressed? Wait for the first one and write it
+			if (pending.size() >= BLOCKS_PER_THREAD * numThreads) writeNextPending();
+			pending.add(executor.submit(block));
+		} else {
+			compress(block);
+			write(block);
+		}
+
+		// Start a new block
+		blockNum++;
+		block = freeBlocks.poll();
+		if (block == null) block = new Block();
+		block.len = 0;
+	}
+
+	/**
+	 * Convert a block offset into a BGZF virtual file offset, i.e. (compressedAddress << 16 | offsetInBlock)
+	 * Note: Blocks must have already been written (e.g. after 'flush()' or 'close()')
+	 */
+	public long virtualOffset(long blockOffset) {
+		long bn = blockOffset >>> 16;
+		long addr;
+		if (bn < blockNum - pending.size()) addr = blockAddress[(int) bn];
+		else if (bn == blockNum && block.len == 0 && pending.isEmpty()) addr = address; // Next block to be written
+		else throw new RuntimeException("Block " + bn + " has not been written yet");
+
+		return (addr << 16) | (blockOffset & 0xffff);
+	}
+
+	/**
+	 * Write a compressed block
+	 */
+	void write(Block block) throws IOException {
+		// Record block address
+		int bn = (int) (blockNum - pending.size());
+		if (bn >= blockAddress.length) blockAddress = Arrays.copyOf(blockAddress, 2 * blockAddress.length);
+		blockAddress[bn] = address;
+
+		out.write(block.compressed, 0, block.compressedLen);
+		address += block.compressedLen;
+		freeBlocks.add(block);
+	}
+
+	@Override
+	public void write(byte b[], int off, int len) throws IOException {
+		while (len > 0) {
+			if (block.len >= BLOCK_SIZE) nextBlock();
+			int n = Math.min(len, BLOCK_SIZE - block.len);
+			System.arraycopy(b, off, block.data, block.len, n);
+			block.len += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (block.len >= BLOCK_SIZE) nextBlock();
+		block.data[block.len++] = (byte) b;
+	}
+
+	/**
+	 * Write little endian int
+	 */
+	void writeInt(byte buf[], int idx, int value) {
+		buf[idx] = (byte) value;
+		buf[idx + 1] = (byte) (value >>> 8);
+		buf[idx + 2] = (byte) (value >>> 16);
+		buf[idx + 3] = (byte) (value >>> 24);
+	}
+
+	/**
+	 * Wait for the first pending block to be compressed and write it
+	 */
+	void writeNextPending() throws IOException {
+		Future<Block> future = pending.peek();
+		Block block;
+		try {
+			block = future.get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Error compressing BGZF block", e);
+		}
+
+		write(block);
+		pending.poll();
+	}
+
+	/**
+	 * Write little endian short
+	 */
+	void writeShort(byte buf[], int idx, int value) {
+		buf[idx] = (byte) value;
+		buf[idx + 1] = (byte) (value >>> 8);
+	}
+
+}
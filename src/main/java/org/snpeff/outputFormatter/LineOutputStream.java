@@ -0,0 +1,179 @@
+package org.snpeff.outputFormatter;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Write text lines to a file (or STDOUT)
+ *
+ * Lines are encoded into reusable buffers (i.e. no intermediate
+ * String or byte[] is created for each line) and written through
+ * a large buffer. Output can be BGZF compressed (i.e. 'bgzip' format)
+ * using several threads, and a tabix index can be created on the fly
+ *
+ * Note: Only one thread should write to a LineOutputStream
+ *
+ * @author pcingola
+ */
+public class LineOutputStream {
+
+	public static int BUFFER_SIZE = 1024 * 1024;
+
+	String fileName;
+	OutputStream out;
+	BgzfOutputStream bgzf; // BGZF compressed stream (null if output is not compressed)
+	TabixIndexer tabixIndexer; // Create a tabix index (null if no index is created)
+	char chars[]; // Reusable buffer: Characters to encode
+	byte bytes[]; // Reusable buffer: Encoded bytes
+
+	/**
+	 * Constructor
+	 * @param fileName : Output file name (null for STDOUT)
+	 * @param bgzip : Compress using BGZF format
+	 */
+	public LineOutputStream(String fileName, boolean bgzip) {
+		this(fileName, bgzip, 1, null);
+	}
+
+	/**
+	 * Constructor
+	 * @param fileName : Output file name (null for STDOUT)
+	 * @param bgzip : Compress using BGZF format
+	 * @param numThreads : Number of threads used for BGZF compression
+	 * @param tabixIndexer : Create a tabix index (i.e. 'fileName.tbi'). Can be null
+	 */
+	public LineOutputStream(String fileName, boolean bgzip, int numThreads, TabixIndexer tabixIndexer) {
+		this.fileName = fileName;
+		this.tabixIndexer = tabixIndexer;
+		if (tabixIndexer != null) {
+			if (fileName == null) throw new RuntimeException("Cannot create tabix index when writing to STDOUT");
+			bgzip = true; // Tabix indexes require BGZF compressed files
+		}
+
+		try {
+			// Do not close STDOUT when we are done
+			OutputStream os = (fileName != null ? new FileOutputStream(fileName) : new FilterOutputStream(System.out) {
+				@Override
+				public void close() throws IOException {
+					flush();
+				}
+
+				@Override
+				public void write(byte b[], int off, int len) throws IOException {
+					this.out.write(b, off, len); // Write whole blocks (FilterOutputStream writes one byte at a time)
+				}
+			});
+
+			if (bgzip) out = bgzf = new BgzfOutputStream(new BufferedOutputStream(os, BUFFER_SIZE), numThreads);
+			else out = new BufferedOutputStream(os, BUFFER_SIZE);
+		} catch (IOException e) {
+			throw new RuntimeException("Error opening output " + (fileName != null ? "file '" + fileName + "'" : "STDOUT"), e);
+		}
+
+		chars = new char[1024];
+		bytes = new byte[1024];
+	}
+
+	public void close() {
+		try {
+			out.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		if (tabixIndexer != null) tabixIndexer.write(fileName + ".tbi", bgzf);
+	}
+
+	public void flush() {
+		try {
+			out.flush();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Write characters [start, end) from 'cs'
+	 */
+	public void write(CharSequence cs, int start, int end) {
+		int len = end - start;
+		if (len <= 0) return;
+
+		// Make sure buffers are large enough
+		if (chars.length < len) {
+			int size = Math.max(len, 2 * chars.length);
+			chars = new char[size];
+			bytes = new byte[size];
+		}
+
+		// Copy characters
+		if (cs instanceof String) ((String) cs).getChars(start, end, chars, 0);
+		else if (cs instanceof StringBuilder) ((StringBuilder) cs).getChars(start, end, chars, 0);
+		else {
+			for (int i = 0; i < len; i++)
+				chars[i] = cs.charAt(start + i);
+		}
+
+		try {
+			// Encode: Most output is plain ASCII
+			for (int i = 0; i < len; i++) {
+				char c = chars[i];
+				if (c >= 0x80) {
+					// Not ASCII: Use default encoding
+					out.write(new String(chars, 0, len).getBytes());
+					return;
+				}
+				bytes[i] = (byte) c;
+			}
+
+			out.write(bytes, 0, len);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Write characters [start, end) from 'cs' and a new line
+	 */
+	public void writeLine(CharSequence cs, int start, int end) {
+		if (tabixIndexer != null) {
+			writeLineIndex(cs, start, end);
+			return;
+		}
+
+		write(cs, start, end);
+		try {
+			out.write('\n');
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Write characters [start, end) from 'cs' and a new line, add each line to the index
+	 * Note: 'cs' may contain several lines (e.g. a header)
+	 */
+	void writeLineIndex(CharSequence cs, int start, int end) {
+		try {
+			for (int lineStart = start; lineStart <= end;) {
+				int lineEnd = lineStart;
+				while (lineEnd < end && cs.charAt(lineEnd) != '\n')
+					lineEnd++;
+
+				long offsetStart = bgzf.getBlockOffset();
+				write(cs, lineStart, lineEnd);
+				out.write('\n');
+				tabixIndexer.add(cs, lineStart, lineEnd, offsetStart, bgzf.getBlockOffset());
+
+				if (lineEnd >= end) break;
+				lineStart = lineEnd + 1;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -1,8 +1,5 @@
 package org.snpeff.outputFormatter;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,13 +25,17 @@ public abstract class OutputFormatter {
 	boolean useGeneId; // Use Gene ID instead of gene name
 	boolean useSequenceOntology; // Use Sequence Ontology terms
 	boolean useOicr; // Use OICR tag
+	boolean bgzip; // Compress output (BGZF format)
+	boolean tabix; // Create a tabix index (implies BGZF output)
+	int numThreads = 1; // Number of threads used for BGZF compression
 	int sectionNum = 0;
 	int outOffset = 1;
 	String commandLineStr;
 	String version;
 	String chrStr;
 	String outputFile = null;
-	BufferedWriter out;
+	LineOutputStream out;
+	StringBuilder sb; // Reusable buffer: Output for current section
 	Marker section;
 	VariantEffectFilter variantEffectResutFilter = null; // Filter prediction results
 	List<VariantEffect> variantEffects;
@@ -42,6 +43,7 @@ public abstract class OutputFormatter {
 
 	public OutputFormatter() {
 		variantEffects = new ArrayList<VariantEffect>();
+		sb = new StringBuilder();
 	}
 
 	/**
@@ -64,6 +66,9 @@ public abstract class OutputFormatter {
 			newOutputFormatter.useGeneId = useGeneId;
 			newOutputFormatter.useSequenceOntology = useSequenceOntology;
 			newOutputFormatter.useOicr = useOicr;
+			newOutputFormatter.bgzip = bgzip;
+			newOutputFormatter.tabix = tabix;
+			newOutputFormatter.numThreads = numThreads;
 			newOutputFormatter.sectionNum = sectionNum;
 			newOutputFormatter.outOffset = outOffset;
 			newOutputFormatter.commandLineStr = commandLineStr;
@@ -85,19 +90,26 @@ public abstract class OutputFormatter {
 	 */
 	public void close() {
 		if (out != null) {
-			try {
-				out.close();
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
+			out.close();
+			out = null;
 		}
 	}
 
 	/**
 	 * Finish up section
+	 * @return Output string or null if there is no output
 	 */
 	public String endSection(Marker marker) {
-		StringBuilder sb = new StringBuilder();
+		sb.setLength(0);
+		return endSection(marker, sb) ? sb.toString() : null;
+	}
+
+	/**
+	 * Finish up section, append output to 'sb'
+	 * @return true if any output was appended
+	 */
+	public boolean endSection(Marker marker, StringBuilder sb) {
+		int len = sb.length();
 
 		// Add header?
 		if (showHeader && (sectionNum == 0)) {
@@ -109,32 +121,58 @@ public abstract class OutputFormatter {
 		}
 
 		// Add current line
-		sb.append(toString());
+		toString(sb);
 
 		sectionNum++;
 		variantEffects.clear();
 
-		return supressOutput ? null : sb.toString();
+		if (supressOutput) {
+			sb.setLength(len);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Create a tabix indexer for this output format
+	 * @return A tabix indexer or null if the format cannot be indexed
+	 */
+	protected TabixIndexer newTabixIndexer() {
+		return null;
+	}
+
+	/**
+	 * Open output stream (null 'fileName' means STDOUT)
+	 */
+	LineOutputStream open(String fileName) {
+		TabixIndexer tabixIndexer = null;
+		if (tabix) {
+			tabixIndexer = newTabixIndexer();
+			if (tabixIndexer == null) throw new RuntimeException("Cannot create tabix index for output format '" + getClass().getSimpleName() + "'");
+		}
+
+		return new LineOutputStream(fileName, bgzip || tabix, numThreads, tabixIndexer);
 	}
 
 	/**
 	 * Print a "raw" string to a file
 	 */
-	public void print(String outStr) {
-		try {
-			// Open output file?
-			if ((outputFile != null) && (out == null)) out = new BufferedWriter(new FileWriter(outputFile));
-
-			// Write something?
-			if ((outStr != null) && (!outStr.isEmpty())) {
-				// Write to file?
-				if (out != null) {
-					out.write(outStr);
-					out.write("\n");
-				} else if (!supressOutput) System.out.println(outStr); // Show on STDOUT
-			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+	public void print(CharSequence outStr) {
+		if (outStr != null) print(outStr, 0, outStr.length());
+	}
+
+	/**
+	 * Print characters [start, end) from 'outStr' (and a new line) to a file or STDOUT
+	 */
+	public void print(CharSequence outStr, int start, int end) {
+		// Open output file?
+		if ((outputFile != null) && (out == null)) out = open(outputFile);
+
+		// Write something?
+		if ((outStr != null) && (start < end)) {
+			if (out == null && !supressOutput) out = open(null); // Show on STDOUT (flushed on 'close()')
+			if (out != null) out.writeLine(outStr, start, end);
 		}
 	}
 
@@ -142,7 +180,12 @@ public abstract class OutputFormatter {
 	 * End this section and print results
 	 */
 	public void printSection(Marker marker) {
-		print(endSection(marker));
+		sb.setLength(0);
+		if (endSection(marker, sb)) print(sb, 0, sb.length());
+	}
+
+	public void setBgzip(boolean bgzip) {
+		this.bgzip = bgzip;
 	}
 
 	public void setChrStr(String chrStr) {
@@ -157,6 +200,10 @@ public abstract class OutputFormatter {
 		this.config = config;
 	}
 
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
 	public void setOutOffset(int outOffset) {
 		this.outOffset = outOffset;
 	}
@@ -173,6 +220,10 @@ public abstract class OutputFormatter {
 		this.supressOutput = supressOutput;
 	}
 
+	public void setTabix(boolean tabix) {
+		this.tabix = tabix;
+	}
+
 	public void setUseGeneId(boolean useGeneId) {
 		this.useGeneId = useGeneId;
 	}
@@ -209,6 +260,13 @@ public abstract class OutputFormatter {
 		throw new RuntimeException("Method toString() must be overridden!");
 	}
 
+	/**
+	 * Append current section to 'sb'
+	 */
+	protected void toString(StringBuilder sb) {
+		sb.append(toString());
+	}
+
 	/**
 	 * Show header
 	 */
@@ -0,0 +1,348 @@
+package org.snpeff.outputFormatter;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.snpeff.util.Timer;
+
+/**
+ * Create a tabix index ('.tbi' file) while lines are written to a
+ * BGZF compressed file.
+ *
+ * Each line is parsed (sequence name, start and end columns) and
+ * added to the binning and linear indexes. Positions are kept as
+ * 'block offsets' (see BgzfOutputStream) and converted to virtual
+ * file offsets when the index is written.
+ *
+ * Input must be sorted by position and each sequence (chromosome)
+ * must be in one contiguous group of lines, otherwise no index
+ * is created.
+ *
+ * Reference: Tabix file format, see 'net.sf.samtools.tabix.TabixReader'
+ *
+ * @author pcingola
+ */
+public class TabixIndexer {
+
+	public static final int PRESET_GENERIC = 0;
+	public static final int PRESET_SAM = 1;
+	public static final int PRESET_VCF = 2;
+	public static final int PRESET_ZERO_BASED = 0x10000; // Flag: Coordinates are zero-based, half open (e.g. BED)
+
+	public static final int LINEAR_SHIFT = 14; // Linear index window size is 2^14 = 16Kb
+	public static final int MAX_POS = 1 << 29; // Max position supported by the binning index
+
+	/**
+	 * Index for one sequence (chromosome)
+	 */
+	class SeqIndex {
+		String name;
+		HashMap<Integer, long[]> chunksByBin = new HashMap<>(); // Chunks (pairs of block offsets: start, end) for each bin
+		HashMap<Integer, Integer> numChunksByBin = new HashMap<>();
+		long linear[] = new long[16]; // Linear index: Smallest offset of lines overlapping each 16Kb window
+		int linearSize;
+
+		SeqIndex(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Add a chunk to a bin (merge with the previous chunk if they are adjacent)
+		 */
+		void addChunk(int bin, long start, long end) {
+			long chunks[] = chunksByBin.get(bin);
+			int num = (chunks != null ? numChunksByBin.get(bin) : 0);
+
+			if (num > 0 && chunks[2 * num - 1] == start) {
+				chunks[2 * num - 1] = end; // Adjacent to previous chunk: Merge
+				return;
+			}
+
+			if (chunks == null) chunks = new long[4];
+			else if (2 * num + 2 > chunks.length) chunks = Arrays.copyOf(chunks, 2 * chunks.length);
+			chunks[2 * num] = start;
+			chunks[2 * num + 1] = end;
+			chunksByBin.put(bin, chunks);
+			numChunksByBin.put(bin, num + 1);
+		}
+
+		/**
+		 * Update linear index
+		 */
+		void addLinear(int beg, int end, long offset) {
+			int wstart = beg >> LINEAR_SHIFT;
+			int wend = (end - 1) >> LINEAR_SHIFT;
+			if (wend >= linear.length) linear = Arrays.copyOf(linear, Math.max(wend + 1, 2 * linear.length));
+
+			for (int w = wstart; w <= wend; w++)
+				if (linear[w] == 0) linear[w] = offset;
+			linearSize = Math.max(linearSize, wend + 1);
+		}
+	}
+
+	int preset, colSeq, colBeg, colEnd; // Tabix parameters (columns are 1-based, 'colEnd' is zero if there is no end column)
+	int maxCol; // Last column to parse
+	char meta = '#'; // Lines starting with this character are skipped
+	boolean valid = true; // Index is invalid (e.g. input not sorted)
+	String error;
+	List<SeqIndex> seqIndexes;
+	HashSet<String> seqNames; // Sequence names already indexed
+	SeqIndex current; // Sequence being indexed
+	int currentBin = -1, lastBeg;
+	long chunkStart, lastOffset;
+
+	public TabixIndexer(int preset, int colSeq, int colBeg, int colEnd) {
+		this.preset = preset;
+		this.colSeq = colSeq;
+		this.colBeg = colBeg;
+		this.colEnd = colEnd;
+		maxCol = Math.max(colSeq, Math.max(colBeg, colEnd));
+		if ((preset & 0xffff) == PRESET_VCF) maxCol = Math.max(maxCol, 8); // Parse REF and INFO
+		seqIndexes = new ArrayList<>();
+		seqNames = new HashSet<>();
+	}
+
+	/**
+	 * Add a line to the index
+	 * @param line : Line is characters [start, end) from 'line'
+	 * @param offsetStart : Block offset where the line starts
+	 * @param offsetEnd : Block offset where the line ends (i.e. where the next line starts)
+	 */
+	public void add(CharSequence line, int start, int end, long offsetStart, long offsetEnd) {
+		if (!valid || start >= end || line.charAt(start) == meta) return;
+
+		// Parse columns
+		int col = 1, seqStart = -1, seqEnd = -1, beg = -1, regEnd = -1;
+		for (int i = start; i <= end && col <= maxCol; col++) {
+			int j = i;
+			while (j < end && line.charAt(j) != '\t')
+				j++;
+
+			if (col == colSeq) {
+				seqStart = i;
+				seqEnd = j;
+			} else if (col == colBeg) {
+				beg = parseInt(line, i, j);
+			} else if (col == colEnd) {
+				regEnd = parseInt(line, i, j);
+			} else if ((preset & 0xffff) == PRESET_VCF) {
+				if (col == 4) regEnd = beg - 1 + Math.max(1, j - i); // REF
+				else if (col == 8) { // INFO: Use 'END' if available
+					int infoEnd = parseInfoEnd(line, i, j);
+					if (infoEnd > 0) regEnd = infoEnd;
+				}
+			}
+
+			i = j + 1;
+		}
+
+		if (seqStart < 0 || beg < 0) {
+			invalid("Cannot parse line '" + line.subSequence(start, end) + "'");
+			return;
+		}
+
+		// Convert to zero-based, half open coordinates
+		if ((preset & PRESET_ZERO_BASED) == 0) beg--;
+		if (beg < 0) beg = 0;
+		if (regEnd <= beg) regEnd = beg + 1;
+		if (regEnd > MAX_POS) regEnd = MAX_POS;
+
+		// New sequence?
+		if (current == null || !sameName(current.name, line, seqStart, seqEnd)) {
+			finishChunk();
+
+			String name = line.subSequence(seqStart, seqEnd).toString();
+			if (seqNames.contains(name)) {
+				invalid("Sequence '" + name + "' is not in one contiguous group of lines");
+				return;
+			}
+			current = new SeqIndex(name);
+			seqIndexes.add(current);
+			seqNames.add(name);
+			lastBeg = 0;
+		}
+
+		if (beg < lastBeg) {
+			invalid("Lines are not sorted by position (sequence '" + current.name + "', position " + (beg + 1) + ")");
+			return;
+		}
+		lastBeg = beg;
+
+		// Update indexes
+		current.addLinear(beg, regEnd, offsetStart);
+
+		int bin = reg2bin(beg, regEnd);
+		if (bin != currentBin) {
+			finishChunk();
+			currentBin = bin;
+			chunkStart = offsetStart;
+		}
+		lastOffset = offsetEnd;
+	}
+
+	/**
+	 * Add current chunk to its bin
+	 */
+	void finishChunk() {
+		if (currentBin >= 0) current.addChunk(currentBin, chunkStart, lastOffset);
+		currentBin = -1;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	void invalid(String error) {
+		valid = false;
+		this.error = error;
+	}
+
+	public boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * Parse an (non-negative) integer from characters [start, end)
+	 * @return The value or -1 if it is not a number
+	 */
+	int parseInt(CharSequence cs, int start, int end) {
+		if (start >= end) return -1;
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			char c = cs.charAt(i);
+			if (c < '0' || c > '9') return -1;
+			value = 10 * value + (c - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Find 'END' in a VCF INFO field
+	 * @return END value or -1 if not found
+	 */
+	int parseInfoEnd(CharSequence cs, int start, int end) {
+		for (int i = start; i + 4 <= end; i++) {
+			if ((i == start || cs.charAt(i - 1) == ';') //
+					&& cs.charAt(i) == 'E' && cs.charAt(i + 1) == 'N' && cs.charAt(i + 2) == 'D' && cs.charAt(i + 3) == '=') {
+				int j = i + 4;
+				while (j < end && cs.charAt(j) != ';')
+					j++;
+				return parseInt(cs, i + 4, j);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Bin number for a zero-based, half open interval [beg, end)
+	 * Note: Same bins as 'TabixReader.reg2bins()'
+	 */
+	int reg2bin(int beg, int end) {
+		--end;
+		if (beg >> 14 == end >> 14) return ((1 << 15) - 1) / 7 + (beg >> 14);
+		if (beg >> 17 == end >> 17) return ((1 << 12) - 1) / 7 + (beg >> 17);
+		if (beg >> 20 == end >> 20) return ((1 << 9) - 1) / 7 + (beg >> 20);
+		if (beg >> 23 == end >> 23) return ((1 << 6) - 1) / 7 + (beg >> 23);
+		if (beg >> 26 == end >> 26) return ((1 << 3) - 1) / 7 + (beg >> 26);
+		return 0;
+	}
+
+	boolean sameName(String name, CharSequence cs, int start, int end) {
+		if (name.length() != end - start) return false;
+		for (int i = 0; i < name.length(); i++)
+			if (name.charAt(i) != cs.charAt(start + i)) return false;
+		return true;
+	}
+
+	/**
+	 * Write index to a file
+	 * @param bgzf : Indexed stream (used to convert block offsets to virtual file offsets). It must have been flushed or closed
+	 * @return true if the index was written
+	 */
+	public boolean write(String fileName, BgzfOutputStream bgzf) {
+		finishChunk();
+		if (!valid) {
+			Timer.showStdErr("WARNING: Cannot create tabix index '" + fileName + "'. " + error);
+			return false;
+		}
+
+		try {
+			OutputStream out = new BgzfOutputStream(new FileOutputStream(fileName), 1);
+			byte buf[] = new byte[8];
+
+			// Header
+			out.write(new byte[] { 'T', 'B', 'I', 1 });
+			writeInt(out, buf, seqIndexes.size());
+			writeInt(out, buf, preset);
+			writeInt(out, buf, colSeq);
+			writeInt(out, buf, colBeg);
+			writeInt(out, buf, colEnd);
+			writeInt(out, buf, meta);
+			writeInt(out, buf, 0); // Lines to skip
+
+			// Sequence names ('\0' terminated)
+			StringBuilder names = new StringBuilder();
+			for (SeqIndex si : seqIndexes)
+				names.append(si.name).append('\0');
+			byte namesBytes[] = names.toString().getBytes();
+			writeInt(out, buf, namesBytes.length);
+			out.write(namesBytes);
+
+			// Index for each sequence
+			for (SeqIndex si : seqIndexes) {
+				// Bins (sorted by bin number)
+				Integer bins[] = si.chunksByBin.keySet().toArray(new Integer[0]);
+				Arrays.sort(bins);
+				writeInt(out, buf, bins.length);
+				for (Integer bin : bins) {
+					long chunks[] = si.chunksByBin.get(bin);
+					int num = si.numChunksByBin.get(bin);
+					writeInt(out, buf, bin);
+					writeInt(out, buf, num);
+					for (int i = 0; i < 2 * num; i++)
+						writeLong(out, buf, bgzf.virtualOffset(chunks[i]));
+				}
+
+				// Linear index (empty windows use the previous window's offset)
+				writeInt(out, buf, si.linearSize);
+				long prev = 0;
+				for (int i = 0; i < si.linearSize; i++) {
+					long vo = (si.linear[i] != 0 ? bgzf.virtualOffset(si.linear[i]) : prev);
+					writeLong(out, buf, vo);
+					prev = vo;
+				}
+			}
+
+			out.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing tabix index '" + fileName + "'", e);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Write little endian int
+	 */
+	void writeInt(OutputStream out, byte buf[], int value) throws IOException {
+		for (int i = 0; i < 4; i++)
+			buf[i] = (byte) (value >>> (8 * i));
+		out.write(buf, 0, 4);
+	}
+
+	/**
+	 * Write little endian long
+	 */
+	void writeLong(OutputStream out, byte buf[], long value) throws IOException {
+		for (int i = 0; i < 8; i++)
+			buf[i] = (byte) (value >>> (8 * i));
+		out.write(buf, 0, 8);
+	}
+
+}
@@ -221,15 +221,15 @@ public class VcfOutputFormatter extends OutputFormatter {
 	 * Finish up section
 	 */
 	@Override
-	public String endSection(Marker marker) {
+	public boolean endSection(Marker marker, StringBuilder sb) {
 		if (marker == null) {
-			return super.endSection(marker);
+			return super.endSection(marker, sb);
 		} else if (marker instanceof VcfEntry) {
 			// Ignore other markers (e.g. seqChanges)
 			if (vcfEntries != null) vcfEntries.add((VcfEntry) marker);
-			return super.endSection(marker);
+			return super.endSection(marker, sb);
 		}
-		return null;
+		return false;
 	}
 
 	/**
@@ -254,6 +254,11 @@ public class VcfOutputFormatter extends OutputFormatter {
 		return newLines;
 	}
 
+	@Override
+	protected TabixIndexer newTabixIndexer() {
+		return new TabixIndexer(TabixIndexer.PRESET_VCF, 1, 2, 0);
+	}
+
 	public void setFormatVersion(EffFormatVersion formatVersion) {
 		this.formatVersion = formatVersion;
 	}
@@ -281,10 +286,20 @@ public class VcfOutputFormatter extends OutputFormatter {
 
 	@Override
 	public String toString() {
-		if (section == null) return "";
+		StringBuilder sb = new StringBuilder();
+		toString(sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Append VCF line to 'sb': Columns that were not modified are copied from the input line
+	 */
+	@Override
+	protected void toString(StringBuilder sb) {
+		if (section == null) return;
 		VcfEntry vcfEntry = (VcfEntry) section;
 		if (needAddInfo) addInfo(vcfEntry);
-		return vcfEntry.toString();
+		vcfEntry.toString(sb);
 	}
 
 	/**
@@ -119,11 +119,11 @@ public class DistanceResult {
 		}
 
 		// Find genomic position based on AA position
-		int aa2pos[] = tr.aaNumber2Pos();
-		if (aa2pos.length <= aaNum) {
-			if (debug) Gpr.debug("AA number out of range in aa2pos[]: " //
+		int proteinLen = tr.protein().length();
+		if (proteinLen <= aaNum) {
+			if (debug) Gpr.debug("AA number out of range: " //
 					+ "\n\tAA number        : " + aaNum //
-					+ "\n\ttr.aa2pos.length : " + aa2pos.length //
+					+ "\n\tprotein length   : " + proteinLen //
 					+ "\n\tDistanceResult: " + this //
 					+ "\n\tTranscript       : " + tr //
 			);
@@ -131,7 +131,7 @@ public class DistanceResult {
 		}
 
 		// Convert to genomic positions
-		return aa2pos[aaNum];
+		return tr.aaNumber2Pos(aaNum);
 	}
 
 	/**
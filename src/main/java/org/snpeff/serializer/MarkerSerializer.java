@@ -71,6 +71,34 @@ public class MarkerSerializer {
 		byMarker = new HashMap<>();
 	}
 
+	/**
+	 * Replace 'fake' parents (MarkerParentId) by the real parent markers
+	 */
+	protected Markers assignParents(Iterable<? extends TxtSerializable> loaded) {
+		Markers markers = new Markers();
+		for (TxtSerializable tm : loaded) {
+			if (tm instanceof Marker) {
+				Marker m = (Marker) tm;
+
+				// Do we need to replace parent?
+				if (m.getParent() instanceof MarkerParentId) {
+					// Find parent ID
+					MarkerParentId mpid = (MarkerParentId) m.getParent();
+					int parentId = mpid.getParentId();
+
+					// Find and set parent
+					Marker parent = getMarkerById(parentId);
+					m.setParent(parent);
+				}
+
+				// Add to markers
+				markers.add(m);
+			}
+		}
+
+		return markers;
+	}
+
 	public void doNotSave(Marker m) {
 		if (doNotSave == null) doNotSave = new HashSet<>();
 		doNotSave.add(m);
@@ -105,6 +133,10 @@ public class MarkerSerializer {
 		return Gpr.parseBoolSafe(getNextField());
 	}
 
+	public EffectType getNextFieldEffectType() {
+		return EffectType.valueOf(getNextField());
+	}
+
 	public int getNextFieldInt() {
 		return Gpr.parseIntSafe(getNextField());
 	}
@@ -175,64 +207,7 @@ public class MarkerSerializer {
 				String idStr = fields[1];
 				int id = Gpr.parseIntSafe(idStr);
 
-				Marker m = null;
-				switch (type) {
-				case GENOME:
-					if (genome == null) m = new Genome();
-					else m = genome;
-					break;
-				case CHROMOSOME:
-					m = new Chromosome();
-					break;
-				case SEQUENCE:
-					m = new MarkerSeq();
-					break;
-				case GENE:
-					m = new Gene();
-					break;
-				case TRANSCRIPT:
-					m = new Transcript();
-					break;
-				case CDS:
-					m = new Cds();
-					break;
-				case EXON:
-					m = new Exon();
-					break;
-				case UTR_3_PRIME:
-					m = new Utr3prime();
-					break;
-				case UTR_5_PRIME:
-					m = new Utr5prime();
-					break;
-				case RARE_AMINO_ACID:
-					m = new RareAminoAcid();
-					break;
-				case SPLICE_SITE_ACCEPTOR:
-					m = new SpliceSiteAcceptor();
-					break;
-				case SPLICE_SITE_BRANCH:
-					m = new SpliceSiteBranch();
-					break;
-				case SPLICE_SITE_BRANCH_U12:
-					m = new SpliceSiteBranchU12();
-					break;
-				case SPLICE_SITE_DONOR:
-					m = new SpliceSiteDonor();
-					break;
-				case NEXT_PROT:
-					m = new NextProt();
-					break;
-				case MOTIF:
-					m = new Motif();
-					break;
-				case REGULATION:
-					m = new Regulation();
-					break;
-
-				default:
-					throw new RuntimeException("Unimplemented for type '" + type + "'");
-				}
+				Marker m = newMarker(type);
 
 				try {
 					// Parse line
@@ -249,31 +224,73 @@ public class MarkerSerializer {
 			lineNum++;
 		}
 
-		//---
-		// Assign parents
-		//---
-		Markers markers = new Markers();
-		for (TxtSerializable tm : byId.values()) {
-			if (tm instanceof Marker) {
-				Marker m = (Marker) tm;
-
-				// Do we need to replace parent?
-				if (m.getParent() instanceof MarkerParentId) {
-					// Find parent ID
-					MarkerParentId mpid = (MarkerParentId) m.getParent();
-					int parentId = mpid.getParentId();
-
-					// Find and set parent
-					Marker parent = getMarkerById(parentId);
-					m.setParent(parent);
-				}
+		return assignParents(byId.values());
+	}
 
-				// Add to markers
-				markers.add(m);
-			}
+	/**
+	 * Create a new (empty) marker of the given type, to be filled by 'serializeParse'
+	 */
+	protected Marker newMarker(EffectType type) {
+		Marker m = null;
+		switch (type) {
+		case GENOME:
+			if (genome == null) m = new Genome();
+			else m = genome;
+			break;
+		case CHROMOSOME:
+			m = new Chromosome();
+			break;
+		case SEQUENCE:
+			m = new MarkerSeq();
+			break;
+		case GENE:
+			m = new Gene();
+			break;
+		case TRANSCRIPT:
+			m = new Transcript();
+			break;
+		case CDS:
+			m = new Cds();
+			break;
+		case EXON:
+			m = new Exon();
+			break;
+		case UTR_3_PRIME:
+			m = new Utr3prime();
+			break;
+		case UTR_5_PRIME:
+			m = new Utr5prime();
+			break;
+		case RARE_AMINO_ACID:
+			m = new RareAminoAcid();
+			break;
+		case SPLICE_SITE_ACCEPTOR:
+			m = new SpliceSiteAcceptor();
+			break;
+		case SPLICE_SITE_BRANCH:
+			m = new SpliceSiteBranch();
+			break;
+		case SPLICE_SITE_BRANCH_U12:
+			m = new SpliceSiteBranchU12();
+			break;
+		case SPLICE_SITE_DONOR:
+			m = new SpliceSiteDonor();
+			break;
+		case NEXT_PROT:
+			m = new NextProt();
+			break;
+		case MOTIF:
+			m = new Motif();
+			break;
+		case REGULATION:
+			m = new Regulation();
+			break;
+
+		default:
+			throw new RuntimeException("Unimplemented for type '" + type + "'");
 		}
 
-		return markers;
+		return m;
 	}
 
 	/**
@@ -302,8 +319,7 @@ public class MarkerSerializer {
 
 		// Print line
 		String line = m.serializeSave(this);
-		outFile.print(line + "\n");
-		lineNum++;
+		write(m, line);
 
 		return id;
 	}
@@ -330,6 +346,14 @@ public class MarkerSerializer {
 		}
 	}
 
+	/**
+	 * Write a serialized marker (one line)
+	 */
+	protected void write(Marker m, String line) {
+		outFile.print(line + "\n");
+		lineNum++;
+	}
+
 	boolean shouldSkip(Marker m) {
 		return byMarker.containsKey(m) || isDoNotSave(m);
 	}
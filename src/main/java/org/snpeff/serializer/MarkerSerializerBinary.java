@@ -0,0 +1,646 @@
+package org.snpeff.serializer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.snpeff.SnpEff;
+import org.snpeff.interval.Chromosome;
+import org.snpeff.interval.Genome;
+import org.snpeff.interval.Marker;
+import org.snpeff.interval.Markers;
+import org.snpeff.snpEffect.EffectType;
+import org.snpeff.util.Gpr;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Serialize markers to (and from) a binary, column oriented, file.
+ *
+ * Markers are serialized using the same 'serializeSave' / 'serializeParse'
+ * methods than MarkerSerializer, but fields are stored as typed primitive
+ * columns (integers, integer lists, booleans and references to a string
+ * table) instead of tab separated text. This avoids splitting and parsing
+ * strings when loading a database.
+ *
+ * Markers are grouped in sections, one per chromosome, so that only the
+ * chromosomes we need are loaded. The 'global' section (genome, chromosomes
+ * and markers not related to any chromosome) is always loaded.
+ *
+ * File format (all numbers are big endian):
+ *
+ * 		Header:
+ * 			int		MAGIC
+ * 			int		VERSION
+ * 			UTF		Software name
+ * 			UTF		Software version (major)
+ * 			int		Max marker ID
+ * 			int		Number of marker types
+ * 			For each marker type:
+ * 				UTF		EffectType name (column 'types' stores indexes into this table)
+ * 			int		Number of sections
+ * 			For each section:
+ * 				UTF		Section name (simple chromosome name, empty for the 'global' section)
+ * 				long	Offset of section (from file start)
+ * 				int		Length of section (compressed bytes)
+ * 				int		Length of section (uncompressed bytes)
+ * 				int		Number of markers in this section
+ *
+ * 		Section (compressed using 'deflate'). Each column is length prefixed:
+ * 			int[]	types		: Marker type (index into types table)
+ * 			int[]	ids			: Marker ID
+ * 			int[]	fieldCounts	: Number of additional fields for each marker
+ * 			byte[]	tags		: Type of each field (see FIELD_* constants)
+ * 			int[]	values		: Field values (integers, list sizes + list elements, string table indexes)
+ * 			int		Number of strings in string table
+ * 			For each string:
+ * 				int		Length (bytes)
+ * 				byte[]	UTF-8 encoded string
+ *
+ * @author pcingola
+ */
+public class MarkerSerializerBinary extends MarkerSerializer {
+
+	public static final int MAGIC = 0x53455042; // 'SEPB'
+	public static final int VERSION = 1;
+	public static final String GLOBAL_SECTION = "";
+
+	// Field types
+	public static final byte FIELD_EMPTY = 0;
+	public static final byte FIELD_INT = 1;
+	public static final byte FIELD_INT_LIST = 2;
+	public static final byte FIELD_STRING = 3;
+	public static final byte FIELD_FALSE = 4;
+	public static final byte FIELD_TRUE = 5;
+
+	/**
+	 * Markers in one section, stored as columns
+	 */
+	static class Section {
+		String name;
+		int size;
+		TIntArrayList types = new TIntArrayList();
+		TIntArrayList ids = new TIntArrayList();
+		TIntArrayList fieldCounts = new TIntArrayList();
+		ByteArrayOutputStream tags = new ByteArrayOutputStream();
+		TIntArrayList values = new TIntArrayList();
+		List<String> strings = new ArrayList<>();
+		Map<String, Integer> stringIdx = new HashMap<>();
+
+		Section(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Add a field
+		 */
+		void add(String field) {
+			if (field.isEmpty()) {
+				tags.write(FIELD_EMPTY);
+			} else if (field.equals("true")) {
+				tags.write(FIELD_TRUE);
+			} else if (field.equals("false")) {
+				tags.write(FIELD_FALSE);
+			} else if (isInt(field)) {
+				tags.write(FIELD_INT);
+				values.add(Integer.parseInt(field));
+			} else if (isIntList(field)) {
+				String ints[] = field.split(",");
+				tags.write(FIELD_INT_LIST);
+				values.add(ints.length);
+				for (String i : ints)
+					values.add(Integer.parseInt(i));
+			} else {
+				tags.write(FIELD_STRING);
+				Integer idx = stringIdx.get(field);
+				if (idx == null) {
+					idx = strings.size();
+					strings.add(field);
+					stringIdx.put(field, idx);
+				}
+				values.add(idx);
+			}
+		}
+
+		/**
+		 * Add a marker (a serialized line)
+		 */
+		void add(String fields[]) {
+			types.add(EffectType.valueOf(fields[0]).ordinal());
+			ids.add(Integer.parseInt(fields[1]));
+			fieldCounts.add(fields.length - 2);
+			for (int i = 2; i < fields.length; i++)
+				add(fields[i]);
+			size++;
+		}
+
+		/**
+		 * Section's columns as an array of bytes
+		 */
+		byte[] toBytes() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			write(out, types);
+			write(out, ids);
+			write(out, fieldCounts);
+
+			out.writeInt(tags.size());
+			tags.writeTo(out);
+
+			write(out, values);
+
+			out.writeInt(strings.size());
+			for (String str : strings) {
+				byte b[] = str.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(b.length);
+				out.write(b);
+			}
+
+			out.close();
+			return bytes.toByteArray();
+		}
+
+		void write(DataOutputStream out, TIntArrayList list) throws IOException {
+			out.writeInt(list.size());
+			for (int i = 0; i < list.size(); i++)
+				out.writeInt(list.get(i));
+		}
+	}
+
+	// Used when saving
+	Map<String, Section> sections;
+
+	// Used when loading
+	EffectType typeTable[]; // Marker types
+	Marker markerById[]; // Markers indexed by ID
+	EffectType recType; // Current record's type
+	int recId; // Current record's ID
+	int recFieldEnd; // Index of current record's last field (exclusive)
+	int fieldIdx; // Index of next field in 'tags'
+	int valueIdx; // Index of next value in 'values'
+	byte tags[];
+	int values[];
+	String strings[];
+
+	/**
+	 * Is this file in binary format?
+	 */
+	public static boolean isBinary(String fileName) {
+		if (!Gpr.canRead(fileName)) return false;
+		try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Is 's' an integer that can be converted back to exactly the same string?
+	 */
+	static boolean isInt(String s) {
+		return isInt(s, 0, s.length());
+	}
+
+	static boolean isInt(String s, int start, int end) {
+		int len = end - start;
+		if (len <= 0 || len > 11) return false;
+
+		int i = start;
+		if (s.charAt(i) == '-') {
+			i++;
+			if (i >= end || s.charAt(i) == '0') return false; // No '-0' or '-' alone
+		} else if (s.charAt(i) == '0' && len > 1) return false; // No leading zeros
+
+		for (; i < end; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') return false;
+		}
+
+		long val = Long.parseLong(s.substring(start, end));
+		return Integer.MIN_VALUE <= val && val <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Is 's' a comma separated list of integers (e.g. marker IDs)?
+	 */
+	static boolean isIntList(String s) {
+		int start = 0;
+		for (int i = 0; i <= s.length(); i++) {
+			if (i == s.length() || s.charAt(i) == ',') {
+				if (!isInt(s, start, i)) return false;
+				start = i + 1;
+			}
+		}
+		return true;
+	}
+
+	public MarkerSerializerBinary() {
+		this(null);
+	}
+
+	public MarkerSerializerBinary(Genome genome) {
+		super(genome);
+	}
+
+	@Override
+	protected TxtSerializable getById(int id) {
+		if (markerById == null || id < 0 || id >= markerById.length) return null;
+		return markerById[id];
+	}
+
+	@Override
+	public String getNextField() {
+		switch (parsedField++) {
+		case 0:
+			return recType.toString();
+
+		case 1:
+			return Integer.toString(recId);
+
+		default:
+			if (fieldIdx >= recFieldEnd) return "";
+			byte tag = tags[fieldIdx++];
+			switch (tag) {
+			case FIELD_EMPTY:
+				return "";
+
+			case FIELD_FALSE:
+				return "false";
+
+			case FIELD_TRUE:
+				return "true";
+
+			case FIELD_INT:
+				return Integer.toString(values[valueIdx++]);
+
+			case FIELD_STRING:
+				return strings[values[valueIdx++]];
+
+			case FIELD_INT_LIST:
+				int len = values[valueIdx++];
+				StringBuilder sb = new StringBuilder();
+				for (int i = 0; i < len; i++) {
+					if (i > 0) sb.append(',');
+					sb.append(values[valueIdx++]);
+				}
+				return sb.toString();
+
+			default:
+				throw new RuntimeException("Unknown field type " + tag);
+			}
+		}
+	}
+
+	@Override
+	public boolean getNextFieldBoolean() {
+		if (parsedField >= 2 && fieldIdx < recFieldEnd) {
+			byte tag = tags[fieldIdx];
+			if (tag == FIELD_TRUE || tag == FIELD_FALSE) {
+				parsedField++;
+				fieldIdx++;
+				return tag == FIELD_TRUE;
+			}
+		}
+		return super.getNextFieldBoolean();
+	}
+
+	@Override
+	public EffectType getNextFieldEffectType() {
+		if (parsedField == 0) {
+			parsedField++;
+			return recType;
+		}
+		return super.getNextFieldEffectType();
+	}
+
+	@Override
+	public int getNextFieldInt() {
+		if (parsedField == 1) {
+			parsedField++;
+			return recId;
+		}
+
+		if (parsedField >= 2 && fieldIdx < recFieldEnd && tags[fieldIdx] == FIELD_INT) {
+			parsedField++;
+			fieldIdx++;
+			return values[valueIdx++];
+		}
+		return super.getNextFieldInt();
+	}
+
+	@Override
+	public Markers getNextFieldMarkers() {
+		if (parsedField < 2 || fieldIdx >= recFieldEnd || tags[fieldIdx] != FIELD_INT_LIST) return super.getNextFieldMarkers();
+
+		parsedField++;
+		fieldIdx++;
+		int len = values[valueIdx++];
+		Markers markers = new Markers();
+		for (int i = 0; i < len; i++) {
+			int id = values[valueIdx++];
+			Marker m = getMarkerById(id);
+			if (m != null) markers.add(m);
+			else throw new RuntimeException("Marker '" + id + "' not found. This should never happen!");
+		}
+		return markers;
+	}
+
+	/**
+	 * Load data from file
+	 */
+	@Override
+	public Markers load(String fileName) {
+		return load(fileName, null);
+	}
+
+	/**
+	 * Load data from file, only markers in chromosomes 'chrNames' (as
+	 * well as genome, chromosomes and other 'global' markers) are loaded.
+	 *
+	 * @param chrNames : Chromosomes to load. Load all chromosomes if null
+	 */
+	public Markers load(String fileName, Collection<String> chrNames) {
+		Set<String> chrs = null;
+		if (chrNames != null) {
+			chrs = new HashSet<>();
+			for (String chr : chrNames)
+				chrs.add(Chromosome.simpleName(chr));
+		}
+
+		// Read header
+		List<String> names = new ArrayList<>();
+		List<long[]> directory = new ArrayList<>();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+			if (in.readInt() != MAGIC) throw new RuntimeException("Database file '" + fileName + "' is not a binary database file.");
+			int version = in.readInt();
+			String soft = in.readUTF();
+			String versionNumber = in.readUTF();
+
+			// Check for compatibility
+			if (version != VERSION || !soft.equals(SnpEff.SOFTWARE_NAME)) throw new RuntimeException("Database file '" + fileName + "' is not compatible with this program version. Try installing the appropriate database.");
+			if (!versionNumber.equals(SnpEff.VERSION_MAJOR)) throw new RuntimeException("Database file '" + fileName + "' is not compatible with this program version:"//
+					+ "\n\tDatabase version : '" + versionNumber + "'"//
+					+ "\n\tProgram version  : '" + SnpEff.VERSION_MAJOR + "'" //
+					+ "\nTry installing the appropriate database." //
+			);
+
+			markerById = new Marker[in.readInt() + 1];
+
+			typeTable = new EffectType[in.readInt()];
+			for (int i = 0; i < typeTable.length; i++)
+				typeTable[i] = EffectType.valueOf(in.readUTF());
+
+			int numSections = in.readInt();
+			for (int i = 0; i < numSections; i++) {
+				names.add(in.readUTF());
+				long offset = in.readLong();
+				int len = in.readInt();
+				int rawLen = in.readInt();
+				int size = in.readInt();
+				directory.add(new long[] { offset, len, rawLen, size });
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading file '" + fileName + "'", e);
+		}
+
+		// Load sections
+		List<Marker> loaded = new ArrayList<>();
+		try (RandomAccessFile raf = new RandomAccessFile(fileName, "r")) {
+			for (int i = 0; i < names.size(); i++) {
+				String name = names.get(i);
+				if (chrs != null && !name.equals(GLOBAL_SECTION) && !chrs.contains(name)) continue;
+
+				long dir[] = directory.get(i);
+				byte data[] = new byte[(int) dir[1]];
+				raf.seek(dir[0]);
+				raf.readFully(data);
+				loadSection(fileName, name, inflate(data, (int) dir[2]), (int) dir[3], loaded);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading file '" + fileName + "'", e);
+		}
+
+		return assignParents(loaded);
+	}
+
+	/**
+	 * Uncompress a section
+	 */
+	byte[] inflate(byte data[], int rawLen) {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			byte raw[] = new byte[rawLen];
+			int len = 0;
+			while (len < rawLen && !inflater.finished()) {
+				int n = inflater.inflate(raw, len, rawLen - len);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+				len += n;
+			}
+			if (len != rawLen) throw new RuntimeException("Corrupted section: expected " + rawLen + " bytes, got " + len);
+			return raw;
+		} catch (DataFormatException e) {
+			throw new RuntimeException(e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Parse all markers in a section
+	 */
+	void loadSection(String fileName, String name, byte raw[], int size, List<Marker> loaded) {
+		ByteBuffer bb = ByteBuffer.wrap(raw);
+		int types[] = readInts(bb);
+		int ids[] = readInts(bb);
+		int fieldCounts[] = readInts(bb);
+		tags = new byte[bb.getInt()];
+		bb.get(tags);
+		values = readInts(bb);
+		strings = new String[bb.getInt()];
+		for (int i = 0; i < strings.length; i++) {
+			int len = bb.getInt();
+			strings[i] = new String(raw, bb.position(), len, StandardCharsets.UTF_8);
+			bb.position(bb.position() + len);
+		}
+
+		fieldIdx = valueIdx = 0;
+		for (int i = 0; i < size; i++) {
+			recType = typeTable[types[i]];
+			recId = ids[i];
+			recFieldEnd = fieldIdx + fieldCounts[i];
+			parsedField = 0;
+
+			Marker m = newMarker(recType);
+			try {
+				m.serializeParse(this);
+			} catch (Throwable t) {
+				t.printStackTrace();
+				throw new RuntimeException("Error parsing marker ID " + recId + ", type " + recType + ", section '" + name + "', from file '" + fileName + "'", t);
+			}
+
+			// Skip fields not used by the parser
+			while (fieldIdx < recFieldEnd) {
+				byte tag = tags[fieldIdx++];
+				if (tag == FIELD_INT || tag == FIELD_STRING) valueIdx++;
+				else if (tag == FIELD_INT_LIST) valueIdx += values[valueIdx] + 1;
+			}
+
+			markerById[recId] = m;
+			loaded.add(m);
+		}
+
+		// Free memory
+		tags = null;
+		values = null;
+		strings = null;
+	}
+
+	int[] readInts(ByteBuffer bb) {
+		int ints[] = new int[bb.getInt()];
+		bb.asIntBuffer().get(ints);
+		bb.position(bb.position() + 4 * ints.length);
+		return ints;
+	}
+
+	/**
+	 * Save data to file
+	 */
+	@Override
+	public void save(String fileName, Markers markers) {
+		lineNum = 0;
+		currId = 0;
+		sections = new LinkedHashMap<>();
+		sections.put(GLOBAL_SECTION, new Section(GLOBAL_SECTION));
+
+		// Serialize all markers
+		for (Marker m : markers)
+			save(m);
+
+		// Compress sections
+		List<Section> secs = new ArrayList<>(sections.values());
+		List<byte[]> compressed = new ArrayList<>();
+		int rawLens[] = new int[secs.size()];
+		try {
+			for (int i = 0; i < secs.size(); i++) {
+				byte raw[] = secs.get(i).toBytes();
+				rawLens[i] = raw.length;
+				compressed.add(deflate(raw));
+			}
+
+			// Write header and sections
+			long offsets[] = new long[secs.size()];
+			long pos = header(secs, offsets, compressed, rawLens).length;
+			for (int i = 0; i < secs.size(); i++) {
+				offsets[i] = pos;
+				pos += compressed.get(i).length;
+			}
+
+			try (RandomAccessFile raf = new RandomAccessFile(fileName, "rw")) {
+				raf.setLength(0);
+				raf.write(header(secs, offsets, compressed, rawLens));
+				for (byte c[] : compressed)
+					raf.write(c);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing file '" + fileName + "'", e);
+		}
+
+		sections = null;
+	}
+
+	/**
+	 * Compress a section
+	 */
+	byte[] deflate(byte raw[]) {
+		Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(raw);
+			deflater.finish();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(raw.length / 4 + 16);
+			byte buf[] = new byte[64 * 1024];
+			while (!deflater.finished()) {
+				int n = deflater.deflate(buf);
+				bytes.write(buf, 0, n);
+			}
+			return bytes.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Create a file header
+	 */
+	byte[] header(List<Section> secs, long offsets[], List<byte[]> compressed, int rawLens[]) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(SnpEff.SOFTWARE_NAME);
+		out.writeUTF(SnpEff.VERSION_MAJOR);
+		out.writeInt(currId);
+
+		EffectType types[] = EffectType.values();
+		out.writeInt(types.length);
+		for (EffectType type : types)
+			out.writeUTF(type.name());
+
+		out.writeInt(secs.size());
+		for (int i = 0; i < secs.size(); i++) {
+			Section sec = secs.get(i);
+			out.writeUTF(sec.name);
+			out.writeLong(offsets[i]);
+			out.writeInt(compressed.get(i).length);
+			out.writeInt(rawLens[i]);
+			out.writeInt(sec.size);
+		}
+
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Which section does this marker belong to?
+	 */
+	String sectionName(Marker m) {
+		if (m instanceof Genome || m instanceof Chromosome) return GLOBAL_SECTION;
+		String chr = m.getChromosomeName();
+		if (chr == null || chr.isEmpty()) return GLOBAL_SECTION;
+		return Chromosome.simpleName(chr);
+	}
+
+	/**
+	 * Add a serialized marker to its section
+	 */
+	@Override
+	protected void write(Marker m, String line) {
+		String name = sectionName(m);
+		Section sec = sections.get(name);
+		if (sec == null) {
+			sec = new Section(name);
+			sections.put(name, sec);
+		}
+
+		sec.add(line.split("\t", -1));
+		lineNum++;
+	}
+
+}
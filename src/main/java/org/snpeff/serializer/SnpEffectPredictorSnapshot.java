@@ -0,0 +1,106 @@
+package org.snpeff.serializer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.snpeff.SnpEff;
+import org.snpeff.snpEffect.SnpEffectPredictor;
+import org.snpeff.util.Gpr;
+
+/**
+ * A snapshot of a SnpEffectPredictor after building the interval forest, i.e.
+ * including derived markers (up/downstream, splice sites, intergenic, etc.),
+ * interval trees and 'frozen' transcripts.
+ *
+ * Building the forest always produces the same result for the same database
+ * files and parameters. These are summarized in a 'key', which is stored in
+ * the snapshot's header. A snapshot is only loaded if the key matches, so the
+ * (potentially large) predictor is not read when the snapshot is out of date.
+ *
+ * File format:
+ *
+ * 		Header:
+ * 			int		MAGIC
+ * 			int		VERSION
+ * 			Object	Software version (String, includes build). Java serialization is not compatible across builds
+ * 			Object	Key (String)
+ *
+ * 		Body:
+ * 			Object	SnpEffectPredictor (Java serialization)
+ *
+ * @author pcingola
+ */
+public class SnpEffectPredictorSnapshot {
+
+	public static final int MAGIC = 0x53455053; // 'SEPS'
+	public static final int VERSION = 1;
+
+	/**
+	 * Load a predictor from a snapshot file
+	 * @return A predictor or null if the file doesn't exist, it is not compatible or the key doesn't match
+	 */
+	public static SnpEffectPredictor load(String fileName, String key) {
+		if (!Gpr.canRead(fileName)) return null;
+
+		ObjectInputStream in = null;
+		try {
+			in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+
+			// Check header
+			if (in.readInt() != MAGIC) return null;
+			if (in.readInt() != VERSION) return null;
+			if (!SnpEff.VERSION.equals(in.readObject())) return null;
+			if (!key.equals(in.readObject())) return null;
+
+			return (SnpEffectPredictor) in.readObject();
+		} catch (Exception e) {
+			// Corrupted or incompatible snapshot: Just ignore it
+			return null;
+		} finally {
+			if (in != null) try {
+				in.close();
+			} catch (IOException e) {
+				// Nothing to do
+			}
+		}
+	}
+
+	/**
+	 * Save a predictor (after building the interval forest) to a snapshot file
+	 */
+	public static void save(String fileName, String key, SnpEffectPredictor snpEffectPredictor) {
+		// Write to a temporary file first, so that readers never see a partial snapshot
+		File file = new File(fileName);
+		File tmpFile = new File(fileName + ".tmp");
+
+		ObjectOutputStream out = null;
+		try {
+			out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeObject(SnpEff.VERSION);
+			out.writeObject(key);
+			out.writeObject(snpEffectPredictor);
+			out.close();
+			out = null;
+
+			if (!tmpFile.renameTo(file)) throw new RuntimeException("Cannot rename file '" + tmpFile + "' to '" + file + "'");
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing snapshot file '" + fileName + "'", e);
+		} finally {
+			if (out != null) try {
+				out.close();
+			} catch (IOException e) {
+				// Nothing to do
+			}
+			tmpFile.delete(); // Does nothing if the file was renamed
+		}
+	}
+
+}
@@ -8,6 +8,7 @@ import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -21,6 +22,7 @@ import org.snpeff.codons.CodonTable;
 import org.snpeff.codons.CodonTables;
 import org.snpeff.interval.Chromosome;
 import org.snpeff.interval.Genome;
+import org.snpeff.serializer.SnpEffectPredictorSnapshot;
 import org.snpeff.stats.CountByType;
 import org.snpeff.util.Gpr;
 import org.snpeff.util.Timer;
@@ -380,6 +382,10 @@ public class Config implements Serializable, Iterable<String> {
 		return getBaseFileNameSequence() + ".bin";
 	}
 
+	public String getFileNameSequenceMmap() {
+		return getBaseFileNameSequence() + ".2bit";
+	}
+
 	public String getFileNameSequence(String chr) {
 		String chrNameSafe = Gpr.sanityzeFileName(chr);
 		return getBaseFileNameSequence() + "." + chrNameSafe + ".bin";
@@ -389,6 +395,10 @@ public class Config implements Serializable, Iterable<String> {
 		return getDirData() + "/" + genome.getVersion() + "/snpEffectPredictor.bin";
 	}
 
+	public String getFileSnpEffectPredictorSnapshot() {
+		return getDirData() + "/" + genome.getVersion() + "/snpEffectPredictor.snapshot.bin";
+	}
+
 	public Genome getGenome() {
 		return genome;
 	}
@@ -576,8 +586,33 @@ public class Config implements Serializable, Iterable<String> {
 	 * WARNING: 'genome' object get replaced upon loading a snpEffectPredictor (this is a dangerous side effect)
 	 */
 	public SnpEffectPredictor loadSnpEffectPredictor() {
-		snpEffectPredictor = SnpEffectPredictor.load(this);
+		return loadSnpEffectPredictor(null);
+	}
+
+	/**
+	 * Load a snpEff predictor, only load markers in chromosomes 'chrNames' (all chromosomes if null)
+	 * WARNING: 'genome' object get replaced upon loading a snpEffectPredictor (this is a dangerous side effect)
+	 */
+	public SnpEffectPredictor loadSnpEffectPredictor(Collection<String> chrNames) {
+		snpEffectPredictor = SnpEffectPredictor.load(this, chrNames);
+		genome = snpEffectPredictor.genome; // WARNING: 'genome' object get replaced upon loading a snpEffectPredictor (this might have dangerous side effects)
+		genome.getGenomicSequences().setConfig(this); // Sequences are loaded from this genome's files, even if other genomes are loaded later
+		snpEffectPredictor.setDebug(debug);
+		return snpEffectPredictor;
+	}
+
+	/**
+	 * Load a snpEff predictor from a snapshot (i.e. interval forest already built)
+	 * @return A predictor or null if the snapshot doesn't exist or 'key' doesn't match
+	 * WARNING: 'genome' object get replaced upon loading a snpEffectPredictor (this is a dangerous side effect)
+	 */
+	public SnpEffectPredictor loadSnpEffectPredictorSnapshot(String key) {
+		SnpEffectPredictor sep = SnpEffectPredictorSnapshot.load(getFileSnpEffectPredictorSnapshot(), key);
+		if (sep == null) return null;
+
+		snpEffectPredictor = sep;
 		genome = snpEffectPredictor.genome; // WARNING: 'genome' object get replaced upon loading a snpEffectPredictor (this might have dangerous side effects)
+		genome.getGenomicSequences().setConfig(this); // Sequences are loaded from this genome's files, even if other genomes are loaded later
 		snpEffectPredictor.setDebug(debug);
 		return snpEffectPredictor;
 	}
@@ -324,18 +324,11 @@ public class LossOfFunction {
 		// Find that position of MND_BASES_BEFORE_LAST_JUNCTION before the last exon-exon junction
 		//---
 		int lastExonJunction = tr.isStrandPlus() ? lastExon.getStart() : lastExon.getEnd();
-		int chrPos[] = tr.baseNumberCds2Pos();
-		int lastNmdPos = -1;
-		for (int cdsi = chrPos.length - 1; cdsi >= 0; cdsi--) {
-			if (chrPos[cdsi] == lastExonJunction) {
-				if (cdsi > MND_BASES_BEFORE_LAST_JUNCTION) lastNmdPos = chrPos[cdsi - MND_BASES_BEFORE_LAST_JUNCTION - 1];
-				else return tr.isStrandPlus() ? 0 : Integer.MAX_VALUE; // Out of CDS range
-				return lastNmdPos;
-			}
-		}
+		int cdsi = tr.cdsSegmentMap().cdsBaseNumber(lastExonJunction);
+		if (cdsi < 0 || cdsi >= tr.cds().length()) throw new RuntimeException("Cannot find last exon junction position for transcript '" + tr.getId() + "'\n\t" + tr);
 
-		throw new RuntimeException("Cannot find last exon junction position for transcript '" + tr.getId() + "'\n\t" + tr);
-		// return -1;
+		if (cdsi > MND_BASES_BEFORE_LAST_JUNCTION) return tr.cdsBaseNumber2Pos(cdsi - MND_BASES_BEFORE_LAST_JUNCTION - 1);
+		return tr.isStrandPlus() ? 0 : Integer.MAX_VALUE; // Out of CDS range
 	}
 
 	/**
@@ -1,11 +1,18 @@
 package org.snpeff.snpEffect;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.snpeff.binseq.GenomicSequences;
 import org.snpeff.interval.Cds;
@@ -23,7 +30,10 @@ import org.snpeff.interval.TranscriptSupportLevel;
 import org.snpeff.interval.Utr;
 import org.snpeff.interval.Variant;
 import org.snpeff.interval.tree.IntervalForest;
+import org.snpeff.interval.tree.IntervalRangeIndex;
+import org.snpeff.interval.tree.MarkerVisitor;
 import org.snpeff.serializer.MarkerSerializer;
+import org.snpeff.serializer.MarkerSerializerBinary;
 import org.snpeff.snpEffect.VariantEffect.ErrorWarningType;
 import org.snpeff.util.Gpr;
 
@@ -38,9 +48,58 @@ import org.snpeff.util.Gpr;
 public class SnpEffectPredictor implements Serializable {
 	private static final long serialVersionUID = 4519418862303325081L;
 
+	public static final int BUILD_GENES_PER_TASK = 1000; // Number of genes per task when building per gene information in parallel
 	public static final int DEFAULT_UP_DOWN_LENGTH = 5000;
 	public static final int SMALL_VARIANT_SIZE_THRESHOLD = 10; // Number of bases for a variant to be considered 'small'
 
+	/**
+	 * Calculate variant effects for each marker intersecting a variant
+	 */
+	class VariantEffectVisitor implements MarkerVisitor {
+		Variant variant;
+		VariantEffects variantEffects;
+		boolean hitChromo, hitSomething;
+
+		VariantEffectVisitor(Variant variant, VariantEffects variantEffects) {
+			this.variant = variant;
+			this.variantEffects = variantEffects;
+		}
+
+		/**
+		 * Any errors or intergenic (i.e. did not hit any gene)
+		 */
+		void finish() {
+			if (!hitChromo) {
+				// Special case: Insertion right after chromosome's last base
+				Chromosome chr = genome.getChromosome(variant.getChromosomeName());
+				if (variant.isIns() && variant.getStart() == (chr.getEnd() + 1)) {
+					// This is a chromosome extension
+					variantEffects.add(variant, null, EffectType.CHROMOSOME_ELONGATION, "");
+				} else if (Config.get().isErrorChromoHit()) {
+					variantEffects.addErrorWarning(variant, ErrorWarningType.ERROR_OUT_OF_CHROMOSOME_RANGE);
+				}
+			} else if (!hitSomething) {
+				if (Config.get().isOnlyRegulation()) {
+					variantEffects.add(variant, null, EffectType.NONE, "");
+				} else {
+					variantEffects.add(variant, null, EffectType.INTERGENIC, "");
+				}
+			}
+		}
+
+		@Override
+		public void visit(Marker marker) {
+			if (marker instanceof Chromosome) hitChromo = true; // Do we hit any chromosome?
+			else {
+				// Analyze all markers
+				if (variant.isNonRef()) marker.variantEffectNonRef(variant, variantEffects);
+				else marker.variantEffect(variant, variantEffects);
+
+				hitSomething = true;
+			}
+		}
+	}
+
 	boolean useChromosomes = true;
 	boolean debug;
 	int upDownStreamLength = DEFAULT_UP_DOWN_LENGTH;
@@ -51,19 +110,38 @@ public class SnpEffectPredictor implements Serializable {
 	Genome genome;
 	Markers markers; // All other markers are stored here (e.g. custom markers, intergenic, etc.)
 	IntervalForest intervalForest; // Interval forest by chromosome name
+	IntervalRangeIndex geneIndex; // Genes sorted by position (used for large structural variants)
 
 	/**
 	 * Load predictor from a binary file
 	 */
 	public static SnpEffectPredictor load(Config config) {
+		return load(config, null);
+	}
+
+	/**
+	 * Load predictor from a binary file, only load markers in chromosomes 'chrNames'
+	 * Note: Partial loading is only available for databases in binary
+	 *       format (see MarkerSerializerBinary). Databases in text format
+	 *       are always loaded completely.
+	 *
+	 * @param chrNames : Chromosomes to load. Load all chromosomes if null
+	 */
+	public static SnpEffectPredictor load(Config config, Collection<String> chrNames) {
 		String snpEffPredFile = config.getFileSnpEffectPredictor();
 
 		// Sanity check
 		if (!Gpr.canRead(snpEffPredFile)) throw new RuntimeException("\tERROR: Cannot read file '" + snpEffPredFile + "'.\n\tYou can try to download the database by running the following command:\n\t\tjava -jar snpEff.jar download " + config.getGenome().getVersion() + "\n");
 
 		// Load markers from file
-		MarkerSerializer ms = new MarkerSerializer(config.getGenome());
-		Markers markers = ms.load(snpEffPredFile);
+		Markers markers;
+		if (MarkerSerializerBinary.isBinary(snpEffPredFile)) {
+			MarkerSerializerBinary ms = new MarkerSerializerBinary(config.getGenome());
+			markers = ms.load(snpEffPredFile, chrNames);
+		} else {
+			MarkerSerializer ms = new MarkerSerializer(config.getGenome());
+			markers = ms.load(snpEffPredFile);
+		}
 
 		// Find genome
 		Genome genome = null;
@@ -130,6 +208,14 @@ public class SnpEffectPredictor implements Serializable {
 	 * Create interval trees (forest)
 	 */
 	public void buildForest() {
+		buildForest(null);
+	}
+
+	/**
+	 * Create interval trees (forest)
+	 * @param executor : Used to build trees and per gene information in parallel. If null, everything is built sequentially
+	 */
+	public void buildForest(ExecutorService executor) {
 		intervalForest = new IntervalForest();
 		intervalForest.setDebug(debug);
 
@@ -145,8 +231,11 @@ public class SnpEffectPredictor implements Serializable {
 		genome.getGenes().createCircularGenes();
 
 		// Add all genes to forest
-		for (Gene gene : genome.getGenes())
+		geneIndex = new IntervalRangeIndex();
+		for (Gene gene : genome.getGenes()) {
 			intervalForest.add(gene);
+			geneIndex.add(gene);
+		}
 
 		//---
 		// Create (and add) up-down stream, splice sites, intergenic, etc
@@ -159,11 +248,12 @@ public class SnpEffectPredictor implements Serializable {
 		// Add all 'markers' to forest (includes custom intervals)
 		intervalForest.add(markers);
 
-		// Build interval forest
-		intervalForest.build();
+		// Build interval forest (flat trees: queries do not allocate memory)
+		intervalForest.build(true, executor);
+		geneIndex.build();
 
-		// Build gene-dependent
-		buildPerGene();
+		// Build gene-dependent. Transcripts are 'frozen': From now on, their caches are only read
+		buildPerGene(executor);
 	}
 
 	/**
@@ -174,6 +264,51 @@ public class SnpEffectPredictor implements Serializable {
 			gene.buildPerGene();
 	}
 
+	/**
+	 * Build 'per gene' information, using tasks of (at most) BUILD_GENES_PER_TASK genes
+	 */
+	void buildPerGene(ExecutorService executor) {
+		if (executor == null) {
+			buildPerGene();
+			return;
+		}
+
+		// Split genes into tasks
+		List<Future<?>> futures = new ArrayList<>();
+		List<Gene> genes = new ArrayList<>();
+		for (Gene gene : genome.getGenes()) {
+			genes.add(gene);
+			if (genes.size() >= BUILD_GENES_PER_TASK) {
+				futures.add(executor.submit(buildPerGeneTask(genes)));
+				genes = new ArrayList<>();
+			}
+		}
+		if (!genes.isEmpty()) futures.add(executor.submit(buildPerGeneTask(genes)));
+
+		// Wait for all tasks to finish
+		try {
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * A task that builds 'per gene' information for all 'genes'
+	 */
+	Runnable buildPerGeneTask(final List<Gene> genes) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				for (Gene gene : genes)
+					gene.buildPerGene();
+			}
+		};
+	}
+
 	/**
 	 * Make sure all genes have canonical transcripts
 	 */
@@ -318,6 +453,19 @@ public class SnpEffectPredictor implements Serializable {
 		return marker.query(intervalForest);
 	}
 
+	/**
+	 * Return all genes that intersect 'marker'
+	 */
+	public Markers queryGenes(Marker marker) {
+		if (geneIndex != null) return geneIndex.query(marker);
+
+		// Index not built: Check all genes
+		Markers genes = new Markers();
+		for (Gene g : genome.getGenes())
+			if (marker.intersects(g)) genes.add(g);
+		return genes;
+	}
+
 	/**
 	 * Find closest gene to this marker
 	 *
@@ -336,55 +484,67 @@ public class SnpEffectPredictor implements Serializable {
 	 * @param inputInterval
 	 */
 	public Gene queryClosestGene(Marker inputInterval) {
-		int initialExtension = 1000;
-
-		String chrName = inputInterval.getChromosomeName();
-		Chromosome chr = genome.getChromosome(chrName);
-		if (chr == null) return null;
-
-		if (chr.size() > 0) {
-			// Extend interval to capture 'close' genes
-			for (int extend = initialExtension; extend < chr.size(); extend *= 2) {
-				int start = Math.max(inputInterval.getStart() - extend, 0);
-				int end = inputInterval.getEnd() + extend;
-				Marker extended = new Marker(chr, start, end, false, "");
-
-				// Find all genes that intersect with the interval
-				Markers markers = query(extended);
-				Markers genes = new Markers();
-				int minDist = Integer.MAX_VALUE;
-				for (Marker m : markers) {
-					if (m instanceof Gene) {
-						int dist = m.distance(inputInterval);
-						if (dist < minDist) {
-							genes.add(m);
-							minDist = dist;
-						}
-					}
+		// Find all genes at minimum distance
+		Markers genes;
+		if (geneIndex != null) genes = geneIndex.nearest(inputInterval);
+		else {
+			// Index not built: Check all genes
+			genes = new Markers();
+			int minDist = Integer.MAX_VALUE;
+			for (Gene g : genome.getGenes()) {
+				if (!g.getChromosomeName().equals(inputInterval.getChromosomeName())) continue;
+				int dist = g.distance(inputInterval);
+				if (dist < minDist) {
+					genes.clear();
+					minDist = dist;
 				}
+				if (dist == minDist) genes.add(g);
+			}
+		}
 
-				// Found something?
-				if (genes.size() > 0) {
-					// Find a gene having distance 'minDist'. Prefer coding genes
-					Gene minDistGene = null;
-
-					for (Marker m : genes) {
-						int dist = m.distance(inputInterval);
-						if (dist == minDist) {
-							Gene gene = (Gene) m;
-							if (minDistGene == null) minDistGene = gene;
-							else if (!minDistGene.isProteinCoding() && gene.isProteinCoding()) minDistGene = gene;
-						}
-					}
+		// Find a gene having minimum distance. Prefer coding genes
+		Gene minDistGene = null;
+		for (Marker m : genes) {
+			Gene gene = (Gene) m;
+			if (minDistGene == null) minDistGene = gene;
+			else if (!minDistGene.isProteinCoding() && gene.isProteinCoding()) minDistGene = gene;
+		}
 
-					return minDistGene;
-				}
+		return minDistGene;
+	}
 
-			}
+	/**
+	 * Find the 'k' genes closest to this marker, sorted by distance
+	 * Genes at the same distance are sorted as in 'queryClosestGene()' (i.e.
+	 * coding genes first), so for k=1 both methods return the same gene
+	 */
+	public Markers queryClosestGenes(final Marker inputInterval, int k) {
+		if (geneIndex == null) throw new RuntimeException("Interval forest not built. You need to call 'buildForest()' before calling this method");
+		if (k <= 0) return new Markers();
+
+		// Get all genes at the same distance as the k-th closest one
+		int n = k;
+		Markers genes = geneIndex.nearest(inputInterval, n);
+		while (genes.size() == n && genes.get(n - 1).distance(inputInterval) == genes.get(k - 1).distance(inputInterval)) {
+			n *= 2;
+			genes = geneIndex.nearest(inputInterval, n);
 		}
 
-		// Nothing found
-		return null;
+		// Sort by distance, prefer coding genes
+		List<Marker> sorted = new ArrayList<>(genes.getMarkers());
+		Collections.sort(sorted, new Comparator<Marker>() {
+			@Override
+			public int compare(Marker m1, Marker m2) {
+				int cmp = Integer.compare(m1.distance(inputInterval), m2.distance(inputInterval));
+				if (cmp != 0) return cmp;
+				return Boolean.compare(((Gene) m2).isProteinCoding(), ((Gene) m1).isProteinCoding());
+			}
+		});
+
+		Markers closest = new Markers();
+		for (int i = 0; i < k && i < sorted.size(); i++)
+			closest.add(sorted.get(i));
+		return closest;
 	}
 
 	/**
@@ -405,9 +565,13 @@ public class SnpEffectPredictor implements Serializable {
 				if (m instanceof Chromosome) {
 					hitChromo = true; // OK (we have to hit a chromosome, otherwise it's an error
 				} else if (m instanceof Gene) {
-					// Analyze Genes
+					// Analyze Genes: Query transcripts directly into 'hits'
 					Gene gene = (Gene) m;
-					hits.addAll(gene.query(marker));
+					for (Transcript tr : gene)
+						if (tr.intersects(marker)) {
+							hits.add(tr);
+							tr.query(marker, hits);
+						}
 				}
 			}
 		}
@@ -567,6 +731,14 @@ public class SnpEffectPredictor implements Serializable {
 	 * Save predictor to a binary file (specified by the configuration)
 	 */
 	public void save(Config config) {
+		save(config, null);
+	}
+
+	/**
+	 * Save predictor to a binary file (specified by the configuration)
+	 * @param executor : Used to write sequence files concurrently. If null, files are written sequentially
+	 */
+	public void save(Config config, ExecutorService executor) {
 		// Save genome and markers
 		String databaseFile = config.getFileSnpEffectPredictor();
 		save(databaseFile);
@@ -574,7 +746,7 @@ public class SnpEffectPredictor implements Serializable {
 		// Save genomic sequences
 		GenomicSequences gs = genome.getGenomicSequences();
 		gs.setVerbose(config.isVerbose());
-		gs.save(config);
+		gs.save(config, executor);
 	}
 
 	/**
@@ -594,7 +766,8 @@ public class SnpEffectPredictor implements Serializable {
 		markersToSave.add(getMarkers());
 
 		// Save markers to file
-		markersToSave.save(fileName);
+		MarkerSerializerBinary markerSerializer = new MarkerSerializerBinary(genome);
+		markerSerializer.save(fileName, markersToSave);
 	}
 
 	public void setDebug(boolean debug) {
@@ -676,6 +849,13 @@ public class SnpEffectPredictor implements Serializable {
 			// Note: Translocations (BND) only intercept two loci, so this
 			//       issue does not apply.
 			intersects = variantEffectStructuralLarge(variant, variantEffects);
+		} else if (!structuralVariant) {
+			// Most variants are small: Calculate effects while querying
+			// the interval forest (no need to collect query results)
+			VariantEffectVisitor visitor = new VariantEffectVisitor(variant, variantEffects);
+			intervalForest.query(variant, visitor);
+			visitor.finish();
+			return variantEffects;
 		} else {
 			// Query interval tree: Which intervals does variant intersect?
 			intersects = query(variant);
@@ -699,36 +879,10 @@ public class SnpEffectPredictor implements Serializable {
 	 * Calculate variant effect for each marker in 'intersect'
 	 */
 	protected void variantEffect(Variant variant, VariantEffects variantEffects, Markers intersects) {
-		// Show all results
-		boolean hitChromo = false, hitSomething = false;
-		for (Marker marker : intersects) {
-			if (marker instanceof Chromosome) hitChromo = true; // Do we hit any chromosome?
-			else {
-				// Analyze all markers
-				if (variant.isNonRef()) marker.variantEffectNonRef(variant, variantEffects);
-				else marker.variantEffect(variant, variantEffects);
-
-				hitSomething = true;
-			}
-		}
-
-		// Any errors or intergenic (i.e. did not hit any gene)
-		if (!hitChromo) {
-			// Special case: Insertion right after chromosome's last base
-			Chromosome chr = genome.getChromosome(variant.getChromosomeName());
-			if (variant.isIns() && variant.getStart() == (chr.getEnd() + 1)) {
-				// This is a chromosome extension
-				variantEffects.add(variant, null, EffectType.CHROMOSOME_ELONGATION, "");
-			} else if (Config.get().isErrorChromoHit()) {
-				variantEffects.addErrorWarning(variant, ErrorWarningType.ERROR_OUT_OF_CHROMOSOME_RANGE);
-			}
-		} else if (!hitSomething) {
-			if (Config.get().isOnlyRegulation()) {
-				variantEffects.add(variant, null, EffectType.NONE, "");
-			} else {
-				variantEffects.add(variant, null, EffectType.INTERGENIC, "");
-			}
-		}
+		VariantEffectVisitor visitor = new VariantEffectVisitor(variant, variantEffects);
+		for (Marker marker : intersects)
+			visitor.visit(marker);
+		visitor.finish();
 	}
 
 	/**
@@ -783,73 +937,79 @@ public class SnpEffectPredictor implements Serializable {
 	 * Add large structural variant effects
 	 */
 	Markers variantEffectStructuralLarge(Variant variant, VariantEffects variantEffects) {
-		EffectType eff, effGene, effTr, effExon, effExonPartial;
-
-		switch (variant.getVariantType()) {
-		case DEL:
-			eff = EffectType.CHROMOSOME_LARGE_DELETION;
-			effGene = EffectType.GENE_DELETED;
-			effTr = EffectType.TRANSCRIPT_DELETED;
-			effExon = EffectType.EXON_DELETED;
-			effExonPartial = EffectType.EXON_DELETED_PARTIAL;
-			break;
-
-		case DUP:
-			eff = EffectType.CHROMOSOME_LARGE_DUPLICATION;
-			effGene = EffectType.GENE_DUPLICATION;
-			effTr = EffectType.TRANSCRIPT_DUPLICATION;
-			effExon = EffectType.EXON_DUPLICATION;
-			effExonPartial = EffectType.EXON_DUPLICATION_PARTIAL;
-			break;
-
-		case INV:
-			eff = EffectType.CHROMOSOME_LARGE_INVERSION;
-			effGene = EffectType.GENE_INVERSION;
-			effTr = EffectType.TRANSCRIPT_INVERSION;
-			effExon = EffectType.EXON_INVERSION;
-			effExonPartial = EffectType.EXON_INVERSION_PARTIAL;
-			break;
-
-		default:
-			throw new RuntimeException("Unimplemented option for variant type " + variant.getVariantType());
-		}
+		EffectType effs[] = variantEffectStructuralLargeTypes(variant);
 
 		// Add effect
-		variantEffects.add(variant, variant.getChromosome(), eff, "");
+		variantEffects.add(variant, variant.getChromosome(), effs[0], "");
 
 		// Add detailed effects for genes & transcripts
-		return variantEffectStructuralLargeGenes(variant, variantEffects, effGene, effTr, effExon, effExonPartial);
+		return variantEffectStructuralLargeGenes(variant, variantEffects, effs[1], effs[2], effs[3], effs[4]);
+	}
+
+	/**
+	 * Large structural variant effects, streaming mode: Genes, transcripts
+	 * and exons hit by the variant are sent to 'handler' (no VariantEffects
+	 * or intermediate Markers are created)
+	 *
+	 * @return Number of genes hit by the variant
+	 */
+	public int variantEffectStructuralLarge(Variant variant, StructuralVariantHitHandler handler) {
+		EffectType effs[] = variantEffectStructuralLargeTypes(variant);
+		return variantEffectStructuralLargeGenes(variant, handler, effs[1], effs[2], effs[3], effs[4], null);
 	}
 
 	/**
 	 * Add large structural variant effects: Genes and transcripts
 	 */
-	Markers variantEffectStructuralLargeGenes(Variant variant, VariantEffects variantEffects, EffectType effGene, EffectType effTr, EffectType effExon, EffectType effExonPartial) {
+	Markers variantEffectStructuralLargeGenes(Variant variant, final VariantEffects variantEffects, EffectType effGene, EffectType effTr, EffectType effExon, EffectType effExonPartial) {
 		Markers intersect = new Markers();
 
-		// Check all genes in the genome
-		for (Gene g : genome.getGenes()) {
+		StructuralVariantHitHandler handler = new StructuralVariantHitHandler() {
+			@Override
+			public void hit(Variant variant, Marker marker, EffectType effectType) {
+				variantEffects.add(variant, marker, effectType, "");
+			}
+		};
+
+		variantEffectStructuralLargeGenes(variant, handler, effGene, effTr, effExon, effExonPartial, intersect);
+		return intersect;
+	}
+
+	/**
+	 * Find genes, transcripts and exons hit by a large structural variant
+	 * Genes are found using an index (we don't check every gene in the genome).
+	 *
+	 * @param intersect : If not null, genes and transcripts intersecting the variant are added
+	 * @return Number of genes hit by the variant
+	 */
+	int variantEffectStructuralLargeGenes(Variant variant, StructuralVariantHitHandler handler, EffectType effGene, EffectType effTr, EffectType effExon, EffectType effExonPartial, Markers intersect) {
+		int count = 0;
+
+		for (Marker m : queryGenes(variant)) {
+			Gene g = (Gene) m;
+
 			// Does the variant affect the gene?
 			if (variant.intersects(g)) {
-				intersect.add(g);
-				variantEffects.add(variant, g, effGene, "");
+				count++;
+				if (intersect != null) intersect.add(g);
+				handler.hit(variant, g, effGene);
 
 				// Does the variant affect this transcript?
 				for (Transcript tr : g) {
 					// Variant affects the whole transcript?
 					if (variant.includes(tr)) {
-						intersect.add(tr);
-						variantEffects.add(variant, tr, effTr, "");
+						if (intersect != null) intersect.add(tr);
+						handler.hit(variant, tr, effTr);
 					} else if (variant.intersects(tr)) {
-						intersect.add(tr);
+						if (intersect != null) intersect.add(tr);
 
 						// Variant affects part of the transcript
 						// Add effects for each exon
 						for (Exon ex : tr) {
 							if (variant.includes(ex)) {
-								variantEffects.add(variant, ex, effExon, "");
+								handler.hit(variant, ex, effExon);
 							} else if (variant.intersects(ex)) {
-								variantEffects.add(variant, ex, effExonPartial, "");
+								handler.hit(variant, ex, effExonPartial);
 							}
 						}
 					}
@@ -857,6 +1017,25 @@ public class SnpEffectPredictor implements Serializable {
 			}
 		}
 
-		return intersect;
+		return count;
+	}
+
+	/**
+	 * Effect types for large structural variants: { chromosome, gene, transcript, exon, exon partial }
+	 */
+	EffectType[] variantEffectStructuralLargeTypes(Variant variant) {
+		switch (variant.getVariantType()) {
+		case DEL:
+			return new EffectType[] { EffectType.CHROMOSOME_LARGE_DELETION, EffectType.GENE_DELETED, EffectType.TRANSCRIPT_DELETED, EffectType.EXON_DELETED, EffectType.EXON_DELETED_PARTIAL };
+
+		case DUP:
+			return new EffectType[] { EffectType.CHROMOSOME_LARGE_DUPLICATION, EffectType.GENE_DUPLICATION, EffectType.TRANSCRIPT_DUPLICATION, EffectType.EXON_DUPLICATION, EffectType.EXON_DUPLICATION_PARTIAL };
+
+		case INV:
+			return new EffectType[] { EffectType.CHROMOSOME_LARGE_INVERSION, EffectType.GENE_INVERSION, EffectType.TRANSCRIPT_INVERSION, EffectType.EXON_INVERSION, EffectType.EXON_INVERSION_PARTIAL };
+
+		default:
+			throw new RuntimeException("Unimplemented option for variant type " + variant.getVariantType());
+		}
 	}
 }
@@ -0,0 +1,20 @@
+package org.snpeff.snpEffect;
+
+import org.snpeff.interval.Marker;
+import org.snpeff.interval.Variant;
+
+/**
+ * Receives genes, transcripts and exons hit by a large structural
+ * variant (e.g. when streaming results instead of collecting them
+ * into VariantEffects)
+ *
+ * @author pcingola
+ */
+public interface StructuralVariantHitHandler {
+
+	/**
+	 * A marker (gene, transcript or exon) is hit by 'variant'
+	 */
+	public void hit(Variant variant, Marker marker, EffectType effectType);
+
+}
@@ -574,9 +574,16 @@ public class VariantEffect implements Cloneable, Comparable<VariantEffect> {
 	}
 
 	public String getGeneRegion() {
+		return getGeneRegionType().toString();
+	}
+
+	/**
+	 * Gene region as an effect type (e.g. EXON, INTRON, UPSTREAM, etc.)
+	 */
+	public EffectType getGeneRegionType() {
 		EffectType eff = getEffectType().getGeneRegion();
 		if (eff == EffectType.TRANSCRIPT && isExon()) eff = EffectType.EXON;
-		return eff.toString();
+		return eff;
 	}
 
 	public List<Gene> getGenes() {
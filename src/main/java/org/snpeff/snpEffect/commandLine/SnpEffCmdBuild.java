@@ -3,6 +3,7 @@ package org.snpeff.snpEffect.commandLine;
 import java.io.File;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import org.snpeff.RegulationConsensusMultipleBed;
 import org.snpeff.RegulationFileConsensus;
@@ -22,6 +23,7 @@ import org.snpeff.snpEffect.factory.SnpEffPredictorFactory;
 import org.snpeff.snpEffect.factory.SnpEffPredictorFactoryEmbl;
 import org.snpeff.snpEffect.factory.SnpEffPredictorFactoryGenBank;
 import org.snpeff.snpEffect.factory.SnpEffPredictorFactoryGenesFile;
+import org.snpeff.snpEffect.factory.SnpEffPredictorFactoryGff;
 import org.snpeff.snpEffect.factory.SnpEffPredictorFactoryGff2;
 import org.snpeff.snpEffect.factory.SnpEffPredictorFactoryGff3;
 import org.snpeff.snpEffect.factory.SnpEffPredictorFactoryGtf22;
@@ -33,6 +35,9 @@ import org.snpeff.util.Timer;
 /**
  * Command line program: Build database
  *
+ * Multi-threaded mode ('-t'): Per chromosome build stages run in a fork-join
+ * pool and sequence files are written concurrently.
+ *
  * @author pcingola
  */
 public class SnpEffCmdBuild extends SnpEff {
@@ -42,9 +47,11 @@ public class SnpEffCmdBuild extends SnpEff {
 	boolean storeAlignments; // Store alignments (used for some test cases)
 	boolean storeSequences = false; // Store full sequences
 	boolean regSortedByType = false;
+	boolean splitByChromo = false; // Parse GFF / GTF files one chromosome at a time (bounded memory)
 	String cellType = null;
 	SnpEffCmdProtein snpEffCmdProtein;
 	SnpEffCmdCds snpEffCmdCds;
+	ForkJoinPool buildPool; // Thread pool used when building in parallel (null means 'sequential')
 
 	public SnpEffCmdBuild() {
 		super();
@@ -121,6 +128,8 @@ public class SnpEffCmdBuild extends SnpEff {
 		factory.setVerbose(verbose);
 		factory.setDebug(debug);
 		factory.setStoreSequences(storeSequences);
+		factory.setExecutor(buildPool);
+		if (factory instanceof SnpEffPredictorFactoryGff) ((SnpEffPredictorFactoryGff) factory).setSplitByChromo(splitByChromo);
 		return factory;
 	}
 
@@ -225,6 +234,10 @@ public class SnpEffCmdBuild extends SnpEff {
 					regSortedByType = true;
 					break;
 
+				case "-splitbychromo":
+					splitByChromo = true;
+					break;
+
 				default:
 					usage("Unknown option '" + arg + "'");
 				}
@@ -355,6 +368,42 @@ public class SnpEffCmdBuild extends SnpEff {
 		}
 	}
 
+	/**
+	 * Build database: Create SnpEffectPredictor, check and save it
+	 */
+	void buildDb() {
+		Timer timer = new Timer();
+		SnpEffPredictorFactory snpEffectPredictorFactory = createSnpEffPredictorFactory();
+		SnpEffectPredictor snpEffectPredictor = snpEffectPredictorFactory.create();
+		config.setSnpEffectPredictor(snpEffectPredictor);
+		snpEffectPredictorFactory.stageTime("Create predictor (total)", timer.elapsed());
+
+		// Characterize exons (if possible)
+		timer = new Timer();
+		ExonSpliceCharacterizer exonSpliceCharacterizer = new ExonSpliceCharacterizer(snpEffectPredictor.getGenome());
+		exonSpliceCharacterizer.setVerbose(verbose);
+		exonSpliceCharacterizer.characterize();
+		snpEffectPredictorFactory.stageTime("Characterize exons", timer.elapsed());
+
+		// Add read rare codons annotations, if possible
+		timer = new Timer();
+		rareAa(snpEffectPredictor);
+		snpEffectPredictorFactory.stageTime("Rare amino acids", timer.elapsed());
+
+		// Check database
+		timer = new Timer();
+		checkDb(snpEffectPredictorFactory);
+		snpEffectPredictorFactory.stageTime("Check database", timer.elapsed());
+
+		// Save database
+		timer = new Timer();
+		if (verbose) Timer.showStdErr("Saving database");
+		snpEffectPredictor.save(config, buildPool);
+		snpEffectPredictorFactory.stageTime("Save database", timer.elapsed());
+
+		if (verbose) Timer.showStdErr("Database build times" + (multiThreaded ? " (parallel, " + numWorkers + " threads)" : "") + ":" + snpEffectPredictorFactory.stageTimesToString());
+	}
+
 	/**
 	 * Build database
 	 */
@@ -365,24 +414,17 @@ public class SnpEffCmdBuild extends SnpEff {
 
 		// Create SnpEffectPredictor
 		if (!onlyRegulation) {
-			SnpEffPredictorFactory snpEffectPredictorFactory = createSnpEffPredictorFactory();
-			SnpEffectPredictor snpEffectPredictor = snpEffectPredictorFactory.create();
-			config.setSnpEffectPredictor(snpEffectPredictor);
-
-			// Characterize exons (if possible)
-			ExonSpliceCharacterizer exonSpliceCharacterizer = new ExonSpliceCharacterizer(snpEffectPredictor.getGenome());
-			exonSpliceCharacterizer.setVerbose(verbose);
-			exonSpliceCharacterizer.characterize();
-
-			// Add read rare codons annotations, if possible
-			rareAa(snpEffectPredictor);
-
-			// Check database
-			checkDb(snpEffectPredictorFactory);
+			if (multiThreaded) {
+				if (verbose) Timer.showStdErr("Building database using " + numWorkers + " threads");
+				buildPool = new ForkJoinPool(Math.max(1, numWorkers));
+			}
 
-			// Save database
-			if (verbose) Timer.showStdErr("Saving database");
-			snpEffectPredictor.save(config);
+			try {
+				buildDb();
+			} finally {
+				if (buildPool != null) buildPool.shutdownNow();
+				buildPool = null;
+			}
 		}
 
 		// Read regulation elements
@@ -425,7 +467,9 @@ public class SnpEffCmdBuild extends SnpEff {
 		System.err.println("\t-noStoreSeqs                 : Do not store sequence in binary files. Default: " + !storeSequences);
 		System.err.println("\t-onlyReg                     : Only build regulation tracks.");
 		System.err.println("\t-regSortedByType             : The 'regulation.gff' file is sorted by 'regulation type' instead of sorted by chromosome:pos. Default: " + regSortedByType);
+		System.err.println("\t-splitByChromo               : GFF / GTF files are split by chromosome and parsed one chromosome at a time (uses less memory). Default: " + splitByChromo);
 		System.err.println("\t-storeSeqs                   : Store sequence in binary files. Default: " + storeSequences);
+		System.err.println("\t-t                           : Build per chromosome stages and write sequence files using multiple threads. Default 'off'");
 
 		usageGeneric();
 
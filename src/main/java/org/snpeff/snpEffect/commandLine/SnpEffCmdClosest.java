@@ -12,6 +12,7 @@ import org.snpeff.interval.Marker;
 import org.snpeff.interval.Markers;
 import org.snpeff.interval.Transcript;
 import org.snpeff.interval.Variant;
+import org.snpeff.interval.tree.IntervalRangeIndex;
 import org.snpeff.snpEffect.Config;
 import org.snpeff.snpEffect.SnpEffectPredictor;
 import org.snpeff.util.Timer;
@@ -31,6 +32,7 @@ public class SnpEffCmdClosest extends SnpEff {
 	boolean tss = false;
 	String inFile;
 	SnpEffectPredictor snpEffectPredictor;
+	IntervalRangeIndex closestIndex; // Markers within transcripts, used to find closest markers
 
 	public SnpEffCmdClosest() {
 		super();
@@ -104,57 +106,40 @@ public class SnpEffCmdClosest extends SnpEff {
 	}
 
 	/**
-	 * Find closest marker
+	 * Build an index of all markers that belong to a transcript
+	 * (exons, introns, UTRs, splice sites, upstream, downstream, etc.)
 	 */
-	Markers findClosestMarker(Marker queryMarker) {
-		int initialExtension = 1000;
-
-		Chromosome chr = queryMarker.getChromosome();
-		if ((chr != null) && (chr.size() > 0)) {
-
-			// Extend interval to capture 'close' markers
-			for (int extend = initialExtension; extend < chr.size(); extend *= 2) {
-				int start = Math.max(queryMarker.getStart() - extend, 0);
-				int end = queryMarker.getEnd() + extend;
-				Marker extended = new Marker(chr, start, end, false, "");
-
-				// Find all markers that intersect with 'extended interval'
-				Markers markers = snpEffectPredictor.queryDeep(extended);
-
-				// Find minimum distance
-				int minDistance = minDistance(queryMarker, markers);
-				if (minDistance < Integer.MAX_VALUE) {
-					// All markers that are at minimum distance
-					Markers closest = findClosestMarkers(queryMarker, markers, minDistance);
-					return closest;
-				}
-			}
-		}
+	void buildClosestIndex() {
+		closestIndex = new IntervalRangeIndex();
 
-		// Nothing found
-		return null;
+		// Markers in the interval forest (e.g. upstream / downstream)
+		for (Marker m : snpEffectPredictor.getMarkers())
+			if (isClosestCandidate(m)) closestIndex.add(m);
+
+		// Transcript's sub-markers
+		for (Gene gene : config.getGenome().getGenes())
+			for (Transcript tr : gene)
+				for (Marker m : tr.query(tr))
+					if (isClosestCandidate(m)) closestIndex.add(m);
+
+		closestIndex.build();
 	}
 
 	/**
-	 * Find closest marker to query (in markers collection)
+	 * Find closest marker
 	 */
-	Markers findClosestMarkers(Marker queryMarker, Markers markers, int maxDistance) {
+	Markers findClosestMarker(Marker queryMarker) {
+		// All markers that are at minimum distance
+		Markers markers = closestIndex.nearest(queryMarker);
+		if (markers.isEmpty()) return null; // Nothing found
+
 		Markers closest = new Markers();
 		HashSet<String> done = new HashSet<String>();
-
 		for (Marker m : markers) {
-			// We don't care about these
-			if ((m instanceof Chromosome) || (m instanceof Intergenic) || (m instanceof Gene) || (m instanceof Transcript)) continue;
-
-			// Find marker at distance less than 'distance'
-			int dist = m.distance(queryMarker);
-
-			if ((dist <= maxDistance) && (findTranscript(m) != null)) {
-				String idChain = m.idChain();
-				if (!done.contains(idChain)) { // Do not repeat information
-					closest.add(m);
-					done.add(idChain);
-				}
+			String idChain = m.idChain();
+			if (!done.contains(idChain)) { // Do not repeat information
+				closest.add(m);
+				done.add(idChain);
 			}
 		}
 
@@ -170,19 +155,14 @@ public class SnpEffCmdClosest extends SnpEff {
 	}
 
 	/**
-	 * Find minimum distance
+	 * Can this marker be reported as 'closest'?
 	 */
-	int minDistance(Marker queryMarker, Markers markers) {
-		int minDist = Integer.MAX_VALUE;
-		for (Marker m : markers) {
-			// We don't care about these
-			if ((m instanceof Chromosome) || (m instanceof Intergenic) || (m instanceof Gene) || (m instanceof Transcript)) continue;
+	boolean isClosestCandidate(Marker m) {
+		// We don't care about these
+		if ((m instanceof Chromosome) || (m instanceof Intergenic) || (m instanceof Gene) || (m instanceof Transcript)) return false;
 
-			// Find closest marker that has a transcript
-			int dist = m.distance(queryMarker);
-			if ((dist <= minDist) && (findTranscript(m) != null)) minDist = dist;
-		}
-		return minDist;
+		// Only markers that have a transcript
+		return findTranscript(m) != null;
 	}
 
 	/**
@@ -249,6 +229,10 @@ public class SnpEffCmdClosest extends SnpEff {
 		snpEffectPredictor.buildForest();
 		if (verbose) Timer.showStdErr("done");
 
+		if (verbose) Timer.showStdErr("Building closest marker index...");
+		buildClosestIndex();
+		if (verbose) Timer.showStdErr("done");
+
 		// Annotate
 		if (verbose) Timer.showStdErr("Reading file '" + inFile + "'");
 		if (bedFormat) bedIterate();
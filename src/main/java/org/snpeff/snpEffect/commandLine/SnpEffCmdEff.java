@@ -14,8 +14,8 @@ import java.util.Set;
 
 import org.apache.commons.io.FilenameUtils;
 import org.snpeff.SnpEff;
-import org.snpeff.akka.vcf.VcfWorkQueue;
 import org.snpeff.fileIterator.BedFileIterator;
+import org.snpeff.fileIterator.LineFileIterator;
 import org.snpeff.fileIterator.VariantFileIterator;
 import org.snpeff.fileIterator.VcfFileIterator;
 import org.snpeff.filter.VariantEffectFilter;
@@ -32,7 +32,8 @@ import org.snpeff.snpEffect.VariantEffect;
 import org.snpeff.snpEffect.VariantEffect.EffectImpact;
 import org.snpeff.snpEffect.VariantEffects;
 import org.snpeff.snpEffect.VcfAnnotator;
-import org.snpeff.snpEffect.commandLine.eff.MasterEff;
+import org.snpeff.snpEffect.commandLine.eff.PipelineEff;
+import org.snpeff.snpEffect.commandLine.eff.WorkerEff;
 import org.snpeff.stats.CountByType;
 import org.snpeff.stats.VariantEffectStats;
 import org.snpeff.stats.VariantStats;
@@ -43,10 +44,8 @@ import org.snpeff.util.Tuple;
 import org.snpeff.vcf.EffFormatVersion;
 import org.snpeff.vcf.Pedigree;
 import org.snpeff.vcf.VcfEntry;
+import org.snpeff.vcf.VcfHeader;
 
-import akka.actor.Actor;
-import akka.actor.Props;
-import akka.actor.UntypedActorFactory;
 import freemarker.template.Configuration;
 import freemarker.template.DefaultObjectWrapper;
 import freemarker.template.Template;
@@ -72,11 +71,14 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 	public static final int SHOW_EVERY = 10 * 1000;
 
 	boolean anyCancerSample;
+	boolean bgzip = false; // Compress output using BGZF format
 	boolean cancer = false; // Perform cancer comparisons
 	boolean chromoPlots = true; // Create mutations by chromosome plots?
 	boolean createSummaryCsv = false;
 	boolean createSummaryHtml = true;
 	boolean lossOfFunction = true; // Create loss of function LOF tag?
+	boolean onlyInputChromosomes = false; // Only load database chromosomes used in input file/s
+	boolean tabix = false; // Create a tabix index for the output file (implies BGZF output)
 	boolean useGeneId = false; // Use gene ID instead of gene name (VCF output)
 	boolean useLocalTemplate = false; // Use template from 'local' file instead of 'jar' (this is only used for development and debugging)
 	boolean useOicr = false; // Use OICR tag
@@ -89,6 +91,7 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 	String cancerSamples = null;
 	String chrStr = "";
 	String inputFile = ""; // Input file
+	String outFile = null; // Output file (null means STDOUT)
 	String fastaProt = null;
 	String xmlProt = null;
 	String xmlProt2 = null;
@@ -140,20 +143,23 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 		VcfFileIterator vcf = null;
 
 		// Iterate over input files
-		if (new File(inputFile).exists()) {
-			switch (inputFormat) {
-				case VCF:
-					vcf = (multiThreaded ? annotateVcfMulti(inputFile, outputFormatter) : annotateVcf(inputFile));
-					break;
-
-				case BED:
-					annotateBed(inputFile, outputFormatter);
-					break;
-
-				default:
-					throw new RuntimeException("Cannot create variant file iterator on input format '" + inputFormat + "'");
+		try {
+			if (new File(inputFile).exists()) {
+				switch (inputFormat) {
+					case VCF:
+						vcf = (multiThreaded ? annotateVcfMulti(inputFile, outputFormatter) : annotateVcf(inputFile));
+						break;
+
+					case BED:
+						annotateBed(inputFile, outputFormatter);
+						break;
+
+					default:
+						throw new RuntimeException("Cannot create variant file iterator on input format '" + inputFormat + "'");
+				}
 			}
-			outputFormatter.close();
+		} finally {
+			outputFormatter.close(); // Flush buffered output, even if annotation failed
 		}
 
 		// Create reports and finish up
@@ -288,6 +294,7 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 		boolean ok = true;
 
 		if (vcfFile != null) vcfFile.close();
+		if (outputFormatter != null) outputFormatter.close(); // Flush buffered output (e.g. when used as a VcfAnnotator)
 
 		// Creates protein XML file
 		if (xmlProt != null) {
@@ -384,42 +391,8 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 			}
 		}
 
-		//---
 		// Create output formatter
-		//---
-		outputFormatter = null;
-		switch (outputFormat) {
-		case VCF:
-			VcfOutputFormatter vof = new VcfOutputFormatter(vcfEntriesDebug);
-			vof.setFormatVersion(formatVersion);
-			vof.setLossOfFunction(lossOfFunction);
-			vof.setConfig(config);
-			outputFormatter = vof;
-			break;
-		case GATK:
-			outputFormatter = new VcfOutputFormatter(vcfEntriesDebug);
-			((VcfOutputFormatter) outputFormatter).setGatk(true);
-			break;
-		case BED:
-			outputFormatter = new BedOutputFormatter();
-			break;
-		case BEDANN:
-			outputFormatter = new BedAnnotationOutputFormatter();
-			break;
-		default:
-			throw new RuntimeException("Unknown output format '" + outputFormat + "'");
-		}
-
-		outputFormatter.setVersion(VERSION_AUTHOR);
-		outputFormatter.setCommandLineStr(commandLineStr(false));
-		outputFormatter.setVariantEffectResutFilter(variantEffectResutFilter);
-		outputFormatter.setSupressOutput(suppressOutput);
-		outputFormatter.setChrStr(chrStr);
-		outputFormatter.setUseSequenceOntology(useSequenceOntology);
-		outputFormatter.setUseOicr(useOicr);
-		outputFormatter.setUseHgvs(hgvs);
-		outputFormatter.setUseGeneId(useGeneId);
-		outputFormatter.setOutputFile(outputFile);
+		outputFormatter = createOutputFormatter(outputFile);
 	}
 
 	@Override
@@ -548,34 +521,112 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 	VcfFileIterator annotateVcfMulti(String inputFile, final OutputFormatter outputFormatter) {
 		if (verbose) Timer.showStdErr("Running multi-threaded mode (numThreads=" + numWorkers + ").");
 
-		outputFormatter.setShowHeader(false); // Master process takes care of the header (instead of outputFormatter). Otherwise you get the header printed one time per worker.
-
-		// We need final variables for the inner class
-		final SnpEffectPredictor snpEffectPredictor = config.getSnpEffectPredictor();
-		final VcfOutputFormatter vcfOutForm = (VcfOutputFormatter) outputFormatter;
-		final SnpEffCmdEff snpEffCmdEff = this;
+		// Open VCF file
+		VcfFileIterator vcfFile = new VcfFileIterator(inputFile, config.getGenome());
+		vcfFile.setDebug(debug);
 
-		VcfFileIterator vcf = new VcfFileIterator(inputFile, config.getGenome());
+		// Show header (workers' output formatters do not show it)
+		VcfHeader vcfHeader = vcfFile.readHeader();
+		if (vcfHeader == null) vcfHeader = vcfFile.getVcfHeader(); // Empty file
+		for (String newHeaderLine : ((VcfOutputFormatter) outputFormatter).getNewHeaderLines())
+			vcfHeader.addLine(newHeaderLine);
+		outputFormatter.print(vcfHeader.toString());
 
-		// Master factory
-		Props props = new Props(new UntypedActorFactory() {
+		// Annotate using a pipeline
+		final boolean createStats = createSummaryHtml || createSummaryCsv;
+		PipelineEff pipeline = new PipelineEff(numWorkers, this, snpEffectPredictor, outputFormatter, filterIntervals) {
 
-			private static final long serialVersionUID = 1L;
+			@Override
+			protected WorkerEff newWorker() {
+				WorkerEff worker = super.newWorker();
+				if (createStats) {
+					// Each worker has its own statistics, they are merged at the end
+					worker.setVariantStats(new VariantStats(config.getGenome()));
+					VariantEffectStats ves = new VariantEffectStats(config.getGenome());
+					ves.setUseSequenceOntology(useSequenceOntology);
+					worker.setVariantEffectStats(ves);
+					worker.setVcfStats(new VcfStats());
+				}
+				return worker;
+			}
 
 			@Override
-			public Actor create() {
-				MasterEff master = new MasterEff(numWorkers, snpEffCmdEff, snpEffectPredictor, outputFormatter, filterIntervals);
-				master.setAddHeader(vcfOutForm.getNewHeaderLines().toArray(new String[0]));
-				return master;
+			protected void output(VcfEntry vcfEntry, StringBuilder out, int start, int end) {
+				countInputLines++;
+				countVcfEntries++;
+				if (verbose && (countVcfEntries % SHOW_EVERY == 0)) Timer.showStdErr("\t" + countVcfEntries + " VCF entries");
+
+				if (out == null) return; // Filtered out
+				if (vcfEntriesDebug != null) vcfEntriesDebug.add(vcfEntry);
+				super.output(vcfEntry, out, start, end);
+			}
+		};
+		pipeline.run(vcfFile);
+
+		// Merge counters and statistics from all workers
+		for (WorkerEff worker : pipeline.getWorkers()) {
+			countVariants += worker.getCountVariants();
+			countEffects += worker.getCountEffects();
+			totalErrs += worker.getTotalErrs();
+			errByType.merge(worker.getErrByType());
+			warnByType.merge(worker.getWarnByType());
+			if (createStats) {
+				variantStats.merge(worker.getVariantStats());
+				variantEffectStats.merge(worker.getVariantEffectStats());
+				vcfStats.merge(worker.getVcfStats());
 			}
-		});
+		}
+
+		// Show errors and warnings
+		if (verbose) {
+			if (!errByType.isEmpty()) System.err.println("\nERRORS: Some errors were detected\nError type\tNumber of errors\n" + errByType + "\n");
+			if (!warnByType.isEmpty()) System.err.println("\nWARNINGS: Some warning were detected\nWarning type\tNumber of warnings\n" + warnByType + "\n");
+		}
 
-		// Create and run queue
-		int batchSize = 10;
-		VcfWorkQueue vcfWorkQueue = new VcfWorkQueue(inputFile, config, batchSize, -1, props);
-		vcfWorkQueue.run(true);
+		return vcfFile;
+	}
+
+	/**
+	 * Create an output formatter (according to command line options)
+	 */
+	public OutputFormatter createOutputFormatter(String outputFile) {
+		OutputFormatter outputFormatter = null;
+		switch (outputFormat) {
+		case VCF:
+			VcfOutputFormatter vof = new VcfOutputFormatter(vcfEntriesDebug);
+			vof.setFormatVersion(formatVersion);
+			vof.setLossOfFunction(lossOfFunction);
+			vof.setConfig(config);
+			outputFormatter = vof;
+			break;
+		case GATK:
+			outputFormatter = new VcfOutputFormatter(vcfEntriesDebug);
+			((VcfOutputFormatter) outputFormatter).setGatk(true);
+			break;
+		case BED:
+			outputFormatter = new BedOutputFormatter();
+			break;
+		case BEDANN:
+			outputFormatter = new BedAnnotationOutputFormatter();
+			break;
+		default:
+			throw new RuntimeException("Unknown output format '" + outputFormat + "'");
+		}
 
-		return vcf;
+		outputFormatter.setVersion(VERSION_AUTHOR);
+		outputFormatter.setCommandLineStr(commandLineStr(false));
+		outputFormatter.setVariantEffectResutFilter(variantEffectResutFilter);
+		outputFormatter.setSupressOutput(suppressOutput);
+		outputFormatter.setChrStr(chrStr);
+		outputFormatter.setUseSequenceOntology(useSequenceOntology);
+		outputFormatter.setUseOicr(useOicr);
+		outputFormatter.setUseHgvs(hgvs);
+		outputFormatter.setUseGeneId(useGeneId);
+		outputFormatter.setOutputFile(outputFile);
+		outputFormatter.setBgzip(bgzip);
+		outputFormatter.setTabix(tabix);
+		outputFormatter.setNumThreads(numWorkers);
+		return outputFormatter;
 	}
 
 	public VariantEffectStats getChangeEffectResutStats() {
@@ -590,6 +641,47 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 		return variantStats;
 	}
 
+	/**
+	 * Scan input file/s and find all chromosome names
+	 * Note: Translocations' mate chromosomes (VCF 'BND' ALTs) are also included
+	 */
+	Set<String> inputChromosomes() {
+		if (verbose) Timer.showStdErr("Reading chromosome names from input file/s");
+
+		List<String> files = inputFiles;
+		if (files == null) {
+			files = new ArrayList<>();
+			files.add(inputFile);
+		}
+
+		Set<String> chrs = new HashSet<>();
+		for (String file : files) {
+			LineFileIterator lfi = new LineFileIterator(file);
+			for (String line : lfi) {
+				if (line.isEmpty() || line.startsWith("#")) continue;
+
+				int idx = line.indexOf('\t');
+				String chr = (idx >= 0 ? line.substring(0, idx) : line);
+				chrs.add(chr);
+
+				// Translocation: Add mate's chromosome (e.g. ALT 'G]17:198982]')
+				if (inputFormat == InputFormat.VCF && (line.indexOf('[') >= 0 || line.indexOf(']') >= 0)) {
+					String fields[] = line.split("\t", 6);
+					if (fields.length > 4) {
+						String alt = fields[4];
+						int start = Math.max(alt.indexOf('['), alt.indexOf(']')) + 1;
+						int end = alt.indexOf(':', start);
+						if (end > start) chrs.add(alt.substring(start, end));
+					}
+				}
+			}
+			lfi.close();
+		}
+
+		if (verbose) Timer.showStdErr("done. Chromosomes: " + chrs);
+		return chrs;
+	}
+
 	/**
 	 * Create a suitable output file name
 	 */
@@ -624,6 +716,7 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 		default:
 			throw new RuntimeException("Unimplemented option for output file type " + outputFormat);
 		}
+		if (bgzip || tabix) outputFile += ".gz";
 
 		// Create summary file names
 		if (createSummaryCsv) summaryFileCsv = Gpr.dirName(inputFile) + "/" + base + "_summary.csv";
@@ -658,6 +751,10 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 					//---
 					// Output options
 					//---
+					case "-bgzip":
+						bgzip = true;
+						break;
+
 					case "-chr":
 						chrStr = args[++i];
 						break;
@@ -693,6 +790,15 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 						createSummaryHtml = createSummaryCsv = false;
 						break;
 
+					case "-outfile":
+						if ((i + 1) < args.length) outFile = args[++i];
+						else usage("Missing -outFile argument");
+						break;
+
+					case "-tabix":
+						tabix = true;
+						break;
+
 					case "-o": // Output format
 						if ((i + 1) < args.length) {
 							String outFor = args[++i].toUpperCase();
@@ -791,6 +897,10 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 					//---
 					// Input options
 					//---
+					case "-onlyinputchr":
+						onlyInputChromosomes = true;
+						break;
+
 					case "-fi":
 					case "-filterinterval":
 						if ((i + 1) < args.length) filterIntervalFiles.add(args[++i]);
@@ -883,6 +993,9 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 				inputFiles.add(file);
 		}
 
+		// Input has to be read twice
+		if (onlyInputChromosomes && inputFile.equals("-")) usage("Option '-onlyInputChr' cannot be used when reading from STDIN");
+
 		// Sanity checks for VCF output format
 		boolean isOutVcf = (outputFormat == OutputFormat.VCF) || (outputFormat == OutputFormat.GATK);
 		if (isOutVcf && (inputFormat != InputFormat.VCF)) usage("Output in VCF format is only supported when the input is also in VCF format");
@@ -890,13 +1003,12 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 		if (!isOutVcf && cancer) usage("Cancer annotation is only supported when when output is in VCF format");
 
 		// Sanity check for multi-threaded version
-		if (multiThreaded) {
-			createSummaryHtml = false; // This is implied ( '-t' => '-noStats' )
-			createSummaryCsv = false;
-		}
 		if (multiThreaded && cancer) usage("Cancer analysis is currently not supported in multi-threaded mode.");
 		if (multiThreaded && !isOutVcf) usage("Multi-threaded option is only supported when when output is in VCF format");
-		if (multiThreaded && (createSummaryHtml || createSummaryCsv)) usage("Multi-threaded option should be used with 'noStats'.");
+		if (multiThreaded && (fastaProt != null)) usage("Protein sequence output ('-fastaProt') is not supported in multi-threaded mode.");
+
+		// Tabix index needs an output file
+		if (tabix && (outFile == null) && (inputFiles == null)) usage("Tabix index ('-tabix') requires an output file ('-outFile' or '-fileList').");
 	}
 
 	/**
@@ -1017,6 +1129,7 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 		filterIntervals = null;
 
 		loadConfig(); // Read config file
+		if (onlyInputChromosomes) loadChromosomes = inputChromosomes(); // Only load chromosomes used in the input
 		loadDb(); // Load database
 
 		// Check if we can open the input file (no need to check if it is STDIN)
@@ -1045,7 +1158,7 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 		if (verbose) Timer.showStdErr("Predicting variants");
 		if (inputFiles == null) {
 			// Single input file, output to STDOUT (typical usage)
-			ok = annotate(inputFile, null);
+			ok = annotate(inputFile, outFile);
 		} else {
 			// Multiple input and output files
 			for (String inputFile : inputFiles) {
@@ -1174,15 +1287,19 @@ public class SnpEffCmdEff extends SnpEff implements VcfAnnotator {
 		System.err.println("\tvariants_file                   : Default is STDIN");
 		System.err.println("\n");
 		System.err.println("\nOptions:");
+		System.err.println("\t-bgzip                          : Compress output using BGZF (bgzip) format, so it can be indexed using tabix.");
 		System.err.println("\t-chr <string>                   : Prepend 'string' to chromosome name (e.g. 'chr1' instead of '1'). Only on TXT output.");
 		System.err.println("\t-classic                        : Use old style annotations instead of Sequence Ontology and Hgvs.");
 		System.err.println("\t-csvStats <file>                : Create CSV summary file.");
 		System.err.println("\t-download                       : Download reference genome if not available. Default: " + download);
 		System.err.println("\t-i <format>                     : Input format [ vcf, bed ]. Default: VCF.");
 		System.err.println("\t-fileList                       : Input actually contains a list of files to process.");
+		System.err.println("\t-onlyInputChr                   : Only load database chromosomes present in input file/s (input is read twice, cannot be used with STDIN).");
 		System.err.println("\t-o <format>                     : Ouput format [ vcf, gatk, bed, bedAnn ]. Default: VCF.");
 		System.err.println("\t-s , -stats, -htmlStats         : Create HTML summary file.  Default is '" + DEFAULT_SUMMARY_HTML_FILE + "'");
 		System.err.println("\t-noStats                        : Do not create stats (summary) file");
+		System.err.println("\t-outFile <file>                 : Output file. Default: STDOUT");
+		System.err.println("\t-tabix                          : Compress output using BGZF and create a tabix index (requires '-outFile' or '-fileList').");
 		System.err.println("\nResults filter options:");
 		System.err.println("\t-fi , -filterInterval  <file>   : Only analyze changes that intersect with the intervals specified in this file (you may use this option many times)");
 		System.err.println("\t-no-downstream                  : Do not show DOWNSTREAM changes");
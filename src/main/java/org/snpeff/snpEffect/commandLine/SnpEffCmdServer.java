@@ -0,0 +1,431 @@
+package org.snpeff.snpEffect.commandLine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.snpeff.SnpEff;
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.outputFormatter.OutputFormatter;
+import org.snpeff.outputFormatter.VcfOutputFormatter;
+import org.snpeff.snpEffect.SnpEffectPredictor;
+import org.snpeff.snpEffect.commandLine.eff.WorkerEff;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Timer;
+import org.snpeff.vcf.VcfEntry;
+import org.snpeff.vcf.VcfHeader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Command line: Annotation server
+ *
+ * Databases are loaded only once and kept in memory. Variants are
+ * annotated using a (loopback only) HTTP API:
+ *
+ * 		POST /ann/genome_version               : Request's body is VCF (either a whole file or just some VCF lines)
+ * 		GET  /ann/genome_version?file=file.vcf : Annotate a local VCF file (only files in 'fileDir')
+ * 		GET  /genomes                          : Show genomes available in this server
+ *
+ * The genome version can be omitted if only one genome is loaded (i.e. '/ann').
+ * Annotated VCF is streamed back while the input is being read, so each request
+ * uses a bounded amount of memory, regardless of the input's size. Clients
+ * sending large VCF bodies should read the response while sending (e.g. 'curl'
+ * does), or use the 'file' parameter.
+ *
+ * Local files are disabled unless a directory is set ('-fileDir'). Only files
+ * inside that directory can be read (canonical paths are compared, so '..' and
+ * symbolic links cannot escape it). Other files are rejected (status 403).
+ *
+ * Requests are processed concurrently, using at most 'maxRequests' threads (other
+ * requests wait until a thread is available). Each request has its own worker
+ * (output formatter and counters), the databases are shared by all requests.
+ *
+ * Note: Config options are shared by all genomes (Config is a singleton)
+ *
+ * @author pcingola
+ */
+public class SnpEffCmdServer extends SnpEff {
+
+	public static final int DEFAULT_PORT = 5056;
+	public static final String CONTENT_TYPE = "text/plain; charset=UTF-8";
+	public static final String PATH_ANNOTATE = "/ann";
+	public static final String PATH_GENOMES = "/genomes";
+
+	int port = DEFAULT_PORT; // Port number (0 means any free port)
+	int maxRequests = 0; // Maximum number of requests processed concurrently (0 means 'numWorkers')
+	File fileDir; // Local files are only allowed in this directory (null means 'local files disabled')
+	List<String> genomeVers = new ArrayList<>(); // Genomes to load
+	Map<String, SnpEffCmdEff> annotators = new LinkedHashMap<>(); // Annotation commands (database already loaded) indexed by genome version
+	Map<String, OutputFormatter> outputFormatters = new LinkedHashMap<>(); // Output formatters (cloned for each request) indexed by genome version
+	HttpServer server;
+	ExecutorService executor;
+	CountDownLatch stopped;
+
+	public SnpEffCmdServer() {
+		super();
+		command = "server";
+	}
+
+	/**
+	 * Add a genome to this server. The annotation command must have
+	 * the database already loaded (i.e. 'load()' was invoked)
+	 */
+	public void addGenome(String genomeVer, SnpEffCmdEff cmdEff) {
+		OutputFormatter outputFormatter = cmdEff.createOutputFormatter(null);
+		outputFormatter.setShowHeader(false); // The header is added by 'annotate', only if the input has one
+		annotators.put(genomeVer, cmdEff);
+		outputFormatters.put(genomeVer, outputFormatter);
+	}
+
+	/**
+	 * Annotate VCF entries from 'reader' and write the results to 'out'
+	 * @return Number of VCF entries annotated
+	 */
+	public long annotate(String genomeVer, BufferedReader reader, Writer out) throws IOException {
+		SnpEffCmdEff cmdEff = annotators.get(genomeVer);
+		SnpEffectPredictor snpEffectPredictor = cmdEff.getConfig().getSnpEffectPredictor();
+		OutputFormatter outputFormatter = outputFormatters.get(genomeVer).clone(); // We cannot use the same output formatter for all requests
+
+		// Show header (only if the input has one)
+		VcfFileIterator vcfFile = new VcfFileIterator(reader, snpEffectPredictor.getGenome());
+		VcfHeader vcfHeader = vcfFile.readHeader();
+		if (vcfHeader == null) return 0; // Empty input
+		if (!vcfHeader.toString().isEmpty()) {
+			if (outputFormatter instanceof VcfOutputFormatter) {
+				for (String newHeaderLine : ((VcfOutputFormatter) outputFormatter).getNewHeaderLines())
+					vcfHeader.addLine(newHeaderLine);
+			}
+			out.write(vcfHeader.toString());
+			out.write('\n');
+		}
+
+		// Annotate and output each entry
+		long count = 0;
+		WorkerEff worker = new WorkerEff(cmdEff, snpEffectPredictor, outputFormatter, null);
+		StringBuilder sb = new StringBuilder(); // Reused for all entries
+		for (VcfEntry vcfEntry : vcfFile) {
+			sb.setLength(0);
+			if (worker.annotate(vcfEntry, sb)) {
+				sb.append('\n');
+				out.append(sb);
+			}
+			count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Create executor: Requests are processed by a fixed number of threads
+	 */
+	ExecutorService createExecutor() {
+		return Executors.newFixedThreadPool(getMaxRequests(), new ThreadFactory() {
+			int threadNum = 0;
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Server-" + (threadNum++));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public int getMaxRequests() {
+		return maxRequests > 0 ? maxRequests : Math.max(1, numWorkers);
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Handle an annotation request
+	 */
+	void handleAnnotate(HttpExchange exchange) throws IOException {
+		// Find genome
+		String genomeVer = exchange.getRequestURI().getPath().substring(PATH_ANNOTATE.length());
+		if (genomeVer.startsWith("/")) genomeVer = genomeVer.substring(1);
+		if (genomeVer.isEmpty() && annotators.size() == 1) genomeVer = annotators.keySet().iterator().next();
+		if (!annotators.containsKey(genomeVer)) {
+			sendError(exchange, 404, "Genome '" + genomeVer + "' not found. Available genomes: " + annotators.keySet());
+			return;
+		}
+
+		// Open input: Either the request's body or a local file
+		BufferedReader reader = null;
+		String fileName = queryParameter(exchange, "file");
+		String method = exchange.getRequestMethod();
+		if (method.equals("POST")) {
+			reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), "UTF-8"));
+		} else if (method.equals("GET") && fileName != null) {
+			File file = localFile(fileName);
+			if (file == null) {
+				sendError(exchange, 403, "Access to file '" + fileName + "' is not allowed");
+				return;
+			}
+			if (!Gpr.canRead(file.getPath())) {
+				sendError(exchange, 404, "Cannot read file '" + fileName + "'");
+				return;
+			}
+			reader = new BufferedReader(new FileReader(file));
+		} else {
+			sendError(exchange, 405, "Use 'POST' (VCF in request's body) or 'GET' with parameter 'file'");
+			return;
+		}
+
+		// Annotate: Stream results (chunked response)
+		Timer timer = new Timer();
+		exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+		exchange.sendResponseHeaders(200, 0);
+		Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), "UTF-8"));
+		try {
+			long count = annotate(genomeVer, reader, out);
+			if (verbose) Timer.showStdErr("Request " + method + " '" + genomeVer + "'" + (fileName != null ? ", file '" + fileName + "'" : "") + ": " + count + " VCF entries, " + timer.elapsed() + " ms");
+		} finally {
+			reader.close();
+			out.close();
+		}
+	}
+
+	/**
+	 * Handle a 'genomes' request: Show available genomes (one per line)
+	 */
+	void handleGenomes(HttpExchange exchange) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (String genomeVer : annotators.keySet())
+			sb.append(genomeVer + "\n");
+		send(exchange, 200, sb.toString());
+	}
+
+	/**
+	 * Resolve a local file name (relative names are relative to 'fileDir')
+	 * @return Canonical file or null if the file is not inside 'fileDir' (or local files are disabled)
+	 */
+	File localFile(String fileName) throws IOException {
+		if (fileDir == null) return null;
+
+		File file = new File(fileName);
+		if (!file.isAbsolute()) file = new File(fileDir, fileName);
+		file = file.getCanonicalFile();
+
+		return file.toPath().startsWith(fileDir.toPath()) && !file.equals(fileDir) ? file : null;
+	}
+
+	/**
+	 * Load all databases
+	 */
+	void loadGenomes() {
+		for (String genomeVer : genomeVers) {
+			if (verbose) Timer.showStdErr("Loading genome '" + genomeVer + "'");
+			SnpEffCmdEff cmdEff = new SnpEffCmdEff();
+			copyValues(cmdEff);
+			cmdEff.setGenomeVer(genomeVer);
+			cmdEff.load();
+			addGenome(genomeVer, cmdEff);
+		}
+
+		// Config is a singleton, so some options are shared by all genomes
+		Boolean tapc = null;
+		for (SnpEffCmdEff cmdEff : annotators.values()) {
+			boolean tapcGenome = cmdEff.getConfig().isTreatAllAsProteinCoding();
+			if (tapc != null && tapc != tapcGenome) warning("Genomes have different 'treatAllAsProteinCoding' values: ", "Use '-treatAllAsProteinCoding' command line option to set the same value for all genomes");
+			tapc = tapcGenome;
+		}
+	}
+
+	@Override
+	public void parseArgs(String[] args) {
+		this.args = args;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+
+			// Command line arguments?
+			if (isOpt(arg)) {
+				switch (arg.toLowerCase()) {
+				case "-filedir":
+					if ((i + 1) < args.length) setFileDir(args[++i]);
+					else usage("Option '-fileDir' without directory argument");
+					break;
+
+				case "-maxrequests":
+					if ((i + 1) < args.length) maxRequests = Gpr.parseIntSafe(args[++i]);
+					else usage("Option '-maxRequests' without number argument");
+					break;
+
+				case "-port":
+					if ((i + 1) < args.length) port = Gpr.parseIntSafe(args[++i]);
+					else usage("Option '-port' without number argument");
+					break;
+
+				default:
+					usage("Unknown option '" + arg + "'");
+				}
+			} else genomeVers.add(arg);
+		}
+
+		// Check: Do we have all required parameters?
+		if (genomeVers.isEmpty()) usage("Missing genome_version parameter");
+		if (maxRequests < 0) usage("Option '-maxRequests' cannot be negative");
+	}
+
+	/**
+	 * Get a parameter from the request's URI
+	 */
+	String queryParameter(HttpExchange exchange, String name) throws UnsupportedEncodingException {
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null) return null;
+
+		for (String nameValue : query.split("&")) {
+			int idx = nameValue.indexOf('=');
+			if (idx > 0 && nameValue.substring(0, idx).equals(name)) return URLDecoder.decode(nameValue.substring(idx + 1), "UTF-8");
+		}
+		return null;
+	}
+
+	@Override
+	public boolean run() {
+		loadGenomes();
+		start();
+
+		// Wait until the server is stopped
+		try {
+			stopped.await();
+		} catch (InterruptedException e) {
+			stop();
+		}
+		return true;
+	}
+
+	/**
+	 * Send a (small) response
+	 */
+	void send(HttpExchange exchange, int status, String msg) throws IOException {
+		byte bytes[] = msg.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+		exchange.sendResponseHeaders(status, bytes.length);
+		exchange.getResponseBody().write(bytes);
+		exchange.close();
+	}
+
+	/**
+	 * Send an error message
+	 */
+	void sendError(HttpExchange exchange, int status, String msg) throws IOException {
+		if (verbose) Timer.showStdErr("Error in request '" + exchange.getRequestURI() + "': " + msg);
+		send(exchange, status, "ERROR: " + msg + "\n");
+	}
+
+	/**
+	 * Allow local files ('file' parameter) only inside this directory
+	 */
+	public void setFileDir(String dir) {
+		try {
+			File d = new File(dir).getCanonicalFile();
+			if (!d.isDirectory()) throw new RuntimeException("Not a directory '" + dir + "'");
+			fileDir = d;
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot resolve directory '" + dir + "'", e);
+		}
+	}
+
+	public void setMaxRequests(int maxRequests) {
+		this.maxRequests = maxRequests;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * Start server (only listens on loopback interface)
+	 */
+	public void start() {
+		try {
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot start server on port " + port, e);
+		}
+
+		server.createContext(PATH_ANNOTATE, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					handleAnnotate(exchange);
+				} catch (Throwable t) {
+					error(t, "Error processing request '" + exchange.getRequestURI() + "'");
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+
+		server.createContext(PATH_GENOMES, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleGenomes(exchange);
+			}
+		});
+
+		executor = createExecutor();
+		server.setExecutor(executor);
+		stopped = new CountDownLatch(1);
+		server.start();
+
+		port = server.getAddress().getPort(); // Actual port (e.g. if port was 0)
+		if (verbose) Timer.showStdErr("Server started: http://" + server.getAddress().getHostString() + ":" + port + PATH_ANNOTATE + ", genomes: " + annotators.keySet() + ", max concurrent requests: " + getMaxRequests());
+	}
+
+	/**
+	 * Stop server
+	 */
+	public void stop() {
+		if (server != null) server.stop(0);
+		if (executor != null) executor.shutdownNow();
+		if (stopped != null) stopped.countDown();
+		server = null;
+		executor = null;
+		if (verbose) Timer.showStdErr("Server stopped");
+	}
+
+	@Override
+	public void usage(String message) {
+		if (message != null) System.err.println("Error: " + message + "\n");
+		System.err.println("snpEff version " + SnpEff.VERSION);
+		System.err.println("Usage: snpEff server [options] genome_version [genome_version_2 ... genome_version_N]");
+		System.err.println("\nOptions:");
+		System.err.println("\t-fileDir <dir>      : Allow annotating local files ('file' parameter), only inside this directory. Default: Local files disabled");
+		System.err.println("\t-maxRequests <num> : Maximum number of requests processed concurrently. Default: " + getMaxRequests());
+		System.err.println("\t-port <num>        : Port number (server only listens on loopback interface). Default: " + port);
+		System.err.println("\nRequests:");
+		System.err.println("\tPOST " + PATH_ANNOTATE + "/genome_version               : Annotate VCF lines (or a whole VCF file) in request's body");
+		System.err.println("\tGET  " + PATH_ANNOTATE + "/genome_version?file=file.vcf : Annotate a local VCF file (requires '-fileDir')");
+		System.err.println("\tGET  " + PATH_GENOMES + "                          : Show available genomes");
+		System.err.println("\nExample:\n\tcurl --data-binary @file.vcf http://localhost:" + DEFAULT_PORT + PATH_ANNOTATE + "/GRCh37.75");
+
+		usageGenericAndDb();
+
+		System.exit(-1);
+	}
+
+}
@@ -0,0 +1,265 @@
+package org.snpeff.snpEffect.commandLine.eff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.interval.tree.IntervalForest;
+import org.snpeff.outputFormatter.OutputFormatter;
+import org.snpeff.snpEffect.SnpEffectPredictor;
+import org.snpeff.snpEffect.commandLine.SnpEffCmdEff;
+import org.snpeff.vcf.VcfEntry;
+
+/**
+ * Multi-threaded annotation pipeline for SnpEff 'eff' command
+ *
+ * 	- A reader thread reads VCF entries (without parsing them) and groups them into batches
+ * 	- A pool of worker threads parse and annotate each batch
+ * 	- The calling thread outputs the results in the same order as the input
+ *
+ * Batches are queued in input order (the queue holds one 'Future' per batch), so
+ * the queue also works as a reorder buffer: the output waits for the oldest
+ * batch, while newer batches are being annotated. The queue is bounded, so a
+ * fast reader blocks instead of accumulating VCF entries in memory.
+ *
+ * Every worker thread has its own WorkerEff (output formatter, counters and
+ * statistics), so there is no shared state between workers.
+ *
+ * Workers append the output of all entries in a batch to the batch's
+ * buffer. Batches (and their buffers) are recycled once they have been
+ * written, so there are no per-line output strings.
+ *
+ * @author pcingola
+ */
+public class PipelineEff {
+
+	public static final int DEFAULT_BATCH_SIZE = 100;
+	public static final int BATCHES_PER_WORKER = 4; // Max number of pending batches per worker
+
+	/**
+	 * A batch of VCF entries and their annotated output
+	 */
+	class Batch implements Callable<Batch> {
+		VcfEntry vcfEntries[];
+		int outputEnd[]; // End of each entry's output in 'output' (-1 if the entry was filtered out)
+		StringBuilder output; // Output for all entries in this batch
+		int size;
+
+		Batch(int capacity) {
+			vcfEntries = new VcfEntry[capacity];
+			outputEnd = new int[capacity];
+			output = new StringBuilder();
+		}
+
+		void add(VcfEntry vcfEntry) {
+			vcfEntries[size++] = vcfEntry;
+		}
+
+		@Override
+		public Batch call() throws Exception {
+			WorkerEff worker = workers.get();
+			output.setLength(0);
+			for (int i = 0; i < size; i++)
+				outputEnd[i] = worker.annotate(vcfEntries[i], output) ? output.length() : -1;
+			return this;
+		}
+
+		/**
+		 * Clear batch, so it can be reused
+		 */
+		void clear() {
+			Arrays.fill(vcfEntries, 0, size, null);
+			size = 0;
+		}
+
+		boolean isFull() {
+			return size >= vcfEntries.length;
+		}
+	}
+
+	int numWorkers;
+	int batchSize = DEFAULT_BATCH_SIZE;
+	SnpEffCmdEff snpEffCmdEff;
+	SnpEffectPredictor snpEffectPredictor;
+	OutputFormatter outputFormatter;
+	IntervalForest filterIntervals;
+	List<WorkerEff> workerList; // All workers created (one per thread)
+	BlockingQueue<Batch> freeBatches; // Batches that can be reused
+	ThreadLocal<WorkerEff> workers;
+	volatile Throwable readerError;
+
+	public PipelineEff(int numWorkers, SnpEffCmdEff snpEffCmdEff, SnpEffectPredictor snpEffectPredictor, OutputFormatter outputFormatter, IntervalForest filterIntervals) {
+		this.numWorkers = Math.max(1, numWorkers);
+		this.snpEffCmdEff = snpEffCmdEff;
+		this.snpEffectPredictor = snpEffectPredictor;
+		this.outputFormatter = outputFormatter;
+		this.filterIntervals = filterIntervals;
+		workerList = Collections.synchronizedList(new ArrayList<WorkerEff>());
+
+		// Lazily create one worker per thread
+		workers = new ThreadLocal<WorkerEff>() {
+			@Override
+			protected WorkerEff initialValue() {
+				WorkerEff worker = newWorker();
+				workerList.add(worker);
+				return worker;
+			}
+		};
+	}
+
+	/**
+	 * All workers used in the last run (e.g. to merge statistics)
+	 */
+	public List<WorkerEff> getWorkers() {
+		return workerList;
+	}
+
+	/**
+	 * Get a batch (reuse a free one if available)
+	 */
+	Batch newBatch() {
+		Batch batch = freeBatches.poll();
+		return batch != null ? batch : new Batch(batchSize);
+	}
+
+	/**
+	 * Create a new worker. Each worker is used by only one thread.
+	 */
+	protected WorkerEff newWorker() {
+		OutputFormatter outForm = outputFormatter.clone(); // We cannot use the same output formatter for all workers
+		outForm.setShowHeader(false); // The header is shown before the pipeline starts
+		return new WorkerEff(snpEffCmdEff, snpEffectPredictor, outForm, filterIntervals);
+	}
+
+	/**
+	 * Output an annotated VCF entry. This is invoked from only one thread,
+	 * following the same order as the input file.
+	 *
+	 * @param out : Buffer containing the annotated VCF line, null if the entry was filtered out
+	 * @param start : Start of the annotated VCF line in 'out'
+	 * @param end : End of the annotated VCF line in 'out' (exclusive)
+	 *
+	 * Note: The buffer is reused once the batch has been written
+	 */
+	protected void output(VcfEntry vcfEntry, StringBuilder out, int start, int end) {
+		if (out != null) outputFormatter.print(out, start, end);
+	}
+
+	/**
+	 * Read VCF entries, create batches and send them to the executor.
+	 * Futures are added to the queue in the same order as the input.
+	 */
+	void read(VcfFileIterator vcfFile, ExecutorService executor, BlockingQueue<Future<Batch>> pending) {
+		try {
+			Batch batch = newBatch();
+			for (VcfEntry vcfEntry : vcfFile) {
+				batch.add(vcfEntry);
+				if (batch.isFull()) {
+					pending.put(executor.submit(batch));
+					batch = newBatch();
+				}
+			}
+			if (batch.size > 0) pending.put(executor.submit(batch));
+		} catch (InterruptedException e) {
+			return; // Output failed, the pipeline is shutting down
+		} catch (Throwable t) {
+			readerError = t;
+		}
+
+		// Signal end of input: A 'null' batch
+		try {
+			FutureTask<Batch> end = new FutureTask<>(new Callable<Batch>() {
+				@Override
+				public Batch call() throws Exception {
+					return null;
+				}
+			});
+			end.run();
+			pending.put(end);
+		} catch (InterruptedException e) {
+			// Nothing to do, the pipeline is shutting down
+		}
+	}
+
+	/**
+	 * Annotate all entries in a VCF file
+	 * Note: The header should have already been read (and shown)
+	 */
+	public void run(final VcfFileIterator vcfFile) {
+		vcfFile.setParseNow(false); // Workers parse VCF entries
+		workerList.clear();
+		readerError = null;
+
+		// Worker threads
+		final ExecutorService executor = Executors.newFixedThreadPool(numWorkers, new ThreadFactory() {
+			int threadNum = 0;
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "WorkerEff-" + (threadNum++));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		// Reader thread
+		final BlockingQueue<Future<Batch>> pending = new ArrayBlockingQueue<>(BATCHES_PER_WORKER * numWorkers);
+		freeBatches = new ArrayBlockingQueue<>(BATCHES_PER_WORKER * numWorkers + 2);
+		Thread reader = new Thread("ReaderEff") {
+			@Override
+			public void run() {
+				read(vcfFile, executor, pending);
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+
+		// Output results in order
+		try {
+			while (true) {
+				Batch batch = pending.take().get();
+				if (batch == null) break; // End of input
+
+				int start = 0;
+				for (int i = 0; i < batch.size; i++) {
+					int end = batch.outputEnd[i];
+					if (end < 0) {
+						output(batch.vcfEntries[i], null, 0, 0); // Filtered out
+					} else {
+						output(batch.vcfEntries[i], batch.output, start, end);
+						start = end;
+					}
+				}
+
+				// Recycle batch
+				batch.clear();
+				freeBatches.offer(batch);
+			}
+
+			if (readerError != null) throw new RuntimeException("Error reading VCF file", readerError);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			reader.interrupt();
+			executor.shutdownNow();
+		}
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+}
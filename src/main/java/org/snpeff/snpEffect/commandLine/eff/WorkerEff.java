@@ -1,6 +1,5 @@
 package org.snpeff.snpEffect.commandLine.eff;
 
-import org.snpeff.akka.vcfStr.WorkerVcfStr;
 import org.snpeff.interval.Variant;
 import org.snpeff.interval.tree.IntervalForest;
 import org.snpeff.outputFormatter.OutputFormatter;
@@ -8,69 +7,174 @@ import org.snpeff.snpEffect.SnpEffectPredictor;
 import org.snpeff.snpEffect.VariantEffect;
 import org.snpeff.snpEffect.VariantEffects;
 import org.snpeff.snpEffect.commandLine.SnpEffCmdEff;
+import org.snpeff.stats.CountByType;
+import org.snpeff.stats.VariantEffectStats;
+import org.snpeff.stats.VariantStats;
+import org.snpeff.stats.VcfStats;
 import org.snpeff.vcf.VcfEntry;
 
 /**
- * Worker agent for SnpEff 'eff' command
+ * Worker for SnpEff 'eff' command (multi-threaded mode)
+ *
+ * Each worker is used by only one thread, so it has its own output
+ * formatter, counters and statistics. These are merged when all
+ * VCF entries have been processed.
  *
  * @author pablocingolani
  */
-public class WorkerEff extends WorkerVcfStr {
+public class WorkerEff {
 
 	SnpEffCmdEff snpEffCmdEff; // Used only to show errors
 	SnpEffectPredictor snpEffectPredictor; // Predictor
 	OutputFormatter outputFormatter; // Output format
 	IntervalForest filterIntervals; // Filter only seqChanges that match these intervals
+	int totalErrs = 0;
+	long countVariants = 0;
+	long countEffects = 0;
+	VariantStats variantStats; // Variant statistics (null if no statistics are calculated)
+	VariantEffectStats variantEffectStats; // Variant effect statistics (null if no statistics are calculated)
+	VcfStats vcfStats; // VCF statistics (null if no statistics are calculated)
+	CountByType errByType, warnByType;
 
 	public WorkerEff(SnpEffCmdEff snpEffCmdEff, SnpEffectPredictor snpEffectPredictor, OutputFormatter outputFormatter, IntervalForest filterIntervals) {
-		super();
 		this.snpEffCmdEff = snpEffCmdEff;
 		this.snpEffectPredictor = snpEffectPredictor;
 		this.outputFormatter = outputFormatter;
 		this.filterIntervals = filterIntervals;
+		errByType = new CountByType();
+		warnByType = new CountByType();
 	}
 
-	@Override
-	public String calculate(VcfEntry vcfEntry) {
-		if (vcfEntry == null) return null;
+	/**
+	 * Annotate a VCF entry
+	 * @return A string to output or null if the VCF entry was filtered out
+	 */
+	public String annotate(VcfEntry vcfEntry) {
+		StringBuilder sb = new StringBuilder();
+		return annotate(vcfEntry, sb) ? sb.toString() : null;
+	}
 
-		try {
-			// We set the master (and VcfFileIterator) 'parseNow=false', so the VcfEntry should be 'unparsed' at this moment.
-			// The idea is that the workers can do this, relieving the master from this task.
-			vcfEntry.parse();
+	/**
+	 * Annotate a VCF entry and append the output to 'out'
+	 * @return true if the output was appended, false if the VCF entry was filtered out
+	 */
+	public boolean annotate(VcfEntry vcfEntry, StringBuilder out) {
+		// The VCF file iterator does not parse entries (see 'setParseNow(false)'), the workers do
+		vcfEntry.parse();
+
+		// Perform basic statistics about this VCF entry
+		if (vcfStats != null) {
+			try {
+				vcfStats.sample(vcfEntry);
+			} catch (Throwable t) {
+				totalErrs++;
+				snpEffCmdEff.error(t, "Error while processing VCF entry (line " + vcfEntry.getLineNum() + ") :\n\t" + vcfEntry + "\n" + t);
+			}
+		}
 
-			// Skip if there are filter intervals and they are not matched
-			if ((filterIntervals != null) && (filterIntervals.query(vcfEntry).isEmpty())) return null;
+		// Skip if there are filter intervals and they are not matched
+		if ((filterIntervals != null) && (filterIntervals.query(vcfEntry).isEmpty())) return false;
 
+		boolean finished = false, ok = false;
+		int len = out.length();
+		try {
 			// Create new 'section'
 			outputFormatter.startSection(vcfEntry);
 
 			for (Variant variant : vcfEntry.variants()) {
-				if (variant.isVariant()) {
-					// Calculate effects
-					VariantEffects variantEffects = snpEffectPredictor.variantEffect(variant);
+				countVariants++;
+				annotateVariant(variant);
+			}
 
-					// Create new 'section'
-					outputFormatter.startSection(variant);
+			// Finish up this section
+			ok = outputFormatter.endSection(vcfEntry, out);
+			finished = true;
+		} catch (Throwable t) {
+			totalErrs++;
+			snpEffCmdEff.error(t, "Error while processing VCF entry (line " + vcfEntry.getLineNum() + ") :\n\t" + vcfEntry + "\n" + t);
+		} finally {
+			if (!finished) {
+				out.setLength(len); // Discard partial output
+				ok = outputFormatter.endSection(vcfEntry, out);
+			}
+		}
 
-					// Show results
-					for (VariantEffect changeEffect : variantEffects)
-						outputFormatter.add(changeEffect);
+		return ok;
+	}
 
-					// Finish up this section
-					outputFormatter.endSection(variant);
-				}
-			}
+	/**
+	 * Annotate a single variant
+	 */
+	void annotateVariant(Variant variant) {
+		// Calculate effects: By default do not annotate non-variant sites
+		if (!variant.isVariant()) return;
 
-			// Finish up this section
-			outputFormatter.endSection(vcfEntry);
+		// Perform basic statistics about this variant
+		if (variantStats != null) variantStats.sample(variant);
 
-		} catch (Throwable t) {
-			snpEffCmdEff.error(t, "Error while processing VCF entry (line " + vcfEntry.getLineNum() + ") :\n\t" + vcfEntry);
-			t.printStackTrace();
+		VariantEffects variantEffects = snpEffectPredictor.variantEffect(variant);
+
+		// Create new 'section'
+		outputFormatter.startSection(variant);
+
+		// Show results
+		for (VariantEffect variantEffect : variantEffects) {
+			if (variantEffectStats != null) variantEffectStats.sample(variantEffect); // Perform basic statistics about this result
+
+			// Any errors or warnings?
+			if (variantEffect.hasError()) errByType.inc(variantEffect.getError());
+			if (variantEffect.hasWarning()) warnByType.inc(variantEffect.getWarning());
+
+			outputFormatter.add(variantEffect);
+			countEffects++;
 		}
 
-		return vcfEntry.toString();
+		// Finish up this section
+		outputFormatter.endSection(variant);
+	}
+
+	public long getCountEffects() {
+		return countEffects;
+	}
+
+	public long getCountVariants() {
+		return countVariants;
+	}
+
+	public CountByType getErrByType() {
+		return errByType;
+	}
+
+	public int getTotalErrs() {
+		return totalErrs;
+	}
+
+	public VariantEffectStats getVariantEffectStats() {
+		return variantEffectStats;
+	}
+
+	public VariantStats getVariantStats() {
+		return variantStats;
+	}
+
+	public VcfStats getVcfStats() {
+		return vcfStats;
+	}
+
+	public CountByType getWarnByType() {
+		return warnByType;
+	}
+
+	public void setVariantEffectStats(VariantEffectStats variantEffectStats) {
+		this.variantEffectStats = variantEffectStats;
+	}
+
+	public void setVariantStats(VariantStats variantStats) {
+		this.variantStats = variantStats;
+	}
+
+	public void setVcfStats(VcfStats vcfStats) {
+		this.vcfStats = vcfStats;
 	}
 
 }
@@ -2,13 +2,21 @@ package org.snpeff.snpEffect.factory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.snpeff.binseq.IndexedFasta;
 import org.snpeff.fileIterator.FastaFileIterator;
 import org.snpeff.interval.Cds;
 import org.snpeff.interval.Chromosome;
@@ -26,16 +34,45 @@ import org.snpeff.snpEffect.Config;
 import org.snpeff.snpEffect.SnpEffectPredictor;
 import org.snpeff.util.Gpr;
 import org.snpeff.util.GprSeq;
+import org.snpeff.util.Timer;
 
 /**
  * This class creates a SnpEffectPredictor from a file (or a set of files) and a configuration
  *
+ * Build stages that only involve genes in one chromosome (see BuildStage) are
+ * run chromosome by chromosome. If an 'executor' is set, chromosomes are
+ * processed in parallel. Elapsed times for each stage are kept in 'stageTimes'.
+ *
  * @author pcingola
  */
 public abstract class SnpEffPredictorFactory {
 
+	/**
+	 * Build stages that can be run independently for each chromosome
+	 */
+	enum BuildStage {
+		EXONS_FROM_CDS("Create exons from CDS") //
+		, DELETE_REDUNDANT("Delete redundant exons") //
+		, COLLAPSE_ZERO_LEN_INTRONS("Collapse zero length introns") //
+		, ADJUST_TRANSCRIPTS("Adjust transcripts") //
+		, ADJUST_GENES("Adjust genes") //
+		, RANK_EXONS("Rank exons") //
+		, UTR_FROM_CDS("Create UTRs from CDS") //
+		, FRAME_CORRECTION("Frame correction") //
+		, CODING_FROM_CDS("Mark coding from CDS") //
+		;
+
+		final String title;
+
+		BuildStage(String title) {
+			this.title = title;
+		}
+	}
+
 	// Show a mark every
 	public static final int MARK = 100;
+	public static final String GENE_ID_PREFIX = GffType.GENE + "_"; // Prefix for alternative gene IDs
+	public static final String TRANSCRIPT_ID_PREFIX = GffType.TRANSCRIPT + "_"; // Prefix for alternative transcript IDs
 	public static int MIN_TOTAL_FRAME_COUNT = 10;
 
 	// Debug mode?
@@ -58,10 +95,14 @@ public abstract class SnpEffPredictorFactory {
 	FrameType frameType;
 	Set<String> chromoNamesReference; // Chromosome names used in reference sequence file (e.g. FASTA)
 	Map<String, Integer> exonsByChromo;
+	Map<String, List<Gene>> genesByChromo; // Genes indexed by chromosome name (lower case). Used when adding sequences
 	Map<String, Marker> markersById;
 	Map<String, Gene> genesById;
 	Map<String, Transcript> transcriptsById;
 	Random random = new Random(20140410); // Note: we want consistent results in our test cases, so we always initialize the random generator in the same way
+	ExecutorService executor; // Used to run per chromosome stages in parallel (null means 'sequential')
+	Map<String, Long> stageTimes = new LinkedHashMap<>(); // Elapsed time (milliseconds) for each build stage
+	AtomicInteger stageMarks = new AtomicInteger(); // Progress marks shown in the current build stage (shared by all chromosomes)
 
 	public SnpEffPredictorFactory(Config config, int inOffset) {
 		this.config = config;
@@ -124,6 +165,7 @@ public abstract class SnpEffPredictorFactory {
 
 		if (genesById.containsKey(gene.getId())) throw new RuntimeException("Gene  '" + gene.getId() + "' already exists");
 		genesById.put(gene.getId(), gene);
+		genesByChromo = null; // Index is no longer valid
 	}
 
 	/**
@@ -159,28 +201,41 @@ public abstract class SnpEffPredictorFactory {
 	 * Add genomic reference sequences
 	 */
 	protected void addSequences(String chr, String chrSeq) {
+		addSequences(chr, chrSeq.length(), chrSeq, null);
+	}
+
+	/**
+	 * Add genomic reference sequences from an indexed FASTA file
+	 * Exon sequences are sliced by coordinates, the chromosome's sequence is never fully loaded
+	 */
+	protected void addSequences(String chr, IndexedFasta fasta) {
+		addSequences(chr, fasta.getLength(chr), null, fasta);
+	}
+
+	/**
+	 * Add genomic reference sequences. Sequences are either sub-strings
+	 * of 'chrSeq' or they are sliced from 'fasta' (when 'chrSeq' is null)
+	 */
+	void addSequences(String chr, int chrLen, String chrSeq, IndexedFasta fasta) {
 		// Update chromosome length
-		int chrLen = chrSeq.length();
 		Chromosome chromo = getOrCreateChromosome(chr);
 		chromo.setLength(chrLen);
 		chromo.detectCircular();
 
 		// Add sequences for each gene
 		int seqsAdded = 0, seqsIgnored = 0;
+		List<Gene> genes = genesByChromo(chr);
 
 		if (storeSequences) {
 			if (verbose) System.out.print("\t\tAdding genomic sequences to genes: ");
-			int count = genome.getGenomicSequences().addGeneSequences(chr, chrSeq);
+			int count = (chrSeq != null ? genome.getGenomicSequences().addGeneSequences(chr, genes, chrSeq) : genome.getGenomicSequences().addGeneSequences(chr, genes, fasta));
 			if (verbose) System.out.println("\tDone (" + count + " sequences added).");
 		}
 
 		if (verbose) System.out.print("\t\tAdding genomic sequences to exons: ");
 
 		// Find and add sequences for all exons in this chromosome
-		for (Gene gene : genome.getGenes()) {
-			// Different chromosome? Skip
-			if (!gene.getChromosomeName().equalsIgnoreCase(chr)) continue;
-
+		for (Gene gene : genes) {
 			for (Transcript tr : gene) {
 				// Circular chromosomes coordinates are corrected in this step
 				CircularCorrection cc = new CircularCorrection(tr, chrLen);
@@ -196,10 +251,10 @@ public abstract class SnpEffPredictorFactory {
 					if ((ssStart >= 0) && (ssEnd <= chrLen)) {
 						// Regular coordinates
 						try {
-							seq = chrSeq.substring(ssStart, ssEnd);
+							seq = sequence(chr, chrSeq, fasta, ssStart, ssEnd);
 						} catch (Throwable t) {
 							t.printStackTrace();
-							throw new RuntimeException("Error trying to add sequence to exon:\n\tChromosome sequence length: " + chrSeq.length() + "\n\tExon: " + exon);
+							throw new RuntimeException("Error trying to add sequence to exon:\n\tChromosome sequence length: " + chrLen + "\n\tExon: " + exon);
 						}
 					} else {
 						// Sanity check
@@ -212,7 +267,7 @@ public abstract class SnpEffPredictorFactory {
 							//     ii) Interval after zero: This are "normal" coordinates
 							// Then we concatenate both sequences
 							ssStart += chrLen;
-							seq = chrSeq.substring(ssStart, chrLen) + chrSeq.substring(0, ssEnd);
+							seq = sequence(chr, chrSeq, fasta, ssStart, chrLen) + sequence(chr, chrSeq, fasta, 0, ssEnd);
 						} else if ((ssStart < 0) && (ssEnd < 0)) {
 							// Negative start coordinates? This is probably a circular genome
 							// Convert to 2 intervals:
@@ -221,7 +276,7 @@ public abstract class SnpEffPredictorFactory {
 							// Then we concatenate both sequences
 							ssStart += chrLen;
 							ssEnd += chrLen;
-							seq = chrSeq.substring(ssStart, ssEnd);
+							seq = sequence(chr, chrSeq, fasta, ssStart, ssEnd);
 						}
 					}
 
@@ -241,8 +296,23 @@ public abstract class SnpEffPredictorFactory {
 		}
 
 		if (verbose) System.out.println("\tDone (" + seqsAdded + " sequences added, " + seqsIgnored + " ignored).");
-		totalSeqsAdded += seqsAdded;
-		totalSeqsIgnored += seqsIgnored;
+		synchronized (this) {
+			totalSeqsAdded += seqsAdded;
+			totalSeqsIgnored += seqsIgnored;
+		}
+	}
+
+	/**
+	 * A task that adds sequences for chromosome 'chr' from an indexed FASTA file
+	 */
+	Callable<Integer> addSequencesTask(final String chr, final IndexedFasta fasta) {
+		return new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				addSequences(chr, fasta);
+				return 0;
+			}
+		};
 	}
 
 	/**
@@ -279,23 +349,37 @@ public abstract class SnpEffPredictorFactory {
 	 * Adjust genes: recalculate start, end, strand, etc.
 	 */
 	void adjustGenes() {
-		int i = 1;
 		if (verbose) System.out.print("\n\tAdjusting genes: ");
-		for (Gene gene : genome.getGenes())
-			if (gene.adjust()) mark(i++);
+		forEachChromo(BuildStage.ADJUST_GENES);
+	}
 
+	int adjustGenes(List<Gene> genes) {
+		int count = 0;
+		for (Gene gene : genes)
+			if (gene.adjust()) {
+				markStage();
+				count++;
+			}
+		return count;
 	}
 
 	/**
 	 * Adjust transcripts: recalculate start, end, strand, etc.
 	 */
 	protected void adjustTranscripts() {
-		int i = 1;
 		if (verbose) System.out.print("\n\tAdjusting transcripts: ");
-		for (Gene gene : genome.getGenes())
-			for (Transcript tr : gene)
-				if (tr.adjust()) mark(i++);
+		forEachChromo(BuildStage.ADJUST_TRANSCRIPTS);
+	}
 
+	int adjustTranscripts(List<Gene> genes) {
+		int count = 0;
+		for (Gene gene : genes)
+			for (Transcript tr : gene)
+				if (tr.adjust()) {
+					markStage();
+					count++;
+				}
+		return count;
 	}
 
 	/**
@@ -336,9 +420,14 @@ public abstract class SnpEffPredictorFactory {
 	 * 		1340112	protein_coding
 	 */
 	protected void codingFromCds() {
-		int i = 0;
 		if (verbose) System.out.print("\n\tMarking as 'coding' from CDS information: ");
-		for (Gene gene : genome.getGenes())
+		int i = forEachChromo(BuildStage.CODING_FROM_CDS);
+		if (verbose) System.out.print("\n\tDone: " + i + " transcripts marked");
+	}
+
+	int codingFromCds(List<Gene> genes) {
+		int i = 0;
+		for (Gene gene : genes)
 			for (Transcript tr : gene) {
 				if (tr.getCds() != null && !tr.getCds().isEmpty()) {
 					// If transcript doesn't have protein coding flag set (and doesn't have biotype information), use CDS as a proxy for 'protein coding'
@@ -349,7 +438,7 @@ public abstract class SnpEffPredictorFactory {
 					}
 				}
 			}
-		if (verbose) System.out.print("\n\tDone: " + i + " transcripts marked");
+		return i;
 	}
 
 	//	/**
@@ -365,13 +454,19 @@ public abstract class SnpEffPredictorFactory {
 	 */
 	protected void collapseZeroLenIntrons() {
 		if (verbose) System.out.print("\n\tCollapsing zero length introns (if needed): ");
+		int count = forEachChromo(BuildStage.COLLAPSE_ZERO_LEN_INTRONS);
+		if (verbose) System.out.println("\n\t\tTotal collapsed transcripts: " + count);
+	}
 
+	int collapseZeroLenIntrons(List<Gene> genes) {
 		int count = 0;
-		for (Gene gene : genome.getGenes())
+		for (Gene gene : genes)
 			for (Transcript tr : gene)
-				if (tr.collapseZeroGap()) mark(count++);
-
-		if (verbose) System.out.println("\n\t\tTotal collapsed transcripts: " + count);
+				if (tr.collapseZeroGap()) {
+					markStage();
+					count++;
+				}
+		return count;
 	}
 
 	/**
@@ -425,12 +520,19 @@ public abstract class SnpEffPredictorFactory {
 	 */
 	protected void deleteRedundant() {
 		if (verbose) System.out.print("\n\tDeleting redundant exons (if needed): ");
+		int count = forEachChromo(BuildStage.DELETE_REDUNDANT);
+		if (verbose) System.out.println("\n\t\tTotal transcripts with deleted exons: " + count);
+	}
+
+	int deleteRedundant(List<Gene> genes) {
 		int count = 0;
-		for (Gene gene : genome.getGenes())
+		for (Gene gene : genes)
 			for (Transcript tr : gene)
-				if (tr.deleteRedundant()) mark(count++);
-
-		if (verbose) System.out.println("\n\t\tTotal transcripts with deleted exons: " + count);
+				if (tr.deleteRedundant()) {
+					markStage();
+					count++;
+				}
+		return count;
 	}
 
 	/**
@@ -452,9 +554,13 @@ public abstract class SnpEffPredictorFactory {
 	 */
 	protected void exonsFromCds() {
 		if (verbose) System.out.print("\n\tCreate exons from CDS (if needed): ");
+		int count = forEachChromo(BuildStage.EXONS_FROM_CDS);
+		if (verbose) System.out.println("\n\tExons created for " + count + " transcripts.");
+	}
 
+	int exonsFromCds(List<Gene> genes) {
 		int count = 0;
-		for (Gene gene : genome.getGenes()) {
+		for (Gene gene : genes) {
 			for (Transcript tr : gene) {
 				// CDS length
 				int lenCds = 0;
@@ -473,7 +579,7 @@ public abstract class SnpEffPredictorFactory {
 				}
 			}
 		}
-		if (verbose) System.out.println("\n\tExons created for " + count + " transcripts.");
+		return count;
 	}
 
 	/**
@@ -519,13 +625,13 @@ public abstract class SnpEffPredictorFactory {
 	protected Gene findGene(String id) {
 		Gene gene = genesById.get(id);
 		if (gene != null) return gene;
-		return genesById.get(GffType.GENE + "_" + id); // Alternative gene ID
+		return genesById.get(GENE_ID_PREFIX + id); // Alternative gene ID
 	}
 
 	protected Gene findGene(String geneId, String id) {
 		Gene gene = findGene(geneId);
 		if (gene != null) return gene;
-		return genesById.get(GffType.GENE + "_" + id); // Alternative gene ID
+		return genesById.get(GENE_ID_PREFIX + id); // Alternative gene ID
 	}
 
 	protected Marker findMarker(String id) {
@@ -535,13 +641,45 @@ public abstract class SnpEffPredictorFactory {
 	protected Transcript findTranscript(String id) {
 		Transcript tr = transcriptsById.get(id);
 		if (tr != null) return tr;
-		return transcriptsById.get(GffType.TRANSCRIPT + "_" + id); // Alternative transcript ID
+		return transcriptsById.get(TRANSCRIPT_ID_PREFIX + id); // Alternative transcript ID
 	}
 
 	protected Transcript findTranscript(String trId, String id) {
 		Transcript tr = findTranscript(trId);
 		if (tr != null) return tr;
-		return transcriptsById.get(GffType.TRANSCRIPT + "_" + id);
+		return transcriptsById.get(TRANSCRIPT_ID_PREFIX + id);
+	}
+
+	/**
+	 * Run a build stage for each chromosome (in parallel if 'executor' is available)
+	 * @return Sum of the counts returned by the stage for each chromosome (e.g. number of transcripts modified)
+	 */
+	int forEachChromo(BuildStage stage) {
+		Timer timer = new Timer();
+		int count = 0;
+		stageMarks.set(0);
+
+		// Process chromosomes having more genes first (better load balancing)
+		List<List<Gene>> geneLists = new ArrayList<>(genesByChromo().values());
+		Collections.sort(geneLists, new Comparator<List<Gene>>() {
+			@Override
+			public int compare(List<Gene> genes1, List<Gene> genes2) {
+				return genes2.size() - genes1.size();
+			}
+		});
+
+		if (executor == null) {
+			for (List<Gene> genes : geneLists)
+				count += runStage(stage, genes);
+		} else {
+			List<Future<Integer>> futures = new ArrayList<>();
+			for (List<Gene> genes : geneLists)
+				futures.add(executor.submit(stageTask(stage, genes)));
+			count = waitFor(futures);
+		}
+
+		stageTime(stage.title, timer.elapsed());
+		return count;
 	}
 
 	/**
@@ -609,20 +747,57 @@ public abstract class SnpEffPredictorFactory {
 		//---
 		// Perform exon frame adjustment
 		//---
+		forEachChromo(BuildStage.FRAME_CORRECTION);
+		if (verbose) System.out.print("");
+
+	}
+
+	int frameCorrection(List<Gene> genes) {
 		int i = 1;
-		for (Gene gene : genome.getGenes())
+		for (Gene gene : genes)
 			for (Transcript tr : gene) {
 				boolean corrected = tr.frameCorrection();
 
 				if (corrected) {
 					if (debug) System.err.println("\tTranscript " + tr.getId() + " corrected using frame (exons: " + tr.numChilds() + ").");
-					else if (verbose) Gpr.showMark(i++, 1);
-
+					else if (verbose) Gpr.showMark(i, 1);
+					i++;
 				}
 			}
+		return i - 1;
+	}
 
-		if (verbose) System.out.print("");
+	/**
+	 * Genes in chromosome 'chr'
+	 * Note: Genes are indexed by chromosome the first time this is invoked (i.e. after
+	 *       all genes have been added) so we don't need to scan all genes for each chromosome
+	 */
+	List<Gene> genesByChromo(String chr) {
+		List<Gene> genes = genesByChromo().get(chr.toLowerCase());
+		return genes != null ? genes : new ArrayList<Gene>();
+	}
 
+	/**
+	 * Genes indexed by chromosome name (lower case)
+	 */
+	synchronized Map<String, List<Gene>> genesByChromo() {
+		if (genesByChromo == null) {
+			genesByChromo = new HashMap<>();
+			for (Gene gene : genome.getGenes()) {
+				String key = gene.getChromosomeName().toLowerCase();
+				List<Gene> genes = genesByChromo.get(key);
+				if (genes == null) {
+					genes = new ArrayList<>();
+					genesByChromo.put(key, genes);
+				}
+				genes.add(gene);
+			}
+		}
+		return genesByChromo;
+	}
+
+	public Map<String, Long> getStageTimes() {
+		return stageTimes;
 	}
 
 	/**
@@ -659,6 +834,15 @@ public abstract class SnpEffPredictorFactory {
 		if (verbose) Gpr.showMark(count, MARK, "\t\t");
 	}
 
+	/**
+	 * Show a progress mark for the current build stage.
+	 * The counter is shared by all chromosomes, so marks are consistent
+	 * when chromosomes are processed in parallel
+	 */
+	void markStage() {
+		if (verbose) mark(stageMarks.incrementAndGet());
+	}
+
 	/**
 	 * Parse a string as a 'position'.
 	 * Note: It subtracts 'inOffset' so that all coordinates are zero-based
@@ -671,17 +855,37 @@ public abstract class SnpEffPredictorFactory {
 	 * Rank exons
 	 */
 	void rankExons() {
-		int i = 1;
 		if (verbose) System.out.print("\n\tRanking exons: ");
-		for (Gene gene : genome.getGenes())
+		forEachChromo(BuildStage.RANK_EXONS);
+	}
+
+	int rankExons(List<Gene> genes) {
+		int count = 0;
+		for (Gene gene : genes)
 			for (Transcript tr : gene)
-				if (tr.rankExons()) mark(i++);
+				if (tr.rankExons()) {
+					markStage();
+					count++;
+				}
+		return count;
 	}
 
 	/**
 	 * Read exon sequences from a FASTA file
 	 */
 	protected void readExonSequences() {
+		Timer timer = new Timer();
+		try {
+			readExonSequencesFiles();
+		} finally {
+			stageTime("Read sequences", timer.elapsed());
+		}
+	}
+
+	/**
+	 * Read exon sequences from the first FASTA file available
+	 */
+	void readExonSequencesFiles() {
 		List<String> files = config.getFileListGenomeFasta();
 
 		// Force a specific file?
@@ -696,6 +900,9 @@ public abstract class SnpEffPredictorFactory {
 			if (Gpr.canRead(file)) {
 				if (verbose) System.out.println("\tReading FASTA file: '" + file + "'");
 
+				// Use indexed FASTA if possible
+				if (readExonSequencesIndexed(file)) return;
+
 				// Read fasta sequence
 				FastaFileIterator ffi = new FastaFileIterator(file);
 				for (String seq : ffi) {
@@ -711,6 +918,75 @@ public abstract class SnpEffPredictorFactory {
 		throw new RuntimeException("Cannot find reference sequence.");
 	}
 
+	/**
+	 * Read exon sequences from an indexed FASTA file
+	 * @return false if the file cannot be indexed (e.g. it's compressed)
+	 */
+	protected boolean readExonSequencesIndexed(String file) {
+		if (!IndexedFasta.canIndex(file)) return false;
+
+		IndexedFasta fasta = new IndexedFasta(file);
+		fasta.setVerbose(verbose);
+		fasta.setDebug(debug);
+		if (!fasta.open()) {
+			if (verbose) System.out.println("\tCannot index FASTA file '" + file + "', reading sequences sequentially");
+			return false;
+		}
+
+		List<Future<Integer>> futures = new ArrayList<>();
+		for (String chromo : fasta.getChromosomeNames()) {
+			chromoNamesReference.add(chromo);
+			if (verbose) System.out.println("\t\tReading sequence '" + chromo + "', length: " + fasta.getLength(chromo));
+
+			if (executor == null) addSequences(chromo, fasta); // Add all sequences
+			else {
+				getOrCreateChromosome(chromo); // Chromosomes are created before running in parallel
+				futures.add(executor.submit(addSequencesTask(chromo, fasta)));
+			}
+		}
+		waitFor(futures);
+
+		fasta.close();
+		return true;
+	}
+
+	/**
+	 * Run a build stage on 'genes' (all genes in one chromosome)
+	 */
+	int runStage(BuildStage stage, List<Gene> genes) {
+		switch (stage) {
+		case EXONS_FROM_CDS:
+			return exonsFromCds(genes);
+
+		case DELETE_REDUNDANT:
+			return deleteRedundant(genes);
+
+		case COLLAPSE_ZERO_LEN_INTRONS:
+			return collapseZeroLenIntrons(genes);
+
+		case ADJUST_TRANSCRIPTS:
+			return adjustTranscripts(genes);
+
+		case ADJUST_GENES:
+			return adjustGenes(genes);
+
+		case RANK_EXONS:
+			return rankExons(genes);
+
+		case UTR_FROM_CDS:
+			return utrFromCds(genes);
+
+		case FRAME_CORRECTION:
+			return frameCorrection(genes);
+
+		case CODING_FROM_CDS:
+			return codingFromCds(genes);
+
+		default:
+			throw new RuntimeException("Unknown build stage " + stage);
+		}
+	}
+
 	/**
 	 * Remove empty chromosomes
 	 */
@@ -741,6 +1017,14 @@ public abstract class SnpEffPredictorFactory {
 		transcriptsById.put(trNew.getId(), trNew);
 	}
 
+	/**
+	 * Sub-sequence [start, end) from either 'chrSeq' or 'fasta' (when 'chrSeq' is null)
+	 */
+	String sequence(String chr, String chrSeq, IndexedFasta fasta, int start, int end) {
+		if (chrSeq != null) return chrSeq.substring(start, end);
+		return fasta.getSequence(chr, start, end - 1);
+	}
+
 	public void setCircularCorrectLargeGap(boolean circularCorrectLargeGap) {
 		this.circularCorrectLargeGap = circularCorrectLargeGap;
 	}
@@ -753,6 +1037,13 @@ public abstract class SnpEffPredictorFactory {
 		this.debug = debug;
 	}
 
+	/**
+	 * Run per chromosome stages using this executor (null means 'sequential')
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
 	public void setFastaFile(String fastaFile) {
 		this.fastaFile = fastaFile;
 	}
@@ -839,6 +1130,36 @@ public abstract class SnpEffPredictorFactory {
 		;
 	}
 
+	/**
+	 * A task that runs a build stage on 'genes'
+	 */
+	Callable<Integer> stageTask(final BuildStage stage, final List<Gene> genes) {
+		return new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return runStage(stage, genes);
+			}
+		};
+	}
+
+	/**
+	 * Add elapsed time for a build stage
+	 */
+	public synchronized void stageTime(String stage, long elapsedMs) {
+		Long prev = stageTimes.get(stage);
+		stageTimes.put(stage, (prev != null ? prev : 0L) + elapsedMs);
+	}
+
+	/**
+	 * Elapsed time for each build stage (one line per stage)
+	 */
+	public synchronized String stageTimesToString() {
+		StringBuilder sb = new StringBuilder();
+		for (String stage : stageTimes.keySet())
+			sb.append(String.format("\n\t\t%-50s: %s", stage, Timer.toString(stageTimes.get(stage), true)));
+		return sb.toString();
+	}
+
 	String unquote(String qstr) {
 		return qstr.replaceAll("\"", "");
 	}
@@ -847,10 +1168,37 @@ public abstract class SnpEffPredictorFactory {
 	 * Create missing UTRs from CDS information
 	 */
 	void utrFromCds() {
-		int i = 1;
-		for (Gene gene : genome.getGenes())
+		forEachChromo(BuildStage.UTR_FROM_CDS);
+	}
+
+	int utrFromCds(List<Gene> genes) {
+		int count = 0;
+		for (Gene gene : genes)
 			for (Transcript tr : gene)
-				if (tr.utrFromCds(debug)) mark(i++);
+				if (tr.utrFromCds(debug)) {
+					markStage();
+					count++;
+				}
+		return count;
+	}
+
+	/**
+	 * Wait for all tasks to finish
+	 * @return Sum of all tasks results
+	 */
+	int waitFor(List<Future<Integer>> futures) {
+		int count = 0;
+		try {
+			for (Future<Integer> future : futures)
+				count += future.get();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		}
+		return count;
 	}
 
 	/**
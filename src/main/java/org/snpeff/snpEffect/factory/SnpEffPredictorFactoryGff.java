@@ -1,9 +1,19 @@
 package org.snpeff.snpEffect.factory;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.snpeff.interval.BioType;
 import org.snpeff.interval.Cds;
@@ -30,14 +40,23 @@ import org.snpeff.util.Gpr;
  *
  * References: http://gmod.org/wiki/GFF3
  *
+ * Split by chromosome mode ('splitByChromo'): The file is first split into one
+ * temporary file (run) per chromosome, preserving line order within each run.
+ * Runs are then parsed one chromosome at a time and ID maps are cleared after
+ * each chromosome, so memory used by ID maps is bounded by the largest chromosome.
+ * Only gene and transcript IDs are kept for all chromosomes, to check that they are unique.
+ * Note: Parent / child references across chromosomes are not resolved in this mode.
+ *
  * @author pcingola
  */
 public abstract class SnpEffPredictorFactoryGff extends SnpEffPredictorFactory {
 
 	public static final String FASTA_DELIMITER = "##FASTA";
+	public static final int MAX_OPEN_RUNS = 256; // Maximum number of run files open at the same time (when splitting by chromosome)
 
 	String version = "";
 	boolean mainFileHasFasta = false; // Are sequences in the GFF file or in a separate FASTA file?
+	boolean splitByChromo = false; // Split file by chromosome and parse one chromosome at a time
 
 	public SnpEffPredictorFactoryGff(Config config) {
 		super(config, 1);
@@ -84,7 +103,7 @@ public abstract class SnpEffPredictorFactoryGff extends SnpEffPredictorFactory {
 			// Is exon's parent a gene instead of a transcript?
 			if ((tr == null) && (gene != null)) {
 				// Create a transcript from the gene
-				String trId = GffType.TRANSCRIPT + "_" + gene.getId(); // Transcript ID
+				String trId = TRANSCRIPT_ID_PREFIX + gene.getId(); // Transcript ID
 				tr = findTranscript(trId);
 				if (tr == null) {
 					tr = addTranscript(gene, gffMarker, trId);
@@ -101,7 +120,7 @@ public abstract class SnpEffPredictorFactoryGff extends SnpEffPredictorFactory {
 				if (gene == null) gene = addGene(gffMarker);
 
 				// Create transcript
-				String trId = parentId.isEmpty() ? GffType.TRANSCRIPT + "_" + id : parentId; // Transcript ID
+				String trId = parentId.isEmpty() ? TRANSCRIPT_ID_PREFIX + id : parentId; // Transcript ID
 				tr = addTranscript(gene, gffMarker, trId);
 
 				// Add gene & transcript
@@ -484,6 +503,11 @@ public abstract class SnpEffPredictorFactoryGff extends SnpEffPredictorFactory {
 	 * Read GFF file from the beginning looking for 'typeToRead' elements
 	 */
 	protected void readGff() throws Exception {
+		if (splitByChromo) {
+			readGffByChromo();
+			return;
+		}
+
 		int count = 0;
 		BufferedReader reader = Gpr.reader(fileName);
 		if (reader == null) return; // Error
@@ -513,4 +537,134 @@ public abstract class SnpEffPredictorFactoryGff extends SnpEffPredictorFactory {
 		reader.close();
 		if (verbose) System.out.println((count > 0 ? "\n" : "") + "\tTotal: " + count + " markers added.");
 	}
+
+	/**
+	 * Split GFF file into one run per chromosome, then parse each run
+	 */
+	void readGffByChromo() throws Exception {
+		File dir = Files.createTempDirectory("snpEff_gff_").toFile();
+		try {
+			List<File> runs = splitRuns(dir);
+
+			int count = 0;
+			Set<String> geneIds = new HashSet<>(), trIds = new HashSet<>();
+			for (File run : runs) {
+				count += readGffRun(run);
+
+				// Gene and transcript IDs must be unique across chromosomes
+				uniqueIds(geneIds, genesById.keySet(), "Gene");
+				uniqueIds(trIds, transcriptsById.keySet(), "Transcript");
+
+				// Free memory before parsing the next chromosome
+				markersById.clear();
+				genesById.clear();
+				transcriptsById.clear();
+			}
+
+			if (verbose) System.out.println((count > 0 ? "\n" : "") + "\tTotal: " + count + " markers added.");
+		} finally {
+			// Remove temporary files
+			File files[] = dir.listFiles();
+			if (files != null) {
+				for (File f : files)
+					f.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	/**
+	 * Parse all lines in a run (one chromosome)
+	 * @return Number of markers added
+	 */
+	int readGffRun(File run) throws IOException {
+		int count = 0;
+		BufferedReader reader = Gpr.reader(run.getPath());
+
+		try {
+			for (lineNum = 1; (line = reader.readLine()) != null; lineNum++) {
+				if (parse(line)) {
+					count++;
+					if (verbose) Gpr.showMark(count, MARK, "\t\t");
+				}
+			}
+		} catch (Exception e) {
+			error("Offending line (lineNum: " + lineNum + ", file '" + run + "')", e);
+		}
+
+		reader.close();
+		return count;
+	}
+
+	public void setSplitByChromo(boolean splitByChromo) {
+		this.splitByChromo = splitByChromo;
+	}
+
+	/**
+	 * Split GFF file into one run (temporary file) per chromosome.
+	 * Lines are appended to each run in the same order as the original file
+	 * @return Runs, in the order chromosomes first appear in the file
+	 */
+	List<File> splitRuns(File dir) throws IOException {
+		Map<String, File> runByChromo = new LinkedHashMap<>();
+		Map<String, BufferedWriter> writers = new HashMap<>();
+		BufferedReader reader = Gpr.reader(fileName);
+		if (reader == null) return new ArrayList<>(); // Error
+
+		if (verbose) System.out.println("\tSplitting file by chromosome, temporary directory '" + dir + "'");
+		try {
+			for (lineNum = 1; (line = reader.readLine()) != null; lineNum++) {
+				if (line.isEmpty() || line.startsWith("#")) {
+					if (line.equals(FASTA_DELIMITER)) {
+						mainFileHasFasta = true;
+						break;
+					}
+					continue;
+				}
+
+				// Chromosome name is the first field (no need to split the whole line)
+				int idx = line.indexOf('\t');
+				String chr = idx >= 0 ? line.substring(0, idx) : line;
+
+				// Find run file for this chromosome
+				BufferedWriter out = writers.get(chr);
+				if (out == null) {
+					File run = runByChromo.get(chr);
+					if (run == null) {
+						run = new File(dir, "run_" + runByChromo.size() + ".gff");
+						runByChromo.put(chr, run);
+					}
+
+					// Too many open files? Close them (they are re-opened in 'append' mode)
+					if (writers.size() >= MAX_OPEN_RUNS) {
+						for (BufferedWriter w : writers.values())
+							w.close();
+						writers.clear();
+					}
+
+					out = new BufferedWriter(new FileWriter(run, true));
+					writers.put(chr, out);
+				}
+
+				out.write(line);
+				out.write('\n');
+			}
+		} finally {
+			for (BufferedWriter w : writers.values())
+				w.close();
+			reader.close();
+		}
+
+		if (verbose) System.out.println("\tDone: " + runByChromo.size() + " chromosomes, " + (lineNum - 1) + " lines");
+		return new ArrayList<>(runByChromo.values());
+	}
+
+	/**
+	 * Add 'newIds' to 'ids', throw an exception if any of them already exists
+	 */
+	void uniqueIds(Set<String> ids, Set<String> newIds, String type) {
+		for (String id : newIds)
+			if (!ids.add(id)) throw new RuntimeException(type + "  '" + id + "' already exists");
+	}
+
 }
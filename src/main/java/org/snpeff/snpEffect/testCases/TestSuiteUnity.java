@@ -15,6 +15,7 @@ import org.snpeff.snpEffect.testCases.unity.TestCasesBuild;
 import org.snpeff.snpEffect.testCases.unity.TestCasesCds;
 import org.snpeff.snpEffect.testCases.unity.TestCasesChiSquare;
 import org.snpeff.snpEffect.testCases.unity.TestCasesCircular;
+import org.snpeff.snpEffect.testCases.unity.TestCasesClosest;
 import org.snpeff.snpEffect.testCases.unity.TestCasesCochranArmitage;
 import org.snpeff.snpEffect.testCases.unity.TestCasesCodonTable;
 import org.snpeff.snpEffect.testCases.unity.TestCasesCytoBands;
@@ -44,29 +45,42 @@ import org.snpeff.snpEffect.testCases.unity.TestCasesIntStats;
 import org.snpeff.snpEffect.testCases.unity.TestCasesIntergenic;
 import org.snpeff.snpEffect.testCases.unity.TestCasesIntervalTree;
 import org.snpeff.snpEffect.testCases.unity.TestCasesIntervalTreeArray;
+import org.snpeff.snpEffect.testCases.unity.TestCasesIntervalTreeFlat;
 import org.snpeff.snpEffect.testCases.unity.TestCasesIntervalTreeOri;
 import org.snpeff.snpEffect.testCases.unity.TestCasesIntervalVariant;
 import org.snpeff.snpEffect.testCases.unity.TestCasesIntervals;
 import org.snpeff.snpEffect.testCases.unity.TestCasesIubString;
 import org.snpeff.snpEffect.testCases.unity.TestCasesJaspar;
+import org.snpeff.snpEffect.testCases.unity.TestCasesLineOutputStream;
+import org.snpeff.snpEffect.testCases.unity.TestCasesMarkerSerializer;
 import org.snpeff.snpEffect.testCases.unity.TestCasesMarkerUtils;
 import org.snpeff.snpEffect.testCases.unity.TestCasesMnps;
 import org.snpeff.snpEffect.testCases.unity.TestCasesNmers;
 import org.snpeff.snpEffect.testCases.unity.TestCasesOverlap;
+import org.snpeff.snpEffect.testCases.unity.TestCasesPipelineEff;
 import org.snpeff.snpEffect.testCases.unity.TestCasesProteinInteraction;
 import org.snpeff.snpEffect.testCases.unity.TestCasesReactome;
 import org.snpeff.snpEffect.testCases.unity.TestCasesSeekableReader;
 import org.snpeff.snpEffect.testCases.unity.TestCasesSequenceIndexer;
+import org.snpeff.snpEffect.testCases.unity.TestCasesServer;
+import org.snpeff.snpEffect.testCases.unity.TestCasesSnapshot;
 import org.snpeff.snpEffect.testCases.unity.TestCasesSnps;
 import org.snpeff.snpEffect.testCases.unity.TestCasesSpliceRegion;
 import org.snpeff.snpEffect.testCases.unity.TestCasesSpliceSite;
 import org.snpeff.snpEffect.testCases.unity.TestCasesStructuralDel;
 import org.snpeff.snpEffect.testCases.unity.TestCasesStructuralDup;
 import org.snpeff.snpEffect.testCases.unity.TestCasesStructuralInv;
+import org.snpeff.snpEffect.testCases.unity.TestCasesStructuralLarge;
 import org.snpeff.snpEffect.testCases.unity.TestCasesStructuralTranslocations;
+import org.snpeff.snpEffect.testCases.unity.TestCasesTabixIndexer;
+import org.snpeff.snpEffect.testCases.unity.TestCasesTranscriptFreeze;
+import org.snpeff.snpEffect.testCases.unity.TestCasesTranscriptIndex;
 import org.snpeff.snpEffect.testCases.unity.TestCasesVariantDecompose;
+import org.snpeff.snpEffect.testCases.unity.TestCasesVariantEffectStats;
 import org.snpeff.snpEffect.testCases.unity.TestCasesVariantRealignment;
 import org.snpeff.snpEffect.testCases.unity.TestCasesVcf;
+import org.snpeff.snpEffect.testCases.unity.TestCasesVcfGenotypeBlock;
+import org.snpeff.snpEffect.testCases.unity.TestCasesVcfLazyParse;
 
 /**
  * Invoke all test cases for SnpEff
@@ -85,6 +99,7 @@ import org.snpeff.snpEffect.testCases.unity.TestCasesVcf;
 		TestCasesBuild.class, //
 		TestCasesChiSquare.class, //
 		TestCasesCircular.class, //
+		TestCasesClosest.class, //
 		TestCasesCds.class, //
 		TestCasesCochranArmitage.class, //
 		TestCasesCodonTable.class, //
@@ -107,6 +122,7 @@ import org.snpeff.snpEffect.testCases.unity.TestCasesVcf;
 		TestCasesIntervalTree.class, //
 		TestCasesIntervalTreeOri.class, //
 		TestCasesIntervalTreeArray.class, //
+		TestCasesIntervalTreeFlat.class, //
 		TestCasesIubString.class, //
 		TestCasesHgvs.class, //
 		TestCasesHgvsExon.class, //
@@ -120,24 +136,36 @@ import org.snpeff.snpEffect.testCases.unity.TestCasesVcf;
 		TestCasesIns.class, //
 		TestCasesIntStats.class, //
 		TestCasesJaspar.class, //
+		TestCasesLineOutputStream.class, //
+		TestCasesMarkerSerializer.class, //
 		TestCasesMarkerUtils.class, //
 		TestCasesMnps.class, //
 		TestCasesNmers.class, //
 		TestCasesOverlap.class, //
+		TestCasesPipelineEff.class, //
 		TestCasesProteinInteraction.class, //
 		TestCasesReactome.class, //
 		TestCasesSeekableReader.class, //
 		TestCasesSequenceIndexer.class, //
+		TestCasesServer.class, //
+		TestCasesSnapshot.class, //
 		TestCasesSnps.class, //
 		TestCasesSpliceSite.class, //
 		TestCasesSpliceRegion.class, //
 		TestCasesStructuralDel.class, //
 		TestCasesStructuralDup.class, //
 		TestCasesStructuralInv.class, //
+		TestCasesStructuralLarge.class, //
 		TestCasesStructuralTranslocations.class, //
+		TestCasesTabixIndexer.class, //
+		TestCasesTranscriptFreeze.class, //
+		TestCasesTranscriptIndex.class, //
 		TestCasesVariantDecompose.class, //
+		TestCasesVariantEffectStats.class, //
 		TestCasesVariantRealignment.class, //
-		TestCasesVcf.class //
+		TestCasesVcf.class, //
+		TestCasesVcfGenotypeBlock.class, //
+		TestCasesVcfLazyParse.class //
 
 })
 
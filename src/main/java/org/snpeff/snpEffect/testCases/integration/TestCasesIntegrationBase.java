@@ -168,11 +168,16 @@ public class TestCasesIntegrationBase {
 	 * Build a genome from a GFF3 file and compare results to 'expected' results
 	 */
 	public SnpEffectPredictor buildGff3AndCompare(String genome, String gff3File, String resultFile, boolean readSeqs, boolean createRandSequences) {
+		return buildGff3AndCompare(genome, gff3File, resultFile, readSeqs, createRandSequences, false);
+	}
+
+	public SnpEffectPredictor buildGff3AndCompare(String genome, String gff3File, String resultFile, boolean readSeqs, boolean createRandSequences, boolean splitByChromo) {
 
 		// Build
 		Config config = new Config(genome, Config.DEFAULT_CONFIG_FILE);
 		SnpEffPredictorFactoryGff3 fgff3 = new SnpEffPredictorFactoryGff3(config);
 		fgff3.setVerbose(verbose);
+		fgff3.setSplitByChromo(splitByChromo);
 		if (gff3File != null) fgff3.setFileName(gff3File);
 		fgff3.setReadSequences(readSeqs);
 		fgff3.setCreateRandSequences(createRandSequences);
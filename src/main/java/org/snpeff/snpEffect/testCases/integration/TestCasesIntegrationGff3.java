@@ -1,8 +1,17 @@
 package org.snpeff.snpEffect.testCases.integration;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.After;
 import org.junit.Before;
@@ -11,8 +20,10 @@ import org.snpeff.interval.Exon;
 import org.snpeff.interval.Gene;
 import org.snpeff.interval.SpliceSite;
 import org.snpeff.interval.Transcript;
+import org.snpeff.snpEffect.Config;
 import org.snpeff.snpEffect.SnpEffectPredictor;
 import org.snpeff.snpEffect.factory.SnpEffPredictorFactory;
+import org.snpeff.snpEffect.factory.SnpEffPredictorFactoryGff3;
 import org.snpeff.util.Gpr;
 
 import junit.framework.Assert;
@@ -41,6 +52,38 @@ public class TestCasesIntegrationGff3 extends TestCasesIntegrationBase {
 		Exon.ToStringVersion = 1; // Set "toString()" version
 	}
 
+	/**
+	 * Build a genome from a GFF3 file, storing sequences
+	 * @param executor : Used to run per chromosome build stages (null means 'sequential')
+	 */
+	SnpEffectPredictor buildGff3(Config config, String gff3File, ExecutorService executor) {
+		SnpEffPredictorFactoryGff3 fgff3 = new SnpEffPredictorFactoryGff3(config);
+		fgff3.setVerbose(verbose);
+		fgff3.setFileName(gff3File);
+		fgff3.setStoreSequences(true);
+		fgff3.setExecutor(executor);
+		fgff3.setRandom(new Random(20140410));
+		return fgff3.create();
+	}
+
+	/**
+	 * Save genomic sequences, read and delete sequence files
+	 * @return Files contents indexed by file name
+	 */
+	Map<String, byte[]> saveSequences(Config config, SnpEffectPredictor sep, ExecutorService executor) throws IOException {
+		sep.getGenome().getGenomicSequences().save(config, executor);
+
+		Map<String, byte[]> seqFiles = new TreeMap<>();
+		File dir = new File(config.getDirDataGenomeVersion());
+		for (File f : dir.listFiles())
+			if (f.getName().startsWith("sequence")) {
+				seqFiles.put(f.getName(), Files.readAllBytes(f.toPath()));
+				f.delete();
+			}
+
+		return seqFiles;
+	}
+
 	@Test
 	public void testCase_01_Exon_Simple() {
 		Gpr.debug("Test");
@@ -185,4 +228,82 @@ public class TestCasesIntegrationGff3 extends TestCasesIntegrationBase {
 		buildGff3AndCompare(genome, gff3File, resultFile, false, false);
 	}
 
+	/**
+	 * Parse GFF3 files one chromosome at a time ('split by chromosome' mode)
+	 * Results should be the same as parsing the whole file
+	 */
+	@Test
+	public void testCase_12_splitByChromo() {
+		Gpr.debug("Test");
+		Exon.ToStringVersion = exonToStringVersionOri;
+		buildGff3AndCompare("testVibrio", path("vibrio.gff3"), path("vibrio.txt"), true, false, true);
+
+		Exon.ToStringVersion = 1;
+		buildGff3AndCompare("testMaizeZmB73", path("testMaizeZmB73.gff3"), path("testMaizeZmB73.txt"), true, false, true);
+	}
+
+	/**
+	 * Building a database running per chromosome stages in parallel (executor)
+	 * should create exactly the same genome and sequence files as a sequential build
+	 */
+	@Test
+	public void testCase_13_executor() throws IOException {
+		Gpr.debug("Test");
+		String genome = "testMaizeZmB73";
+		String gff3File = path("testTwoChromos.gff3");
+
+		// Sequential build
+		Config config = new Config(genome, Config.DEFAULT_CONFIG_FILE);
+		SnpEffectPredictor sep = buildGff3(config, gff3File, null);
+		Map<String, byte[]> seqFiles = saveSequences(config, sep, null);
+
+		// Parallel build
+		ForkJoinPool executor = new ForkJoinPool(4);
+		SnpEffectPredictor sepPar;
+		Map<String, byte[]> seqFilesPar;
+		try {
+			Config configPar = new Config(genome, Config.DEFAULT_CONFIG_FILE);
+			sepPar = buildGff3(configPar, gff3File, executor);
+			seqFilesPar = saveSequences(configPar, sepPar, executor);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// Compare genomes
+		Assert.assertEquals(2, sep.getGenome().getGenes().size());
+		Assert.assertEquals(sep.getGenome().toString(), sepPar.getGenome().toString());
+		Assert.assertEquals(showTranscripts(sep.getGenome()), showTranscripts(sepPar.getGenome()));
+
+		// Compare sequence files
+		Assert.assertFalse(seqFiles.isEmpty());
+		Assert.assertEquals(seqFiles.keySet(), seqFilesPar.keySet());
+		for (String fileName : seqFiles.keySet())
+			Assert.assertTrue("Sequence file '" + fileName + "' differs", Arrays.equals(seqFiles.get(fileName), seqFilesPar.get(fileName)));
+	}
+
+	/**
+	 * Split by chromosome mode: Gene IDs must be unique across chromosomes
+	 */
+	@Test
+	public void testCase_14_splitByChromo_duplicateIds() throws IOException {
+		Gpr.debug("Test");
+		File gff3File = File.createTempFile("snpEff_dupIds_", ".gff3");
+		gff3File.deleteOnExit();
+		Gpr.toFile(gff3File.getPath(), "" //
+				+ "chrA\ttest\tgene\t100\t200\t.\t+\t.\tID=gene1\n" //
+				+ "chrB\ttest\tgene\t100\t200\t.\t+\t.\tID=gene1\n" //
+		);
+
+		String msg = "";
+		try {
+			buildGff3AndCompare("testCase", gff3File.getPath(), null, false, false, true);
+		} catch (RuntimeException e) {
+			for (Throwable t = e; t != null; t = t.getCause())
+				msg += t.getMessage() + "\n";
+		}
+
+		if (verbose) System.err.println(msg);
+		Assert.assertTrue("Duplicate gene ID not detected", msg.indexOf("Gene  'gene1' already exists") >= 0);
+	}
+
 }
@@ -16,9 +16,6 @@ public class TestCasesIntegrationSnpEffMultiThread extends IntegrationTest {
 	@Test
 	public void test_01_multi_thread() {
 		Gpr.debug("Test");
-		// FIXME: Mutithreading mode is broken: Move to Java streams + lambdas
-		if (Math.random() < 2.0) throw new RuntimeException("Mutithreading mode is broken: Move to Java streams + lambdas");
-
 		String expectedOutputFile = path("test.chr1.1line.out.classic.vcf");
 		String args[] = { "eff", "-t", "-classic", "-noHgvs", "-noStats", "-noLog", "-noLof", "testHg3763Chr1", path("test.chr1.1line.vcf") };
 		SnpEff snpeff = new SnpEff(args);
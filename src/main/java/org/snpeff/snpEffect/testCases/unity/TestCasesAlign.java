@@ -1,11 +1,17 @@
 package org.snpeff.snpEffect.testCases.unity;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import junit.framework.Assert;
 
 import org.junit.Test;
 import org.snpeff.align.NeedlemanWunsch;
 import org.snpeff.align.VcfRefAltAlign;
+import org.snpeff.align.VcfRefAltAlignOri;
 import org.snpeff.util.Gpr;
+import org.snpeff.util.Timer;
 
 /**
  * test cases for Sequence alignment
@@ -58,4 +64,100 @@ public class TestCasesAlign {
 		}
 	}
 
+	/**
+	 * Random sequence, using a small alphabet and repeats (so that
+	 * there are many common bases at the start and end)
+	 */
+	String randSeq(Random rand, String prefix, String suffix) {
+		StringBuilder sb = new StringBuilder(prefix);
+		int len = rand.nextInt(8);
+		for (int i = 0; i < len; i++) {
+			if (rand.nextInt(5) == 0) sb.append("CA"); // Repeat
+			else sb.append("ACGT".charAt(rand.nextInt(rand.nextBoolean() ? 2 : 4)));
+		}
+		sb.append(suffix);
+		if (sb.length() == 0) sb.append('A');
+		return sb.toString();
+	}
+
+	/**
+	 * Random REF / ALT pairs, sharing prefix and suffix
+	 */
+	List<String[]> randRefAlts(Random rand, int num) {
+		List<String[]> refAlts = new ArrayList<>();
+		for (int i = 0; i < num; i++) {
+			String prefix = randSeq(rand, "", "").substring(0, rand.nextInt(2));
+			String suffix = (rand.nextBoolean() ? randSeq(rand, "", "") : "");
+			String ref = randSeq(rand, prefix, suffix);
+			String alt = (rand.nextInt(4) == 0 ? ref.substring(0, 1 + rand.nextInt(ref.length())) : randSeq(rand, prefix, suffix));
+			if (rand.nextBoolean()) refAlts.add(new String[] { ref, alt });
+			else refAlts.add(new String[] { alt, ref });
+		}
+		return refAlts;
+	}
+
+	/**
+	 * Differential test: Alignment must be the same as the original implementation
+	 */
+	@Test
+	public void test_03_differential() {
+		Gpr.debug("Test");
+		Random rand = new Random(20161027);
+
+		for (String refAlt[] : randRefAlts(rand, 100 * 1000)) {
+			String a = refAlt[1], b = refAlt[0]; // Same order as VcfEntry: align(alt, ref)
+
+			VcfRefAltAlignOri alignOri = new VcfRefAltAlignOri(a, b);
+			alignOri.align();
+			VcfRefAltAlign align = new VcfRefAltAlign(a, b);
+			align.align();
+
+			String msg = "a: '" + a + "', b: '" + b + "'";
+			if (verbose) System.out.println(msg + "	Type: " + align.getVariantType() + "	Align: '" + align.getAlignment() + "'" + "	Offset: " + align.getOffset());
+			Assert.assertEquals(msg, alignOri.getVariantType(), align.getVariantType());
+			Assert.assertEquals(msg, alignOri.getOffset(), align.getOffset());
+			Assert.assertEquals(msg, alignOri.getAlignment(), align.getAlignment());
+		}
+	}
+
+	/**
+	 * Benchmark: Original vs current implementation
+	 */
+	@Test
+	public void test_04_benchmark() {
+		Gpr.debug("Test");
+		Random rand = new Random(20161028);
+		List<String[]> refAlts = randRefAlts(rand, 100 * 1000);
+		int iterations = 10;
+		long sum = 0;
+
+		Timer timer = new Timer();
+		for (int it = 0; it < iterations; it++) {
+			for (String refAlt[] : refAlts) {
+				VcfRefAltAlignOri align = new VcfRefAltAlignOri(refAlt[1], refAlt[0]);
+				align.align();
+				sum += align.getOffset();
+			}
+		}
+		long elapsedOri = timer.elapsed();
+
+		timer = new Timer();
+		for (int it = 0; it < iterations; it++) {
+			for (String refAlt[] : refAlts) {
+				VcfRefAltAlign align = new VcfRefAltAlign(refAlt[1], refAlt[0]);
+				align.align();
+				sum -= align.getOffset();
+			}
+		}
+		long elapsed = timer.elapsed();
+
+		long count = (long) iterations * refAlts.size();
+		if (verbose) Timer.showStdErr("Alignments: " + count //
+				+ "\n\tOriginal : " + elapsedOri + " ms, " + (1000L * count / Math.max(1, elapsedOri)) + " alignments per second" //
+				+ "\n\tCurrent  : " + elapsed + " ms, " + (1000L * count / Math.max(1, elapsed)) + " alignments per second" //
+		);
+
+		Assert.assertEquals(0, sum);
+	}
+
 }
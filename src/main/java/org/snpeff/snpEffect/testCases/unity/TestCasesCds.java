@@ -1,6 +1,7 @@
 package org.snpeff.snpEffect.testCases.unity;
 
 import org.junit.Test;
+import org.snpeff.interval.CdsSegmentMap;
 import org.snpeff.interval.Exon;
 import org.snpeff.interval.Gene;
 import org.snpeff.interval.Transcript;
@@ -62,6 +63,77 @@ public class TestCasesCds extends TestCasesBase {
 		System.err.println("");
 	}
 
+	/**
+	 * CDS segment map: Compare to a base by base mapping
+	 */
+	@Test
+	public void test_CdsPos_segments() {
+		Gpr.debug("Test");
+		addUtrs = true;
+		onlyPlusStrand = false;
+
+		for (int iter = 0; iter < N / 5; iter++) {
+			initSnpEffPredictor();
+			if (verbose) System.err.println("Test CDS segments iteration: " + iter + "\t" + transcript.getStrand() + "\t" + transcript.cdsSegmentMap());
+			else Gpr.showMark(iter + 1, 1);
+
+			// Map every coding base
+			int cdsLen = transcript.cds().length();
+			int cds2pos[] = new int[cdsLen];
+			int aaIdx[][] = new int[transcript.numChilds()][];
+			int cdsMin = Math.min(transcript.getCdsStart(), transcript.getCdsEnd());
+			int cdsMax = Math.max(transcript.getCdsStart(), transcript.getCdsEnd());
+			int cdsBaseNum = 0, exNum = 0;
+			for (Exon exon : transcript.sortedStrand()) {
+				int min = transcript.isStrandPlus() ? exon.getStart() : exon.getEnd();
+				int step = transcript.isStrandPlus() ? 1 : -1;
+				for (int pos = min; exon.intersects(pos) && cdsBaseNum < cdsLen; pos += step) {
+					if (pos < cdsMin || cdsMax < pos) continue;
+					if (aaIdx[exNum] == null) aaIdx[exNum] = new int[] { cdsBaseNum / 3, 0 };
+					aaIdx[exNum][1] = cdsBaseNum / 3;
+					cds2pos[cdsBaseNum++] = pos;
+				}
+				exNum++;
+			}
+
+			// Compare
+			CdsSegmentMap cdsSegmentMap = transcript.cdsSegmentMap();
+			int cds2posTr[] = transcript.baseNumberCds2Pos();
+			Assert.assertEquals(cdsLen, cds2posTr.length);
+			for (int i = 0; i < cdsLen; i++) {
+				Assert.assertEquals(cds2pos[i], cds2posTr[i]);
+				Assert.assertEquals(cds2pos[i], transcript.cdsBaseNumber2Pos(i));
+				Assert.assertEquals(i, cdsSegmentMap.cdsBaseNumber(cds2pos[i]));
+			}
+			Assert.assertEquals(-1, transcript.cdsBaseNumber2Pos(cdsLen));
+
+			// Amino acids
+			int aa2pos[] = transcript.aaNumber2Pos();
+			for (int aaNum = 0; aaNum < aa2pos.length; aaNum++) {
+				Assert.assertEquals(cds2pos[3 * aaNum], aa2pos[aaNum]);
+				Assert.assertEquals(cds2pos[3 * aaNum], transcript.aaNumber2Pos(aaNum));
+			}
+
+			// Exon's AA indexes
+			exNum = 0;
+			for (Exon exon : transcript.sortedStrand()) {
+				if (aaIdx[exNum] != null) {
+					Assert.assertEquals(aaIdx[exNum][0], exon.getAaIdxStart());
+					Assert.assertEquals(aaIdx[exNum][1], exon.getAaIdxEnd());
+				}
+				exNum++;
+			}
+
+			// Non-coding positions
+			for (int pos = transcript.getStart() - 10; pos <= transcript.getEnd() + 10; pos++) {
+				int cdsBase = cdsSegmentMap.cdsBaseNumber(pos);
+				if (cdsBase >= 0) Assert.assertEquals(pos, cds2pos[cdsBase]);
+				else Assert.assertTrue(transcript.findExon(pos) == null || pos < cdsMin || cdsMax < pos);
+			}
+		}
+		System.err.println("");
+	}
+
 	/**
 	 * Simple CDS start & CSD end case
 	 */
@@ -0,0 +1,287 @@
+package org.snpeff.snpEffect.testCases.unity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.snpeff.interval.BioType;
+import org.snpeff.interval.Chromosome;
+import org.snpeff.interval.Exon;
+import org.snpeff.interval.Gene;
+import org.snpeff.interval.Genome;
+import org.snpeff.interval.Marker;
+import org.snpeff.interval.Markers;
+import org.snpeff.interval.Transcript;
+import org.snpeff.interval.tree.IntervalForest;
+import org.snpeff.interval.tree.IntervalRangeIndex;
+import org.snpeff.snpEffect.SnpEffectPredictor;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Timer;
+
+import junit.framework.Assert;
+
+/**
+ * Test cases for 'closest' queries (nearest intervals)
+ *
+ * @author pcingola
+ */
+public class TestCasesClosest {
+
+	public static int CHR_SIZE = 10 * 1000 * 1000;
+	public static int MAX_MARKER_SIZE = 5000;
+	public static int NUM_MARKERS = 2000;
+	public static int NUM_QUERIES = 5000;
+
+	boolean debug = false;
+	boolean verbose = false || debug;
+	Random rand;
+	Genome genome;
+	Chromosome chromosome;
+	Markers markers;
+	IntervalRangeIndex index;
+
+	/**
+	 * Create random markers (sparse: most of the chromosome is not covered)
+	 */
+	Markers createRandomMarkers(int num, int maxSize) {
+		Markers markers = new Markers();
+		for (int i = 0; i < num; i++) {
+			int start = rand.nextInt(CHR_SIZE);
+			int end = start + rand.nextInt(maxSize);
+			markers.add(new Marker(chromosome, start, end, false, "ID_" + i));
+		}
+		return markers;
+	}
+
+	/**
+	 * Create a gene having one transcript and one exon
+	 */
+	Gene createGene(int start, int end, boolean proteinCoding) {
+		String id = "gene_" + start;
+		Gene gene = new Gene(chromosome, start, end, false, id, id, BioType.coding(proteinCoding));
+		Transcript tr = new Transcript(gene, start, end, false, "tr_" + start);
+		tr.setProteinCoding(proteinCoding);
+		tr.add(new Exon(tr, start, end, false, "exon_" + start, 1));
+		gene.add(tr);
+		return gene;
+	}
+
+	@Before
+	public void init() {
+		rand = new Random(20161019);
+		genome = new Genome();
+		chromosome = new Chromosome(genome, 0, CHR_SIZE, "1");
+		markers = createRandomMarkers(NUM_MARKERS, MAX_MARKER_SIZE);
+
+		index = new IntervalRangeIndex();
+		for (Marker m : markers)
+			index.add(m);
+		index.build();
+	}
+
+	/**
+	 * Find closest markers using an interval forest, extending the query
+	 * interval until some markers are found
+	 */
+	Markers nearestExtend(IntervalForest forest, Marker query) {
+		for (int extend = 1000; extend < 2 * CHR_SIZE; extend *= 2) {
+			Marker extended = new Marker(chromosome, Math.max(query.getStart() - extend, 0), query.getEnd() + extend, false, "");
+			Markers results = forest.query(extended);
+			if (results.isEmpty()) continue;
+
+			int minDist = Integer.MAX_VALUE;
+			for (Marker m : results)
+				minDist = Math.min(minDist, m.distance(query));
+
+			// Markers found by extending might not be the closest ones: only accept distances within the extended interval
+			if (minDist > extend) continue;
+
+			Markers closest = new Markers();
+			for (Marker m : results)
+				if (m.distance(query) == minDist) closest.add(m);
+			return closest;
+		}
+		return new Markers();
+	}
+
+	/**
+	 * Find closest markers by iterating over all markers
+	 */
+	Markers nearestNaive(Marker query) {
+		int minDist = Integer.MAX_VALUE;
+		for (Marker m : markers)
+			minDist = Math.min(minDist, m.distance(query));
+
+		Markers closest = new Markers();
+		for (Marker m : markers)
+			if (m.distance(query) == minDist) closest.add(m);
+		return closest;
+	}
+
+	/**
+	 * Distances from all markers to 'query', sorted
+	 */
+	List<Integer> sortedDistances(Markers markers, Marker query) {
+		List<Integer> dists = new ArrayList<>();
+		for (Marker m : markers)
+			dists.add(m.distance(query));
+		Collections.sort(dists);
+		return dists;
+	}
+
+	/**
+	 * Nearest intervals: Compare to naive search
+	 */
+	@Test
+	public void test_01_nearest() {
+		Gpr.debug("Test");
+
+		for (Marker query : createRandomMarkers(NUM_QUERIES, 100)) {
+			Markers expected = nearestNaive(query);
+			Markers closest = index.nearest(query);
+			if (debug) Gpr.debug("Query: " + query + "\tclosest: " + closest);
+			Assert.assertEquals("Results differ for query '" + query + "'", expected.sort().toString(), closest.sort().toString());
+		}
+	}
+
+	/**
+	 * 'k' nearest intervals: Compare distances to naive search
+	 */
+	@Test
+	public void test_02_nearest_k() {
+		Gpr.debug("Test");
+
+		List<Integer> allDistances = null;
+		for (Marker query : createRandomMarkers(NUM_QUERIES / 10, 10 * 1000)) {
+			allDistances = sortedDistances(markers, query);
+
+			for (int k : new int[] { 1, 5, 20 }) {
+				Markers closest = index.nearest(query, k);
+				Assert.assertEquals(k, closest.size());
+
+				// Results are sorted by distance
+				List<Integer> dists = new ArrayList<>();
+				for (Marker m : closest)
+					dists.add(m.distance(query));
+				List<Integer> sorted = new ArrayList<>(dists);
+				Collections.sort(sorted);
+				Assert.assertEquals(sorted, dists);
+
+				Assert.assertEquals(allDistances.subList(0, k), dists);
+			}
+		}
+
+		// Asking for more than available
+		Marker query = markers.getMarkers().get(0);
+		Assert.assertEquals(markers.size(), index.nearest(query, 10 * NUM_MARKERS).size());
+	}
+
+	/**
+	 * Closest gene: Coding genes are preferred
+	 */
+	@Test
+	public void test_03_closestGene() {
+		Gpr.debug("Test");
+
+		SnpEffectPredictor sep = new SnpEffectPredictor(genome);
+		sep.setUpDownStreamLength(0);
+		sep.add(createGene(1000, 2000, false));
+		sep.add(createGene(3000, 4000, true));
+		sep.add(createGene(5000, 6000, false));
+		sep.add(createGene(8000, 9000, false));
+
+		for (int pass = 0; pass < 2; pass++) {
+			// Same distance to genes: Coding gene preferred
+			Assert.assertEquals("gene_3000", sep.queryClosestGene(new Marker(chromosome, 2500, 2500, false, "")).getId());
+			Assert.assertEquals("gene_3000", sep.queryClosestGene(new Marker(chromosome, 4500, 4500, false, "")).getId());
+
+			// Closest gene is not coding
+			Assert.assertEquals("gene_5000", sep.queryClosestGene(new Marker(chromosome, 4600, 4600, false, "")).getId());
+			Assert.assertEquals("gene_8000", sep.queryClosestGene(new Marker(chromosome, 7200, 7200, false, "")).getId());
+			Assert.assertEquals("gene_8000", sep.queryClosestGene(new Marker(chromosome, CHR_SIZE - 1, CHR_SIZE - 1, false, "")).getId());
+
+			// Intersecting gene
+			Assert.assertEquals("gene_1000", sep.queryClosestGene(new Marker(chromosome, 1500, 1500, false, "")).getId());
+
+			// Index is used after building the forest
+			sep.buildForest();
+		}
+
+		// 'k' closest genes
+		Markers genes = sep.queryClosestGenes(new Marker(chromosome, 4600, 4600, false, ""), 3);
+		Assert.assertEquals(3, genes.size());
+		Assert.assertEquals("gene_5000", genes.getMarkers().get(0).getId());
+		Assert.assertEquals("gene_3000", genes.getMarkers().get(1).getId());
+		Assert.assertEquals("gene_1000", genes.getMarkers().get(2).getId());
+
+		// Same tie-break as 'queryClosestGene': Coding gene preferred
+		Assert.assertEquals("gene_3000", sep.queryClosestGenes(new Marker(chromosome, 2500, 2500, false, ""), 1).getMarkers().get(0).getId());
+		Assert.assertEquals("gene_3000", sep.queryClosestGenes(new Marker(chromosome, 4500, 4500, false, ""), 1).getMarkers().get(0).getId());
+	}
+
+	/**
+	 * Benchmark: Closest markers for (mostly intergenic) queries.
+	 * Extending query intervals in an interval forest vs nearest index
+	 */
+	@Test
+	public void test_04_benchmark() {
+		Gpr.debug("Test");
+
+		IntervalForest forest = new IntervalForest(markers);
+		forest.build(true);
+		Markers queries = createRandomMarkers(10 * NUM_QUERIES, 10);
+
+		// Extend query intervals
+		Timer timer = new Timer();
+		long countExtend = 0;
+		for (Marker m : queries)
+			countExtend += nearestExtend(forest, m).size();
+		long elapsedExtend = timer.elapsed();
+
+		// Nearest index
+		timer = new Timer();
+		long count = 0;
+		for (Marker m : queries)
+			count += index.nearest(m).size();
+		long elapsedIndex = timer.elapsed();
+
+		if (verbose) Timer.showStdErr("Queries: " + queries.size() + ", markers: " + markers.size() //
+				+ "\n\tExtend interval : " + elapsedExtend + " ms" //
+				+ "\n\tNearest index   : " + elapsedIndex + " ms" //
+		);
+
+		Assert.assertEquals(countExtend, count);
+	}
+
+	/**
+	 * One interval much longer than the rest (index falls back to an interval tree)
+	 * Query results should be the same as using an interval forest
+	 */
+	@Test
+	public void test_05_long_interval() {
+		Gpr.debug("Test");
+
+		Marker longMarker = new Marker(chromosome, 0, CHR_SIZE - 1, false, "ID_long");
+		markers.add(longMarker);
+		index = new IntervalRangeIndex();
+		for (Marker m : markers)
+			index.add(m);
+		index.build();
+
+		IntervalForest forest = new IntervalForest(markers);
+		forest.build();
+
+		for (Marker query : createRandomMarkers(NUM_QUERIES, 10 * 1000)) {
+			Markers expected = forest.query(query);
+			Markers results = index.query(query);
+			Assert.assertEquals("Results differ for query '" + query + "'", expected.sort().toString(), results.sort().toString());
+
+			// Every query intersects the long interval
+			Assert.assertEquals(nearestNaive(query).sort().toString(), index.nearest(query).sort().toString());
+		}
+	}
+
+}
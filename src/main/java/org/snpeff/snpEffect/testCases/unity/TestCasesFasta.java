@@ -1,8 +1,18 @@
 package org.snpeff.snpEffect.testCases.unity;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.junit.Test;
+import org.snpeff.binseq.IndexedFasta;
 import org.snpeff.fileIterator.FastaFileIterator;
 import org.snpeff.util.Gpr;
+import org.snpeff.util.GprSeq;
+
+import junit.framework.Assert;
 
 /**
  * Test case for FASTA file parsing
@@ -15,6 +25,64 @@ public class TestCasesFasta extends TestCasesBase {
 		super();
 	}
 
+	/**
+	 * Check random slices from an indexed FASTA file
+	 */
+	void checkSlices(IndexedFasta fasta, Map<String, String> seqs) {
+		Assert.assertEquals(new ArrayList<>(seqs.keySet()), new ArrayList<>(fasta.getChromosomeNames()));
+
+		for (String chr : seqs.keySet()) {
+			String seq = seqs.get(chr);
+			Assert.assertEquals(seq.length(), fasta.getLength(chr));
+			Assert.assertEquals(seq, fasta.getSequence(chr, 0, seq.length() - 1));
+
+			for (int i = 0; i < 1000; i++) {
+				int start = rand.nextInt(seq.length());
+				int end = Math.min(seq.length() - 1, start + rand.nextInt(300));
+				Assert.assertEquals(seq.substring(start, end + 1), fasta.getSequence(chr, start, end));
+			}
+		}
+	}
+
+	/**
+	 * Create a FASTA file having random sequences
+	 */
+	String fastaFile(Map<String, String> seqs, int lineLen, String newLine) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (String chr : seqs.keySet()) {
+			sb.append(">" + chr + " random sequence" + newLine);
+			String seq = seqs.get(chr);
+			for (int i = 0; i < seq.length(); i += lineLen)
+				sb.append(seq.substring(i, Math.min(seq.length(), i + lineLen)) + newLine);
+		}
+
+		File file = File.createTempFile("indexedFasta", ".fa");
+		file.deleteOnExit();
+		String fileName = file.getCanonicalPath();
+		new File(fileName + IndexedFasta.FAI_EXTENSION).deleteOnExit();
+		Gpr.toFile(fileName, sb.toString());
+		return fileName;
+	}
+
+	@Override
+	protected void init() {
+		super.init();
+		randSeed = 20161104;
+		initRand();
+	}
+
+	/**
+	 * Random sequences (some of them in lower case)
+	 */
+	Map<String, String> randSeqs() {
+		Map<String, String> seqs = new LinkedHashMap<>();
+		for (String chr : new String[] { "1", "2", "X", "scaffold_17" }) {
+			String seq = GprSeq.randSequence(rand, 1 + rand.nextInt(20000));
+			seqs.put(chr, rand.nextBoolean() ? seq.toLowerCase() : seq);
+		}
+		return seqs;
+	}
+
 	/**
 	 * Bug: Fasta file iterator should not crash if first line is empty
 	 */
@@ -27,4 +95,68 @@ public class TestCasesFasta extends TestCasesBase {
 			if (verbose) System.out.println("SeqName: " + ffi.getName() + "\tSize: " + seq.length());
 		}
 	}
+
+	/**
+	 * Indexed FASTA: Random access to sequences, index is created and then re-used
+	 */
+	@Test
+	public void test_02_indexed() throws IOException {
+		Gpr.debug("Test");
+		Map<String, String> seqs = randSeqs();
+		String fastaFileName = fastaFile(seqs, 60, "\n");
+
+		// Create index
+		Assert.assertTrue(IndexedFasta.canIndex(fastaFileName));
+		IndexedFasta fasta = new IndexedFasta(fastaFileName);
+		Assert.assertTrue(fasta.open());
+		Assert.assertTrue(new File(fasta.getFaiFileName()).exists());
+		checkSlices(fasta, seqs);
+		String index = fasta.toString();
+		fasta.close();
+		if (verbose) System.out.println("Index:\n" + index);
+
+		// Load index from file
+		fasta = new IndexedFasta(fastaFileName);
+		Assert.assertTrue(fasta.open());
+		Assert.assertEquals(index, fasta.toString());
+		checkSlices(fasta, seqs);
+		fasta.close();
+
+		// Same sequences as FastaFileIterator
+		FastaFileIterator ffi = new FastaFileIterator(fastaFileName);
+		for (String seq : ffi)
+			Assert.assertEquals(seqs.get(ffi.getName()), seq);
+	}
+
+	/**
+	 * Indexed FASTA: Different line lengths and 'Windows' new lines
+	 */
+	@Test
+	public void test_03_indexed_line_len() throws IOException {
+		Gpr.debug("Test");
+		for (int lineLen : new int[] { 1, 7, 60, 80, 100000 }) {
+			Map<String, String> seqs = randSeqs();
+			IndexedFasta fasta = new IndexedFasta(fastaFile(seqs, lineLen, "\r\n"));
+			Assert.assertTrue(fasta.open());
+			checkSlices(fasta, seqs);
+			fasta.close();
+		}
+	}
+
+	/**
+	 * Indexed FASTA: Files having irregular line lengths cannot be indexed
+	 */
+	@Test
+	public void test_04_indexed_irregular() throws IOException {
+		Gpr.debug("Test");
+		String fastaFileName = fastaFile(new LinkedHashMap<String, String>(), 60, "\n");
+		Gpr.toFile(fastaFileName, ">1\nacgtacgt\nacg\nacgtacgt\n");
+		Assert.assertFalse(new IndexedFasta(fastaFileName).open());
+
+		Gpr.toFile(fastaFileName, ">1\nacgt\nacgtacgt\n");
+		Assert.assertFalse(new IndexedFasta(fastaFileName).open());
+
+		Gpr.toFile(fastaFileName, ">1\nacgt\n\nacgt\n");
+		Assert.assertFalse(new IndexedFasta(fastaFileName).open());
+	}
 }
@@ -8,6 +8,7 @@ import java.util.Random;
 import org.junit.Test;
 import org.snpeff.fileIterator.VcfFileIterator;
 import org.snpeff.util.Gpr;
+import org.snpeff.util.GprSeq;
 import org.snpeff.vcf.FileIndexChrPos;
 import org.snpeff.vcf.FileIndexChrPos.LineAndPos;
 import org.snpeff.vcf.VcfEntry;
@@ -552,4 +553,156 @@ public class TestCasesFileIndexChrPos extends TestCasesBase {
 		idx.close();
 	}
 
+	/**
+	 * Test : Memory mapped segments smaller than the file (lines span across segments)
+	 */
+	@Test
+	public void test_30_segments() throws IOException {
+		Gpr.debug("Test");
+		String vcf = createVcf(3, 2000);
+
+		FileIndexChrPos idx = new FileIndexChrPos(vcf);
+		idx.setVerbose(verbose);
+		idx.setSegmentBits(12); // Segments are 4KB
+		idx.open();
+		idx.index();
+
+		// Compare lines
+		Random random = new Random(20170412);
+		long size = (new File(vcf)).length();
+		for (int i = 0; i < 1000; i++) {
+			long randPos = random.nextInt((int) size);
+			LineAndPos lineSlow = idx.getLineSlow(randPos);
+			LineAndPos line = idx.getLine(randPos);
+			Assert.assertEquals(lineSlow.line, line.line);
+			Assert.assertEquals(lineSlow.position, line.position);
+		}
+
+		// Dump a whole chromosome
+		StringBuilder expected = new StringBuilder();
+		VcfFileIterator vcfFile = new VcfFileIterator(vcf);
+		for (VcfEntry ve : vcfFile)
+			if (ve.getChromosomeName().equals("2")) expected.append(ve.getLine() + "\n");
+		Assert.assertEquals(expected.toString(), idx.dump("2", 0, Integer.MAX_VALUE - 1, true));
+
+		idx.close();
+	}
+
+	/**
+	 * Test : Checkpoints must not change 'find' results
+	 */
+	@Test
+	public void test_31_checkpoints() throws IOException {
+		Gpr.debug("Test");
+		String vcf = createVcf(3, 5000);
+
+		FileIndexChrPos idx = new FileIndexChrPos(vcf);
+		idx.open();
+		idx.index();
+
+		FileIndexChrPos idxCp = new FileIndexChrPos(vcf);
+		idxCp.open();
+		idxCp.index();
+		idxCp.indexCheckpoints(1000);
+
+		String lines[] = Gpr.readFile(vcf).split("\n");
+		Random random = new Random(20170413);
+		for (int i = 0; i < 2000; i++) {
+			String chr = "" + (1 + random.nextInt(3));
+			int pos = random.nextInt(5000 * 10);
+			boolean lessEq = random.nextBoolean();
+			long expected = findNaive(lines, chr, pos, lessEq);
+			if (expected >= 0) Assert.assertEquals("Find " + chr + ":" + pos + " " + lessEq, expected, idx.find(chr, pos, lessEq));
+			Assert.assertEquals("Find " + chr + ":" + pos + " " + lessEq, idx.find(chr, pos, lessEq), idxCp.find(chr, pos, lessEq));
+		}
+
+		idx.close();
+		idxCp.close();
+	}
+
+	/**
+	 * Test : Save and load checkpoints to a sidecar index file
+	 */
+	@Test
+	public void test_32_checkpoints_sidecar() throws IOException {
+		Gpr.debug("Test");
+		String vcf = createVcf(2, 3000);
+		String idxFile = vcf + FileIndexChrPos.INDEX_FILE_EXTENSION;
+		new File(idxFile).deleteOnExit();
+
+		// Create sidecar
+		FileIndexChrPos idx = new FileIndexChrPos(vcf);
+		idx.open();
+		idx.index();
+		Assert.assertFalse(idx.loadCheckpoints());
+		idx.indexCheckpoints();
+		Assert.assertTrue(Gpr.exists(idxFile));
+
+		// Load sidecar
+		FileIndexChrPos idxLoad = new FileIndexChrPos(vcf);
+		idxLoad.open();
+		idxLoad.index();
+		Assert.assertTrue(idxLoad.loadCheckpoints());
+
+		Random random = new Random(20170414);
+		for (int i = 0; i < 1000; i++) {
+			String chr = "" + (1 + random.nextInt(2));
+			int pos = random.nextInt(3000 * 10);
+			Assert.assertEquals(idx.find(chr, pos, true), idxLoad.find(chr, pos, true));
+		}
+
+		idx.close();
+		idxLoad.close();
+
+		// Sidecar older than the file (same size): Must not be used
+		File idxF = new File(idxFile);
+		Assert.assertTrue(idxF.setLastModified(new File(vcf).lastModified() - 10 * 1000));
+		FileIndexChrPos idxOld = new FileIndexChrPos(vcf);
+		idxOld.open();
+		idxOld.index();
+		Assert.assertFalse(idxOld.loadCheckpoints());
+		idxOld.close();
+	}
+
+	/**
+	 * Naively find the first line in 'chr' having position 'pos' or larger (lessEq)
+	 * or larger than 'pos' (!lessEq)
+	 * @return File position or -1 if no line is found
+	 */
+	long findNaive(String lines[], String chr, int pos, boolean lessEq) {
+		long offset = 0;
+		for (String line : lines) {
+			String fields[] = line.split("\t");
+			if (fields[0].equals(chr)) {
+				int linePos = Gpr.parseIntSafe(fields[1]) - FileIndexChrPos.POS_OFFSET;
+				if ((linePos > pos) || (lessEq && linePos == pos)) return offset;
+			}
+			offset += line.length() + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Create a sorted VCF file (some positions are repeated)
+	 */
+	String createVcf(int numChrs, int linesPerChr) throws IOException {
+		File file = File.createTempFile("fileIndexChrPos", ".vcf");
+		file.deleteOnExit();
+
+		Random random = new Random(20170411);
+		StringBuilder sb = new StringBuilder();
+		sb.append("##fileformat=VCFv4.1\n");
+		sb.append("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n");
+		for (int chr = 1; chr <= numChrs; chr++) {
+			int pos = 1;
+			for (int i = 0; i < linesPerChr; i++) {
+				pos += random.nextInt(20); // Zero means a repeated position
+				sb.append(chr + "\t" + pos + "\t.\tA\tT\t.\tPASS\tAC=" + i + ";LINE=" + GprSeq.randSequence(random, random.nextInt(100)) + "\n");
+			}
+		}
+
+		Gpr.toFile(file.getPath(), sb);
+		return file.getPath();
+	}
+
 }
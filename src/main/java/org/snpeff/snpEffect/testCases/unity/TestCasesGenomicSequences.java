@@ -1,17 +1,27 @@
 package org.snpeff.snpEffect.testCases.unity;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Assert;
 import org.junit.Test;
 import org.snpeff.binseq.GenomicSequences;
+import org.snpeff.binseq.GenomicSequencesMmap;
 import org.snpeff.interval.Chromosome;
 import org.snpeff.interval.Genome;
 import org.snpeff.interval.Marker;
+import org.snpeff.interval.MarkerSeq;
 import org.snpeff.snpEffect.Config;
 import org.snpeff.util.Gpr;
 import org.snpeff.util.GprSeq;
+import org.snpeff.util.Timer;
 
 /**
  * Test case
@@ -174,4 +184,193 @@ public class TestCasesGenomicSequences {
 		}
 	}
 
+	/**
+	 * Contention benchmark: Query sequences concurrently from many threads.
+	 * Check that every query returns the right sequence and report the
+	 * time taken using one thread vs. all available processors
+	 */
+	@Test
+	public void test_03_concurrent_queries() throws Exception {
+		Gpr.debug("Test");
+		int numberOfChromos = 10;
+		int chrLen = 10 * 1000;
+		int queriesPerThread = 50 * 1000;
+		int maxQueryLen = 50;
+
+		// Create random chromosome sequences
+		Genome genome = new Genome("test_concurrent");
+		GenomicSequences gs = genome.getGenomicSequences();
+		gs.setDisableLoad(true);
+
+		String chrSeqs[] = new String[numberOfChromos];
+		Chromosome chrs[] = new Chromosome[numberOfChromos];
+		Random random = new Random(20161017);
+		for (int i = 0; i < numberOfChromos; i++) {
+			chrSeqs[i] = GprSeq.randSequence(random, chrLen);
+			gs.addChromosomeSequence("chr" + i, chrSeqs[i]);
+			chrs[i] = genome.getChromosome("chr" + i);
+		}
+
+		// Run the same workload using one thread and then all processors
+		int numThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		for (int threads : new int[] { 1, numThreads }) {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			List<Callable<Integer>> tasks = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				final int seed = t;
+				tasks.add(() -> {
+					Random rand = new Random(seed);
+					int count = 0;
+					for (int i = 0; i < queriesPerThread; i++) {
+						int chrNum = rand.nextInt(numberOfChromos);
+						int start = rand.nextInt(chrLen - maxQueryLen);
+						int end = start + rand.nextInt(maxQueryLen);
+
+						Marker marker = new Marker(chrs[chrNum], start, end);
+						String seq = gs.querySequence(marker);
+						if (!chrSeqs[chrNum].substring(start, end + 1).equalsIgnoreCase(seq)) throw new RuntimeException("Sequences do not match for marker: " + marker);
+						count++;
+					}
+					return count;
+				});
+			}
+
+			Timer timer = new Timer();
+			int total = 0;
+			for (Future<Integer> f : executor.invokeAll(tasks))
+				total += f.get();
+			executor.shutdown();
+
+			Assert.assertEquals(threads * queriesPerThread, total);
+			if (verbose) Gpr.debug("Threads: " + threads + "	Queries: " + total + "	Elapsed: " + timer.elapsed() + " ms	Queries / ms (per thread): " + (total / (threads * Math.max(1, timer.elapsed()))));
+		}
+	}
+
+	/**
+	 * Save sequences (including 'N' bases and overlapping markers) to a
+	 * memory mapped 2-bit file and check that we can recover them
+	 */
+	@Test
+	public void test_04_mmap() throws Exception {
+		Gpr.debug("Test");
+		int numberOfChromos = 5;
+		int chrLen = 10 * 1000;
+		int numQueries = 10 * 1000;
+
+		Genome genome = new Genome("test_mmap");
+		Random random = new Random(20161018);
+		String chrSeqs[] = new String[numberOfChromos];
+		ArrayList<Marker> markerSeqs = new ArrayList<>();
+		for (int i = 0; i < numberOfChromos; i++) {
+			// Random sequence with a few 'N' blocks
+			char bases[] = GprSeq.randSequence(random, chrLen).toCharArray();
+			for (int j = 0; j < 10; j++) {
+				int nstart = random.nextInt(chrLen - 100);
+				int nlen = random.nextInt(100);
+				for (int k = nstart; k < nstart + nlen; k++)
+					bases[k] = 'N';
+			}
+			chrSeqs[i] = new String(bases);
+
+			// Add overlapping sequence markers covering the chromosome
+			Chromosome chr = genome.getOrCreateChromosome("chr" + i);
+			for (int start = 0; start < chrLen; start += 1000) {
+				int end = Math.min(chrLen - 1, start + 1000 + random.nextInt(500));
+				MarkerSeq ms = new MarkerSeq(chr, start, end, false, "");
+				ms.setSequence(chrSeqs[i].substring(start, end + 1));
+				markerSeqs.add(ms);
+			}
+		}
+
+		File file = File.createTempFile("sequence", ".2bit");
+		file.deleteOnExit();
+		GenomicSequencesMmap.save(file.getCanonicalPath(), markerSeqs);
+
+		// Query random intervals in both strands
+		GenomicSequencesMmap gsm = new GenomicSequencesMmap(file.getCanonicalPath());
+		gsm.open();
+		for (int i = 0; i < numQueries; i++) {
+			int chrNum = random.nextInt(numberOfChromos);
+			int start = random.nextInt(chrLen - 100);
+			int end = start + random.nextInt(100);
+			boolean strandMinus = random.nextBoolean();
+
+			Marker marker = new Marker(genome.getChromosome("chr" + chrNum), start, end, strandMinus, "");
+			String expected = chrSeqs[chrNum].substring(start, end + 1);
+			if (strandMinus) expected = GprSeq.reverseWc(expected);
+
+			Assert.assertEquals("Sequences do not match for marker: " + marker, expected.toUpperCase(), gsm.querySequence(marker).toUpperCase());
+			Assert.assertNotNull(gsm.queryInterval(marker));
+		}
+
+		// Outside any sequence
+		Chromosome chr = genome.getChromosome("chr0");
+		Assert.assertNull(gsm.querySequence(new Marker(chr, chrLen - 10, chrLen + 10)));
+		Assert.assertNull(gsm.querySequence(new Marker(genome.getOrCreateChromosome("chrX"), 0, 10)));
+	}
+
+	/**
+	 * Add sequences while other threads are querying: Trees already published
+	 * must not be modified, new sequences must be visible after they are added
+	 */
+	@Test
+	public void test_05_add_while_querying() throws Exception {
+		Gpr.debug("Test");
+		final int chrLen = 10 * 1000;
+		final int numberOfChromos = 20;
+
+		Genome genome = new Genome("test_add_while_querying");
+		final GenomicSequences gs = genome.getGenomicSequences();
+		gs.setDisableLoad(true);
+
+		Random random = new Random(20161018);
+		final String chrSeq0 = GprSeq.randSequence(random, chrLen);
+		gs.addChromosomeSequence("chr0", chrSeq0);
+		final Chromosome chr0 = genome.getChromosome("chr0");
+
+		// Query 'chr0' from other threads while adding sequences
+		final AtomicBoolean done = new AtomicBoolean(false);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<Integer>> futures = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final int seed = t;
+			futures.add(executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					Random rand = new Random(seed);
+					int count = 0;
+					while (!done.get() || count < 1000) {
+						int start = rand.nextInt(chrLen - 50);
+						int end = start + rand.nextInt(50);
+						Marker marker = new Marker(chr0, start, end);
+						String seq = gs.querySequence(marker);
+						if (!chrSeq0.substring(start, end + 1).equalsIgnoreCase(seq)) throw new RuntimeException("Sequences do not match for marker: " + marker);
+						count++;
+					}
+					return count;
+				}
+			}));
+		}
+
+		// Add sequences for other chromosomes and a longer sequence for 'chr0'
+		String chrSeqs[] = new String[numberOfChromos];
+		for (int i = 1; i < numberOfChromos; i++) {
+			chrSeqs[i] = GprSeq.randSequence(random, chrLen);
+			gs.addChromosomeSequence("chr" + i, chrSeqs[i]);
+		}
+		String chrSeq0Ext = chrSeq0 + GprSeq.randSequence(random, chrLen);
+		gs.addChromosomeSequence("chr0", chrSeq0Ext);
+		done.set(true);
+
+		for (Future<Integer> f : futures)
+			Assert.assertTrue(f.get() > 0);
+		executor.shutdown();
+
+		// New sequences are visible
+		chr0.setEnd(chrSeq0Ext.length() - 1);
+		Assert.assertEquals(chrSeq0Ext.substring(chrLen + 100, chrLen + 200).toLowerCase(), gs.querySequence(new Marker(chr0, chrLen + 100, chrLen + 199)));
+		for (int i = 1; i < numberOfChromos; i++)
+			Assert.assertEquals(chrSeqs[i].substring(500, 600).toLowerCase(), gs.querySequence(new Marker(genome.getChromosome("chr" + i), 500, 599)));
+	}
+
 }
@@ -0,0 +1,157 @@
+package org.snpeff.snpEffect.testCases.unity;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.snpeff.interval.Chromosome;
+import org.snpeff.interval.Marker;
+import org.snpeff.interval.Markers;
+import org.snpeff.interval.tree.IntervalForest;
+import org.snpeff.interval.tree.IntervalTree;
+import org.snpeff.interval.tree.IntervalTreeFlat;
+import org.snpeff.interval.tree.Itree;
+import org.snpeff.interval.tree.MarkerVisitor;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Timer;
+
+import junit.framework.Assert;
+
+/**
+ * Test case for flat interval tree structure
+ */
+public class TestCasesIntervalTreeFlat extends TestCasesIntervalTree {
+
+	/**
+	 * Count query results
+	 */
+	class Counter implements MarkerVisitor {
+		long count;
+
+		@Override
+		public void visit(Marker marker) {
+			count++;
+		}
+	}
+
+	@Override
+	protected Itree newItree(Markers markers) {
+		return new IntervalTreeFlat(markers);
+	}
+
+	/**
+	 * Visitor queries should find the same intervals as 'query' and 'stab'
+	 */
+	@Test
+	public void test_03_visitor() {
+		Gpr.debug("Test");
+
+		Itree intTree = newItree(markers);
+		intTree.build();
+
+		for (Marker m : createRandomLargeMarkers(chromosome, 1000)) {
+			final Markers results = new Markers();
+			intTree.query(m, new MarkerVisitor() {
+				@Override
+				public void visit(Marker marker) {
+					results.add(marker);
+				}
+			});
+			Assert.assertEquals(queryNaive(m).sort().toString(), results.sort().toString());
+
+			Counter counter = new Counter();
+			intTree.stab(m.getStart(), counter);
+			Assert.assertEquals(intTree.stab(m.getStart()).size(), counter.count);
+		}
+	}
+
+	/**
+	 * Interval forest: Choose flat trees when building
+	 */
+	@Test
+	public void test_04_forest() {
+		Gpr.debug("Test");
+
+		IntervalForest forest = new IntervalForest(markers);
+		forest.build(true);
+		Assert.assertTrue(forest.getTreeChromo(chromosome.getId()) instanceof IntervalTreeFlat);
+		Assert.assertEquals(markers.size(), forest.size());
+
+		for (Marker m : createRandomSmallMarkers(chromosome, 1000)) {
+			Counter counter = new Counter();
+			forest.query(m, counter);
+			Assert.assertEquals(queryNaive(m).size(), counter.count);
+		}
+	}
+
+	/**
+	 * Interval forest: Build trees in parallel
+	 */
+	@Test
+	public void test_05_forest_parallel() {
+		Gpr.debug("Test");
+
+		// Markers in several chromosomes
+		Markers markersAll = new Markers();
+		markersAll.add(markers);
+		for (int i = 2; i <= 5; i++)
+			markersAll.add(createRandomSmallMarkers(new Chromosome(genome, 0, CHR_SIZE, "" + i), 1000));
+
+		IntervalForest forest = new IntervalForest(markersAll);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			forest.build(true, executor);
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals(markersAll.size(), forest.size());
+
+		IntervalForest forestSeq = new IntervalForest(markersAll);
+		forestSeq.build(true);
+
+		for (Marker m : markersAll) {
+			Assert.assertTrue(forest.getTreeChromo(m.getChromosomeName()) instanceof IntervalTreeFlat);
+			Assert.assertEquals(forestSeq.query(m).sort().toString(), forest.query(m).sort().toString());
+		}
+	}
+
+	/**
+	 * Benchmark: Compare IntervalTree and IntervalTreeFlat queries
+	 */
+	@Test
+	public void test_06_benchmark() {
+		Gpr.debug("Test");
+
+		Itree intTree = new IntervalTree(markers);
+		intTree.build();
+		Itree intTreeFlat = newItree(markers);
+		intTreeFlat.build();
+
+		Markers queries = createRandomSmallMarkers(chromosome, 100 * 1000);
+		int repeat = 10;
+
+		// Interval tree
+		Timer timer = new Timer();
+		long count = 0;
+		for (int i = 0; i < repeat; i++)
+			for (Marker m : queries)
+				count += intTree.query(m).size();
+		long elapsedTree = timer.elapsed();
+
+		// Flat interval tree (visitor)
+		timer = new Timer();
+		Counter counter = new Counter();
+		for (int i = 0; i < repeat; i++)
+			for (Marker m : queries)
+				intTreeFlat.query(m, counter);
+		long elapsedFlat = timer.elapsed();
+
+		if (verbose) Timer.showStdErr("Queries: " + (repeat * queries.size()) //
+				+ "\n\tIntervalTree               : " + elapsedTree + " ms" //
+				+ "\n\tIntervalTreeFlat (visitor) : " + elapsedFlat + " ms" //
+		);
+
+		Assert.assertEquals(count, counter.count);
+	}
+
+}
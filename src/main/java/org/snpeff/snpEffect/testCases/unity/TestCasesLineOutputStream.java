@@ -0,0 +1,213 @@
+package org.snpeff.snpEffect.testCases.unity;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.outputFormatter.LineOutputStream;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Timer;
+import org.snpeff.vcf.VcfEntry;
+
+import junit.framework.Assert;
+import net.sf.samtools.util.BlockCompressedInputStream;
+import net.sf.samtools.util.BlockCompressedInputStream.FileTermination;
+
+/**
+ * Test cases for LineOutputStream: Lines written from reusable
+ * buffers (plain text and BGZF compressed)
+ *
+ * @author pcingola
+ */
+public class TestCasesLineOutputStream extends TestCasesBase {
+
+	@Override
+	protected void init() {
+		super.init();
+		randSeed = 20161025;
+		initRand();
+	}
+
+	/**
+	 * Parse VCF lines
+	 */
+	List<VcfEntry> parse(List<String> lines) {
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines)
+			sb.append(line + "\n");
+
+		VcfFileIterator vcf = new VcfFileIterator(new BufferedReader(new StringReader(sb.toString())));
+		vcf.setCreateChromos(true);
+
+		List<VcfEntry> ves = new ArrayList<>();
+		for (VcfEntry ve : vcf)
+			ves.add(ve);
+		Assert.assertEquals(lines.size(), ves.size());
+		return ves;
+	}
+
+	/**
+	 * Random VCF lines
+	 */
+	List<String> randomLines(int num) {
+		String bases = "ACGT";
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < num; i++) {
+			String ref = "" + bases.charAt(rand.nextInt(4));
+			String alt = "" + bases.charAt(rand.nextInt(4));
+			String line = "1\t" + (1000 + 10 * i) + "\t.\t" + ref + "\t" + alt + "\t" + rand.nextInt(1000) + ".0\tPASS\tAC=" + rand.nextInt(100) + ";AF=" + rand.nextDouble() //
+					+ ";ANN=" + alt + "|missense_variant|MODERATE|GENE" + rand.nextInt(100) + "|GENE" + rand.nextInt(100) + "|transcript|TR" + rand.nextInt(1000) + "|protein_coding|1/2|c." + rand.nextInt(1000) + ref + ">" + alt + "||||||" //
+					+ "\tGT:DP\t0/1:" + rand.nextInt(100) + "\t1/1:" + rand.nextInt(100);
+			lines.add(line);
+		}
+		return lines;
+	}
+
+	/**
+	 * Write lines and read them back
+	 */
+	String writeRead(List<String> lines, boolean bgzip) throws IOException {
+		File file = File.createTempFile("lineOutputStream", bgzip ? ".vcf.gz" : ".vcf");
+		file.deleteOnExit();
+
+		// Write some lines from a String and some from a (reused) StringBuilder
+		LineOutputStream los = new LineOutputStream(file.getCanonicalPath(), bgzip);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+			if (i % 2 == 0) {
+				los.writeLine(line, 0, line.length());
+			} else {
+				sb.setLength(0);
+				sb.append("prefix\t").append(line).append("\tsuffix");
+				los.writeLine(sb, 7, 7 + line.length());
+			}
+		}
+		los.close();
+
+		if (bgzip) Assert.assertEquals(FileTermination.HAS_TERMINATOR_BLOCK, BlockCompressedInputStream.checkTermination(file));
+		return Gpr.readFile(file.getCanonicalPath(), bgzip);
+	}
+
+	String expected(List<String> lines) {
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines)
+			sb.append(line).append('\n');
+		return sb.toString();
+	}
+
+	/**
+	 * Plain text output
+	 */
+	@Test
+	public void test_01_plain() throws IOException {
+		Gpr.debug("Test");
+		List<String> lines = randomLines(1000);
+		Assert.assertEquals(expected(lines), writeRead(lines, false));
+	}
+
+	/**
+	 * BGZF output (spans several BGZF blocks)
+	 */
+	@Test
+	public void test_02_bgzip() throws IOException {
+		Gpr.debug("Test");
+		List<String> lines = randomLines(5000);
+		Assert.assertEquals(expected(lines), writeRead(lines, true));
+	}
+
+	/**
+	 * Non-ASCII characters and long lines
+	 * Note: Non-ASCII characters are encoded using the default charset (same as a FileWriter)
+	 */
+	@Test
+	public void test_03_non_ascii() throws IOException {
+		Gpr.debug("Test");
+		List<String> lines = new ArrayList<>();
+		lines.add("1\t1000\t.\tA\tC\t.\tPASS\tNOTE=Gen\u00e9tica \u4e2d");
+		lines.add("");
+
+		StringBuilder sb = new StringBuilder("1\t2000\t.\tA\tC\t.\tPASS\tLONG=");
+		for (int i = 0; i < 100 * 1000; i++)
+			sb.append((char) ('a' + rand.nextInt(26)));
+		lines.add(sb.toString());
+		lines.add("1\t3000\t.\tA\tC\t.\tPASS\tAC=1");
+
+		String expected = new String(expected(lines).getBytes());
+		for (boolean bgzip : new boolean[] { false, true })
+			Assert.assertEquals(expected, writeRead(lines, bgzip));
+	}
+
+	/**
+	 * VCF entries appended to a StringBuilder must be the same as 'toString()'
+	 */
+	@Test
+	public void test_04_vcf_entry() {
+		Gpr.debug("Test");
+		List<String> lines = randomLines(200);
+		StringBuilder sb = new StringBuilder();
+		for (VcfEntry ve : parse(lines)) {
+			ve.addInfo("NEW", "1");
+			sb.setLength(0);
+			ve.toString(sb);
+			Assert.assertEquals(ve.toString(), sb.toString());
+
+			sb.setLength(0);
+			ve.toStringNoGt(sb);
+			Assert.assertEquals(ve.toStringNoGt(), sb.toString());
+		}
+	}
+
+	/**
+	 * Benchmark: Strings written using a BufferedWriter vs LineOutputStream
+	 */
+	@Test
+	public void test_05_benchmark() throws IOException {
+		Gpr.debug("Test");
+		List<VcfEntry> ves = parse(randomLines(20 * 1000));
+		int iterations = 10;
+
+		File file = File.createTempFile("lineOutputStream", ".vcf");
+		file.deleteOnExit();
+		String fileName = file.getCanonicalPath();
+
+		Timer timer = new Timer();
+		for (int it = 0; it < iterations; it++) {
+			BufferedWriter writer = new BufferedWriter(new FileWriter(fileName));
+			for (VcfEntry ve : ves)
+				writer.write(ve.toString() + "\n");
+			writer.close();
+		}
+		long elapsedWriter = timer.elapsed();
+		long lenWriter = file.length();
+
+		timer = new Timer();
+		StringBuilder sb = new StringBuilder();
+		for (int it = 0; it < iterations; it++) {
+			LineOutputStream los = new LineOutputStream(fileName, false);
+			for (VcfEntry ve : ves) {
+				sb.setLength(0);
+				ve.toString(sb);
+				los.writeLine(sb, 0, sb.length());
+			}
+			los.close();
+		}
+		long elapsedStream = timer.elapsed();
+
+		long count = (long) iterations * ves.size();
+		if (verbose) Timer.showStdErr("VCF lines: " + count //
+				+ "\n\tBufferedWriter   : " + elapsedWriter + " ms, " + (1000L * count / Math.max(1, elapsedWriter)) + " lines per second" //
+				+ "\n\tLineOutputStream : " + elapsedStream + " ms, " + (1000L * count / Math.max(1, elapsedStream)) + " lines per second" //
+		);
+
+		Assert.assertEquals(lenWriter, file.length());
+	}
+
+}
@@ -0,0 +1,153 @@
+package org.snpeff.snpEffect.testCases.unity;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.snpeff.interval.Chromosome;
+import org.snpeff.interval.Exon;
+import org.snpeff.interval.Gene;
+import org.snpeff.interval.Marker;
+import org.snpeff.interval.Markers;
+import org.snpeff.interval.Transcript;
+import org.snpeff.serializer.MarkerSerializer;
+import org.snpeff.serializer.MarkerSerializerBinary;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Timer;
+
+/**
+ * Test cases for marker serialization (text and binary formats)
+ *
+ * @author pcingola
+ */
+public class TestCasesMarkerSerializer extends TestCasesBase {
+
+	public TestCasesMarkerSerializer() {
+		super();
+	}
+
+	@Override
+	protected void init() {
+		super.init();
+		randSeed = 20170331;
+		numGenes = 2;
+		maxTranscripts = 3;
+		addUtrs = true;
+		onlyPlusStrand = false;
+		initRand();
+	}
+
+	/**
+	 * Add a gene in a second chromosome
+	 */
+	void addChromosome2() {
+		Chromosome chr2 = new Chromosome(genome, 0, 9999, "2");
+		genome.add(chr2);
+		Gene g2 = new Gene(chr2, 100, 900, true, "g2", "g2", null);
+		Transcript tr2 = new Transcript(g2, 100, 900, true, "tr2");
+		g2.add(tr2);
+		tr2.add(new Exon(tr2, 100, 300, true, "e2_1", 1));
+		tr2.add(new Exon(tr2, 700, 900, true, "e2_2", 2));
+		snpEffectPredictor.add(g2);
+	}
+
+	/**
+	 * Markers to save (same as SnpEffectPredictor.save)
+	 */
+	Markers markersToSave() {
+		Markers markers = new Markers();
+		markers.add(genome);
+		for (Chromosome chr : genome)
+			markers.add(chr);
+		for (Gene g : genome.getGenes())
+			markers.add(g);
+		return markers;
+	}
+
+	/**
+	 * A string representation of all markers (sorted)
+	 */
+	List<String> toStrings(Markers markers) {
+		List<String> strs = new ArrayList<>();
+		for (Marker m : markers) {
+			String parent = (m.getParent() != null ? m.getParent().getId() : "null");
+			strs.add(m.getClass().getSimpleName() + "\t" + m.toStr() + "\t" + m.getId() + "\tparent:" + parent);
+			if (m instanceof Transcript) strs.add("CDS:" + ((Transcript) m).cds());
+		}
+		Collections.sort(strs);
+		return strs;
+	}
+
+	/**
+	 * Save in text and binary formats, load and compare
+	 */
+	@Test
+	public void test_01_binary_vs_text() throws IOException {
+		Gpr.debug("Test");
+		addChromosome2();
+
+		File txtFile = File.createTempFile("snpEffectPredictor", ".txt.bin");
+		txtFile.deleteOnExit();
+		File binFile = File.createTempFile("snpEffectPredictor", ".bin");
+		binFile.deleteOnExit();
+
+		new MarkerSerializer(genome).save(txtFile.getPath(), markersToSave());
+		new MarkerSerializerBinary(genome).save(binFile.getPath(), markersToSave());
+		if (verbose) Timer.showStdErr("File sizes: text " + txtFile.length() + ", binary " + binFile.length());
+
+		Assert.assertFalse(MarkerSerializerBinary.isBinary(txtFile.getPath()));
+		Assert.assertTrue(MarkerSerializerBinary.isBinary(binFile.getPath()));
+
+		Markers txtMarkers = new MarkerSerializer().load(txtFile.getPath());
+		Markers binMarkers = new MarkerSerializerBinary().load(binFile.getPath());
+
+		List<String> txtStrs = toStrings(txtMarkers);
+		List<String> binStrs = toStrings(binMarkers);
+		Assert.assertEquals(txtStrs.size(), binStrs.size());
+		for (int i = 0; i < txtStrs.size(); i++)
+			Assert.assertEquals(txtStrs.get(i), binStrs.get(i));
+	}
+
+	/**
+	 * Load only one chromosome
+	 */
+	@Test
+	public void test_02_load_chromosome() throws IOException {
+		Gpr.debug("Test");
+		addChromosome2();
+
+		File binFile = File.createTempFile("snpEffectPredictor", ".bin");
+		binFile.deleteOnExit();
+		new MarkerSerializerBinary(genome).save(binFile.getPath(), markersToSave());
+
+		List<String> chrs = new ArrayList<>();
+		chrs.add("chr2"); // Names are compared using 'simple' chromosome names
+		Markers markers = new MarkerSerializerBinary().load(binFile.getPath(), chrs);
+
+		int countChr = 0, countGenes = 0;
+		for (Marker m : markers) {
+			if (m instanceof Chromosome) countChr++;
+			else if (m instanceof Gene) {
+				countGenes++;
+				Assert.assertEquals("g2", m.getId());
+				Assert.assertEquals("2", m.getChromosomeName());
+			}
+			if (verbose) Gpr.debug(m.getClass().getSimpleName() + "\t" + m.toStr());
+		}
+
+		Assert.assertEquals(2, countChr); // All chromosomes are always loaded
+		Assert.assertEquals(1, countGenes);
+
+		// Load all chromosomes
+		markers = new MarkerSerializerBinary().load(binFile.getPath());
+		countGenes = 0;
+		for (Marker m : markers)
+			if (m instanceof Gene) countGenes++;
+		Assert.assertEquals(genome.getGenes().size(), countGenes);
+	}
+
+}
@@ -0,0 +1,316 @@
+package org.snpeff.snpEffect.testCases.unity;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.outputFormatter.VcfOutputFormatter;
+import org.snpeff.snpEffect.commandLine.SnpEffCmdEff;
+import org.snpeff.snpEffect.commandLine.eff.PipelineEff;
+import org.snpeff.snpEffect.commandLine.eff.WorkerEff;
+import org.snpeff.stats.AlleleCountStats;
+import org.snpeff.stats.GenotypeStats;
+import org.snpeff.stats.HomHetStats;
+import org.snpeff.stats.SamplingStats;
+import org.snpeff.stats.TsTvStats;
+import org.snpeff.stats.VariantEffectStats;
+import org.snpeff.stats.VariantStats;
+import org.snpeff.stats.VariantTypeStats;
+import org.snpeff.stats.VcfStats;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.GprSeq;
+import org.snpeff.util.Timer;
+import org.snpeff.vcf.VcfEntry;
+
+/**
+ * Test cases for multi-threaded annotations ('eff -t'): Results must be
+ * the same (and in the same order) as single threaded annotations
+ *
+ * @author pcingola
+ */
+public class TestCasesPipelineEff extends TestCasesBase {
+
+	public static final String GENOTYPES[] = { "0/0", "0/1", "1/1", "./." };
+
+	SnpEffCmdEff snpEffCmdEff = new SnpEffCmdEff(); // Only used to show errors
+
+	public TestCasesPipelineEff() {
+		super();
+	}
+
+	@Override
+	protected void init() {
+		super.init();
+		randSeed = 20170412;
+		maxGeneLen = 20000;
+		maxTranscripts = 5;
+		maxExons = 10;
+		addUtrs = true;
+		onlyPlusStrand = false;
+		initRand();
+	}
+
+	/**
+	 * Create a VCF file having random SNPs and InDels
+	 */
+	String createVcf(int numEntries) throws IOException {
+		File file = File.createTempFile("pipelineEff", ".vcf");
+		file.deleteOnExit();
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("##fileformat=VCFv4.1\n");
+		sb.append("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tS1\tS2\n");
+		for (int i = 0; i < numEntries; i++) {
+			int pos = rand.nextInt(chromoSequence.length() - 10);
+			String ref = chromoSequence.substring(pos, pos + 1).toUpperCase();
+			String alt;
+
+			switch (rand.nextInt(3)) {
+			case 0:
+				// Insertion
+				alt = ref + GprSeq.randSequence(rand, 1 + rand.nextInt(5)).toUpperCase();
+				break;
+
+			case 1:
+				// Deletion
+				alt = ref;
+				ref = chromoSequence.substring(pos, pos + 2 + rand.nextInt(5)).toUpperCase();
+				break;
+
+			default:
+				// SNP
+				do {
+					alt = GprSeq.randSequence(rand, 1).toUpperCase();
+				} while (alt.equals(ref));
+			}
+
+			String id = (rand.nextInt(4) == 0 ? "rs" + i : ".");
+			sb.append(chromosome.getId() + "\t" + (pos + 1) + "\t" + id + "\t" + ref + "\t" + alt + "\t" + rand.nextInt(100) + "\tPASS\tAC=" + i //
+					+ "\tGT\t" + GENOTYPES[rand.nextInt(GENOTYPES.length)] + "\t" + GENOTYPES[rand.nextInt(GENOTYPES.length)] + "\n");
+		}
+
+		Gpr.toFile(file.getPath(), sb);
+		return file.getPath();
+	}
+
+	VcfOutputFormatter newOutputFormatter() {
+		VcfOutputFormatter vof = new VcfOutputFormatter();
+		vof.setConfig(config);
+		vof.setUseHgvs(true);
+		vof.setUseSequenceOntology(true);
+		vof.setShowHeader(false);
+		return vof;
+	}
+
+	/**
+	 * Annotate using a multi-threaded pipeline
+	 */
+	List<String> pipeline(String vcfFileName, int numWorkers, int batchSize, final VariantStats variantStats, final VariantEffectStats variantEffectStats, final VcfStats vcfStats) {
+		final List<String> out = new ArrayList<>();
+
+		PipelineEff pipeline = new PipelineEff(numWorkers, snpEffCmdEff, snpEffectPredictor, newOutputFormatter(), null) {
+			@Override
+			protected WorkerEff newWorker() {
+				WorkerEff worker = super.newWorker();
+				if (variantStats != null) {
+					worker.setVariantStats(new VariantStats(genome));
+					worker.setVariantEffectStats(new VariantEffectStats(genome));
+					worker.setVcfStats(new VcfStats());
+				}
+				return worker;
+			}
+
+			@Override
+			protected void output(VcfEntry vcfEntry, StringBuilder outStr, int start, int end) {
+				out.add(outStr != null ? outStr.substring(start, end) : null);
+			}
+		};
+		pipeline.setBatchSize(batchSize);
+
+		VcfFileIterator vcf = new VcfFileIterator(vcfFileName, genome);
+		vcf.readHeader();
+		pipeline.run(vcf);
+		vcf.close();
+
+		// Merge statistics
+		if (variantStats != null) {
+			for (WorkerEff worker : pipeline.getWorkers()) {
+				variantStats.merge(worker.getVariantStats());
+				variantEffectStats.merge(worker.getVariantEffectStats());
+				vcfStats.merge(worker.getVcfStats());
+			}
+		}
+
+		return out;
+	}
+
+	/**
+	 * Annotate using a single thread
+	 */
+	List<String> singleThread(String vcfFileName, VariantStats variantStats, VariantEffectStats variantEffectStats, VcfStats vcfStats) {
+		List<String> out = new ArrayList<>();
+
+		WorkerEff worker = new WorkerEff(snpEffCmdEff, snpEffectPredictor, newOutputFormatter(), null);
+		worker.setVariantStats(variantStats);
+		worker.setVariantEffectStats(variantEffectStats);
+		worker.setVcfStats(vcfStats);
+
+		VcfFileIterator vcf = new VcfFileIterator(vcfFileName, genome);
+		vcf.setParseNow(false);
+		for (VcfEntry ve : vcf)
+			out.add(worker.annotate(ve));
+		vcf.close();
+
+		return out;
+	}
+
+	/**
+	 * Per sample statistics (one of each)
+	 */
+	List<SamplingStats<VcfEntry>> vcfStatsList() {
+		List<SamplingStats<VcfEntry>> stats = new ArrayList<>();
+		stats.add(new AlleleCountStats());
+		stats.add(new GenotypeStats());
+		stats.add(new HomHetStats());
+		stats.add(new TsTvStats());
+		stats.add(new VariantTypeStats());
+		return stats;
+	}
+
+	/**
+	 * Multi-threaded output must be the same as single-threaded output
+	 */
+	@Test
+	public void test_01_same_output() throws IOException {
+		Gpr.debug("Test");
+		String vcfFile = createVcf(2000);
+		List<String> expected = singleThread(vcfFile, null, null, null);
+		Assert.assertEquals(2000, expected.size());
+
+		int batchSizes[] = { 1, 7, 100, 5000 };
+		for (int numWorkers = 1; numWorkers <= 4; numWorkers++) {
+			for (int batchSize : batchSizes) {
+				if (verbose) Gpr.debug("Workers: " + numWorkers + ", batch size: " + batchSize);
+				List<String> out = pipeline(vcfFile, numWorkers, batchSize, null, null, null);
+				Assert.assertEquals(expected.size(), out.size());
+				for (int i = 0; i < expected.size(); i++)
+					Assert.assertEquals("Line " + i + " differs (workers: " + numWorkers + ", batch size: " + batchSize + ")", expected.get(i), out.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Merged statistics from all workers must be the same as single-threaded statistics
+	 */
+	@Test
+	public void test_02_merge_stats() throws IOException {
+		Gpr.debug("Test");
+		String vcfFile = createVcf(2000);
+
+		VariantStats variantStats = new VariantStats(genome);
+		VariantEffectStats variantEffectStats = new VariantEffectStats(genome);
+		VcfStats vcfStats = new VcfStats();
+		singleThread(vcfFile, variantStats, variantEffectStats, vcfStats);
+
+		VariantStats variantStatsMerged = new VariantStats(genome);
+		VariantEffectStats variantEffectStatsMerged = new VariantEffectStats(genome);
+		VcfStats vcfStatsMerged = new VcfStats();
+		pipeline(vcfFile, 4, 10, variantStatsMerged, variantEffectStatsMerged, vcfStatsMerged);
+
+		Assert.assertEquals(variantStats.getCount(), variantStatsMerged.getCount());
+		Assert.assertEquals(variantStats.getCountByChangeType().toString(), variantStatsMerged.getCountByChangeType().toString());
+		Assert.assertEquals(variantStats.getCountByChromosome(chromosome.getId()), variantStatsMerged.getCountByChromosome(chromosome.getId()));
+		Assert.assertEquals(variantEffectStats.getCountByEffect().toString(), variantEffectStatsMerged.getCountByEffect().toString());
+		Assert.assertEquals(variantEffectStats.getCountByImpact().toString(), variantEffectStatsMerged.getCountByImpact().toString());
+		Assert.assertEquals(variantEffectStats.getCountByFunctionalClass().toString(), variantEffectStatsMerged.getCountByFunctionalClass().toString());
+		Assert.assertEquals(variantEffectStats.getCodonList(), variantEffectStatsMerged.getCodonList());
+		Assert.assertEquals(variantEffectStats.getGeneCountByEffectTable().getKeyList(), variantEffectStatsMerged.getGeneCountByEffectTable().getKeyList());
+
+		// VCF statistics
+		Assert.assertEquals(vcfStats.getCountMultiallelic(), vcfStatsMerged.getCountMultiallelic());
+		Assert.assertEquals(vcfStats.getQualityStats().toString(), vcfStatsMerged.getQualityStats().toString());
+		Assert.assertEquals(vcfStats.getTsTvStats().toString(), vcfStatsMerged.getTsTvStats().toString());
+		Assert.assertEquals(vcfStats.getTsTvStatsKnown().toString(), vcfStatsMerged.getTsTvStatsKnown().toString());
+		Assert.assertEquals(vcfStats.getGenotypeStats().getHomHetTable(), vcfStatsMerged.getGenotypeStats().getHomHetTable());
+		Assert.assertEquals(vcfStats.getGenotypeStats().getAlleleFrequency().toString(), vcfStatsMerged.getGenotypeStats().getAlleleFrequency().toString());
+	}
+
+	/**
+	 * Benchmark: Compare single threaded and multi-threaded throughput
+	 */
+	@Test
+	public void test_03_benchmark() throws IOException {
+		Gpr.debug("Test");
+		String vcfFile = createVcf(100 * 1000);
+
+		Timer timer = new Timer();
+		List<String> expected = singleThread(vcfFile, null, null, null);
+		long elapsedSingle = timer.elapsed();
+
+		int numWorkers = Math.max(2, Gpr.NUM_CORES);
+		timer = new Timer();
+		List<String> out = pipeline(vcfFile, numWorkers, PipelineEff.DEFAULT_BATCH_SIZE, null, null, null);
+		long elapsedPipeline = timer.elapsed();
+
+		if (verbose) Timer.showStdErr("VCF entries: " + expected.size() //
+				+ "\n\tSingle thread        : " + elapsedSingle + " ms, " + (1000L * expected.size() / Math.max(1, elapsedSingle)) + " entries per second" //
+				+ "\n\tPipeline (" + numWorkers + " workers) : " + elapsedPipeline + " ms, " + (1000L * out.size() / Math.max(1, elapsedPipeline)) + " entries per second" //
+		);
+
+		Assert.assertEquals(expected.size(), out.size());
+		for (int i = 0; i < expected.size(); i++)
+			Assert.assertEquals("Line " + i + " differs", expected.get(i), out.get(i));
+	}
+
+	/**
+	 * Per sample statistics: Merging in any grouping gives the same results as a single object
+	 */
+	@Test
+	public void test_04_merge_associative() throws IOException {
+		Gpr.debug("Test");
+		String vcfFile = createVcf(1000);
+
+		List<SamplingStats<VcfEntry>> all = vcfStatsList();
+		List<List<SamplingStats<VcfEntry>>> parts = new ArrayList<>();
+		for (int i = 0; i < 3; i++)
+			parts.add(vcfStatsList());
+
+		// Sample every VCF entry in 'all' and in one of the parts
+		VcfFileIterator vcf = new VcfFileIterator(vcfFile, genome);
+		int n = 0;
+		for (VcfEntry ve : vcf) {
+			List<SamplingStats<VcfEntry>> part = parts.get((n++ / 13) % parts.size());
+			for (int i = 0; i < all.size(); i++) {
+				all.get(i).sample(ve);
+				part.get(i).sample(ve);
+			}
+		}
+		vcf.close();
+
+		// Merge as '(p0 + p1) + p2' and as 'p0 + (p1 + p2)'
+		List<SamplingStats<VcfEntry>> left = vcfStatsList();
+		List<SamplingStats<VcfEntry>> right = vcfStatsList();
+		List<SamplingStats<VcfEntry>> right12 = vcfStatsList();
+		for (int i = 0; i < all.size(); i++) {
+			left.get(i).merge(parts.get(0).get(i));
+			left.get(i).merge(parts.get(1).get(i));
+			left.get(i).merge(parts.get(2).get(i));
+
+			right12.get(i).merge(parts.get(1).get(i));
+			right12.get(i).merge(parts.get(2).get(i));
+			right.get(i).merge(parts.get(0).get(i));
+			right.get(i).merge(right12.get(i));
+
+			Assert.assertTrue(all.get(i).hasData());
+			String expected = all.get(i).toString();
+			if (verbose) Gpr.debug(all.get(i).getClass().getSimpleName() + ":\n" + expected);
+			Assert.assertEquals(expected, left.get(i).toString());
+			Assert.assertEquals(expected, right.get(i).toString());
+		}
+	}
+
+}
@@ -0,0 +1,257 @@
+package org.snpeff.snpEffect.testCases.unity;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.snpeff.snpEffect.commandLine.SnpEffCmdEff;
+import org.snpeff.snpEffect.commandLine.SnpEffCmdServer;
+import org.snpeff.util.Gpr;
+
+import junit.framework.Assert;
+
+/**
+ * Test cases for annotation server (using a loopback client)
+ *
+ * @author pcingola
+ */
+public class TestCasesServer extends TestCasesBase {
+
+	public static final String VCF_HEADER = "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO";
+	public static int NUM_CLIENTS = 4;
+	public static int NUM_REQUESTS = 20;
+	public static int NUM_VARIANTS = 50;
+
+	SnpEffCmdServer server;
+
+	@Override
+	protected void init() {
+		super.init();
+		randSeed = 20161021;
+		addUtrs = true;
+		onlyPlusStrand = false;
+		maxGeneLen = 5000;
+		maxTranscripts = 3;
+		maxExons = 5;
+		initRand();
+	}
+
+	/**
+	 * Annotate without using the HTTP server
+	 */
+	String annotate(String vcf) throws IOException {
+		StringWriter out = new StringWriter();
+		server.annotate(genomeName, new BufferedReader(new StringReader(vcf)), out);
+		return out.toString();
+	}
+
+	/**
+	 * Send a request to the server
+	 * @param vcf : Request body (null for 'GET' requests)
+	 * @return Response body
+	 */
+	String request(String path, String vcf, int expectedStatus) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+		if (vcf != null) {
+			conn.setRequestMethod("POST");
+			conn.setDoOutput(true);
+			OutputStream os = conn.getOutputStream();
+			os.write(vcf.getBytes("UTF-8"));
+			os.close();
+		}
+
+		Assert.assertEquals(expectedStatus, conn.getResponseCode());
+		InputStream is = (conn.getResponseCode() < 400 ? conn.getInputStream() : conn.getErrorStream());
+		String response = Gpr.read(is);
+		is.close();
+		conn.disconnect();
+		return response;
+	}
+
+	/**
+	 * Create random VCF lines (SNPs within the gene)
+	 */
+	String randomVcf(int num) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < num; i++) {
+			int pos = gene.getStart() + rand.nextInt(gene.size());
+			char ref = chromoBases[pos];
+			char alt = "ACGT".replace("" + ref, "").charAt(rand.nextInt(3));
+			sb.append(chromosome.getId() + "\t" + (pos + 1) + "\t.\t" + ref + "\t" + alt + "\t.\t.\t.\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Start a server for the test genome (database already loaded)
+	 */
+	void startServer() {
+		startServer(null);
+	}
+
+	/**
+	 * Start a server for the test genome, allowing local files in 'fileDir'
+	 */
+	void startServer(String fileDir) {
+		SnpEffCmdEff cmdEff = new SnpEffCmdEff();
+		cmdEff.setConfig(config);
+		cmdEff.setGenomeVer(genomeName);
+		cmdEff.setVerbose(verbose);
+		cmdEff.load();
+
+		server = new SnpEffCmdServer();
+		server.setPort(0); // Any free port
+		server.setMaxRequests(NUM_CLIENTS);
+		server.setVerbose(verbose);
+		if (fileDir != null) server.setFileDir(fileDir);
+		server.addGenome(genomeName, cmdEff);
+		server.start();
+	}
+
+	/**
+	 * Annotate VCF lines
+	 */
+	@Test
+	public void test_01_lines() throws IOException {
+		Gpr.debug("Test");
+		startServer();
+		try {
+			String vcf = randomVcf(NUM_VARIANTS);
+			String expected = annotate(vcf);
+			Assert.assertEquals(NUM_VARIANTS, expected.split("\n").length);
+			Assert.assertTrue(expected.contains("ANN="));
+
+			Assert.assertEquals(expected, request("/ann/" + genomeName, vcf, 200));
+			Assert.assertEquals(expected, request("/ann", vcf, 200)); // Only one genome: Can be omitted
+
+			// Whole VCF file, including header
+			String response = request("/ann/" + genomeName, VCF_HEADER + "\n" + vcf, 200);
+			Assert.assertTrue(response.startsWith("##fileformat=VCFv4.1\n"));
+			Assert.assertTrue(response.contains("##SnpEffVersion="));
+			Assert.assertTrue(response.endsWith(expected));
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * Concurrent requests
+	 */
+	@Test
+	public void test_02_concurrent() throws Exception {
+		Gpr.debug("Test");
+		startServer();
+		try {
+			ExecutorService clients = Executors.newFixedThreadPool(NUM_CLIENTS);
+			List<String> expected = new ArrayList<>();
+			List<Future<String>> responses = new ArrayList<>();
+			for (int i = 0; i < NUM_REQUESTS; i++) {
+				final String vcf = randomVcf(NUM_VARIANTS);
+				expected.add(annotate(vcf));
+				responses.add(clients.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return request("/ann/" + genomeName, vcf, 200);
+					}
+				}));
+			}
+
+			for (int i = 0; i < NUM_REQUESTS; i++)
+				Assert.assertEquals(expected.get(i), responses.get(i).get());
+			clients.shutdown();
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * Request to annotate a local file
+	 */
+	String requestFile(String fileName, int expectedStatus) throws IOException {
+		return request("/ann/" + genomeName + "?file=" + URLEncoder.encode(fileName, "UTF-8"), null, expectedStatus);
+	}
+
+	/**
+	 * Annotate a local file, errors
+	 */
+	@Test
+	public void test_03_file_errors() throws IOException {
+		Gpr.debug("Test");
+		File dir = Files.createTempDirectory("server").toFile();
+		File file = new File(dir, "server.vcf");
+		dir.deleteOnExit();
+		file.deleteOnExit();
+
+		String vcf = randomVcf(NUM_VARIANTS);
+		Gpr.toFile(file.getPath(), vcf);
+
+		startServer(dir.getPath());
+		try {
+			Assert.assertEquals(annotate(vcf), requestFile(file.getPath(), 200));
+			Assert.assertEquals(annotate(vcf), requestFile(file.getName(), 200)); // Relative to 'fileDir'
+			Assert.assertEquals(genomeName + "\n", request("/genomes", null, 200));
+
+			// Errors
+			request("/ann/no_such_genome", vcf, 404);
+			requestFile(file.getPath() + ".missing", 404);
+			request("/ann/" + genomeName, null, 405);
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * Local files outside 'fileDir' are not allowed
+	 */
+	@Test
+	public void test_04_file_forbidden() throws IOException {
+		Gpr.debug("Test");
+		File dir = Files.createTempDirectory("server").toFile();
+		File file = new File(dir, "server.vcf");
+		File fileOutside = File.createTempFile("server", ".vcf", dir.getParentFile());
+		dir.deleteOnExit();
+		file.deleteOnExit();
+		fileOutside.deleteOnExit();
+
+		String vcf = randomVcf(NUM_VARIANTS);
+		Gpr.toFile(file.getPath(), vcf);
+		Gpr.toFile(fileOutside.getPath(), vcf);
+
+		// Local files disabled
+		startServer();
+		try {
+			String response = requestFile(file.getPath(), 403);
+			Assert.assertFalse(response.contains(vcf));
+		} finally {
+			server.stop();
+		}
+
+		// Files outside 'fileDir'
+		startServer(dir.getPath());
+		try {
+			Assert.assertFalse(requestFile(fileOutside.getPath(), 403).contains(vcf));
+			Assert.assertFalse(requestFile("../" + fileOutside.getName(), 403).contains(vcf));
+			Assert.assertFalse(requestFile(dir.getPath() + "/../" + fileOutside.getName(), 403).contains(vcf));
+			requestFile("/etc/passwd", 403);
+			requestFile(dir.getPath(), 403);
+		} finally {
+			server.stop();
+		}
+	}
+
+}
@@ -0,0 +1,199 @@
+package org.snpeff.snpEffect.testCases.unity;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.snpeff.interval.Gene;
+import org.snpeff.interval.Marker;
+import org.snpeff.interval.Markers;
+import org.snpeff.interval.Motif;
+import org.snpeff.interval.NextProt;
+import org.snpeff.interval.Regulation;
+import org.snpeff.interval.Transcript;
+import org.snpeff.motif.Pwm;
+import org.snpeff.serializer.SnpEffectPredictorSnapshot;
+import org.snpeff.snpEffect.SnpEffectPredictor;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Timer;
+
+import junit.framework.Assert;
+
+/**
+ * Test cases for database snapshots (predictor saved after building the interval forest)
+ *
+ * @author pcingola
+ */
+public class TestCasesSnapshot extends TestCasesBase {
+
+	public static final String KEY = "test_key";
+
+	@Override
+	protected void init() {
+		super.init();
+		randSeed = 20161020;
+		addUtrs = true;
+		onlyPlusStrand = false;
+		maxGeneLen = 20000;
+		maxTranscripts = 10;
+		maxExons = 20;
+		initRand();
+	}
+
+	/**
+	 * Query results at many positions (sorted, as strings)
+	 */
+	List<String> queries(SnpEffectPredictor sep) {
+		List<String> results = new ArrayList<>();
+		for (int pos = 0; pos < chromosome.getEnd(); pos += 37)
+			results.add(pos + "\t" + query(sep, pos, pos));
+		return results;
+	}
+
+	/**
+	 * Query results for interval [start, end] (sorted, as strings)
+	 */
+	List<String> query(SnpEffectPredictor sep, int start, int end) {
+		Markers markers = sep.query(new Marker(sep.getGenome().getChromosome(chromosome.getId()), start, end, false, ""));
+		List<String> strs = new ArrayList<>();
+		for (Marker m : markers)
+			strs.add(m.getClass().getSimpleName() + ":" + m.getId() + ":" + m.getStart() + "-" + m.getEnd());
+		Collections.sort(strs);
+		return strs;
+	}
+
+	/**
+	 * Create a predictor having motif, NextProt and regulation markers (in addition to genes)
+	 */
+	SnpEffectPredictor predictorWithMarkers() {
+		SnpEffectPredictor sep = new SnpEffectPredictor(genome);
+		sep.setUpDownStreamLength(0);
+
+		// Motif (connected to a PWM, as when the database is loaded)
+		Pwm pwm = new Pwm(6);
+		pwm.updateCounts("ACGTTA", 10);
+		pwm.updateCounts("ACGTTC", 5);
+		pwm.calcLogOddsWeight();
+		pwm.setId("MA0001.1");
+		pwm.setName("TEST_PWM");
+		Motif motif = new Motif(chromosome, gene.getStart() + 10, gene.getStart() + 15, false, "motif_1", pwm.getName(), pwm.getId());
+		motif.setPwm(pwm);
+		sep.add(motif);
+
+		// NextProt marker (parent is a transcript)
+		Transcript tr = gene.iterator().next();
+		sep.add(new NextProt(tr, tr.getStart(), tr.getStart() + 30, "nextprot_1"));
+
+		// Regulation marker
+		sep.add(new Regulation(chromosome, gene.getEnd() - 50, gene.getEnd() + 50, false, "regulation_1", "test_regulation", "promoter"));
+
+		sep.buildForest();
+		return sep;
+	}
+
+	/**
+	 * Save a snapshot to a temporary file
+	 */
+	File saveSnapshot() throws IOException {
+		return saveSnapshot(snpEffectPredictor);
+	}
+
+	/**
+	 * Save a snapshot of 'sep' to a temporary file
+	 */
+	File saveSnapshot(SnpEffectPredictor sep) throws IOException {
+		File file = File.createTempFile("snpEffectPredictor", ".snapshot.bin");
+		file.deleteOnExit();
+
+		Timer timer = new Timer();
+		SnpEffectPredictorSnapshot.save(file.getPath(), KEY, sep);
+		if (verbose) Timer.showStdErr("Snapshot saved: " + file.length() + " bytes, " + timer.elapsed() + " ms");
+		return file;
+	}
+
+	/**
+	 * Save and load a snapshot: Interval forest doesn't need to be re-built
+	 */
+	@Test
+	public void test_01_save_load() throws IOException {
+		Gpr.debug("Test");
+
+		File file = saveSnapshot();
+		SnpEffectPredictor sep = SnpEffectPredictorSnapshot.load(file.getPath(), KEY);
+		Assert.assertNotNull(sep);
+
+		// Same markers
+		Assert.assertEquals(snpEffectPredictor.size(), sep.size());
+		Assert.assertEquals(snpEffectPredictor.countTranscripts(), sep.countTranscripts());
+
+		// Transcripts are still frozen
+		for (Gene g : sep.getGenome().getGenes())
+			for (Transcript tr : g)
+				Assert.assertTrue("Transcript should be frozen: " + tr.getId(), tr.isFrozen());
+
+		// Same query results, without building the forest
+		Assert.assertEquals(queries(snpEffectPredictor), queries(sep));
+	}
+
+	/**
+	 * Snapshots are not loaded if the key doesn't match or the file is not a snapshot
+	 */
+	@Test
+	public void test_02_invalid() throws IOException {
+		Gpr.debug("Test");
+
+		File file = saveSnapshot();
+		Assert.assertNull(SnpEffectPredictorSnapshot.load(file.getPath(), KEY + "_other"));
+
+		// Missing file
+		Assert.assertNull(SnpEffectPredictorSnapshot.load(file.getPath() + ".missing", KEY));
+
+		// Not a snapshot file
+		Gpr.toFile(file.getPath(), "Not a snapshot");
+		Assert.assertNull(SnpEffectPredictorSnapshot.load(file.getPath(), KEY));
+	}
+
+	/**
+	 * Snapshot of a predictor having motifs (connected to PWMs), NextProt and regulation markers
+	 */
+	@Test
+	public void test_03_motif_nextprot_regulation() throws IOException {
+		Gpr.debug("Test");
+
+		SnpEffectPredictor sepOri = predictorWithMarkers();
+		File file = saveSnapshot(sepOri);
+		SnpEffectPredictor sep = SnpEffectPredictorSnapshot.load(file.getPath(), KEY);
+		Assert.assertNotNull(sep);
+
+		// Same markers and query results
+		Assert.assertEquals(sepOri.size(), sep.size());
+		List<String> queries = queries(sep);
+		Assert.assertEquals(queries(sepOri), queries);
+
+		// All marker types are present: Query at each marker's coordinates
+		Assert.assertEquals(3, sepOri.getMarkers().size());
+		for (Marker mOri : sepOri.getMarkers()) {
+			List<String> resOri = query(sepOri, mOri.getStart(), mOri.getEnd());
+			List<String> res = query(sep, mOri.getStart(), mOri.getEnd());
+			Assert.assertEquals(resOri, res);
+
+			String expected = mOri.getClass().getSimpleName() + ":" + mOri.getId() + ":" + mOri.getStart() + "-" + mOri.getEnd();
+			Assert.assertTrue("Marker not found in snapshot: " + expected, res.contains(expected));
+		}
+
+		// Motif is still connected to its PWM
+		Motif motifOri = null, motif = null;
+		for (Marker m : sepOri.getMarkers())
+			if (m instanceof Motif) motifOri = (Motif) m;
+		for (Marker m : sep.getMarkers())
+			if (m instanceof Motif) motif = (Motif) m;
+		Assert.assertNotNull(motif);
+		Assert.assertNotNull(motif.getPwm());
+		Assert.assertEquals(motifOri.getPwm().getBestSequenceStr(), motif.getPwm().getBestSequenceStr());
+		Assert.assertEquals(motifOri.getPwm().score("ACGTTA"), motif.getPwm().score("ACGTTA"), 1e-9);
+	}
+
+}
@@ -0,0 +1,242 @@
+package org.snpeff.snpEffect.testCases.unity;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.interval.Chromosome;
+import org.snpeff.interval.Exon;
+import org.snpeff.interval.Gene;
+import org.snpeff.interval.Marker;
+import org.snpeff.interval.Transcript;
+import org.snpeff.interval.Variant;
+import org.snpeff.snpEffect.EffectType;
+import org.snpeff.snpEffect.StructuralVariantHitHandler;
+import org.snpeff.snpEffect.VariantEffects;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Timer;
+import org.snpeff.vcf.VcfEntry;
+
+/**
+ * Test cases for large structural variants (genes are found using an
+ * index instead of checking every gene in the genome)
+ *
+ * @author pcingola
+ */
+public class TestCasesStructuralLarge extends TestCasesBase {
+
+	public static final int NUM_CHRS = 10;
+	public static final int CHR_LEN = 20 * 1000 * 1000;
+	public static final int GENE_DISTANCE = 20 * 1000;
+	public static final int MIN_VARIANT_SIZE = 200 * 1000; // Variants larger than 1% of the chromosome are 'huge'
+
+	public TestCasesStructuralLarge() {
+		super();
+	}
+
+	/**
+	 * Hit handler: Store hits as strings
+	 */
+	class HitCollector implements StructuralVariantHitHandler {
+		List<String> hits = new ArrayList<>();
+
+		@Override
+		public void hit(Variant variant, Marker marker, EffectType effectType) {
+			hits.add(effectType + "\t" + marker.getId());
+		}
+	}
+
+	/**
+	 * Brute force: Check every gene, transcript and exon (this is
+	 * what the code used to do before using an index)
+	 */
+	List<String> bruteForce(Variant variant, EffectType effGene, EffectType effTr, EffectType effExon, EffectType effExonPartial) {
+		List<String> hits = new ArrayList<>();
+		for (Gene g : genome.getGenes()) {
+			if (!variant.intersects(g)) continue;
+			hits.add(effGene + "\t" + g.getId());
+
+			for (Transcript tr : g) {
+				if (variant.includes(tr)) hits.add(effTr + "\t" + tr.getId());
+				else if (variant.intersects(tr)) {
+					for (Exon ex : tr) {
+						if (variant.includes(ex)) hits.add(effExon + "\t" + ex.getId());
+						else if (variant.intersects(ex)) hits.add(effExonPartial + "\t" + ex.getId());
+					}
+				}
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Create large chromosomes having many genes
+	 */
+	void createGenes() {
+		int geneNum = 0;
+		for (int chrNum = 2; chrNum < NUM_CHRS + 2; chrNum++) {
+			Chromosome chr = new Chromosome(genome, 0, CHR_LEN - 1, "" + chrNum);
+			genome.add(chr);
+
+			for (int start = GENE_DISTANCE; start < CHR_LEN - 100 * 1000; start += GENE_DISTANCE, geneNum++) {
+				int end = start + 1000 + rand.nextInt(2 * GENE_DISTANCE);
+				boolean strandMinus = rand.nextBoolean();
+				Gene g = new Gene(chr, start, end, strandMinus, "g" + geneNum, "g" + geneNum, null);
+				Transcript tr = new Transcript(g, start, end, strandMinus, "tr" + geneNum);
+				g.add(tr);
+
+				// Add exons
+				int numEx = 1 + rand.nextInt(5);
+				int step = (end - start) / numEx;
+				for (int i = 0; i < numEx; i++) {
+					int exStart = start + i * step;
+					int exEnd = (i == numEx - 1 ? end : exStart + step / 2);
+					tr.add(new Exon(tr, exStart, exEnd, strandMinus, "ex" + geneNum + "_" + i, i + 1));
+				}
+				tr.rankExons();
+
+				snpEffectPredictor.add(g);
+			}
+		}
+
+		snpEffectPredictor.buildForest();
+		if (verbose) Timer.showStdErr("Genes created: " + geneNum);
+	}
+
+	/**
+	 * Create a VCF file having random large CNVs
+	 */
+	String createVcf(int numVariants) throws IOException {
+		File file = File.createTempFile("cnv", ".vcf");
+		file.deleteOnExit();
+
+		String types[] = { "DEL", "DUP", "INV" };
+		StringBuilder sb = new StringBuilder();
+		sb.append("##fileformat=VCFv4.1\n");
+		sb.append("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n");
+		for (int chrNum = 2; chrNum < NUM_CHRS + 2; chrNum++) {
+			List<Integer> starts = new ArrayList<>();
+			for (int i = 0; i < numVariants / NUM_CHRS; i++)
+				starts.add(1 + rand.nextInt(CHR_LEN - 2 * 1000 * 1000));
+			Collections.sort(starts);
+
+			for (int start : starts) {
+				String type = types[rand.nextInt(types.length)];
+				int end = start + MIN_VARIANT_SIZE + rand.nextInt(1000 * 1000);
+				sb.append(chrNum + "\t" + start + "\t.\tN\t<" + type + ">\t.\tPASS\tSVTYPE=" + type + ";END=" + end + "\n");
+			}
+		}
+
+		Gpr.toFile(file.getPath(), sb);
+		return file.getPath();
+	}
+
+	/**
+	 * Large variants from a VCF file
+	 */
+	List<Variant> readVariants(String vcfFile) {
+		List<Variant> variants = new ArrayList<>();
+		VcfFileIterator vcf = new VcfFileIterator(vcfFile, genome);
+		for (VcfEntry ve : vcf)
+			for (Variant var : ve.variants())
+				if (var.isStructuralHuge()) variants.add(var);
+		vcf.close();
+		return variants;
+	}
+
+	/**
+	 * Compare streaming hits to a brute force approach
+	 */
+	@Test
+	public void test_01_streaming_vs_brute_force() throws IOException {
+		Gpr.debug("Test");
+		createGenes();
+
+		List<Variant> variants = readVariants(createVcf(100));
+		Assert.assertEquals(100, variants.size());
+
+		for (Variant var : variants) {
+			EffectType effGene, effTr, effExon, effExonPartial;
+			if (var.isDel()) {
+				effGene = EffectType.GENE_DELETED;
+				effTr = EffectType.TRANSCRIPT_DELETED;
+				effExon = EffectType.EXON_DELETED;
+				effExonPartial = EffectType.EXON_DELETED_PARTIAL;
+			} else if (var.isDup()) {
+				effGene = EffectType.GENE_DUPLICATION;
+				effTr = EffectType.TRANSCRIPT_DUPLICATION;
+				effExon = EffectType.EXON_DUPLICATION;
+				effExonPartial = EffectType.EXON_DUPLICATION_PARTIAL;
+			} else {
+				effGene = EffectType.GENE_INVERSION;
+				effTr = EffectType.TRANSCRIPT_INVERSION;
+				effExon = EffectType.EXON_INVERSION;
+				effExonPartial = EffectType.EXON_INVERSION_PARTIAL;
+			}
+
+			List<String> expected = bruteForce(var, effGene, effTr, effExon, effExonPartial);
+			HitCollector hc = new HitCollector();
+			int countGenes = snpEffectPredictor.variantEffectStructuralLarge(var, hc);
+
+			Collections.sort(expected);
+			Collections.sort(hc.hits);
+			Assert.assertTrue("No genes hit by variant " + var, countGenes > 0);
+			Assert.assertEquals("Hits differ for variant " + var, expected, hc.hits);
+		}
+	}
+
+	/**
+	 * Benchmark: Annotate large CNVs from a VCF file, compare index based
+	 * queries to a brute force approach (checking all genes)
+	 */
+	@Test
+	public void test_02_benchmark() throws IOException {
+		Gpr.debug("Test");
+		createGenes();
+
+		List<Variant> variants = readVariants(createVcf(2000));
+
+		// Streaming mode
+		Timer timer = new Timer();
+		final long count[] = new long[1];
+		StructuralVariantHitHandler counter = new StructuralVariantHitHandler() {
+			@Override
+			public void hit(Variant variant, Marker marker, EffectType effectType) {
+				count[0]++;
+			}
+		};
+		for (Variant var : variants)
+			snpEffectPredictor.variantEffectStructuralLarge(var, counter);
+		long elapsedStream = timer.elapsed();
+
+		// Brute force
+		timer = new Timer();
+		long countBrute = 0;
+		for (Variant var : variants)
+			countBrute += bruteForce(var, EffectType.GENE_DELETED, EffectType.TRANSCRIPT_DELETED, EffectType.EXON_DELETED, EffectType.EXON_DELETED_PARTIAL).size();
+		long elapsedBrute = timer.elapsed();
+
+		// Full annotations
+		timer = new Timer();
+		long countEffs = 0;
+		for (Variant var : variants) {
+			VariantEffects veffs = snpEffectPredictor.variantEffect(var);
+			countEffs += veffs.size();
+		}
+		long elapsedAnn = timer.elapsed();
+
+		if (verbose) Timer.showStdErr("Large structural variants: " + variants.size() //
+				+ "\n\tIndex (streaming) : " + elapsedStream + " ms, " + count[0] + " hits" //
+				+ "\n\tBrute force       : " + elapsedBrute + " ms, " + countBrute + " hits" //
+				+ "\n\tIndex (annotate)  : " + elapsedAnn + " ms, " + countEffs + " effects" //
+		);
+
+		Assert.assertEquals(countBrute, count[0]);
+	}
+
+}
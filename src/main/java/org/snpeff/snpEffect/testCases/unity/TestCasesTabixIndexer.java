@@ -0,0 +1,259 @@
+package org.snpeff.snpEffect.testCases.unity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.snpeff.outputFormatter.BgzfOutputStream;
+import org.snpeff.outputFormatter.LineOutputStream;
+import org.snpeff.outputFormatter.TabixIndexer;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.GprSeq;
+import org.snpeff.util.Timer;
+
+import junit.framework.Assert;
+import net.sf.samtools.tabix.TabixIterator;
+import net.sf.samtools.tabix.TabixReader;
+
+/**
+ * Test cases for BGZF compression (multi-threaded) and tabix
+ * indexes created while writing
+ *
+ * @author pcingola
+ */
+public class TestCasesTabixIndexer extends TestCasesBase {
+
+	public static final String CHRS[] = { "1", "2", "X" };
+	public static final String VCF_HEADER = "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO";
+
+	@Override
+	protected void init() {
+		super.init();
+		randSeed = 20161026;
+		initRand();
+	}
+
+	/**
+	 * Compress data using BGZF
+	 */
+	byte[] compress(byte data[], int numThreads) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		BgzfOutputStream bgzf = new BgzfOutputStream(baos, numThreads);
+		for (int i = 0; i < data.length;) {
+			int len = Math.min(data.length - i, 1 + rand.nextInt(10000));
+			bgzf.write(data, i, len);
+			i += len;
+		}
+		bgzf.close();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Interval [start, end) for a VCF line (zero-based)
+	 */
+	int[] interval(String line) {
+		String fields[] = line.split("\t");
+		int start = Integer.parseInt(fields[1]) - 1;
+		int end = start + fields[3].length();
+		if (fields[7].startsWith("END=")) end = Integer.parseInt(fields[7].substring(4, fields[7].indexOf(';')));
+		return new int[] { start, end };
+	}
+
+	/**
+	 * Query a tabix indexed file
+	 */
+	List<String> query(TabixReader tabixReader, String chr, int start, int end) {
+		List<String> lines = new ArrayList<>();
+		TabixIterator it = tabixReader.query(chr + ":" + (start + 1) + "-" + end);
+		if (it != null) {
+			for (String line : it)
+				lines.add(line);
+		}
+		return lines;
+	}
+
+	/**
+	 * Random (sorted) VCF lines: SNPs, deletions and structural variants
+	 */
+	List<String> randomVcfLines(int numPerChr) {
+		List<String> lines = new ArrayList<>();
+		for (String chr : CHRS) {
+			int pos = 1;
+			for (int i = 0; i < numPerChr; i++) {
+				pos += rand.nextInt(2000);
+				String ref = "A", info = "AC=" + rand.nextInt(100);
+				if (rand.nextInt(10) == 0) ref = "A" + GprSeq.randSequence(rand, 1 + rand.nextInt(50)).toUpperCase(); // Deletion
+				else if (rand.nextInt(50) == 0) info = "END=" + (pos + rand.nextInt(200 * 1000)) + ";SVTYPE=DEL"; // Structural variant
+				lines.add(chr + "\t" + pos + "\t.\t" + ref + "\t" + (info.startsWith("END") ? "<DEL>" : "T") + "\t.\tPASS\t" + info);
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Write lines (and a header) to a BGZF file, create a tabix index
+	 */
+	String write(List<String> lines, String header, TabixIndexer tabixIndexer, int numThreads) throws IOException {
+		File file = File.createTempFile("tabixIndexer", ".gz");
+		file.deleteOnExit();
+		String fileName = file.getCanonicalPath();
+		new File(fileName + ".tbi").deleteOnExit();
+		new File(fileName + ".tbi").delete();
+
+		LineOutputStream los = new LineOutputStream(fileName, true, numThreads, tabixIndexer);
+		if (header != null) los.writeLine(header, 0, header.length());
+		for (String line : lines)
+			los.writeLine(line, 0, line.length());
+		los.close();
+
+		return fileName;
+	}
+
+	/**
+	 * Multi-threaded compression must create exactly the same file as single threaded compression
+	 */
+	@Test
+	public void test_01_bgzf_threads() throws IOException {
+		Gpr.debug("Test");
+		StringBuilder sb = new StringBuilder();
+		for (String line : randomVcfLines(10 * 1000))
+			sb.append(line).append('\n');
+		byte data[] = sb.toString().getBytes();
+
+		byte bgzf1[] = compress(data, 1);
+		byte bgzf4[] = compress(data, 4);
+		Assert.assertTrue(Arrays.equals(bgzf1, bgzf4));
+		Assert.assertTrue(bgzf1.length < data.length);
+
+		// Random (incompressible) data
+		byte randData[] = new byte[3 * BgzfOutputStream.BLOCK_SIZE + 123];
+		rand.nextBytes(randData);
+		Assert.assertTrue(Arrays.equals(compress(randData, 1), compress(randData, 3)));
+	}
+
+	/**
+	 * Index a VCF file, compare queries to brute force overlap
+	 */
+	@Test
+	public void test_02_vcf_index() throws IOException {
+		Gpr.debug("Test");
+		List<String> lines = randomVcfLines(5000);
+		TabixIndexer tabixIndexer = new TabixIndexer(TabixIndexer.PRESET_VCF, 1, 2, 0);
+		String fileName = write(lines, VCF_HEADER, tabixIndexer, 4);
+		Assert.assertTrue(tabixIndexer.isValid());
+		Assert.assertTrue(new File(fileName + ".tbi").exists());
+
+		// Decompressed file is the same
+		Assert.assertEquals(VCF_HEADER + "\n" + String.join("\n", lines) + "\n", Gpr.readFile(fileName, true));
+
+		TabixReader tabixReader = new TabixReader(fileName);
+		for (int i = 0; i < 300; i++) {
+			String chr = CHRS[rand.nextInt(CHRS.length)];
+			int start = rand.nextInt(10 * 1000 * 1000);
+			int end = start + 1 + rand.nextInt(rand.nextBoolean() ? 1000 : 300 * 1000);
+
+			// Brute force
+			List<String> expected = new ArrayList<>();
+			for (String line : lines) {
+				int intv[] = interval(line);
+				if (line.startsWith(chr + "\t") && intv[1] > start && intv[0] < end) expected.add(line);
+			}
+
+			Assert.assertEquals("Query: " + chr + ":" + start + "-" + end, expected, query(tabixReader, chr, start, end));
+		}
+		tabixReader.close();
+	}
+
+	/**
+	 * Index a BED file (zero-based coordinates)
+	 */
+	@Test
+	public void test_03_bed_index() throws IOException {
+		Gpr.debug("Test");
+		List<String> lines = new ArrayList<>();
+		for (String chr : CHRS) {
+			int pos = 0;
+			for (int i = 0; i < 3000; i++) {
+				pos += rand.nextInt(1000);
+				lines.add(chr + "\t" + pos + "\t" + (pos + 1 + rand.nextInt(5000)) + "\tname_" + i);
+			}
+		}
+
+		TabixIndexer tabixIndexer = new TabixIndexer(TabixIndexer.PRESET_GENERIC | TabixIndexer.PRESET_ZERO_BASED, 1, 2, 3);
+		String fileName = write(lines, null, tabixIndexer, 2);
+		Assert.assertTrue(tabixIndexer.isValid());
+
+		TabixReader tabixReader = new TabixReader(fileName);
+		for (int i = 0; i < 300; i++) {
+			String chr = CHRS[rand.nextInt(CHRS.length)];
+			int start = rand.nextInt(2 * 1000 * 1000);
+			int end = start + 1 + rand.nextInt(10000);
+
+			List<String> expected = new ArrayList<>();
+			for (String line : lines) {
+				String fields[] = line.split("\t");
+				if (fields[0].equals(chr) && Integer.parseInt(fields[2]) > start && Integer.parseInt(fields[1]) < end) expected.add(line);
+			}
+
+			Assert.assertEquals("Query: " + chr + ":" + start + "-" + end, expected, query(tabixReader, chr, start, end));
+		}
+		tabixReader.close();
+	}
+
+	/**
+	 * Unsorted input: No index is created
+	 */
+	@Test
+	public void test_04_unsorted() throws IOException {
+		Gpr.debug("Test");
+		List<String> lines = randomVcfLines(100);
+		lines.add(lines.remove(10)); // Chromosome '1' is not contiguous
+
+		TabixIndexer tabixIndexer = new TabixIndexer(TabixIndexer.PRESET_VCF, 1, 2, 0);
+		String fileName = write(lines, VCF_HEADER, tabixIndexer, 1);
+		Assert.assertFalse(tabixIndexer.isValid());
+		Assert.assertFalse(new File(fileName + ".tbi").exists());
+		Assert.assertEquals(VCF_HEADER + "\n" + String.join("\n", lines) + "\n", Gpr.readFile(fileName, true));
+
+		lines = randomVcfLines(100);
+		lines.add(20, lines.get(10)); // Position is not sorted
+		tabixIndexer = new TabixIndexer(TabixIndexer.PRESET_VCF, 1, 2, 0);
+		write(lines, VCF_HEADER, tabixIndexer, 1);
+		Assert.assertFalse(tabixIndexer.isValid());
+	}
+
+	/**
+	 * Benchmark: BGZF compression using one thread vs several threads
+	 */
+	@Test
+	public void test_05_benchmark() throws IOException {
+		Gpr.debug("Test");
+		StringBuilder sb = new StringBuilder();
+		for (String line : randomVcfLines(50 * 1000))
+			sb.append(line).append('\n');
+		byte data[] = sb.toString().getBytes();
+		int numThreads = Math.max(2, Gpr.NUM_CORES);
+		int iterations = 3;
+
+		Timer timer = new Timer();
+		for (int it = 0; it < iterations; it++)
+			compress(data, 1);
+		long elapsed1 = timer.elapsed();
+
+		timer = new Timer();
+		for (int it = 0; it < iterations; it++)
+			compress(data, numThreads);
+		long elapsedN = timer.elapsed();
+
+		long mb = (long) iterations * data.length / (1024 * 1024);
+		if (verbose) Timer.showStdErr("BGZF compression: " + mb + " MB" //
+				+ "\n\t1 thread    : " + elapsed1 + " ms, " + (1000L * mb / Math.max(1, elapsed1)) + " MB per second" //
+				+ "\n\t" + numThreads + " threads   : " + elapsedN + " ms, " + (1000L * mb / Math.max(1, elapsedN)) + " MB per second" //
+		);
+	}
+
+}
@@ -0,0 +1,163 @@
+package org.snpeff.snpEffect.testCases.unity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.snpeff.interval.Exon;
+import org.snpeff.interval.Transcript;
+import org.snpeff.util.Gpr;
+
+import junit.framework.Assert;
+
+/**
+ * Test cases for 'frozen' transcripts (pre-calculated caches used by many threads)
+ *
+ * @author pcingola
+ */
+public class TestCasesTranscriptFreeze extends TestCasesBase {
+
+	public static int NUM_THREADS = 8;
+
+	@Override
+	protected void init() {
+		super.init();
+		randSeed = 20161018;
+		addUtrs = true;
+		onlyPlusStrand = false;
+		maxGeneLen = 20000;
+		maxTranscripts = 10;
+		maxExons = 20;
+		initRand();
+	}
+
+	/**
+	 * Calculate (and concatenate) all cached values from a transcript
+	 */
+	String caches(Transcript tr) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(tr.getId() + "\n");
+		sb.append("cds: " + tr.cds() + "\n");
+		sb.append("mRna: " + tr.mRna() + "\n");
+		sb.append("protein: " + tr.protein() + "\n");
+		sb.append("cdsStart: " + tr.getCdsStart() + ", cdsEnd: " + tr.getCdsEnd() + "\n");
+		sb.append("firstCodingExon: " + tr.getFirstCodingExon().getId() + "\n");
+		sb.append("introns: " + tr.introns() + "\n");
+		sb.append("cds2pos: " + Arrays.toString(tr.baseNumberCds2Pos()) + "\n");
+		sb.append("aa2pos: " + Arrays.toString(tr.aaNumber2Pos()) + "\n");
+		for (int pos = tr.getStart(); pos <= tr.getEnd(); pos += 7)
+			sb.append(tr.baseNumberCds(pos, false) + "," + tr.baseNumber2MRnaPos(pos) + ";");
+		return sb.toString();
+	}
+
+	/**
+	 * Transcripts are frozen after building the interval forest.
+	 * Cached values must be the same as the ones calculated by a 'non-frozen' transcript
+	 */
+	@Test
+	public void test_01_freeze() {
+		Gpr.debug("Test");
+
+		for (Transcript tr : gene) {
+			Assert.assertTrue("Transcript should be frozen: " + tr.getId(), tr.isFrozen());
+			String frozenCaches = caches(tr);
+
+			tr.resetCache();
+			Assert.assertFalse("Transcript should not be frozen: " + tr.getId(), tr.isFrozen());
+			Assert.assertEquals(frozenCaches, caches(tr));
+
+			tr.freeze();
+			Assert.assertTrue("Transcript should be frozen: " + tr.getId(), tr.isFrozen());
+		}
+	}
+
+	/**
+	 * Adding an exon 'un-freezes' the transcript
+	 */
+	@Test
+	public void test_02_unfreeze() {
+		Gpr.debug("Test");
+
+		int numExons = transcript.sorted().size();
+
+		int start = transcript.getEnd() + 100;
+		Exon exon = new Exon(transcript, start, start + 100, transcript.isStrandMinus(), "exon_new", numExons + 1);
+		transcript.add(exon);
+
+		Assert.assertFalse(transcript.isFrozen());
+		Assert.assertEquals(numExons + 1, transcript.sorted().size());
+		Assert.assertEquals(numExons + 1, transcript.sortedStrand().size());
+	}
+
+	/**
+	 * Many threads calculating sequence caches of the same (frozen) transcripts
+	 */
+	@Test
+	public void test_03_threads() throws Exception {
+		Gpr.debug("Test");
+
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+		List<Future<String>> futures = new ArrayList<>();
+		for (int i = 0; i < NUM_THREADS; i++) {
+			futures.add(executor.submit(new Callable<String>() {
+				@Override
+				public String call() {
+					StringBuilder sb = new StringBuilder();
+					for (Transcript tr : gene)
+						sb.append(caches(tr) + "\n");
+					return sb.toString();
+				}
+			}));
+		}
+
+		// All threads should get the same results
+		String expected = null;
+		for (Future<String> future : futures) {
+			String caches = future.get();
+			if (expected == null) expected = caches;
+			Assert.assertEquals(expected, caches);
+		}
+		executor.shutdown();
+
+		// Same as single threaded
+		StringBuilder sb = new StringBuilder();
+		for (Transcript tr : gene) {
+			Assert.assertTrue(tr.isFrozen());
+			tr.resetCache();
+			sb.append(caches(tr) + "\n");
+		}
+		Assert.assertEquals(expected, sb.toString());
+	}
+
+	/**
+	 * Build interval forest in parallel: Transcripts should be frozen and caches be the same
+	 */
+	@Test
+	public void test_04_build_parallel() {
+		Gpr.debug("Test");
+
+		StringBuilder expected = new StringBuilder();
+		for (Transcript tr : gene)
+			expected.append(caches(tr) + "\n");
+
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+		try {
+			snpEffectPredictor.buildForest(executor);
+		} finally {
+			executor.shutdown();
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (Transcript tr : gene) {
+			Assert.assertTrue(tr.isFrozen());
+			sb.append(caches(tr) + "\n");
+		}
+		Assert.assertEquals(expected.toString(), sb.toString());
+	}
+
+}
@@ -0,0 +1,206 @@
+package org.snpeff.snpEffect.testCases.unity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.snpeff.interval.Exon;
+import org.snpeff.interval.Intron;
+import org.snpeff.interval.Marker;
+import org.snpeff.interval.Markers;
+import org.snpeff.interval.SpliceSite;
+import org.snpeff.interval.Transcript;
+import org.snpeff.interval.Utr;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Timer;
+
+import junit.framework.Assert;
+
+/**
+ * Test cases for transcript's sub-marker index (exons, UTRs, CDSs and introns)
+ *
+ * @author pcingola
+ */
+public class TestCasesTranscriptIndex extends TestCasesBase {
+
+	public static int NUM_QUERIES = 2000;
+
+	@Override
+	protected void init() {
+		super.init();
+		randSeed = 20161017;
+		addUtrs = true;
+		onlyPlusStrand = false;
+		maxGeneLen = 100000;
+		maxTranscripts = 5;
+		maxExons = 400;
+		spliceRegionExonSize = 3;
+		spliceRegionIntronMin = 3;
+		spliceRegionIntronMax = 8;
+		initRand();
+	}
+
+	/**
+	 * All sub-markers of a transcript
+	 */
+	List<Marker> subMarkers(Transcript tr) {
+		List<Marker> subMarkers = new ArrayList<>();
+		subMarkers.addAll(tr.subIntervals());
+		subMarkers.addAll(tr.getUtrs());
+		subMarkers.addAll(tr.getCds());
+		subMarkers.addAll(tr.introns());
+		return subMarkers;
+	}
+
+	/**
+	 * Find first marker (lowest start) of class 'clazz' intersecting 'marker' by iterating over all sub-markers
+	 */
+	Marker findNaive(Transcript tr, Marker marker, Class<? extends Marker> clazz) {
+		Marker first = null;
+		for (Marker m : subMarkers(tr))
+			if (clazz.isInstance(m) && m.intersects(marker) && (first == null || m.getStart() < first.getStart())) first = m;
+		return first;
+	}
+
+	/**
+	 * Query by iterating over all sub-markers
+	 */
+	Markers queryNaive(Transcript tr, Marker marker) {
+		Markers results = new Markers();
+		for (Marker m : subMarkers(tr))
+			if (m.intersects(marker)) {
+				results.add(m);
+
+				Markers subMarkers = m.query(marker);
+				if (subMarkers == null) continue;
+				for (Marker ss : subMarkers)
+					if (!results.contains(ss)) results.add(ss);
+			}
+		return results;
+	}
+
+	Marker randomMarker(Transcript tr, int maxLen) {
+		int start = tr.getStart() - 10 + rand.nextInt(tr.size() + 20);
+		int end = start + rand.nextInt(maxLen);
+		return new Marker(chromosome, start, end, false, "");
+	}
+
+	/**
+	 * Find exons, introns and UTRs using the index
+	 */
+	@Test
+	public void test_01_find() {
+		Gpr.debug("Test");
+
+		for (Transcript tr : gene) {
+			if (verbose) Gpr.debug("Transcript: " + tr.getId() + ", exons: " + tr.numChilds() + ", UTRs: " + tr.getUtrs().size());
+
+			for (int i = 0; i < NUM_QUERIES; i++) {
+				Marker m = randomMarker(tr, 1);
+				int pos = m.getStart();
+				Assert.assertSame(findNaive(tr, m, Exon.class), tr.findExon(pos));
+				Assert.assertSame(findNaive(tr, m, Exon.class), tr.findExon(m));
+				Assert.assertSame(findNaive(tr, m, Intron.class), tr.findIntron(pos));
+				Assert.assertSame(findNaive(tr, m, Utr.class), tr.findUtr(pos));
+
+				m = randomMarker(tr, 500);
+				Assert.assertSame(findNaive(tr, m, Exon.class), tr.queryExon(m));
+			}
+		}
+	}
+
+	/**
+	 * Query all sub-markers (including splice sites) using the index
+	 */
+	@Test
+	public void test_02_query() {
+		Gpr.debug("Test");
+
+		Markers results = new Markers();
+		for (Transcript tr : gene) {
+			for (int i = 0; i < NUM_QUERIES; i++) {
+				Marker m = randomMarker(tr, 200);
+				Markers expected = queryNaive(tr, m);
+
+				// Query into a buffer (results are appended)
+				results.clear();
+				results.add(tr);
+				tr.query(m, results);
+				Assert.assertEquals(expected.size() + 1, results.size());
+
+				Markers query = tr.query(m);
+				Assert.assertEquals(expected.size(), query.size());
+				for (Marker e : expected) {
+					Assert.assertTrue("Missing marker: " + e, query.contains(e));
+					Assert.assertTrue("Missing marker: " + e, results.contains(e));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adding an exon invalidates the index
+	 */
+	@Test
+	public void test_03_invalidate() {
+		Gpr.debug("Test");
+
+		int start = transcript.getEnd() + 100;
+		Assert.assertNull(transcript.findExon(start));
+
+		Exon exon = new Exon(transcript, start, start + 100, transcript.isStrandMinus(), "exon_new", transcript.numChilds() + 1);
+		transcript.add(exon);
+		Assert.assertSame(exon, transcript.findExon(start));
+		Assert.assertSame(exon, transcript.queryExon(new Marker(chromosome, start + 10, start + 20, false, "")));
+
+		// Rebuild index
+		transcript.buildIndex();
+		Assert.assertSame(exon, transcript.findExon(start));
+	}
+
+	/**
+	 * Benchmark: Iterating over all sub-markers vs index
+	 */
+	@Test
+	public void test_04_benchmark() {
+		Gpr.debug("Test");
+
+		// Largest transcript
+		Transcript tr = null;
+		for (Transcript t : gene)
+			if (tr == null || t.numChilds() > tr.numChilds()) tr = t;
+
+		List<Marker> queries = new ArrayList<>();
+		for (int i = 0; i < 100 * 1000; i++)
+			queries.add(randomMarker(tr, 10));
+
+		// Iterate over all sub-markers
+		List<Marker> subMarkers = subMarkers(tr);
+		Timer timer = new Timer();
+		long countNaive = 0;
+		for (Marker m : queries)
+			for (Marker sm : subMarkers)
+				if (sm.intersects(m)) countNaive++;
+		long elapsedNaive = timer.elapsed();
+
+		// Index
+		timer = new Timer();
+		long count = 0;
+		Markers results = new Markers();
+		for (Marker m : queries) {
+			results.clear();
+			tr.query(m, results);
+			for (Marker r : results)
+				if (!(r instanceof SpliceSite)) count++;
+		}
+		long elapsedIndex = timer.elapsed();
+
+		if (verbose) Timer.showStdErr("Queries: " + queries.size() + ", transcript exons: " + tr.numChilds() //
+				+ "\n\tIterate : " + elapsedNaive + " ms" //
+				+ "\n\tIndex   : " + elapsedIndex + " ms" //
+		);
+
+		Assert.assertEquals(countNaive, count);
+	}
+
+}
@@ -0,0 +1,263 @@
+package org.snpeff.snpEffect.testCases.unity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+import org.snpeff.interval.Gene;
+import org.snpeff.interval.Transcript;
+import org.snpeff.interval.Variant;
+import org.snpeff.snpEffect.VariantEffect;
+import org.snpeff.snpEffect.VariantEffect.FunctionalClass;
+import org.snpeff.snpEffect.VariantEffects;
+import org.snpeff.stats.CountByType;
+import org.snpeff.stats.GeneCountByTypeTable;
+import org.snpeff.stats.VariantEffectStats;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.GprSeq;
+import org.snpeff.util.Timer;
+
+import junit.framework.Assert;
+
+/**
+ * Test cases for variant effect statistics: Counters indexed by
+ * effect type must report the same values as string based counters
+ *
+ * @author pcingola
+ */
+public class TestCasesVariantEffectStats extends TestCasesBase {
+
+	/**
+	 * String based statistics (the way counters used to be calculated)
+	 */
+	class StringStats {
+
+		CountByType countByEffect = new CountByType();
+		CountByType countByGeneRegion = new CountByType();
+		CountByType countByImpact = new CountByType();
+		CountByType countByFunctionalClass = new CountByType();
+		HashMap<String, CountByType> geneCountByEffect = new HashMap<>();
+		HashMap<String, CountByType> geneCountByImpact = new HashMap<>();
+
+		void inc(HashMap<String, CountByType> countersByType, String type, String key) {
+			CountByType counter = countersByType.get(type);
+			if (counter == null) {
+				counter = new CountByType();
+				countersByType.put(type, counter);
+			}
+			counter.inc(key);
+		}
+
+		void sample(VariantEffect variantEffect, boolean useSequenceOntology) {
+			String effect = variantEffect.getEffectTypeString(useSequenceOntology);
+			if (effect == null || effect.isEmpty()) return;
+
+			String effects[] = effect.split("[\\+&]");
+			for (String eff : effects)
+				countByEffect.inc(eff);
+
+			countByGeneRegion.inc(variantEffect.getGeneRegion());
+			countByImpact.inc(variantEffect.getEffectImpact().toString());
+
+			FunctionalClass fc = variantEffect.getFunctionalClass();
+			if (fc != FunctionalClass.NONE) countByFunctionalClass.inc(fc.toString());
+
+			if (variantEffect.getMarker() != null) {
+				Gene gene = variantEffect.getGene();
+				Transcript tr = variantEffect.getTranscript();
+				if (tr != null && gene != null) {
+					String key = gene.getGeneName() + "\t" + gene.getId() + "\t" + tr.getId();
+					for (String eff : effects)
+						inc(geneCountByEffect, eff, key);
+					inc(geneCountByImpact, variantEffect.getEffectImpact().toString(), key);
+				}
+			}
+		}
+	}
+
+	@Override
+	protected void init() {
+		super.init();
+		randSeed = 20161022;
+		addUtrs = true;
+		onlyPlusStrand = false;
+		maxGeneLen = 5000;
+		maxTranscripts = 5;
+		maxExons = 10;
+		initRand();
+	}
+
+	/**
+	 * Compare gene counters (for all types and keys)
+	 */
+	void compare(HashMap<String, CountByType> expected, GeneCountByTypeTable geneCountByTypeTable) {
+		List<String> types = new ArrayList<>(expected.keySet());
+		Collections.sort(types);
+		Assert.assertEquals(types, geneCountByTypeTable.getTypeList());
+
+		for (String type : types)
+			Assert.assertEquals("Type: " + type, expected.get(type).toString(), geneCountByTypeTable.getCounter(type).toString());
+	}
+
+	/**
+	 * Compare statistics to string based statistics
+	 */
+	void compare(StringStats expected, VariantEffectStats variantEffectStats) {
+		Assert.assertTrue(variantEffectStats.hasData());
+		Assert.assertEquals(expected.countByEffect.toString(), variantEffectStats.getCountByEffect().toString());
+		Assert.assertEquals(expected.countByGeneRegion.toString(), variantEffectStats.getCountByGeneRegion().toString());
+		Assert.assertEquals(expected.countByImpact.toString(), variantEffectStats.getCountByImpact().toString());
+		Assert.assertEquals(expected.countByFunctionalClass.toString(), variantEffectStats.getCountByFunctionalClass().toString());
+		compare(expected.geneCountByEffect, variantEffectStats.getGeneCountByEffectTable());
+		compare(expected.geneCountByImpact, variantEffectStats.getGeneCountByImpactTable());
+	}
+
+	/**
+	 * Calculate effects for random variants: SNPs, InDels, large
+	 * deletions and intervals (i.e. not variants)
+	 */
+	List<VariantEffect> randomVariantEffects(int num) {
+		List<VariantEffect> variantEffects = new ArrayList<>();
+		for (int i = 0; i < num; i++) {
+			int pos = rand.nextInt(chromoSequence.length() - 1000);
+			String ref = chromoSequence.substring(pos, pos + 1).toUpperCase();
+			Variant variant;
+
+			switch (rand.nextInt(5)) {
+			case 0:
+				variant = new Variant(chromosome, pos, "", GprSeq.randSequence(rand, 1 + rand.nextInt(5)).toUpperCase());
+				break;
+
+			case 1:
+				variant = new Variant(chromosome, pos, chromoSequence.substring(pos, pos + 1 + rand.nextInt(5)).toUpperCase(), "");
+				break;
+
+			case 2:
+				variant = new Variant(chromosome, pos, chromoSequence.substring(pos, pos + 100 + rand.nextInt(900)).toUpperCase(), "");
+				break;
+
+			case 3:
+				variant = new Variant(chromosome, pos, pos + rand.nextInt(100), "");
+				break;
+
+			default:
+				String alt;
+				do {
+					alt = GprSeq.randSequence(rand, 1).toUpperCase();
+				} while (alt.equals(ref));
+				variant = new Variant(chromosome, pos, ref, alt);
+			}
+
+			VariantEffects veffs = snpEffectPredictor.variantEffect(variant);
+			for (VariantEffect veff : veffs)
+				variantEffects.add(veff);
+		}
+		return variantEffects;
+	}
+
+	/**
+	 * Compare statistics to string based counters
+	 */
+	void test(boolean useSequenceOntology) {
+		List<VariantEffect> variantEffects = randomVariantEffects(2000);
+
+		StringStats expected = new StringStats();
+		VariantEffectStats variantEffectStats = new VariantEffectStats(genome);
+		variantEffectStats.setUseSequenceOntology(useSequenceOntology);
+		for (VariantEffect veff : variantEffects) {
+			expected.sample(veff, useSequenceOntology);
+			variantEffectStats.sample(veff);
+		}
+
+		compare(expected, variantEffectStats);
+	}
+
+	@Test
+	public void test_01_effect_names() {
+		Gpr.debug("Test");
+		test(false);
+	}
+
+	@Test
+	public void test_02_sequence_ontology() {
+		Gpr.debug("Test");
+		test(true);
+	}
+
+	/**
+	 * Merged statistics must be the same as statistics using all samples
+	 */
+	@Test
+	public void test_03_merge() {
+		Gpr.debug("Test");
+		List<VariantEffect> variantEffects = randomVariantEffects(2000);
+
+		StringStats expected = new StringStats();
+		VariantEffectStats variantEffectStats[] = new VariantEffectStats[3];
+		for (int i = 0; i < variantEffectStats.length; i++) {
+			variantEffectStats[i] = new VariantEffectStats(genome);
+			variantEffectStats[i].setUseSequenceOntology(true);
+		}
+
+		// Samples are distributed in a different order, so effect names have different indexes
+		for (int i = 0; i < variantEffects.size(); i++) {
+			VariantEffect veff = variantEffects.get(i);
+			expected.sample(veff, true);
+			variantEffectStats[(i / 7) % variantEffectStats.length].sample(veff);
+		}
+
+		VariantEffectStats merged = new VariantEffectStats(genome);
+		merged.setUseSequenceOntology(true);
+		for (int i = variantEffectStats.length - 1; i >= 0; i--)
+			merged.merge(variantEffectStats[i]);
+
+		compare(expected, merged);
+	}
+
+	/**
+	 * Benchmark: String based counters vs indexed counters
+	 */
+	@Test
+	public void test_04_benchmark() {
+		Gpr.debug("Test");
+		List<VariantEffect> variantEffects = randomVariantEffects(20 * 1000);
+		int iterations = 5;
+
+		// Warm up
+		StringStats stringStats = new StringStats();
+		VariantEffectStats variantEffectStats = new VariantEffectStats(genome);
+		variantEffectStats.setUseSequenceOntology(true);
+		for (VariantEffect veff : variantEffects) {
+			stringStats.sample(veff, true);
+			variantEffectStats.sample(veff);
+		}
+
+		Timer timer = new Timer();
+		for (int i = 0; i < iterations; i++) {
+			stringStats = new StringStats();
+			for (VariantEffect veff : variantEffects)
+				stringStats.sample(veff, true);
+		}
+		long elapsedString = timer.elapsed();
+
+		timer = new Timer();
+		for (int i = 0; i < iterations; i++) {
+			variantEffectStats = new VariantEffectStats(genome);
+			variantEffectStats.setUseSequenceOntology(true);
+			for (VariantEffect veff : variantEffects)
+				variantEffectStats.sample(veff);
+		}
+		long elapsedIndexed = timer.elapsed();
+
+		long count = (long) iterations * variantEffects.size();
+		if (verbose) Timer.showStdErr("Variant effects sampled: " + count //
+				+ "\n\tString counters  : " + elapsedString + " ms, " + (1000L * count / Math.max(1, elapsedString)) + " effects per second" //
+				+ "\n\tIndexed counters : " + elapsedIndexed + " ms, " + (1000L * count / Math.max(1, elapsedIndexed)) + " effects per second" //
+		);
+
+		compare(stringStats, variantEffectStats);
+	}
+
+}
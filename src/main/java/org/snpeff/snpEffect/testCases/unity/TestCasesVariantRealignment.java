@@ -2,10 +2,14 @@ package org.snpeff.snpEffect.testCases.unity;
 
 import org.junit.Test;
 import org.snpeff.align.VariantRealign;
+import org.snpeff.align.VariantRealignCache;
+import org.snpeff.align.VariantRealignOri;
 import org.snpeff.binseq.GenomicSequences;
 import org.snpeff.interval.Genome;
 import org.snpeff.interval.Variant;
 import org.snpeff.util.Gpr;
+import org.snpeff.util.GprSeq;
+import org.snpeff.util.Timer;
 
 import junit.framework.Assert;
 
@@ -41,6 +45,27 @@ public class TestCasesVariantRealignment extends TestCasesBase {
 		Assert.assertEquals(expectedVariantRealign, vr.getVariantRealigned().toString());
 	}
 
+	/**
+	 * Create a genome having one chromosome with many repeats (variants in repeats trigger realignment)
+	 */
+	Genome genomeRepeats(String chrName, int len) {
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < len) {
+			String unit = GprSeq.randSequence(rand, 1 + rand.nextInt(5));
+			int reps = rand.nextInt(5) == 0 ? 5 + rand.nextInt(50) : 1 + rand.nextInt(3);
+			for (int i = 0; i < reps; i++)
+				sb.append(unit);
+		}
+		String chrSequence = sb.substring(0, len).toLowerCase();
+
+		Genome genome = new Genome("zzz");
+		genome.getOrCreateChromosome(chrName).setSequence(chrSequence);
+		GenomicSequences gs = genome.getGenomicSequences();
+		gs.addChromosomeSequence(chrName, chrSequence);
+		gs.build();
+		return genome;
+	}
+
 	@Override
 	protected void init() {
 		super.init();
@@ -226,4 +251,138 @@ public class TestCasesVariantRealignment extends TestCasesBase {
 		checkRealign("1", "tatgaccagcagcagcagcagcagcagcagcagcag", 6, "CAG", "", "chr1:33_CAG/");
 	}
 
+	/**
+	 * Random variants (mostly InDels) in a genome with many repeats
+	 */
+	Variant randVariant(Genome genome, String chrName) {
+		String chrSequence = genome.getChromosome(chrName).getSequence();
+		int pos = rand.nextInt(chrSequence.length() - 100);
+		String ref = "", alt = "";
+		switch (rand.nextInt(4)) {
+		case 0: // Insertion (copy of next bases, likely to shift)
+			alt = chrSequence.substring(pos, pos + 1 + rand.nextInt(10)).toUpperCase();
+			break;
+
+		case 1: // Deletion
+			ref = chrSequence.substring(pos, pos + 1 + rand.nextInt(10)).toUpperCase();
+			break;
+
+		case 2: // MNP / Mixed
+			ref = chrSequence.substring(pos, pos + 1 + rand.nextInt(5)).toUpperCase();
+			alt = GprSeq.randSequence(rand, 1 + rand.nextInt(5)).toUpperCase();
+			break;
+
+		default: // Random insertion, or a 'ref' not matching the reference
+			if (rand.nextBoolean()) alt = GprSeq.randSequence(rand, 1 + rand.nextInt(10)).toUpperCase();
+			else ref = GprSeq.randSequence(rand, 1 + rand.nextInt(10)).toUpperCase();
+		}
+
+		return new Variant(genome.getChromosome(chrName), pos, ref, alt);
+	}
+
+	/**
+	 * Realignment using a reference window must produce the same results as the original implementation
+	 */
+	@Test
+	public void test_10_differential() {
+		Gpr.debug("Test");
+		Genome genome = genomeRepeats("1", 20 * 1000);
+
+		for (int i = 0; i < 20 * 1000; i++) {
+			Variant variant = randVariant(genome, "1");
+			boolean alignLeft = rand.nextInt(4) > 0;
+
+			VariantRealignOri vrOri = new VariantRealignOri(variant);
+			VariantRealign vr = new VariantRealign(variant);
+			if (!alignLeft) {
+				vrOri.setAlignRight();
+				vr.setAlignRight();
+			}
+
+			boolean realignedOri = vrOri.realign();
+			boolean realigned = vr.realign();
+			String msg = "Variant: " + variant + ", align " + (alignLeft ? "left" : "right");
+			Assert.assertEquals(msg, realignedOri, realigned);
+			Assert.assertEquals(msg, vrOri.getRefRealign(), vr.getRefRealign());
+			Assert.assertEquals(msg, vrOri.getAltRealign(), vr.getAltRealign());
+			if (realigned) Assert.assertEquals(msg, vrOri.getVariantRealigned().toString(), vr.getVariantRealigned().toString());
+		}
+	}
+
+	/**
+	 * Cached realignments must be the same as (non-cached) realignments
+	 */
+	@Test
+	public void test_11_cache() {
+		Gpr.debug("Test");
+		Genome genome = genomeRepeats("1", 10 * 1000);
+
+		// Few variants, each one appears many times
+		Variant variants[] = new Variant[100];
+		for (int i = 0; i < variants.length; i++)
+			variants[i] = randVariant(genome, "1");
+
+		VariantRealignCache cache = new VariantRealignCache(50);
+		for (int i = 0; i < 5000; i++) {
+			Variant variant = variants[rand.nextInt(variants.length)];
+
+			VariantRealign vr = new VariantRealign(variant);
+			Variant expected = vr.realign() ? vr.getVariantRealigned() : variant;
+			Variant realigned = cache.realignLeft(variant, false);
+
+			if (expected == variant) Assert.assertTrue(realigned == variant);
+			else Assert.assertEquals(expected.toString(), realigned.toString());
+		}
+
+		Assert.assertTrue(cache.size() <= 50);
+		Assert.assertTrue(cache.getHits() > 0);
+		Assert.assertEquals(5000, cache.getHits() + cache.getMisses());
+
+		// Variant.realignLeft uses the genome's cache
+		Variant variant = variants[0];
+		Assert.assertEquals(variant.realignLeft().toString(), variant.realignLeft().toString());
+		Assert.assertTrue(genome.getGenomicSequences().getRealignCache().getHits() > 0);
+	}
+
+	/**
+	 * Benchmark: Original realignment vs reference window and cache
+	 */
+	@Test
+	public void test_12_benchmark() {
+		Gpr.debug("Test");
+		Genome genome = genomeRepeats("1", 100 * 1000);
+
+		// Some variants are recurrent
+		Variant variants[] = new Variant[100 * 1000];
+		for (int i = 0; i < variants.length; i++)
+			variants[i] = (i > 0 && rand.nextInt(3) == 0 ? variants[rand.nextInt(i)] : randVariant(genome, "1"));
+
+		Timer timer = new Timer();
+		int countOri = 0;
+		for (Variant variant : variants)
+			if (new VariantRealignOri(variant).realign()) countOri++;
+		long elapsedOri = timer.elapsed();
+
+		timer = new Timer();
+		int count = 0;
+		for (Variant variant : variants)
+			if (new VariantRealign(variant).realign()) count++;
+		long elapsed = timer.elapsed();
+
+		timer = new Timer();
+		int countCache = 0;
+		VariantRealignCache cache = new VariantRealignCache();
+		for (Variant variant : variants)
+			if (cache.realignLeft(variant, false) != variant) countCache++;
+		long elapsedCache = timer.elapsed();
+
+		Assert.assertEquals(countOri, count);
+		Assert.assertEquals(countOri, countCache);
+		if (verbose) Timer.showStdErr("Realign " + variants.length + " variants (" + count + " realigned)" //
+				+ "\n\tOriginal         : " + elapsedOri + " ms" //
+				+ "\n\tReference window : " + elapsed + " ms" //
+				+ "\n\tCached           : " + elapsedCache + " ms, cache hits: " + cache.getHits() //
+		);
+	}
+
 }
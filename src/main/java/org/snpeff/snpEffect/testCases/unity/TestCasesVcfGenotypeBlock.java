@@ -0,0 +1,217 @@
+package org.snpeff.snpEffect.testCases.unity;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Timer;
+import org.snpeff.vcf.VcfEntry;
+import org.snpeff.vcf.VcfGenotype;
+import org.snpeff.vcf.VcfGenotypeBlock;
+
+import junit.framework.Assert;
+
+/**
+ * Test cases for genotype blocks: Genotype codes and FORMAT fields
+ * decoded from the raw genotype string must be the same as the ones
+ * from parsed genotypes
+ *
+ * @author pcingola
+ */
+public class TestCasesVcfGenotypeBlock extends TestCasesBase {
+
+	public static final String FORMATS[] = { "GT:AD:DP:GQ:PL", "GT", "DP:GT", "AD:DP" };
+	public static final String GTS[] = { "0/0", "0/1", "1/1", "0|1", "1|0", "./.", ".", "0", "1", "1/2", "2/2", "0/.", ".|1", "0/1/1", "0|1/1", "1/" };
+
+	@Override
+	protected void init() {
+		super.init();
+		randSeed = 20161024;
+		initRand();
+	}
+
+	/**
+	 * Genotype codes and fields from parsed genotypes
+	 */
+	void compare(VcfEntry ve, String line) {
+		VcfGenotypeBlock genotypeBlock = ve.getGenotypeBlock();
+		byte codes[] = ve.getGenotypesScores();
+		String formatFields[] = ve.getFormatFields();
+		String genotypes[] = line.split("\t", 10)[9].split("\t");
+
+		Assert.assertEquals(genotypes.length, genotypeBlock.size());
+		Assert.assertEquals(genotypes.length, codes.length);
+		Assert.assertEquals(genotypes.length, ve.getVcfGenotypes().size());
+
+		for (int i = 0; i < genotypes.length; i++) {
+			String values = genotypes[i].equals(".") ? "" : genotypes[i];
+			VcfGenotype gtParsed = new VcfGenotype(ve, ve.getFormat(), values);
+			VcfGenotype gt = ve.getVcfGenotype(i);
+
+			Assert.assertEquals("Sample: " + i + ", genotype: '" + genotypes[i] + "'", gtParsed.getGenotypeCode(), codes[i]);
+			Assert.assertEquals(gtParsed.getGenotypeCode(), gt.getGenotypeCode());
+			for (String fieldName : formatFields)
+				Assert.assertEquals("Sample: " + i + ", field: " + fieldName + ", genotype: '" + genotypes[i] + "'", gtParsed.get(fieldName), gt.get(fieldName));
+			Assert.assertEquals(gtParsed.toString(), gt.toString());
+		}
+	}
+
+	/**
+	 * Parse VCF lines
+	 */
+	List<VcfEntry> parse(List<String> lines) {
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines)
+			sb.append(line + "\n");
+
+		VcfFileIterator vcf = new VcfFileIterator(new BufferedReader(new StringReader(sb.toString())));
+		vcf.setCreateChromos(true);
+
+		List<VcfEntry> ves = new ArrayList<>();
+		for (VcfEntry ve : vcf)
+			ves.add(ve);
+		Assert.assertEquals(lines.size(), ves.size());
+		return ves;
+	}
+
+	/**
+	 * Random genotype values for a FORMAT
+	 */
+	String randomGenotype(String format, String gts[]) {
+		if (rand.nextInt(20) == 0) return ".";
+
+		StringBuilder sb = new StringBuilder();
+		for (String field : format.split(":")) {
+			if (sb.length() > 0) sb.append(':');
+			if (field.equals("GT")) sb.append(gts[rand.nextInt(gts.length)]);
+			else if (field.equals("AD")) sb.append(rand.nextInt(50) + "," + rand.nextInt(50));
+			else if (field.equals("PL")) sb.append(rand.nextInt(100) + ",0," + rand.nextInt(100));
+			else if (rand.nextInt(10) == 0) sb.append(""); // Empty field
+			else sb.append(rand.nextInt(100));
+		}
+
+		// Truncated genotype (i.e. less fields than FORMAT)
+		if (rand.nextInt(10) == 0) {
+			int idx = sb.indexOf(":");
+			if (idx > 0) sb.setLength(idx);
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Random multi-sample VCF lines
+	 */
+	List<String> randomLines(int num, int numSamples, String gts[]) {
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < num; i++) {
+			String format = FORMATS[rand.nextInt(FORMATS.length)];
+			StringBuilder sb = new StringBuilder("1\t" + (1000 + 10 * i) + "\t.\tA\tC,G\t.\tPASS\tAC=1\t" + format);
+			for (int j = 0; j < numSamples; j++)
+				sb.append("\t" + randomGenotype(format, gts));
+			lines.add(sb.toString());
+		}
+		return lines;
+	}
+
+	/**
+	 * Genotype codes and FORMAT fields
+	 */
+	@Test
+	public void test_01_codes() {
+		Gpr.debug("Test");
+		List<String> lines = randomLines(300, 30, GTS);
+		List<VcfEntry> ves = parse(lines);
+		for (int i = 0; i < lines.size(); i++) {
+			compare(ves.get(i), lines.get(i));
+			Assert.assertEquals(lines.get(i), ves.get(i).toString());
+		}
+	}
+
+	/**
+	 * Inconsistent genotypes must fail the same way as parsed genotypes
+	 */
+	@Test
+	public void test_02_bad_genotype() {
+		Gpr.debug("Test");
+		List<String> lines = new ArrayList<>();
+		lines.add("1\t1000\t.\tA\tC\t.\tPASS\tAC=1\tGT\t0/1\t0/3");
+		VcfEntry ve = parse(lines).get(0);
+
+		try {
+			ve.getGenotypesScores();
+			Assert.fail("Exception expected");
+		} catch (RuntimeException e) {
+			Throwable cause = (e.getCause() != null ? e.getCause() : e);
+			Assert.assertTrue(cause.getMessage().startsWith("Error: Bad genotype field '0/3'"));
+		}
+	}
+
+	/**
+	 * Modified genotypes are no longer backed by the genotype block
+	 */
+	@Test
+	public void test_03_modify() {
+		Gpr.debug("Test");
+		List<String> lines = new ArrayList<>();
+		lines.add("1\t1000\t.\tA\tC\t.\tPASS\tAC=1\tGT:DP\t0/1:10\t1/1:20\t0/0:30");
+		VcfEntry ve = parse(lines).get(0);
+
+		Assert.assertEquals(10, ve.getVcfGenotype(0).depth());
+		Assert.assertEquals("20", ve.getGenotypeBlock().getColumn("DP")[1]);
+
+		ve.getVcfGenotype(1).setGenotype("0/0");
+		ve.getVcfGenotype(2).set("DP", "33");
+		ve.addFormat("GQ");
+		ve.getVcfGenotype(0).add("GQ", "99");
+
+		Assert.assertEquals(1, ve.getVcfGenotype(0).getGenotypeCode());
+		Assert.assertEquals(0, ve.getVcfGenotype(1).getGenotypeCode());
+		Assert.assertEquals("33", ve.getVcfGenotype(2).get("DP"));
+		Assert.assertEquals("99", ve.getVcfGenotype(0).get("GQ"));
+		Assert.assertEquals("1\t1000\t.\tA\tC\t.\tPASS\tAC=1\tGT:DP:GQ\t0/1:10:99\t0/0:20\t0/0:33", ve.toString());
+	}
+
+	/**
+	 * Benchmark: Genotype codes from parsed genotypes vs genotype block
+	 */
+	@Test
+	public void test_04_benchmark() {
+		Gpr.debug("Test");
+		String gts[] = { "0/0", "0/0", "0/0", "0/0", "0/1", "1/1", "./." };
+		List<String> lines = randomLines(200, 2000, gts);
+		int iterations = 5;
+		long sum = 0;
+
+		Timer timer = new Timer();
+		for (int it = 0; it < iterations; it++) {
+			for (VcfEntry ve : parse(lines)) {
+				String format = ve.getFormat();
+				for (String values : ve.getGenotypeStr().split("\t"))
+					sum += new VcfGenotype(ve, format, values.equals(".") ? "" : values).getGenotypeCode();
+			}
+		}
+		long elapsedParsed = timer.elapsed();
+
+		timer = new Timer();
+		for (int it = 0; it < iterations; it++) {
+			for (VcfEntry ve : parse(lines))
+				for (byte code : ve.getGenotypesScores())
+					sum -= code;
+		}
+		long elapsedBlock = timer.elapsed();
+
+		long count = (long) iterations * lines.size() * 2000;
+		if (verbose) Timer.showStdErr("Genotypes: " + count //
+				+ "\n\tParsed genotypes : " + elapsedParsed + " ms, " + (1000L * count / Math.max(1, elapsedParsed)) + " genotypes per second" //
+				+ "\n\tGenotype block   : " + elapsedBlock + " ms, " + (1000L * count / Math.max(1, elapsedBlock)) + " genotypes per second" //
+		);
+
+		Assert.assertEquals(0, sum);
+	}
+
+}
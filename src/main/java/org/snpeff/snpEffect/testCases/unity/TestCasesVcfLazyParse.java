@@ -0,0 +1,236 @@
+package org.snpeff.snpEffect.testCases.unity;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.snpeff.fileIterator.VcfFileIterator;
+import org.snpeff.util.Gpr;
+import org.snpeff.util.Timer;
+import org.snpeff.vcf.VcfEntry;
+
+import junit.framework.Assert;
+
+/**
+ * Test cases for lazy VCF parsing: Fields materialized on
+ * demand must be the same as fully parsed fields
+ *
+ * @author pcingola
+ */
+public class TestCasesVcfLazyParse extends TestCasesBase {
+
+	public static final String POPULATIONS[] = { "afr", "amr", "asj", "eas", "fin", "nfe", "oth", "sas", "male", "female" };
+
+	@Override
+	protected void init() {
+		super.init();
+		randSeed = 20161023;
+		initRand();
+	}
+
+	/**
+	 * Materialize all lazy fields
+	 */
+	void materialize(VcfEntry ve) {
+		ve.getFilter();
+		ve.getInfoStr();
+		ve.getInfoKeys();
+		ve.getFormat();
+		ve.getGenotypeStr();
+	}
+
+	/**
+	 * Parse VCF lines
+	 */
+	List<VcfEntry> parse(List<String> lines) {
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines)
+			sb.append(line + "\n");
+
+		VcfFileIterator vcf = new VcfFileIterator(new BufferedReader(new StringReader(sb.toString())));
+		vcf.setCreateChromos(true);
+
+		List<VcfEntry> ves = new ArrayList<>();
+		for (VcfEntry ve : vcf)
+			ves.add(ve);
+		Assert.assertEquals(lines.size(), ves.size());
+		return ves;
+	}
+
+	/**
+	 * Create a random gnomAD-like VCF line (lots of INFO fields)
+	 */
+	String randomLine(int pos, boolean genotypes) {
+		String bases = "ACGT";
+		String ref = "" + bases.charAt(rand.nextInt(4));
+		int numAlts = 1 + rand.nextInt(3);
+		StringBuilder alts = new StringBuilder();
+		for (int i = 0; i < numAlts; i++)
+			alts.append((i > 0 ? "," : "") + ref + bases.charAt(rand.nextInt(4)));
+
+		// INFO fields: Allele counts, frequencies and numbers for each population
+		StringBuilder info = new StringBuilder();
+		info.append("AC=" + rand.nextInt(1000) + ";AF=" + rand.nextDouble() + ";AN=" + rand.nextInt(100000));
+		for (String pop : POPULATIONS) {
+			info.append(";AC_" + pop + "=" + rand.nextInt(1000));
+			info.append(";AF_" + pop + "=" + rand.nextDouble());
+			info.append(";AN_" + pop + "=" + rand.nextInt(100000));
+			info.append(";nhomalt_" + pop + "=" + rand.nextInt(100));
+		}
+		info.append(";DP=" + rand.nextInt(1000000) + ";FS=" + rand.nextInt(100) + ";MQ=60.0;QD=" + rand.nextInt(40));
+		if (rand.nextBoolean()) info.append(";segdup");
+		if (rand.nextBoolean()) info.append(";lcr");
+		info.append(";vep=" + ref + "|missense_variant|MODERATE|GENE" + rand.nextInt(100) + "||");
+		if (rand.nextInt(10) == 0) info.append(";AC=1"); // Duplicated key: Last one is used
+
+		String filter = (rand.nextBoolean() ? "PASS" : (rand.nextBoolean() ? "." : "AC0;RF"));
+		String qual = (rand.nextBoolean() ? rand.nextInt(1000) + ".0" : ".");
+
+		String line = "1\t" + pos + "\t" + (rand.nextBoolean() ? "rs" + rand.nextInt(1000000) : ".") + "\t" + ref + "\t" + alts + "\t" + qual + "\t" + filter + "\t" + info;
+		if (genotypes) line += "\tGT:DP\t0/1:" + rand.nextInt(100) + "\t1/1:" + rand.nextInt(100) + "\t./.:.";
+		return line;
+	}
+
+	List<String> randomLines(int num, boolean genotypes) {
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < num; i++)
+			lines.add(randomLine(1000 + 10 * i, genotypes));
+		return lines;
+	}
+
+	/**
+	 * INFO values found by scanning must be the same as parsed INFO values
+	 */
+	@Test
+	public void test_01_info() {
+		Gpr.debug("Test");
+		List<String> lines = randomLines(200, true);
+		List<VcfEntry> parsed = parse(lines);
+		List<VcfEntry> lazy = parse(lines);
+
+		int infoScanMax = VcfEntry.INFO_SCAN_MAX;
+		VcfEntry.INFO_SCAN_MAX = Integer.MAX_VALUE; // Never parse INFO fields
+		try {
+			for (int i = 0; i < lines.size(); i++) {
+				VcfEntry vep = parsed.get(i);
+				VcfEntry vel = lazy.get(i);
+				materialize(vep);
+
+				for (String key : vep.getInfoKeys())
+					Assert.assertEquals("Key: " + key + ", line: " + lines.get(i), vep.getInfo(key), vel.getInfo(key));
+				Assert.assertNull(vel.getInfo("AC_xyz"));
+				Assert.assertNull(vel.getInfo("A"));
+				Assert.assertTrue(vel.isLazy(VcfEntry.FIELD_INFO));
+
+				for (int j = 0; j < vep.getAlts().length; j++)
+					Assert.assertEquals(vep.getInfo("AC_afr", vep.getAlts()[j]), vel.getInfo("AC_afr", vel.getAlts()[j]));
+			}
+		} finally {
+			VcfEntry.INFO_SCAN_MAX = infoScanMax;
+		}
+	}
+
+	/**
+	 * Lazy fields must be the same as fully parsed fields
+	 */
+	@Test
+	public void test_02_fields() {
+		Gpr.debug("Test");
+		for (boolean genotypes : new boolean[] { true, false }) {
+			List<String> lines = randomLines(200, genotypes);
+			List<VcfEntry> parsed = parse(lines);
+			List<VcfEntry> lazy = parse(lines);
+
+			for (int i = 0; i < lines.size(); i++) {
+				VcfEntry vep = parsed.get(i);
+				VcfEntry vel = lazy.get(i);
+				materialize(vep);
+
+				// Untouched entries are written verbatim
+				Assert.assertTrue(vel.isLazy(VcfEntry.FIELD_INFO));
+				Assert.assertEquals(lines.get(i), vel.toString());
+				Assert.assertEquals(vep.toString(), vel.toString());
+				Assert.assertEquals(vep.toStringNoGt(), vel.toStringNoGt());
+
+				Assert.assertEquals(vep.getFilter(), vel.getFilter());
+				Assert.assertEquals(vep.getFormat(), vel.getFormat());
+				Assert.assertEquals(vep.getGenotypeStr(), vel.getGenotypeStr());
+				Assert.assertEquals(vep.getAltsStr(), vel.getAltsStr());
+				Assert.assertEquals(vep.getVcfGenotypes().size(), vel.getVcfGenotypes().size());
+				Assert.assertEquals(vep.variants().toString(), vel.variants().toString());
+			}
+		}
+	}
+
+	/**
+	 * Modify lazy entries
+	 */
+	@Test
+	public void test_03_modify() {
+		Gpr.debug("Test");
+		List<String> lines = randomLines(200, true);
+		List<VcfEntry> parsed = parse(lines);
+		List<VcfEntry> lazy = parse(lines);
+
+		for (int i = 0; i < lines.size(); i++) {
+			VcfEntry vep = parsed.get(i);
+			VcfEntry vel = lazy.get(i);
+			materialize(vep);
+
+			for (VcfEntry ve : new VcfEntry[] { vep, vel }) {
+				ve.addInfo("NEW_KEY", "" + i);
+				ve.rmInfo("AF_nfe");
+				ve.addInfo("AC", "" + (i + 1)); // Replace an existing value
+				ve.addFilter("LowQual");
+			}
+
+			Assert.assertEquals(vep.toString(), vel.toString());
+			Assert.assertEquals("" + i, vel.getInfo("NEW_KEY"));
+			Assert.assertEquals("" + (i + 1), vel.getInfo("AC"));
+			Assert.assertNull(vel.getInfo("AF_nfe"));
+			Assert.assertFalse(vel.toString().contains("AF_nfe="));
+			Assert.assertTrue(vel.getFilter().endsWith("LowQual"));
+		}
+	}
+
+	/**
+	 * Benchmark: Parse all INFO fields vs look up one INFO field
+	 */
+	@Test
+	public void test_04_benchmark() {
+		Gpr.debug("Test");
+		List<String> lines = randomLines(20 * 1000, false);
+		int iterations = 5;
+		long len = 0;
+
+		Timer timer = new Timer();
+		for (int it = 0; it < iterations; it++) {
+			for (VcfEntry ve : parse(lines)) {
+				materialize(ve);
+				ve.getInfo("AF");
+				len += ve.toString().length();
+			}
+		}
+		long elapsedEager = timer.elapsed();
+
+		timer = new Timer();
+		for (int it = 0; it < iterations; it++) {
+			for (VcfEntry ve : parse(lines)) {
+				ve.getInfo("AF");
+				len -= ve.toString().length();
+			}
+		}
+		long elapsedLazy = timer.elapsed();
+
+		long count = (long) iterations * lines.size();
+		if (verbose) Timer.showStdErr("VCF lines: " + count //
+				+ "\n\tParse all fields : " + elapsedEager + " ms, " + (1000L * count / Math.max(1, elapsedEager)) + " lines per second" //
+				+ "\n\tLazy fields      : " + elapsedLazy + " ms, " + (1000L * count / Math.max(1, elapsedLazy)) + " lines per second" //
+		);
+
+		Assert.assertEquals(0, len);
+	}
+
+}
@@ -24,6 +24,13 @@ public class AlleleCountStats implements SamplingStats<VcfEntry> {
 		return counters != null;
 	}
 
+	@Override
+	public void merge(SamplingStats<VcfEntry> stats) {
+		AlleleCountStats alleleCountStats = (AlleleCountStats) stats;
+		if (sampleNames == null) sampleNames = alleleCountStats.sampleNames;
+		counters = StatsMerge.add(counters, alleleCountStats.counters);
+	}
+
 	/**
 	 * Update MAC counters
 	 */
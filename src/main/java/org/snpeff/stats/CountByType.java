@@ -146,6 +146,17 @@ public class CountByType implements Serializable {
 		return inc(countByType, type, increment);
 	}
 
+	/**
+	 * Add all counts and scores from 'counts'
+	 */
+	public void merge(CountByType counts) {
+		for (String type : counts.countByType.keySet())
+			countByType.put(type, getCount(type) + counts.getCount(type));
+
+		for (String type : counts.scoreByType.keySet())
+			scoreByType.put(type, getScore(type) + counts.getScore(type));
+	}
+
 	/**
 	 * Is this empty
 	 */
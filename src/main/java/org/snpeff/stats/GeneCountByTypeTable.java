@@ -2,9 +2,10 @@ package org.snpeff.stats;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 
@@ -18,47 +19,121 @@ import org.snpeff.snpEffect.VariantEffect;
 
 /**
  * Count for each 'type' and 'gene'.
- * Tries to avoid multiple counting by comparing to latest seqChanges.
- * WARNING: This strategy does not work if changeEffect are out of order.
+ *
+ * Types are referenced by index (see 'typeIndex()') and counts are
+ * kept in primitive arrays, one row per transcript. Keys (i.e. strings
+ * 'geneName \t geneId \t transcriptId') and counters are only created
+ * at report time.
  *
  * @author pcingola
  */
 public class GeneCountByTypeTable implements Iterable<String>, Serializable {
 
+	/**
+	 * Counts for one transcript
+	 */
+	static class Row implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		Gene gene;
+		Transcript tr;
+		long count[]; // Number of times each type was sampled
+		long size[]; // Number of bases affected, by type
+		int sizeByType[]; // Marker size, by type
+		double score[]; // Sum of scores, by type (NaN if no score). Lazy init (only used by VariantWithScore)
+
+		Row(Gene gene, Transcript tr, int numTypes) {
+			this.gene = gene;
+			this.tr = tr;
+			count = new long[numTypes];
+			size = new long[numTypes];
+			sizeByType = new int[numTypes];
+		}
+
+		void addScore(int typeIdx, double sc) {
+			if (score == null) {
+				score = new double[count.length];
+				Arrays.fill(score, Double.NaN);
+			}
+
+			score[typeIdx] = Double.isNaN(score[typeIdx]) ? sc : score[typeIdx] + sc;
+		}
+
+		String bioType() {
+			if (tr.getBioType() != null) return tr.getBioType().toString();
+			return tr.isProteinCoding() ? BioType.protein_coding.toString() : "";
+		}
+
+		/**
+		 * Make sure we have room for 'numTypes' types
+		 */
+		void ensureCapacity(int numTypes) {
+			if (numTypes <= count.length) return;
+			int len = Math.max(numTypes, 2 * count.length);
+			count = Arrays.copyOf(count, len);
+			size = Arrays.copyOf(size, len);
+			sizeByType = Arrays.copyOf(sizeByType, len);
+			if (score != null) {
+				int oldLen = score.length;
+				score = Arrays.copyOf(score, len);
+				Arrays.fill(score, oldLen, len, Double.NaN);
+			}
+		}
+
+		String key() {
+			return gene.getGeneName() + "\t" + gene.getId() + "\t" + tr.getId();
+		}
+	}
+
 	private static final long serialVersionUID = 1L;
 	public static int GENE_CPG_NUM_BINS = 30;
 	public static boolean debug = false;
 
-	HashSet<String> keys;
-	HashSet<String> types;
-	HashMap<String, CountByType> countersByType;
-	HashMap<String, CountByType> counterSizeByType;
-	HashMap<String, String> bioType;
-	HashMap<String, Integer> sizeByType;
+	List<String> typeNames; // Type names, by type index
+	HashMap<String, Integer> typeIdxByName; // Type index, by name
+	IdentityHashMap<Transcript, Row> rows; // One row per transcript
+	transient HashMap<String, List<Row>> rowsByKey; // Report time only: Rows by key (null if it needs to be re-calculated)
+	transient HashMap<String, CountByType> countersByType; // Report time only: Counters by type
+	transient HashMap<String, CountByType> counterSizeByType; // Report time only: Size counters by type
 
 	public GeneCountByTypeTable() {
-		keys = new HashSet<>();
-		types = new HashSet<>();
-		countersByType = new HashMap<>();
-		counterSizeByType = new HashMap<>();
-		bioType = new HashMap<>();
-		sizeByType = new HashMap<>();
+		typeNames = new ArrayList<>();
+		typeIdxByName = new HashMap<>();
+		rows = new IdentityHashMap<>();
+	}
+
+	/**
+	 * Create a table having predefined types (type index is the position in the array)
+	 */
+	public GeneCountByTypeTable(Object types[]) {
+		this();
+		for (Object type : types)
+			typeIndex(type.toString());
 	}
 
 	public String getBioType(String key) {
-		String bio = bioType.get(key);
-		return bio != null ? bio : "";
+		List<Row> rs = getRowsByKey().get(key);
+		return rs != null ? rs.get(0).bioType() : "";
 	}
 
 	/**
 	 * Get counter for this type
 	 */
 	public CountByType getCounter(String type) {
-		CountByType counter = countersByType.get(type);
+		if (countersByType == null) countersByType = new HashMap<>();
 
-		// Lazy init counters
+		CountByType counter = countersByType.get(type);
 		if (counter == null) {
 			counter = new CountByType();
+			Integer typeIdx = typeIdxByName.get(type);
+			if (typeIdx != null) {
+				for (Row row : rows.values()) {
+					if (typeIdx >= row.count.length) continue;
+					if (row.count[typeIdx] > 0) counter.inc(row.key(), (int) row.count[typeIdx]);
+					if (row.score != null && !Double.isNaN(row.score[typeIdx])) counter.addScore(row.key(), row.score[typeIdx]);
+				}
+			}
 			countersByType.put(type, counter);
 		}
 
@@ -69,11 +144,16 @@ public class GeneCountByTypeTable implements Iterable<String>, Serializable {
 	 * Get size counter for this type
 	 */
 	public CountByType getCounterSize(String type) {
-		CountByType counter = counterSizeByType.get(type);
+		if (counterSizeByType == null) counterSizeByType = new HashMap<>();
 
-		// Lazy init counters
+		CountByType counter = counterSizeByType.get(type);
 		if (counter == null) {
 			counter = new CountByType();
+			Integer typeIdx = typeIdxByName.get(type);
+			if (typeIdx != null) {
+				for (Row row : rows.values())
+					if (typeIdx < row.size.length && row.size[typeIdx] > 0) counter.inc(row.key(), (int) row.size[typeIdx]);
+			}
 			counterSizeByType.put(type, counter);
 		}
 
@@ -85,48 +165,115 @@ public class GeneCountByTypeTable implements Iterable<String>, Serializable {
 	 */
 	public List<String> getKeyList() {
 		ArrayList<String> keyList = new ArrayList<>();
-		keyList.addAll(keys);
+		keyList.addAll(getRowsByKey().keySet());
 		Collections.sort(keyList);
 		return keyList;
 	}
 
+	/**
+	 * Rows indexed by key (several transcripts could have the same key)
+	 */
+	HashMap<String, List<Row>> getRowsByKey() {
+		if (rowsByKey == null) {
+			rowsByKey = new HashMap<>();
+			for (Row row : rows.values()) {
+				String key = row.key();
+				List<Row> rs = rowsByKey.get(key);
+				if (rs == null) {
+					rs = new ArrayList<>(1);
+					rowsByKey.put(key, rs);
+				}
+				rs.add(row);
+			}
+		}
+		return rowsByKey;
+	}
+
 	public int getSizeByType(String key, String type) {
-		Integer size = sizeByType.get(key + "\t" + type);
-		return size == null ? 0 : size;
+		List<Row> rs = getRowsByKey().get(key);
+		Integer typeIdx = typeIdxByName.get(type);
+		if (rs == null || typeIdx == null) return 0;
+
+		int size = 0;
+		for (Row row : rs)
+			if (typeIdx < row.sizeByType.length && row.sizeByType[typeIdx] > 0) size = row.sizeByType[typeIdx];
+		return size;
 	}
 
 	/**
-	 * Get a sorted list of keys
+	 * Get a sorted list of types (only types that have been sampled)
 	 */
 	public List<String> getTypeList() {
+		boolean sampled[] = new boolean[typeNames.size()];
+		for (Row row : rows.values())
+			for (int i = 0; i < row.count.length && i < sampled.length; i++)
+				sampled[i] |= (row.count[i] > 0);
+
 		ArrayList<String> typeList = new ArrayList<>();
-		typeList.addAll(types);
+		for (int i = 0; i < sampled.length; i++)
+			if (sampled[i]) typeList.add(typeNames.get(i));
 		Collections.sort(typeList);
 		return typeList;
 	}
 
+	/**
+	 * Invalidate report-time caches
+	 */
+	void invalidate() {
+		rowsByKey = null;
+		countersByType = null;
+		counterSizeByType = null;
+	}
+
 	@Override
 	public Iterator<String> iterator() {
-		return keys.iterator();
+		return getRowsByKey().keySet().iterator();
 	}
 
 	/**
-	 * Sample this <gene, marker, type, seqChange> tuple to update statistics
+	 * Add all counts from 'geneCountByTypeTable'
 	 */
-	public void sample(Gene gene, Transcript tr, String type, VariantEffect variantEffect) {
-		String key = gene.getGeneName() + "\t" + gene.getId() + "\t" + tr.getId();
+	public void merge(GeneCountByTypeTable geneCountByTypeTable) {
+		// Map other table's type indexes to this table's
+		int numTypes = geneCountByTypeTable.typeNames.size();
+		int typeIdxMap[] = new int[numTypes];
+		for (int i = 0; i < numTypes; i++)
+			typeIdxMap[i] = typeIndex(geneCountByTypeTable.typeNames.get(i));
 
-		// Count
-		CountByType counter = getCounter(type);
-		counter.inc(key);
-
-		// Add biotype
-		if (tr.getBioType() != null) {
-			bioType.put(key, tr.getBioType().toString());
-		} else {
-			bioType.put(key, tr.isProteinCoding() ? BioType.protein_coding.toString() : "");
+		for (Row rowOther : geneCountByTypeTable.rows.values()) {
+			Row row = row(rowOther.gene, rowOther.tr);
+			for (int i = 0; i < rowOther.count.length && i < numTypes; i++) {
+				int idx = typeIdxMap[i];
+				row.count[idx] += rowOther.count[i];
+				row.size[idx] += rowOther.size[i];
+				if (rowOther.sizeByType[i] > 0) row.sizeByType[idx] = rowOther.sizeByType[i];
+				if (rowOther.score != null && !Double.isNaN(rowOther.score[i])) row.addScore(idx, rowOther.score[i]);
+			}
 		}
 
+		invalidate();
+	}
+
+	/**
+	 * Get (or create) the row for this transcript
+	 */
+	Row row(Gene gene, Transcript tr) {
+		Row row = rows.get(tr);
+		if (row == null) {
+			row = new Row(gene, tr, typeNames.size());
+			rows.put(tr, row);
+			rowsByKey = null;
+		} else row.ensureCapacity(typeNames.size());
+		return row;
+	}
+
+	/**
+	 * Sample this <gene, marker, type, seqChange> tuple to update statistics
+	 */
+	public void sample(Gene gene, Transcript tr, int typeIdx, VariantEffect variantEffect) {
+		Row row = row(gene, tr);
+		row.count[typeIdx]++;
+
 		// Calculate the size of the intersection
 		Marker marker = variantEffect.getMarker();
 		Variant variant = variantEffect.getVariant();
@@ -136,19 +283,47 @@ public class GeneCountByTypeTable implements Iterable<String>, Serializable {
 
 		if (size > 0) {
 			// Increment size counters (bases affected)
-			getCounterSize(type).inc(key, size);
+			row.size[typeIdx] += size;
 
 			// Set size by type
-			sizeByType.put(key + "\t" + type, marker.size());
+			row.sizeByType[typeIdx] = marker.size();
 
 			// Add score (if any)
 			if (variant instanceof VariantWithScore) {
 				double score = ((VariantWithScore) variant).getScore();
-				if (!Double.isNaN(score)) counter.addScore(key, score);
+				if (!Double.isNaN(score)) row.addScore(typeIdx, score);
 			}
 		}
 
-		types.add(type); // Add type
-		keys.add(key); // Add key
+		// Report-time counters are no longer valid
+		countersByType = null;
+		counterSizeByType = null;
+	}
+
+	/**
+	 * Sample this <gene, marker, type, seqChange> tuple to update statistics
+	 */
+	public void sample(Gene gene, Transcript tr, String type, VariantEffect variantEffect) {
+		sample(gene, tr, typeIndex(type), variantEffect);
+	}
+
+	/**
+	 * Type index for this type name (a new index is created if the type doesn't exist)
+	 */
+	public int typeIndex(String type) {
+		Integer typeIdx = typeIdxByName.get(type);
+		if (typeIdx == null) {
+			typeIdx = typeNames.size();
+			typeNames.add(type);
+			typeIdxByName.put(type, typeIdx);
+		}
+		return typeIdx;
+	}
+
+	/**
+	 * Type name for this index
+	 */
+	public String typeName(int typeIdx) {
+		return typeNames.get(typeIdx);
 	}
 }
@@ -108,6 +108,18 @@ public class GenotypeStats implements SamplingStats<VcfEntry> {
 		return true;
 	}
 
+	@Override
+	public void merge(SamplingStats<VcfEntry> stats) {
+		GenotypeStats genotypeStats = (GenotypeStats) stats;
+		if (sampleNames == null) sampleNames = genotypeStats.sampleNames;
+		alleleCount.merge(genotypeStats.alleleCount);
+		alleleFrequency.merge(genotypeStats.alleleFrequency);
+		countHom = StatsMerge.add(countHom, genotypeStats.countHom);
+		countHet = StatsMerge.add(countHet, genotypeStats.countHet);
+		countRef = StatsMerge.add(countRef, genotypeStats.countRef);
+		countMissing = StatsMerge.add(countMissing, genotypeStats.countMissing);
+	}
+
 	/**
 	 * Update counters
 	 */
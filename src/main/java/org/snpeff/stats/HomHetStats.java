@@ -34,6 +34,16 @@ public class HomHetStats implements SamplingStats<VcfEntry> {
 		return countHomRef != null;
 	}
 
+	@Override
+	public void merge(SamplingStats<VcfEntry> stats) {
+		HomHetStats homHetStats = (HomHetStats) stats;
+		if (sampleNames == null) sampleNames = homHetStats.sampleNames;
+		countHomRef = StatsMerge.add(countHomRef, homHetStats.countHomRef);
+		countAlt1 = StatsMerge.add(countAlt1, homHetStats.countAlt1);
+		countAlt2 = StatsMerge.add(countAlt2, homHetStats.countAlt2);
+		countMissing = StatsMerge.add(countMissing, homHetStats.countMissing);
+	}
+
 	/**
 	 * Update Hom/Het counters
 	 */
@@ -140,6 +140,16 @@ public class IntStats implements Serializable {
 		return statsProcedure.minKey <= statsProcedure.maxKey; // If this doesn't hold, it means that there was no data at all
 	}
 
+	/**
+	 * Add all samples from 'intStats'
+	 */
+	public void merge(IntStats intStats) {
+		for (int num : intStats.counters.keys())
+			counters.put(num, counters.get(num) + intStats.counters.get(num));
+
+		needUpdate = true;
+	}
+
 	/**
 	 * Use 'num' as a sample
 	 * @param num
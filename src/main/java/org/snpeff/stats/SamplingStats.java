@@ -11,6 +11,14 @@ public interface SamplingStats<T> {
 	 */
 	public boolean hasData();
 
+	/**
+	 * Add all data from 'stats' (e.g. statistics calculated by another thread).
+	 * Merging must be associative, so per-thread statistics can be merged
+	 * in any order and give the same results as a single thread.
+	 * @param stats : Statistics of the same class
+	 */
+	public void merge(SamplingStats<T> stats);
+
 	/**
 	 * Analyze one sample
 	 * @param sample
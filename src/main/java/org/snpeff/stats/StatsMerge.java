@@ -0,0 +1,61 @@
+package org.snpeff.stats;
+
+import java.util.Arrays;
+
+/**
+ * Helper methods to merge counters (e.g. per sample counters
+ * calculated by different threads)
+ *
+ * Counter arrays are lazily initialized in most statistics, so
+ * any of them can be null
+ *
+ * @author pcingola
+ */
+public class StatsMerge {
+
+	/**
+	 * Add 'countsOther' to 'counts'
+	 * @return Merged counts (might be a new array if 'counts' is null or shorter than 'countsOther')
+	 */
+	public static int[] add(int counts[], int countsOther[]) {
+		if (countsOther == null) return counts;
+		if (counts == null) return countsOther.clone();
+		if (counts.length < countsOther.length) counts = Arrays.copyOf(counts, countsOther.length);
+
+		for (int i = 0; i < countsOther.length; i++)
+			counts[i] += countsOther[i];
+
+		return counts;
+	}
+
+	/**
+	 * Add 'countsOther' to 'counts'
+	 * @return Merged counts (might be a new array if 'counts' is null)
+	 */
+	public static int[][] add(int counts[][], int countsOther[][]) {
+		if (countsOther == null) return counts;
+		if (counts == null) counts = new int[countsOther.length][];
+		if (counts.length < countsOther.length) counts = Arrays.copyOf(counts, countsOther.length);
+
+		for (int i = 0; i < countsOther.length; i++)
+			counts[i] = add(counts[i], countsOther[i]);
+
+		return counts;
+	}
+
+	/**
+	 * Add 'countsOther' to 'counts'
+	 * @return Merged counts (might be a new array if 'counts' is null or shorter than 'countsOther')
+	 */
+	public static long[] add(long counts[], long countsOther[]) {
+		if (countsOther == null) return counts;
+		if (counts == null) return countsOther.clone();
+		if (counts.length < countsOther.length) counts = Arrays.copyOf(counts, countsOther.length);
+
+		for (int i = 0; i < countsOther.length; i++)
+			counts[i] += countsOther[i];
+
+		return counts;
+	}
+
+}
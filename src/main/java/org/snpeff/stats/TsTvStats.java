@@ -106,6 +106,14 @@ public class TsTvStats implements SamplingStats<VcfEntry> {
 		return false;
 	}
 
+	@Override
+	public void merge(SamplingStats<VcfEntry> stats) {
+		TsTvStats tsTvStats = (TsTvStats) stats;
+		if (sampleNames == null) sampleNames = tsTvStats.sampleNames;
+		countTs = StatsMerge.add(countTs, tsTvStats.countTs);
+		countTv = StatsMerge.add(countTv, tsTvStats.countTv);
+	}
+
 	/**
 	 * Update Ts and Tv counters
 	 * Only for SNPs
@@ -1,22 +1,31 @@
 package org.snpeff.stats;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 
 import org.snpeff.interval.Gene;
 import org.snpeff.interval.Genome;
-import org.snpeff.interval.Marker;
 import org.snpeff.interval.Transcript;
+import org.snpeff.interval.Variant;
 import org.snpeff.snpEffect.EffectType;
 import org.snpeff.snpEffect.VariantEffect;
+import org.snpeff.snpEffect.VariantEffect.EffectImpact;
 import org.snpeff.snpEffect.VariantEffect.FunctionalClass;
 import org.snpeff.stats.plot.GoogleGenePercentBar;
+import org.snpeff.vcf.EffFormatVersion;
 
 /**
  *
  * Variants effect statistics
+ *
+ * Note: Counters are primitive arrays indexed by EffectType, EffectImpact
+ * and FunctionalClass ordinals (effect names are indexed using the
+ * 'geneCountByEffectTable' types). Strings and 'CountByType' objects
+ * are only created at report time.
  */
 public class VariantEffectStats implements SamplingStats<VariantEffect> {
 
@@ -27,33 +36,38 @@ public class VariantEffectStats implements SamplingStats<VariantEffect> {
 	int codonChangeCountMax = Integer.MIN_VALUE;
 	int countWarnings = 0;
 	int countErrors = 0;
+	int sampleNum = 0; // Number of samples (used to avoid counting repeated effects)
 	Genome genome;
-	CountByType countByEffect;
+	long countByEffect[]; // Counts by effect name (index is a type in 'geneCountByEffectTable')
+	long countByGeneRegion[]; // Counts by EffectType ordinal
+	long countByImpact[]; // Counts by EffectImpact ordinal
+	long countByFunctionalClass[]; // Counts by FunctionalClass ordinal
 	CountByType countByCodon;
 	CountByType countByAa;
-	CountByType countByGeneRegion;
-	CountByType countByImpact;
-	CountByType countByFunctionalClass;
-	CountByType countByBioType;
 	HashSet<String> codonSet, aaSet, geneSet;
+	String effectByType[]; // Latest effect string, by EffectType ordinal (these strings are usually constants, so we compare by reference)
+	int effectKeyIdxByType[]; // Effect key index for 'effectByType', by EffectType ordinal
+	HashMap<String, Integer> effectKeyIdx; // Effect string (e.g. "3_prime_UTR_truncation+exon_loss_variant") to effect key index
+	List<int[]> effectKeyNames; // Effect names in each effect key (indexes in 'geneCountByEffectTable' types)
+	int effectKeySampleNum[]; // Latest sample each effect key was counted
 	GeneCountByTypeTable geneCountByRegionTable;
 	GeneCountByTypeTable geneCountByImpactTable;
 	GeneCountByTypeTable geneCountByEffectTable;
 
 	public VariantEffectStats(Genome genome) {
 		this.genome = genome;
-		countByEffect = new CountByType();
+		countByEffect = new long[0];
+		countByGeneRegion = new long[EffectType.values().length];
+		countByImpact = new long[EffectImpact.values().length];
+		countByFunctionalClass = new long[FunctionalClass.values().length];
 		countByCodon = new CountByType();
 		countByAa = new CountByType();
-		countByGeneRegion = new CountByType();
-		countByImpact = new CountByType();
-		countByFunctionalClass = new CountByType();
 		codonSet = new HashSet<>();
 		aaSet = new HashSet<>();
 		geneSet = new HashSet<>();
-		geneCountByRegionTable = new GeneCountByTypeTable();
-		geneCountByEffectTable = new GeneCountByTypeTable();
-		geneCountByImpactTable = new GeneCountByTypeTable();
+		geneCountByRegionTable = new GeneCountByTypeTable(EffectType.values());
+		geneCountByImpactTable = new GeneCountByTypeTable(EffectImpact.values());
+		initEffects();
 	}
 
 	/**
@@ -63,6 +77,36 @@ public class VariantEffectStats implements SamplingStats<VariantEffect> {
 		return oldItem + CHANGE_SEPARATOR + newItem;
 	}
 
+	/**
+	 * Effect key index for this effect type
+	 */
+	int effectKeyIdx(EffectType effectType, Variant variant) {
+		String effect = (useSequenceOntology ? effectType.toSequenceOntology(EffFormatVersion.FORMAT_EFF_4, variant) : effectType.toString());
+
+		// Same string as latest one? No need to look it up
+		int ord = effectType.ordinal();
+		if (effect == effectByType[ord]) return effectKeyIdxByType[ord];
+
+		Integer keyIdx = effectKeyIdx.get(effect);
+		if (keyIdx == null) {
+			// New effect key: Split into effect names
+			String names[] = effect.split("[\\+&]");
+			int namesIdx[] = new int[names.length];
+			for (int i = 0; i < names.length; i++)
+				namesIdx[i] = geneCountByEffectTable.typeIndex(names[i]);
+
+			keyIdx = effectKeyNames.size();
+			effectKeyNames.add(namesIdx);
+			effectKeyIdx.put(effect, keyIdx);
+			effectKeySampleNum = Arrays.copyOf(effectKeySampleNum, effectKeyNames.size());
+			countByEffect = Arrays.copyOf(countByEffect, geneCountByEffectTable.typeNames.size());
+		}
+
+		effectByType[ord] = effect;
+		effectKeyIdxByType[ord] = keyIdx;
+		return keyIdx;
+	}
+
 	/**
 	 * Background color used for AA change table
 	 */
@@ -109,19 +153,22 @@ public class VariantEffectStats implements SamplingStats<VariantEffect> {
 	}
 
 	public CountByType getCountByEffect() {
-		return countByEffect;
+		CountByType countByType = new CountByType();
+		for (int i = 0; i < countByEffect.length; i++)
+			if (countByEffect[i] > 0) countByType.inc(geneCountByEffectTable.typeName(i), (int) countByEffect[i]);
+		return countByType;
 	}
 
 	public CountByType getCountByFunctionalClass() {
-		return countByFunctionalClass;
+		return toCountByType(countByFunctionalClass, FunctionalClass.values());
 	}
 
 	public CountByType getCountByGeneRegion() {
-		return countByGeneRegion;
+		return toCountByType(countByGeneRegion, EffectType.values());
 	}
 
 	public CountByType getCountByImpact() {
-		return countByImpact;
+		return toCountByType(countByImpact, EffectImpact.values());
 	}
 
 	public int getCountErrors() {
@@ -148,6 +195,7 @@ public class VariantEffectStats implements SamplingStats<VariantEffect> {
 	 * Barplot of different gene regions
 	 */
 	public String getPlotGene() {
+		CountByType countByGeneRegion = getCountByGeneRegion();
 		GoogleGenePercentBar gb = new GoogleGenePercentBar("Variations", "", "%" //
 				, 100 * countByGeneRegion.percent("" + EffectType.INTERGENIC) //
 				, 100 * countByGeneRegion.percent("" + EffectType.UPSTREAM) //
@@ -163,15 +211,65 @@ public class VariantEffectStats implements SamplingStats<VariantEffect> {
 	}
 
 	public double getSilentRatio() {
-		long mis = countByFunctionalClass.get(FunctionalClass.MISSENSE.toString());
-		long silent = countByFunctionalClass.get(FunctionalClass.SILENT.toString());
+		long mis = countByFunctionalClass[FunctionalClass.MISSENSE.ordinal()];
+		long silent = countByFunctionalClass[FunctionalClass.SILENT.ordinal()];
 		if (silent == 0) return 0.0;
 		return ((double) mis) / ((double) silent);
 	}
 
 	@Override
 	public boolean hasData() {
-		return countByEffect.hasData();
+		for (long count : countByEffect)
+			if (count > 0) return true;
+		return false;
+	}
+
+	/**
+	 * Initialize effect names (they depend on 'useSequenceOntology')
+	 */
+	void initEffects() {
+		int numEffectTypes = EffectType.values().length;
+		effectByType = new String[numEffectTypes];
+		effectKeyIdxByType = new int[numEffectTypes];
+		effectKeyIdx = new HashMap<>();
+		effectKeyNames = new ArrayList<>();
+		effectKeySampleNum = new int[0];
+		countByEffect = new long[0];
+		geneCountByEffectTable = new GeneCountByTypeTable();
+	}
+
+	@Override
+	public void merge(SamplingStats<VariantEffect> stats) {
+		VariantEffectStats variantEffectStats = (VariantEffectStats) stats;
+		countWarnings += variantEffectStats.countWarnings;
+		countErrors += variantEffectStats.countErrors;
+
+		// Effect names may have different indexes in each object
+		for (int i = 0; i < variantEffectStats.countByEffect.length; i++) {
+			if (variantEffectStats.countByEffect[i] == 0) continue;
+			int typeIdx = geneCountByEffectTable.typeIndex(variantEffectStats.geneCountByEffectTable.typeName(i));
+			if (typeIdx >= countByEffect.length) countByEffect = Arrays.copyOf(countByEffect, geneCountByEffectTable.typeNames.size());
+			countByEffect[typeIdx] += variantEffectStats.countByEffect[i];
+		}
+
+		merge(countByGeneRegion, variantEffectStats.countByGeneRegion);
+		merge(countByImpact, variantEffectStats.countByImpact);
+		merge(countByFunctionalClass, variantEffectStats.countByFunctionalClass);
+		countByCodon.merge(variantEffectStats.countByCodon);
+		countByAa.merge(variantEffectStats.countByAa);
+
+		codonSet.addAll(variantEffectStats.codonSet);
+		aaSet.addAll(variantEffectStats.aaSet);
+		geneSet.addAll(variantEffectStats.geneSet);
+
+		geneCountByRegionTable.merge(variantEffectStats.geneCountByRegionTable);
+		geneCountByImpactTable.merge(variantEffectStats.geneCountByImpactTable);
+		geneCountByEffectTable.merge(variantEffectStats.geneCountByEffectTable);
+	}
+
+	void merge(long counts[], long countsOther[]) {
+		for (int i = 0; i < counts.length; i++)
+			counts[i] += countsOther[i];
 	}
 
 	@Override
@@ -180,43 +278,49 @@ public class VariantEffectStats implements SamplingStats<VariantEffect> {
 		if (variantEffect.hasWarning()) countWarnings++;
 		if (variantEffect.hasError()) countErrors++;
 
-		// Count by effect
-		String effect = variantEffect.getEffectTypeString(useSequenceOntology);
-		if (effect == null || effect.isEmpty()) return; // No effect? Nothing to do
-
-		// Split effects
-		String effects[] = effect.split("[\\+&]");
-		for (String eff : effects)
-			countByEffect.inc(eff);
+		// No effect? Nothing to do
+		List<EffectType> effectTypes = variantEffect.getEffectTypes();
+		if (effectTypes == null || effectTypes.isEmpty()) return;
+		sampleNum++;
+
+		// Gene and transcript
+		Gene gene = null;
+		Transcript tr = null;
+		if (variantEffect.getMarker() != null) { // E.g. Intergenic is not associated with a marker
+			gene = variantEffect.getGene();
+			tr = variantEffect.getTranscript();
+		}
+		boolean countGene = (tr != null && gene != null);
+
+		// Count by effect (make sure we don't count the same effect twice)
+		Variant variant = variantEffect.getVariant();
+		for (EffectType effectType : effectTypes) {
+			int keyIdx = effectKeyIdx(effectType, variant);
+			if (effectKeySampleNum[keyIdx] == sampleNum) continue;
+			effectKeySampleNum[keyIdx] = sampleNum;
+
+			for (int typeIdx : effectKeyNames.get(keyIdx)) {
+				countByEffect[typeIdx]++;
+				if (countGene) geneCountByEffectTable.sample(gene, tr, typeIdx, variantEffect); // Count by effect by transcript
+			}
+		}
 
 		// Count by gene region
-		String geneRegion = variantEffect.getGeneRegion();
-		countByGeneRegion.inc(geneRegion);
+		int geneRegionIdx = variantEffect.getGeneRegionType().ordinal();
+		countByGeneRegion[geneRegionIdx]++;
 
 		// Count by impact
-		String impact = variantEffect.getEffectImpact().toString();
-		countByImpact.inc(impact);
+		int impactIdx = variantEffect.getEffectImpact().ordinal();
+		countByImpact[impactIdx]++;
 
 		// Count by functional class
 		FunctionalClass fc = variantEffect.getFunctionalClass();
-		if (fc != FunctionalClass.NONE) countByFunctionalClass.inc(fc.toString());
-
-		// Count gene and gene region
-		Marker marker = variantEffect.getMarker();
-		if (marker != null) { // E.g. Intergenic is not associated with a marker
-			Gene gene = variantEffect.getGene();
-			Transcript tr = variantEffect.getTranscript();
-			if (tr != null && gene != null) {
-				// Count by effect by transcript
-				for (String eff : effects)
-					geneCountByEffectTable.sample(gene, tr, eff, variantEffect);
-
-				// Count by region by transcript
-				geneCountByRegionTable.sample(gene, tr, geneRegion, variantEffect);
-
-				// Count by impact
-				geneCountByImpactTable.sample(gene, tr, variantEffect.getEffectImpact().toString(), variantEffect);
-			}
+		if (fc != FunctionalClass.NONE) countByFunctionalClass[fc.ordinal()]++;
+
+		// Count gene region and impact by transcript
+		if (countGene) {
+			geneCountByRegionTable.sample(gene, tr, geneRegionIdx, variantEffect);
+			geneCountByImpactTable.sample(gene, tr, impactIdx, variantEffect);
 		}
 
 		//---
@@ -264,7 +368,11 @@ public class VariantEffectStats implements SamplingStats<VariantEffect> {
 		}
 	}
 
+	/**
+	 * Note: Effect counters are reset, so this should be set before sampling
+	 */
 	public void setUseSequenceOntology(boolean useSequenceOntology) {
+		if (this.useSequenceOntology != useSequenceOntology) initEffects();
 		this.useSequenceOntology = useSequenceOntology;
 	}
 
@@ -274,17 +382,20 @@ public class VariantEffectStats implements SamplingStats<VariantEffect> {
 	String[] split(String str, int size) {
 		int numStr = str.length() / size;
 		String splitStr[] = new String[numStr];
-		char chars[] = str.toCharArray();
-
-		for (int i = 0, h = 0; (i < chars.length) && (h < splitStr.length); h++) {
-			String newStr = "";
 
-			for (int j = 0; (j < size) && (i < chars.length); j++, i++)
-				newStr += chars[i];
-
-			splitStr[h] = newStr;
-		}
+		for (int h = 0, i = 0; h < numStr; h++, i += size)
+			splitStr[h] = str.substring(i, i + size);
 
 		return splitStr;
 	}
+
+	/**
+	 * Create a CountByType from counts indexed by ordinal
+	 */
+	CountByType toCountByType(long counts[], Enum<?> types[]) {
+		CountByType countByType = new CountByType();
+		for (int i = 0; i < counts.length; i++)
+			if (counts[i] > 0) countByType.inc(types[i].toString(), (int) counts[i]);
+		return countByType;
+	}
 }
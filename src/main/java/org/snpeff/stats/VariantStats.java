@@ -232,6 +232,28 @@ public class VariantStats implements SamplingStats<Variant> {
 		indelLen.sample(len);
 	}
 
+	@Override
+	public void merge(SamplingStats<Variant> stats) {
+		VariantStats variantStats = (VariantStats) stats;
+		countVariants += variantStats.countVariants;
+		countNonVariants += variantStats.countNonVariants;
+		countNonEmptyId += variantStats.countNonEmptyId;
+		countByChangeType.merge(variantStats.countByChangeType);
+		baseChangesCount.merge(variantStats.baseChangesCount);
+		indelLen.merge(variantStats.indelLen);
+
+		// Coverage by chromosome
+		for (String chrName : variantStats.chrPosStatsbyName.keySet()) {
+			ChrPosStats chrPosStatsOther = variantStats.chrPosStatsbyName.get(chrName);
+			ChrPosStats chrPosStats = chrPosStatsbyName.get(chrName);
+			if (chrPosStats == null) {
+				chrPosStats = new ChrPosStats(chrName, chrPosStatsOther.length);
+				chrPosStatsbyName.put(chrName, chrPosStats);
+			}
+			chrPosStats.merge(chrPosStatsOther);
+		}
+	}
+
 	/**
 	 * Use this sample to perform statistics
 	 */
@@ -53,6 +53,18 @@ public class VariantTypeStats implements SamplingStats<VcfEntry> {
 		return counterSnp != null;
 	}
 
+	@Override
+	public void merge(SamplingStats<VcfEntry> stats) {
+		VariantTypeStats variantTypeStats = (VariantTypeStats) stats;
+		if (sampleNames == null) sampleNames = variantTypeStats.sampleNames;
+		counterSnp = StatsMerge.add(counterSnp, variantTypeStats.counterSnp);
+		counterMnp = StatsMerge.add(counterMnp, variantTypeStats.counterMnp);
+		counterIns = StatsMerge.add(counterIns, variantTypeStats.counterIns);
+		counterDel = StatsMerge.add(counterDel, variantTypeStats.counterDel);
+		counterComplex = StatsMerge.add(counterComplex, variantTypeStats.counterComplex);
+		counterMultiallelic = StatsMerge.add(counterMultiallelic, variantTypeStats.counterMultiallelic);
+	}
+
 	/**
 	 * Update MAC counters
 	 */
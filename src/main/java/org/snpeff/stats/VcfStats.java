@@ -51,6 +51,16 @@ public class VcfStats implements SamplingStats<VcfEntry> {
 		return tsTvStats.hasData() || genotypeStats.hasData();
 	}
 
+	@Override
+	public void merge(SamplingStats<VcfEntry> stats) {
+		VcfStats vcfStats = (VcfStats) stats;
+		qualityStats.merge(vcfStats.qualityStats);
+		tsTvStats.merge(vcfStats.tsTvStats);
+		tsTvStatsKnown.merge(vcfStats.tsTvStatsKnown);
+		genotypeStats.merge(vcfStats.genotypeStats);
+		countMultiallelic += vcfStats.countMultiallelic;
+	}
+
 	@Override
 	public void sample(VcfEntry vcfEntry) {
 		// Does it have an ID? => it is a 'known' variant.
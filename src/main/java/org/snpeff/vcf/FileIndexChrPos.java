@@ -4,10 +4,14 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.snpeff.interval.Chromosome;
@@ -18,6 +22,15 @@ import org.snpeff.util.Gpr;
  *
  * WARNING: It is assumed that the file is ordered by position (chromosome order does not matter)
  *
+ * The file is memory mapped (in segments, since a single mapping cannot
+ * be larger than 2GB), so reading bytes does not require system calls.
+ * Lines read while bisecting the file are cached.
+ *
+ * Optionally, 'checkpoints' (chr, pos, offset of lines sampled every
+ * few bytes) can be calculated and saved to a sidecar '.idx' file. Queries
+ * use checkpoints to narrow down the region to bisect, so repeated region
+ * queries on huge files only read a few pages.
+ *
  * @author pcingola
  */
 public class FileIndexChrPos {
@@ -29,6 +42,8 @@ public class FileIndexChrPos {
 	public class FileRegion {
 		long start, end;
 		String lineStart, lineEnd;
+		long checkpointOffsets[]; // Checkpoints: Offset (in file) of sampled lines
+		int checkpointPos[]; // Checkpoints: Genomic positions of sampled lines (sorted)
 
 		@Override
 		public String toString() {
@@ -58,17 +73,65 @@ public class FileIndexChrPos {
 	}
 
 	public static final int POS_OFFSET = 1; // VCF files are one-based
-	private static final int BUFF_SIZE = 17; // 1024 * 1024;
+	public static final int SEGMENT_BITS = 30; // Memory mapped segments are 1GB
+	public static final int LINE_CACHE_SIZE = 128; // Number of lines cached (lines in multi-sample VCF files can be huge)
+	public static final long CHECKPOINT_STEP = 1024 * 1024; // Sample a checkpoint every 1MB
+	public static final String INDEX_FILE_EXTENSION = ".idx";
+	public static final String INDEX_FILE_HEADER = "#FileIndexChrPos";
+	private static final int BUFF_SIZE = 1024 * 1024;
 
 	boolean verbose = false;
 	boolean debug = false;
 	String fileName;
 	long size = 0;
 	RandomAccessFile file;
+	int segmentBits = SEGMENT_BITS;
+	MappedByteBuffer segments[]; // Memory mapped file segments
+	LinkedHashMap<Long, LineAndPos> lineCache; // Cache lines by line start position (access must be synchronized, see 'cachedLine()')
 	HashMap<String, FileRegion> fileRegions = new HashMap<String, FileIndexChrPos.FileRegion>(); // Store file regions by chromosome
 
 	public FileIndexChrPos(String fileName) {
 		this.fileName = fileName;
+
+		// Least recently used cache
+		lineCache = new LinkedHashMap<Long, LineAndPos>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, LineAndPos> eldest) {
+				return size() > LINE_CACHE_SIZE;
+			}
+		};
+	}
+
+	/**
+	 * Add a line to the cache
+	 */
+	synchronized void cacheLine(LineAndPos linePos) {
+		lineCache.put(linePos.position, linePos);
+	}
+
+	/**
+	 * Get a line from the cache
+	 * @param start : Line start position
+	 * @return Cached line or null if not in cache
+	 */
+	synchronized LineAndPos cachedLine(long start) {
+		return lineCache.get(start);
+	}
+
+	/**
+	 * Index of the first checkpoint whose position is greater than 'pos'
+	 * (or greater or equal if 'orEqual' is true)
+	 */
+	int checkpointAfter(int checkpointPos[], int pos, boolean orEqual) {
+		int lo = 0, hi = checkpointPos.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (checkpointPos[mid] < pos || (!orEqual && checkpointPos[mid] == pos)) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
 	}
 
 	/**
@@ -79,6 +142,10 @@ public class FileIndexChrPos {
 		return line.split("\\t")[0];
 	}
 
+	synchronized void clearLineCache() {
+		lineCache.clear();
+	}
+
 	/**
 	 * Close file
 	 */
@@ -90,6 +157,8 @@ public class FileIndexChrPos {
 			throw new RuntimeException(e);
 		}
 		file = null;
+		segments = null;
+		clearLineCache();
 	}
 
 	/**
@@ -106,25 +175,16 @@ public class FileIndexChrPos {
 
 		StringBuilder sb = new StringBuilder();
 
-		try {
-			byte buff[] = new byte[BUFF_SIZE];
-			file.seek(start);
-			for (long curr = start; curr <= end;) {
-				long len = Math.min(BUFF_SIZE, end - curr + 1); // Maximum length to read
-				int read = file.read(buff, 0, (int) len); // Read file
-
-				if (read <= 0) break; // Error or nothing read, abort
-
-				String out = new String(buff, 0, read);
+		end = Math.min(end, size() - 1);
+		for (long curr = start; curr <= end;) {
+			long len = Math.min(BUFF_SIZE, end - curr + 1); // Maximum length to read
+			String out = new String(getBytes(curr, curr + len));
 
-				// Show or append to string
-				if (toString) sb.append(out);
-				else System.out.print(out);
+			// Show or append to string
+			if (toString) sb.append(out);
+			else System.out.print(out);
 
-				curr += read;
-			}
-		} catch (Exception e) {
-			throw new RuntimeException("Error reading file '" + fileName + "' from position " + start + " to " + end);
+			curr += len;
 		}
 
 		return sb.toString();
@@ -170,7 +230,7 @@ public class FileIndexChrPos {
 		if (chrPos == posStart) return found(start, lineStart, lessEq); // Is it lineStart?
 		if (posEnd == chrPos) return found(end, lineEnd, lessEq); // Is it lineEnd?
 		if (chrPos < posStart) return start; // Before start?
-		if (posEnd < chrPos) return end + lineEnd.length() + 1; // After end?
+		if (posEnd < chrPos) return nextLine(end, lineEnd); // After end?
 		if (start + 1 >= end) { // Only one byte of difference between start an end? (i.e. we are at a line boundary)
 			if (chrPos <= posStart) return found(start, lineStart, lessEq);
 			if (chrPos < posEnd) return found(end, lineEnd, true);
@@ -199,15 +259,48 @@ public class FileIndexChrPos {
 		FileRegion fr = fileRegions.get(chr);
 		if (fr == null) throw new RuntimeException("No such chromosome: '" + chr + "'");
 
+		long start = fr.start, end = fr.end;
+		String lineStart = fr.lineStart, lineEnd = fr.lineEnd;
+
+		// Use checkpoints to narrow down the region to bisect: All lines at
+		// position 'pos' are between the last checkpoint before 'pos' and
+		// the first checkpoint after 'pos'
+		if (fr.checkpointPos != null) {
+			int idxStart = checkpointAfter(fr.checkpointPos, pos, true) - 1;
+			if ((idxStart >= 0) && (fr.checkpointOffsets[idxStart] > start)) {
+				start = fr.checkpointOffsets[idxStart];
+				lineStart = getLine(start).line;
+			}
+
+			int idxEnd = checkpointAfter(fr.checkpointPos, pos, false);
+			if ((idxEnd < fr.checkpointPos.length) && (fr.checkpointOffsets[idxEnd] < end)) {
+				end = fr.checkpointOffsets[idxEnd];
+				lineEnd = getLine(end).line;
+			}
+		}
+
 		// Find position in file
-		long posFound = find(pos, fr.start, fr.lineStart, fr.end, fr.lineEnd, lessEq);
+		long posFound = find(pos, start, lineStart, end, lineEnd, lessEq);
 
 		// Get line information
 		LineAndPos linePos = getLine(posFound);
+		if (linePos == null) return -1;
+
+		// Repeated positions: Bisection can stop at any of the lines having
+		// position 'pos', so we move to the first one (lessEq) or to the
+		// line after the last one (!lessEq)
+		if (lessEq) {
+			for (LineAndPos prev = getLine(linePos.position - 1); isLineAt(prev, chr, pos); prev = getLine(prev.position - 1))
+				linePos = prev;
+		} else {
+			while (isLineAt(linePos, chr, pos)) {
+				linePos = getLine(linePos.position + linePos.line.length() + 1);
+				if (linePos == null) return -1;
+			}
+		}
 
 		// Get beginning of line position
-		if (linePos != null) return linePos.position;
-		return -1;
+		return linePos.position;
 	}
 
 	/**
@@ -215,7 +308,7 @@ public class FileIndexChrPos {
 	 */
 	long found(long filePos, String fileLine, boolean lessEq) {
 		if (!lessEq) {
-			long pos = filePos + fileLine.length() + 1; // Next line
+			long pos = nextLine(filePos, fileLine);
 			return (pos < size() ? pos : size());
 		}
 
@@ -227,13 +320,8 @@ public class FileIndexChrPos {
 	 * Get a byte from a file
 	 */
 	public byte get(long bytePosition) {
-		try {
-			// Change position if needed
-			if (file.getFilePointer() != bytePosition) file.seek(bytePosition);
-			return (byte) file.read();
-		} catch (IOException e) {
-			throw new RuntimeException("Error readin file '" + fileName + "' at position " + bytePosition, e);
-		}
+		if ((bytePosition < 0) || (bytePosition >= size)) return -1; // Out of file
+		return segments[(int) (bytePosition >>> segmentBits)].get((int) (bytePosition & ((1L << segmentBits) - 1)));
 	}
 
 	/**
@@ -245,75 +333,64 @@ public class FileIndexChrPos {
 	 * @return An array of 'len' bytes. null if either end of file (len > 0) or beginning of file (len < 0)
 	 */
 	public byte[] get(long bytePosition, int len) {
-		try {
-			int size = Math.abs(len);
-
-			// Change position if needed
-			long pos = bytePosition;
-			if (len < 0) {
-				if (bytePosition <= 0) return null;
-				pos -= size;
-
-				// Before beginning of file?
-				if (pos < 0) {
-					pos = 0;
-					size = (int) bytePosition;
-				}
-				pos = Math.max(pos, 0);
+		int size = Math.abs(len);
+
+		// Change position if needed
+		long pos = bytePosition;
+		if (len < 0) {
+			if (bytePosition <= 0) return null;
+			pos -= size;
+
+			// Before beginning of file?
+			if (pos < 0) {
+				pos = 0;
+				size = (int) bytePosition;
 			}
-			if (file.getFilePointer() != pos) file.seek(pos);
-
-			byte buff[] = new byte[size];
-			int read = file.read(buff);
+		}
 
-			// Nothing to read?
-			if (read <= 0) return null;
+		// Nothing to read?
+		long end = Math.min(pos + size, size());
+		if (pos >= end) return null;
+		byte buff[] = getBytes(pos, end);
+		int read = buff.length;
+
+		// Only return bytes until 'new line'
+		if (len > 0) {
+			// Find new line
+			for (int i = 0; i < read; i++)
+				if (buff[i] == '\n') return getBytes(pos, pos + i + 1);
+		} else if (len < 0) {
+			// Find new line backwards
+			for (int i = read - 1; i >= 0; i--)
+				if (buff[i] == '\n') return getBytes(pos + i, end);
+		}
 
-			// Buffer was too long? Return an array of byte with exactly the number of bytes
-			if (read < buff.length) {
-				byte newBuff[] = new byte[read];
-				System.arraycopy(buff, 0, newBuff, 0, read);
-				buff = newBuff;
-			}
+		return buff;
+	}
 
-			// Only return bytes until 'new line'
-			if (len > 0) {
-				// Find new line
-				int newLine = -1;
-				for (int i = 0; i < read; i++)
-					if (buff[i] == '\n') {
-						newLine = i;
-						break;
-					}
-
-				// Copy only the part until a newLine
-				if (newLine >= 0) {
-					byte newBuff[] = new byte[newLine + 1];
-					System.arraycopy(buff, 0, newBuff, 0, newLine + 1);
-					buff = newBuff;
-				}
-			} else if (len < 0) {
-				// Find new line backwards
-				int newLine = -1;
-				for (int i = read - 1; i >= 0; i--)
-					if (buff[i] == '\n') {
-						newLine = i;
-						break;
-					}
-
-				// Copy only the part until a newLine
-				if (newLine >= 0) {
-					byte newBuff[] = new byte[read - newLine];
-					for (int i = newLine, j = 0; i < read; i++, j++)
-						newBuff[j] = buff[i];
-					buff = newBuff;
-				}
+	/**
+	 * Read bytes in file coordinates [start, end)
+	 */
+	byte[] getBytes(long start, long end) {
+		byte buff[] = new byte[(int) (end - start)];
+		long segmentSize = 1L << segmentBits;
+
+		// Copy from each segment
+		for (int i = 0; i < buff.length;) {
+			long pos = start + i;
+			int segNum = (int) (pos >>> segmentBits);
+			int segPos = (int) (pos & (segmentSize - 1));
+			int len = (int) Math.min(buff.length - i, segmentSize - segPos);
+
+			MappedByteBuffer segment = segments[segNum];
+			synchronized (segment) { // Buffer position is shared
+				segment.position(segPos);
+				segment.get(buff, i, len);
 			}
-
-			return buff;
-		} catch (IOException e) {
-			throw new RuntimeException("Error readin file '" + fileName + "' at position " + bytePosition, e);
+			i += len;
 		}
+
+		return buff;
 	}
 
 	/**
@@ -354,40 +431,16 @@ public class FileIndexChrPos {
 	 * @return A string with the line that 'pos' hits, null if it's out of boundaries
 	 */
 	public LineAndPos getLine(long pos) {
-		int BUFF_SIZE = 10240;
-		long size = size();
-		if ((pos >= size) || (pos < 0)) return null;
-
-		LineAndPos linePos = new LineAndPos();
-		StringBuffer sb = new StringBuffer();
-
-		// Get bytes after 'pos'
-		long position;
-		for (position = pos; position < size;) {
-			byte b[] = get(position, BUFF_SIZE);
-			if (b == null) break; // End of file
-			sb.append(new String(b));
-			if (b[b.length - 1] == '\n') break; // Found new line?
-			position += b.length;
+		if ((pos >= size()) || (pos < 0)) return null;
+
+		// Lines are cached by start position, so that probes hitting the same line share one entry
+		long start = lineStart(pos);
+		LineAndPos linePos = cachedLine(start);
+		if (linePos == null) {
+			linePos = readLine(start);
+			cacheLine(linePos);
 		}
 
-		// Get bytes before 'pos'
-		for (position = pos; position >= 0;) {
-			byte b[] = get(position, -BUFF_SIZE);
-			if (b == null) break; // Beginning of file
-			sb.insert(0, new String(b));
-			position -= b.length;
-			if (b[0] == '\n') break; // Found new line?
-		}
-
-		// Remove leading and trailing '\n'?
-		int lineStart = 0, lineEnd = sb.length();
-		if (sb.charAt(0) == '\n') lineStart = 1;
-		if (sb.charAt(sb.length() - 1) == '\n') lineEnd = sb.length() - 1;
-
-		linePos.line = sb.toString().substring(lineStart, lineEnd);
-		linePos.position = position + lineStart;
-
 		return linePos;
 	}
 
@@ -530,7 +583,96 @@ public class FileIndexChrPos {
 		indexChromos(mid, lineMid, end, lineEnd);
 	}
 
-	void init(FileChannel channel) throws IOException {
+	/**
+	 * Sample lines every 'step' bytes and use them as checkpoints
+	 * Note: Chromosomes must be indexed first (see 'index()')
+	 */
+	public void indexCheckpoints(long step) {
+		if (verbose) System.err.println("\tIndexing checkpoints every " + step + " bytes");
+
+		HashMap<String, List<long[]>> checkpointsByChr = new HashMap<>();
+		long prevOffset = -1;
+		for (long offset = 0; offset < size(); offset += step) {
+			LineAndPos lp = readLine(offset);
+			if ((lp.position == prevOffset) || (chromo(lp.line) == null)) continue; // Same line as before or header line
+			prevOffset = lp.position;
+
+			String chr = Chromosome.simpleName(chromo(lp.line));
+			List<long[]> checkpoints = checkpointsByChr.get(chr);
+			if (checkpoints == null) {
+				checkpoints = new ArrayList<>();
+				checkpointsByChr.put(chr, checkpoints);
+			}
+			checkpoints.add(new long[] { pos(lp.line), lp.position });
+		}
+
+		setCheckpoints(checkpointsByChr);
+	}
+
+	/**
+	 * Load checkpoints from sidecar index file, if available.
+	 * Otherwise calculate checkpoints and save them to a sidecar index file
+	 * Note: Chromosomes must be indexed first (see 'index()')
+	 */
+	public void indexCheckpoints() {
+		if (loadCheckpoints()) return;
+		indexCheckpoints(CHECKPOINT_STEP);
+		saveCheckpoints();
+	}
+
+	/**
+	 * Position where the line containing 'pos' starts
+	 */
+	long lineStart(long pos) {
+		long start = pos;
+		while ((start > 0) && (get(start - 1) != '\n'))
+			start--;
+		return start;
+	}
+
+	/**
+	 * Load checkpoints from a sidecar index file
+	 * @return false if the index file does not exist, is older than the file or does not match the file
+	 */
+	public boolean loadCheckpoints() {
+		String idxFile = fileName + INDEX_FILE_EXTENSION;
+		File idx = new File(idxFile);
+		if (!idx.exists()) return false;
+		if (idx.lastModified() < new File(fileName).lastModified()) {
+			if (verbose) System.err.println("\tIndex file '" + idxFile + "' is older than file '" + fileName + "', ignoring it");
+			return false;
+		}
+		if (verbose) System.err.println("\tLoading checkpoints from '" + idxFile + "'");
+
+		String lines[] = Gpr.readFile(idxFile).split("\n");
+		if (!lines[0].equals(INDEX_FILE_HEADER + "\t" + size())) {
+			if (verbose) System.err.println("\tIndex file '" + idxFile + "' does not match file '" + fileName + "', ignoring it");
+			return false;
+		}
+
+		HashMap<String, List<long[]>> checkpointsByChr = new HashMap<>();
+		for (int i = 1; i < lines.length; i++) {
+			String fields[] = lines[i].split("\t");
+			List<long[]> checkpoints = checkpointsByChr.get(fields[0]);
+			if (checkpoints == null) {
+				checkpoints = new ArrayList<>();
+				checkpointsByChr.put(fields[0], checkpoints);
+			}
+			checkpoints.add(new long[] { Gpr.parseIntSafe(fields[1]), Long.parseLong(fields[2]) });
+		}
+
+		setCheckpoints(checkpointsByChr);
+		return true;
+	}
+
+	/**
+	 * Position of the line after 'line'
+	 * Note: 'filePos' can be any position within the line (e.g. when bisecting), not only the line start
+	 */
+	long nextLine(long filePos, String line) {
+		LineAndPos linePos = getLine(filePos);
+		if (linePos != null) filePos = linePos.position;
+		return filePos + line.length() + 1;
 	}
 
 	/**
@@ -541,9 +683,21 @@ public class FileIndexChrPos {
 			File f = new File(fileName);
 			size = f.length();
 			file = new RandomAccessFile(f, "r");
+
+			// Map file segments
+			FileChannel channel = file.getChannel();
+			long segmentSize = 1L << segmentBits;
+			int numSegments = (int) ((size + segmentSize - 1) / segmentSize);
+			segments = new MappedByteBuffer[numSegments];
+			for (int i = 0; i < numSegments; i++) {
+				long start = i * segmentSize;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, size - start));
+			}
 		} catch (FileNotFoundException e) {
 			System.err.println("File not found '" + fileName + "'");
 			throw new RuntimeException(e);
+		} catch (IOException e) {
+			throw new RuntimeException("Error mapping file '" + fileName + "'", e);
 		}
 	}
 
@@ -556,15 +710,90 @@ public class FileIndexChrPos {
 		return Gpr.parseIntSafe(line.split("\\t")[1]) - POS_OFFSET;
 	}
 
+	/**
+	 * Is this line at chromosome 'chr' and position 'pos'?
+	 */
+	boolean isLineAt(LineAndPos linePos, String chr, int pos) {
+		if (linePos == null) return false;
+		String chrLine = chromo(linePos.line);
+		return (chrLine != null) && (pos(linePos.line) == pos) && Chromosome.simpleName(chrLine).equals(chr);
+	}
+
+	/**
+	 * Read the line where 'pos' hits
+	 */
+	LineAndPos readLine(long pos) {
+		long size = size();
+
+		// Find line start and end
+		long start = lineStart(pos);
+		long end = pos;
+		while ((end < size) && (get(end) != '\n'))
+			end++;
+
+		LineAndPos linePos = new LineAndPos();
+		linePos.line = new String(getBytes(start, end));
+		linePos.position = start;
+		return linePos;
+	}
+
 	String s(String s) {
 		if (s == null) return "null";
 		return s.length() <= 50 ? s : s.substring(0, 50) + "...";
 	}
 
+	/**
+	 * Save checkpoints to a sidecar index file
+	 */
+	public void saveCheckpoints() {
+		String idxFile = fileName + INDEX_FILE_EXTENSION;
+		if (verbose) System.err.println("\tSaving checkpoints to '" + idxFile + "'");
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(INDEX_FILE_HEADER + "\t" + size() + "\n");
+
+		ArrayList<String> chrs = new ArrayList<>();
+		chrs.addAll(fileRegions.keySet());
+		Collections.sort(chrs);
+		for (String chr : chrs) {
+			FileRegion fr = fileRegions.get(chr);
+			if (fr.checkpointPos == null) continue;
+			for (int i = 0; i < fr.checkpointPos.length; i++)
+				sb.append(chr + "\t" + fr.checkpointPos[i] + "\t" + fr.checkpointOffsets[i] + "\n");
+		}
+
+		Gpr.toFile(idxFile, sb);
+	}
+
+	/**
+	 * Set checkpoints for each chromosome
+	 * @param checkpointsByChr : List of {pos, offset} pairs by chromosome
+	 */
+	void setCheckpoints(Map<String, List<long[]>> checkpointsByChr) {
+		for (String chr : checkpointsByChr.keySet()) {
+			List<long[]> checkpoints = checkpointsByChr.get(chr);
+			FileRegion fr = getFileRegion(chr);
+			fr.checkpointPos = new int[checkpoints.size()];
+			fr.checkpointOffsets = new long[checkpoints.size()];
+			for (int i = 0; i < checkpoints.size(); i++) {
+				fr.checkpointPos[i] = (int) checkpoints.get(i)[0];
+				fr.checkpointOffsets[i] = checkpoints.get(i)[1];
+			}
+		}
+	}
+
 	public void setDebug(boolean debug) {
 		this.debug = debug;
 	}
 
+	/**
+	 * Size of memory mapped segments (must be set before opening the file)
+	 * @param segmentBits : Segment size is '2^segmentBits' bytes
+	 */
+	public void setSegmentBits(int segmentBits) {
+		this.segmentBits = segmentBits;
+	}
+
 	public void setVerbose(boolean verbose) {
 		this.verbose = verbose;
 	}
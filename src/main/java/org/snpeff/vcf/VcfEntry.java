@@ -1,6 +1,7 @@
 package org.snpeff.vcf;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -66,6 +67,14 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 
 	public static final String VCF_INFO_PRIVATE = "Private";
 
+	// Lazy fields: Materialized from the original line only when accessed
+	public static final int FIELD_FILTER = 6;
+	public static final int FIELD_INFO = 7;
+	public static final int FIELD_FORMAT = 8;
+	public static final int FIELD_GENOTYPES = 9;
+	public static final int MAX_FIELDS = 10; // We only tokenize the first 9 fields (genotypes are kept as a single field)
+	public static int INFO_SCAN_MAX = 8; // Number of INFO lookups performed by scanning the INFO field, before we parse it into a hash
+
 	private static final Map<String, String> INFO_VALUE_ENCODE;
 
 	private static final long serialVersionUID = 4226374412681243433L;
@@ -89,11 +98,13 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	protected String filter;
 	protected String format;
 	protected String formatFields[];
-	protected String genotypeFields[]; // Raw fields from VCF file
 	protected String genotypeFieldsStr; // Raw fields from VCF file (one string, tab separated)
 	protected byte genotypeScores[];
+	protected int fieldStart[]; // Start of each field in 'line' (plus one more entry: end of line + 1). Null if the entry was not parsed from a line
 	protected HashMap<String, String> info;
+	protected int infoScans; // Number of INFO lookups performed without parsing INFO field
 	protected String infoStr = "";
+	protected int lazyFields; // Bit mask of fields that have not yet been materialized from 'line' (see 'FIELD_*' constants)
 	protected String line; // Line from VCF file
 	protected int lineNum; // Line number
 	protected Double quality;
@@ -102,6 +113,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	protected List<VcfEffect> vcfEffects;
 	protected VcfFileIterator vcfFileIterator; // Iterator where this entry was red from
 	protected ArrayList<VcfGenotype> vcfGenotypes = null;
+	protected VcfGenotypeBlock genotypeBlock; // Genotypes for all samples (lazy init)
 
 	/**
 	 * Does 'value' represent an EMPTY / MISSING value in a VCF field?
@@ -224,6 +236,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 */
 	public void addFilter(String filterStr) {
 		// Get current value
+		getFilter();
 		if (filter.equals(".") || filter.equals(VcfEntry.FILTER_PASS)) filter = ""; // Empty?
 
 		// Append new value
@@ -234,11 +247,13 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * Add a 'FORMAT' field
 	 */
 	public void addFormat(String formatName) {
+		getFormat();
 		if (format == null) format = "";
 		if (format.indexOf(formatName) >= 0) throw new RuntimeException("Format field '" + formatName + "' already exists!");
 
 		// Add to format
 		format += (format.endsWith(":") ? "" : ":") + formatName;
+		formatFields = null; // Reset or invalidate format fields
 	}
 
 	/**
@@ -246,6 +261,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 */
 	public void addGenotype(String vcfGenotypeStr) {
 		if (vcfGenotypes == null) vcfGenotypes = new ArrayList<>();
+		getFormat();
 		if (format == null) format = "";
 		vcfGenotypes.add(new VcfGenotype(this, format, vcfGenotypeStr));
 
@@ -277,12 +293,16 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		if (info != null) info.put(key, value);
 
 		// Append value to infoStr
-		String addInfoStr = key + (value != null && !isFlag ? "=" + value : ""); // String to append
-		if ((infoStr == null) || infoStr.isEmpty()) infoStr = addInfoStr;
-		else {
-			if (!infoStr.endsWith(SUB_FIELD_SEP)) infoStr += SUB_FIELD_SEP; // Do we need to add a semicolon?
-			infoStr += addInfoStr; // Add info string
+		String infoStr = getInfoStr();
+		boolean addValue = (value != null && !isFlag);
+		StringBuilder sb = new StringBuilder((infoStr != null ? infoStr.length() : 0) + key.length() + (addValue ? value.length() + 2 : 1));
+		if ((infoStr != null) && !infoStr.isEmpty()) {
+			sb.append(infoStr);
+			if (!infoStr.endsWith(SUB_FIELD_SEP)) sb.append(SUB_FIELD_SEP); // Do we need to add a semicolon?
 		}
+		sb.append(key);
+		if (addValue) sb.append('=').append(value);
+		this.infoStr = sb.toString();
 
 	}
 
@@ -304,24 +324,14 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 */
 	public Boolean calcHetero() {
 		// No genotyping information? => Use number of ALT field
+		String genotypeFieldsStr = getGenotypeStr();
 		if (genotypeFieldsStr == null) return isMultiallelic();
 
 		Boolean isHetero = null;
 
-		// No genotype fields => Parse fields (we only parse them if there is only one GT field)
-		if (genotypeFields == null) {
-
-			// Are there more than two tabs? (i.e. more than one format field + one genotype field)
-			int countFields, fromIndex;
-			for (countFields = 0, fromIndex = 0; (fromIndex >= 0) && (countFields < 1); countFields++, fromIndex++)
-				fromIndex = genotypeFieldsStr.indexOf('\t', fromIndex);
-
-			// OK only one genotype field => Parse it in order to extract homo info.
-			if (countFields == 1) parseGenotypes();
-		}
-
 		// OK only one genotype field => calculate if it is heterozygous
-		if ((genotypeFields != null) && (genotypeFields.length == 1)) isHetero = getVcfGenotype(0).isHeterozygous();
+		VcfGenotypeBlock genotypeBlock = getGenotypeBlock();
+		if ((genotypeBlock != null) && (genotypeBlock.size() == 1)) isHetero = getVcfGenotype(0).isHeterozygous();
 
 		return isHetero;
 	}
@@ -399,6 +409,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 			if (type == VcfInfoType.Flag && values.length == 1) ; // OK, flags must have one or zero values
 			else return "INFO filed '" + infoName + "' has 'Number=" + vcfInfo.getNumber() + "' in header, but it contains '" + values.length + "' elements.";
 		}
+		String alts[] = getAlts();
 		if (vcfInfo.isNumberAllAlleles() && values.length != (alts.length + 1)) return "INFO filed '" + infoName + "' has 'Number=R' in header, but it contains '" + values.length + "' elements when there are '" + alts.length + "' alleles (it should have '" + (alts.length + 1) + "' elements).";
 		if (vcfInfo.isNumberAllAlleles() && values.length != alts.length) return "INFO filed '" + infoName + "' has 'Number=A' in header, but it contains '" + values.length + "' elements when there are '" + alts.length + "' alleles.";
 
@@ -456,7 +467,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 
 		// Split by semicolon and filter out the undesired values
 		boolean removed = false;
-		for (String f : filter.split(";")) {
+		for (String f : getFilter().split(";")) {
 			if (!f.equals(filterStr)) sbFilter.append((sbFilter.length() > 0 ? ";" : "") + f); // Append if it does not match filterStr
 			else removed = true;
 		}
@@ -471,12 +482,14 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * @return -1 if not found
 	 */
 	public int getAltIndex(String alt) {
+		String alts[] = getAlts();
 		for (int i = 0; i < alts.length; i++)
 			if (alts[i].equalsIgnoreCase(alt)) return i;
 		return -1;
 	}
 
 	public String[] getAlts() {
+		if (alts == null && altStr != null) parseAlts(altStr); // Lazy parse
 		return alts;
 	}
 
@@ -489,6 +502,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 			return altStr;
 		}
 
+		String alts[] = getAlts();
 		if (alts == null) return "";
 
 		StringBuilder sb = new StringBuilder();
@@ -507,31 +521,82 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		return chromosomeName;
 	}
 
+	/**
+	 * Field from the original line ('MISSING' values are converted to empty strings)
+	 * @return Field value or null if the line does not have that many fields
+	 */
+	String getField(int fieldNum) {
+		if (fieldStart == null || fieldNum + 1 >= fieldStart.length) return null;
+		int start = fieldStart[fieldNum];
+		int end = (fieldNum == FIELD_GENOTYPES ? line.length() : fieldStart[fieldNum + 1] - 1);
+		if (end - start == 1 && line.charAt(start) == '.' && fieldNum != FIELD_GENOTYPES) return "";
+		return line.substring(start, end);
+	}
+
 	public String getFilter() {
+		if (isLazy(FIELD_FILTER)) {
+			filter = getField(FIELD_FILTER);
+			if (filter == null) filter = "";
+			lazyFields &= ~(1 << FIELD_FILTER);
+		}
 		return filter;
 	}
 
 	public String getFormat() {
+		if (isLazy(FIELD_FORMAT)) {
+			format = getField(FIELD_FORMAT); // This field is optional, So it can be null or EMPTY ('.')
+			lazyFields &= ~(1 << FIELD_FORMAT);
+		}
 		return format;
 	}
 
 	public String[] getFormatFields() {
 		if (formatFields == null) {
+			String format = getFormat();
 			if (format == null) formatFields = new String[0];
 			else formatFields = format.split(":");
 		}
 		return formatFields;
 	}
 
+	/**
+	 * Raw genotype fields (tab separated). Null if there are no genotype fields
+	 */
+	public String getGenotypeStr() {
+		if (isLazy(FIELD_GENOTYPES)) {
+			genotypeFieldsStr = getField(FIELD_GENOTYPES);
+			lazyFields &= ~(1 << FIELD_GENOTYPES);
+		}
+		return genotypeFieldsStr;
+	}
+
+	/**
+	 * Genotypes for all samples (null if there are no genotypes or they are compressed)
+	 */
+	public VcfGenotypeBlock getGenotypeBlock() {
+		if (genotypeBlock == null && !isCompressedGenotypes()) {
+			String genotypeFieldsStr = getGenotypeStr();
+			if (genotypeFieldsStr != null) genotypeBlock = new VcfGenotypeBlock(this, genotypeFieldsStr);
+		}
+		return genotypeBlock;
+	}
+
 	/**
 	 * Return genotypes parsed as an array of codes
 	 */
-	public synchronized byte[] getGenotypesScores() {
+	public byte[] getGenotypesScores() {
 		if (genotypeScores != null) return genotypeScores;
 
 		// Not compressed? Parse codes
 		if (!isCompressedGenotypes()) {
-			List<VcfGenotype> vcfGts = getVcfGenotypes();
+			// Genotypes not parsed (or modified)? Decode codes from genotype block
+			if (vcfGenotypes == null) {
+				VcfGenotypeBlock genotypeBlock = getGenotypeBlock();
+				genotypeScores = (genotypeBlock != null ? genotypeBlock.getGenotypeCodes() : new byte[0]);
+				return genotypeScores;
+			}
+
+			List<VcfGenotype> vcfGts = vcfGenotypes;
 			int numSamples = vcfGts.size();
 			genotypeScores = new byte[numSamples];
 
@@ -565,7 +630,12 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * Get info string
 	 */
 	public String getInfo(String key) {
-		if (info == null) parseInfo();
+		if (info != null) return info.get(key);
+
+		// Only a few lookups? Scan the INFO field instead of parsing it
+		if (infoScans++ < INFO_SCAN_MAX) return scanInfo(key);
+
+		parseInfo();
 		return info.get(key);
 	}
 
@@ -573,10 +643,8 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * Get info string for a specific allele
 	 */
 	public String getInfo(String key, String allele) {
-		if (info == null) parseInfo();
-
 		// Get INFO value
-		String infoStr = info.get(key);
+		String infoStr = getInfo(key);
 		if (infoStr == null) return null;
 
 		// Split INFO value and match it to allele
@@ -594,6 +662,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		}
 
 		// Find ALT matching allele
+		String alts[] = getAlts();
 		for (int i = 0, j = firstAltIndex; (i < alts.length) && (j < infos.length); i++, j++)
 			if (alts[i].equalsIgnoreCase(allele)) return infos[j];
 
@@ -605,10 +674,8 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * @returns Field value (string) or null if there is no match
 	 */
 	public String getInfo(String key, Variant var) {
-		if (info == null) parseInfo();
-
 		// Get INFO value
-		String infoStr = info.get(key);
+		String infoStr = getInfo(key);
 		if (infoStr == null) return null;
 
 		// Split INFO value and match it to allele
@@ -641,8 +708,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * Does the entry exists?
 	 */
 	public boolean getInfoFlag(String key) {
-		if (info == null) parseInfo();
-		return info.containsKey(key);
+		return hasInfo(key);
 	}
 
 	/**
@@ -650,8 +716,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * The norm specifies data type as 'FLOAT', that is why the name of this method might be not intuitive
 	 */
 	public double getInfoFloat(String key) {
-		if (info == null) parseInfo();
-		String f = info.get(key);
+		String f = getInfo(key);
 		if (f == null) return Double.NaN;
 		return Gpr.parseDoubleSafe(f);
 	}
@@ -661,8 +726,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * The norm specifies data type as 'INT', that is why the name of this method might be not intuitive
 	 */
 	public long getInfoInt(String key) {
-		if (info == null) parseInfo();
-		String i = info.get(key);
+		String i = getInfo(key);
 		if (i == null) return 0;
 		return Gpr.parseLongSafe(i);
 	}
@@ -679,6 +743,11 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * Get the full (unparsed) INFO field
 	 */
 	public String getInfoStr() {
+		if (isLazy(FIELD_INFO)) {
+			infoStr = getField(FIELD_INFO);
+			if (infoStr == null) infoStr = "";
+			lazyFields &= ~(1 << FIELD_INFO);
+		}
 		return infoStr;
 	}
 
@@ -794,12 +863,12 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	}
 
 	public boolean hasGenotypes() {
-		return ((vcfGenotypes != null) && (vcfGenotypes.size() > 0)) || (genotypeFieldsStr != null);
+		return ((vcfGenotypes != null) && (vcfGenotypes.size() > 0)) || (getGenotypeStr() != null);
 	}
 
 	public boolean hasInfo(String infoFieldName) {
-		if (info == null) parseInfo();
-		return info.containsKey(infoFieldName);
+		if (info != null) return info.containsKey(infoFieldName);
+		return getInfo(infoFieldName) != null;
 	}
 
 	public boolean hasQuality() {
@@ -811,6 +880,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * WARINIG: You should use 'calcHetero()' method for a more precise calculation.
 	 */
 	public boolean isBiAllelic() {
+		String alts[] = getAlts();
 		if (alts == null) return false;
 		return alts.length == 1; // Only one ALT option? => homozygous
 	}
@@ -823,7 +893,14 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	}
 
 	public boolean isFilterPass() {
-		return filter.equals("PASS");
+		return getFilter().equals("PASS");
+	}
+
+	/**
+	 * Has this field not been materialized yet?
+	 */
+	public boolean isLazy(int fieldNum) {
+		return (lazyFields & (1 << fieldNum)) != 0;
 	}
 
 	/**
@@ -831,6 +908,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * WARINIG: You should use 'calcHetero()' method for a more precise calculation.
 	 */
 	public boolean isMultiallelic() {
+		String alts[] = getAlts();
 		if (alts == null) return false;
 		return alts.length > 1; // More than one ALT option? => not homozygous
 	}
@@ -868,6 +946,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	 * Is this a change or are the ALTs actually the same as the reference
 	 */
 	public boolean isVariant() {
+		String alts[] = getAlts();
 		if (alts == null || alts.length == 0) return false;
 
 		// Is any ALT is variant?
@@ -954,15 +1033,20 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 
 	/**
 	 * Parse a 'line' from a 'vcfFileIterator'
+	 *
+	 * Note: Only the first six fields (CHROM, POS, ID, REF, ALT and QUAL)
+	 * are parsed. FILTER, INFO, FORMAT and genotype fields are kept as
+	 * offsets into 'line' and they are only materialized when accessed.
+	 * Similarly, ALTs are split (and expanded) only when needed.
 	 */
 	public void parse() {
-		// Parse line
-		String fields[] = line.split("\t", 10); // Only pare the fist 9 fields (i.e. do not parse genotypes)
+		// Find where each field starts (only tokenize the fist 9 fields, i.e. do not tokenize genotypes)
+		int numFields = tokenize();
 
 		// Is line OK?
-		if (fields.length >= 4) {
+		if (numFields >= 4) {
 			// Chromosome and position. VCF files are one-base, so inOffset should be 1.
-			chromosomeName = fields[0].trim();
+			chromosomeName = line.substring(fieldStart[0], fieldStart[1] - 1).trim();
 
 			// Chromosome
 			Chromosome chromo = vcfFileIterator.getChromosome(chromosomeName);
@@ -970,40 +1054,34 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 			vcfFileIterator.sanityCheckChromo(chromosomeName, chromo); // Sanity check
 
 			// Start
-			start = vcfFileIterator.parsePosition(vcfFileIterator.readField(fields, 1));
+			start = vcfFileIterator.parsePosition(readField(1));
 
 			// ID (e.g. might indicate dbSnp)
-			id = vcfFileIterator.readField(fields, 2);
+			id = readField(2);
 
 			// REF
-			ref = vcfFileIterator.readField(fields, 3).toUpperCase(); // Reference and change
+			ref = readField(3).toUpperCase(); // Reference and change
 			strandMinus = false; // Strand is always positive (defined in VCF spec.)
 
-			// ALT
-			altStr = vcfFileIterator.readField(fields, 4).toUpperCase();
-			parseAlts(altStr);
+			// ALT (lazy parse, see 'getAlts()')
+			altStr = readField(4).toUpperCase();
+			alts = null;
 
 			// Quality
-			String qStr = vcfFileIterator.readField(fields, 5);
+			String qStr = readField(5);
 			if (!qStr.isEmpty()) quality = Gpr.parseDoubleSafe(qStr);
 			else quality = null;
 
-			// Filter
-			filter = vcfFileIterator.readField(fields, 6); // Filter parameters
-
-			// INFO fields
-			infoStr = vcfFileIterator.readField(fields, 7);
+			// Filter, INFO, genotype format and genotype fields are materialized only when needed
+			filter = infoStr = format = genotypeFieldsStr = null;
+			lazyFields = (1 << FIELD_FILTER) | (1 << FIELD_INFO) | (1 << FIELD_FORMAT) | (1 << FIELD_GENOTYPES);
 			info = null;
+			infoScans = 0;
+			genotypeBlock = null;
+			genotypeScores = null;
 
 			// Start & End coordinates are anchored to the reference genome, thus based on REF field (ALT is not taken into account)
 			parseEnd(altStr);
-
-			// Genotype format
-			format = null;
-			if (fields.length > 8) format = vcfFileIterator.readField(fields, 8); // This field is optional, So it can be null or EMPTY ('.')
-
-			// Add genotype fields (lazy parse)
-			if (fields.length > 9) genotypeFieldsStr = fields[9];
 		} else throw new RuntimeException("Improper VCF entry: Not enough fields (missing tab separators?).\n" + line);
 	}
 
@@ -1168,18 +1246,19 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		if (isCompressedGenotypes()) {
 			uncompressGenotypes();
 		} else {
-			vcfGenotypes = new ArrayList<>();
-
 			// No genotype string? => Nothing to do
-			if (genotypeFieldsStr == null) return;
-
-			// Split genotypes and parse them
-			genotypeFields = genotypeFieldsStr.split("\t");
-			for (int i = 0; i < genotypeFields.length; i++) {
-				String gen = genotypeFields[i];
-				if (gen.equals(VcfFileIterator.MISSING)) gen = "";
-				addGenotype(gen);
+			VcfGenotypeBlock genotypeBlock = getGenotypeBlock();
+			if (genotypeBlock == null) {
+				vcfGenotypes = new ArrayList<>();
+				return;
 			}
+
+			// Create genotypes (values are parsed only when needed)
+			int numSamples = genotypeBlock.size();
+			vcfGenotypes = new ArrayList<>(numSamples);
+			for (int i = 0; i < numSamples; i++)
+				vcfGenotypes.add(new VcfGenotype(this, genotypeBlock, i));
+			genotypeScores = null; // Reset or invalidate scores
 		}
 	}
 
@@ -1189,7 +1268,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 	void parseInfo() {
 		// Parse info entries
 		info = new HashMap<>();
-		for (String inf : infoStr.split(SUB_FIELD_SEP)) {
+		for (String inf : getInfoStr().split(SUB_FIELD_SEP)) {
 			String vp[] = inf.split("=", 2);
 
 			if (vp.length > 1) info.put(vp[0], vp[1]); // Key = Value pair
@@ -1249,12 +1328,20 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 
 	}
 
+	/**
+	 * Read a field from the original line ('MISSING' values and missing fields are converted to empty strings)
+	 */
+	String readField(int fieldNum) {
+		String field = getField(fieldNum);
+		return field != null ? field : "";
+	}
+
 	/**
 	 * Remove INFO field
 	 */
 	public void removeInfo(String key) {
 		// Not in info field? => Nothing to do
-		if (!infoStr.contains(key)) return;
+		if (!getInfoStr().contains(key)) return;
 
 		StringBuilder infoStrNew = new StringBuilder();
 		for (String infoEntry : infoStr.split(SUB_FIELD_SEP)) {
@@ -1285,7 +1372,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 		StringBuilder infoSb = new StringBuilder();
 
 		// Parse info entries
-		for (String inf : infoStr.split(SUB_FIELD_SEP)) {
+		for (String inf : getInfoStr().split(SUB_FIELD_SEP)) {
 			String vp[] = inf.split("=");
 
 			if (vp[0].equals(info)) {
@@ -1304,26 +1391,93 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 
 		if (deleted) {
 			infoStr = infoSb.toString();
+			this.info = null; // INFO fields need to be parsed again
 		}
 		return deleted;
 	}
 
+	/**
+	 * Find an INFO value by scanning the INFO field (i.e. without parsing it into a hash)
+	 * @return INFO value, "true" for flags, or null if not found. If a key appears more than once, the last value is returned (same as 'parseInfo()')
+	 */
+	String scanInfo(String key) {
+		// Scan the original line or the INFO string?
+		String str;
+		int start, end;
+		if (isLazy(FIELD_INFO)) {
+			if (FIELD_INFO + 1 >= fieldStart.length) return null; // No INFO field
+			str = line;
+			start = fieldStart[FIELD_INFO];
+			end = fieldStart[FIELD_INFO + 1] - 1;
+		} else {
+			if (infoStr == null) return null;
+			str = infoStr;
+			start = 0;
+			end = infoStr.length();
+		}
+
+		// Scan 'key=value' pairs
+		String value = null;
+		int keyLen = key.length();
+		for (int i = start; i < end;) {
+			int sep = str.indexOf(';', i);
+			if (sep < 0 || sep > end) sep = end;
+
+			if (str.startsWith(key, i)) {
+				int j = i + keyLen;
+				if (j == sep) value = "true"; // A property that is present, but has no value (e.g. "INDEL")
+				else if (j < sep && str.charAt(j) == '=') value = str.substring(j + 1, sep);
+			}
+
+			i = sep + 1;
+		}
+
+		return value;
+	}
+
 	public void setFilter(String filter) {
 		this.filter = filter;
+		lazyFields &= ~(1 << FIELD_FILTER);
 	}
 
 	public void setFormat(String format) {
 		this.format = format;
+		lazyFields &= ~(1 << FIELD_FORMAT);
+		formatFields = null;
+		genotypeBlock = null;
+		genotypeScores = null;
 	}
 
 	public void setGenotypeStr(String genotypeFieldsStr) {
 		this.genotypeFieldsStr = genotypeFieldsStr;
+		lazyFields &= ~(1 << FIELD_GENOTYPES);
+		genotypeBlock = null;
+		genotypeScores = null;
 	}
 
 	public void setLineNum(int lineNum) {
 		this.lineNum = lineNum;
 	}
 
+	/**
+	 * Find where each field starts in 'line'
+	 * @return Number of fields
+	 */
+	int tokenize() {
+		int starts[] = new int[MAX_FIELDS + 1];
+		int numFields = 0;
+		starts[numFields++] = 0;
+		for (int pos = 0; numFields < MAX_FIELDS; numFields++) {
+			int tab = line.indexOf('\t', pos);
+			if (tab < 0) break;
+			pos = tab + 1;
+			starts[numFields] = pos;
+		}
+		starts[numFields] = line.length() + 1; // Simplifies field end calculation
+		fieldStart = Arrays.copyOf(starts, numFields + 1);
+		return numFields;
+	}
+
 	/**
 	 * To string as a simple "CHR:START_REF/ALTs" format
 	 */
@@ -1338,57 +1492,96 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 
 	@Override
 	public String toString() {
-		boolean deleteLastTab = true;
+		return toString(new StringBuilder(line != null ? line.length() + 16 : 256)).toString();
+	}
 
-		StringBuilder sb = new StringBuilder(toStringNoGt());
-		sb.append("\t");
+	/**
+	 * Append this entry to 'sb' (fields that have not been materialized are copied from the original line)
+	 * @return The same StringBuilder
+	 */
+	public StringBuilder toString(StringBuilder sb) {
+		toStringNoGt(sb);
 
 		// Is there any 'format' field? It is optional, so it could be 'null'
+		String format = getFormat();
 		if (format != null) {
-			sb.append((format.isEmpty() ? "." : format) + "\t");
+			sb.append('\t');
+			if (format.isEmpty()) sb.append('.');
+			else sb.append(format);
 
 			// If we have vcfGenotypes parsed, use them
 			if ((vcfGenotypes != null) && !vcfGenotypes.isEmpty()) {
-				for (VcfGenotype vg : vcfGenotypes)
-					sb.append(vg + "\t");
+				for (VcfGenotype vg : vcfGenotypes) {
+					sb.append('\t');
+					vg.toString(sb);
+				}
+			} else if (isLazy(FIELD_GENOTYPES)) { // Genotypes not materialized: Copy them from the original line
+				if (FIELD_GENOTYPES + 1 < fieldStart.length) {
+					sb.append('\t');
+					sb.append(line, fieldStart[FIELD_GENOTYPES], line.length());
+				}
 			} else if (genotypeFieldsStr != null) { // If vcfGenotypes have not been parsed, use raw fields
+				sb.append('\t');
 				sb.append(genotypeFieldsStr);
-				deleteLastTab = false;
 			}
 		}
 
-		if (deleteLastTab) sb.deleteCharAt(sb.length() - 1); // Delete last tab
-
-		return sb.toString();
+		return sb;
 	}
 
 	/**
 	 * Show only first eight fields (no genotype entries)
 	 */
 	public String toStringNoGt() {
+		return toStringNoGt(new StringBuilder()).toString();
+	}
+
+	/**
+	 * Append first eight fields (no genotype entries) to 'sb'
+	 * @return The same StringBuilder
+	 */
+	public StringBuilder toStringNoGt(StringBuilder sb) {
 		// Use original chromosome name or named from chromosome object
-		String chr = null;
-		if (chromosomeName != null) chr = chromosomeName;
-		else if ((parent != null) && (parent instanceof Chromosome)) chr = parent.getId();
-		else if (parent != null) chr = getChromosomeName();
-		else chr = ".";
+		if (chromosomeName != null) sb.append(chromosomeName);
+		else if ((parent != null) && (parent instanceof Chromosome)) sb.append(parent.getId());
+		else if (parent != null) sb.append(getChromosomeName());
+		else sb.append('.');
 
-		StringBuilder sb = new StringBuilder(chr //
-				+ "\t" + (start + 1) //
-				+ "\t" + (id.isEmpty() ? "." : id) //
-		);
+		// Position and ID
+		sb.append('\t').append(start + 1);
+		sb.append('\t');
+		if (id.isEmpty()) sb.append('.');
+		else sb.append(id);
 
 		// REF and ALT
-		String refStr = (ref == null || ref.isEmpty() ? "." : ref);
-		sb.append("\t" + refStr);
-		sb.append("\t" + getAltsStr());
+		sb.append('\t');
+		if (ref == null || ref.isEmpty()) sb.append('.');
+		else sb.append(ref);
+		sb.append('\t').append(getAltsStr());
 
 		// Quality, filter, info, format...
-		sb.append("\t" + (quality != null ? quality + "" : "."));
-		sb.append("\t" + ((filter == null) || filter.isEmpty() ? "." : filter));
-		sb.append("\t" + ((infoStr == null) || infoStr.isEmpty() ? "." : infoStr));
+		sb.append('\t');
+		if (quality != null) sb.append(quality.doubleValue());
+		else sb.append('.');
 
-		return sb.toString();
+		if (isLazy(FIELD_FILTER)) toStringLazy(sb, FIELD_FILTER);
+		else sb.append('\t').append((filter == null) || filter.isEmpty() ? "." : filter);
+
+		if (isLazy(FIELD_INFO)) toStringLazy(sb, FIELD_INFO);
+		else sb.append('\t').append((infoStr == null) || infoStr.isEmpty() ? "." : infoStr);
+
+		return sb;
+	}
+
+	/**
+	 * Append a field that has not been materialized (copy it from the original line)
+	 */
+	void toStringLazy(StringBuilder sb, int fieldNum) {
+		sb.append('\t');
+		int start = (fieldNum + 1 < fieldStart.length ? fieldStart[fieldNum] : 0);
+		int end = (fieldNum + 1 < fieldStart.length ? fieldStart[fieldNum + 1] - 1 : 0);
+		if (start >= end) sb.append('.'); // Empty field
+		else sb.append(line, start, end);
 	}
 
 	/**
@@ -1472,7 +1665,7 @@ public class VcfEntry extends Marker implements Iterable<VcfGenotype> {
 			variants.addAll(vars);
 		} else {
 			// At least one variant
-			for (String alt : alts) {
+			for (String alt : getAlts()) {
 				if (!isVariant(alt)) alt = null;
 				List<Variant> vars = variants(chr, start, ref, alt, id);
 				variants.addAll(vars);
@@ -9,6 +9,10 @@ import org.snpeff.util.Gpr;
  * A VCF genotype field
  * There is one genotype per sample in each VCF entry
  *
+ * Genotypes parsed from a VCF line are views over the entry's genotype
+ * block (see 'VcfGenotypeBlock'): values are only extracted and parsed
+ * when needed. A genotype detaches from the block once it is modified.
+ *
  * @author pablocingolani
  */
 public class VcfGenotype {
@@ -26,12 +30,20 @@ public class VcfGenotype {
 	HashMap<String, String> fields;
 
 	VcfEntry vcfEntry;
+	VcfGenotypeBlock genotypeBlock; // Genotypes for all samples (null if this genotype is not backed by a block)
+	int sampleNum; // Sample number within 'genotypeBlock'
 
 	public VcfGenotype(VcfEntry vcfEntry, String format, String values) {
 		this.vcfEntry = vcfEntry;
 		this.values = values;
 	}
 
+	public VcfGenotype(VcfEntry vcfEntry, VcfGenotypeBlock genotypeBlock, int sampleNum) {
+		this.vcfEntry = vcfEntry;
+		this.genotypeBlock = genotypeBlock;
+		this.sampleNum = sampleNum;
+	}
+
 	/**
 	 * Add a name=value pair
 	 * WARNING: This method does NOT change the FORMAT field. Use VcfEntry.addFormat() method
@@ -48,7 +60,9 @@ public class VcfGenotype {
 		if (vcfEntry.getFormat().indexOf(name) < 0) throw new RuntimeException("Error Attempt to add a field (name=" + name + ") that is not present in FORMAT field. Use VcfEntry.addFormat() method first!");
 
 		// Finally, add the values
+		values = values();
 		values += (values.endsWith(":") ? "" : ":") + value; // Add to value string
+		genotypeBlock = null; // Values are no longer the same as the block's
 		if (fields != null) fields.put(name, value); // Add value to hash (if needed)
 	}
 
@@ -75,6 +89,7 @@ public class VcfGenotype {
 	 * Get a genotype field
 	 */
 	public String get(String fieldName) {
+		if (fields == null && genotypeBlock != null) return genotypeBlock.get(sampleNum, fieldName); // Decode column, no need to parse this genotype
 		parseFields();
 		return fields.get(fieldName);
 	}
@@ -127,6 +142,7 @@ public class VcfGenotype {
 	 * @return
 	 */
 	public int getGenotypeCode() {
+		if (fields == null && genotypeBlock != null) return genotypeBlock.getGenotypeCode(sampleNum); // Decoded from block
 		parseFields(); // Lazy parse
 
 		// No genotype info?
@@ -282,7 +298,7 @@ public class VcfGenotype {
 	 * Note: This is calculated for the most likely genotype (GT field)
 	 */
 	public boolean isRef() {
-		if (values.isEmpty()) return false;
+		if (values().isEmpty()) return false;
 		parseFields(); // Lazy parse
 
 		if (genotype != null) {
@@ -300,7 +316,7 @@ public class VcfGenotype {
 	 * Note: This is calculated for the most likely genotype (GT field)
 	 */
 	public boolean isVariant() {
-		if (values.isEmpty()) return false;
+		if (values().isEmpty()) return false;
 		parseFields(); // Lazy parse
 
 		if (genotype != null) {
@@ -323,7 +339,7 @@ public class VcfGenotype {
 		try {
 			fields = new HashMap<String, String>();
 
-			if (values.isEmpty()) return; // Values are missing? Nothing to do
+			if (values().isEmpty()) return; // Values are missing? Nothing to do
 
 			String format[] = vcfEntry.getFormatFields();
 			String fieldValues[] = values.split(":");
@@ -406,6 +422,7 @@ public class VcfGenotype {
 		if (gtFieldName.equals("GT") && gtValue.equals(VcfFileIterator.MISSING)) gtValue = gtMissing();
 
 		// Rebuild values
+		parseFields();
 		StringBuilder gtsb = new StringBuilder();
 		for (String fieldName : ffields) {
 			String value = get(fieldName);
@@ -416,6 +433,7 @@ public class VcfGenotype {
 			gtsb.append((gtsb.length() > 0 ? ":" : "") + value); // Append field value
 		}
 		values = gtsb.toString();
+		genotypeBlock = null; // Values are no longer the same as the block's
 
 		// Invalidate previous parsing
 		fields = null;
@@ -430,6 +448,22 @@ public class VcfGenotype {
 
 	@Override
 	public String toString() {
-		return (values.isEmpty() ? "." : values);
+		return (values().isEmpty() ? "." : values);
+	}
+
+	/**
+	 * Append values to 'sb' (values are copied from the genotype block if they have not been materialized)
+	 */
+	public void toString(StringBuilder sb) {
+		if (values == null) genotypeBlock.toString(sb, sampleNum);
+		else sb.append(values.isEmpty() ? "." : values);
+	}
+
+	/**
+	 * Raw values (extracted from genotype block if needed)
+	 */
+	String values() {
+		if (values == null) values = genotypeBlock.getValues(sampleNum);
+		return values;
 	}
 }
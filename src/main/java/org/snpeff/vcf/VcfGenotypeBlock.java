@@ -0,0 +1,239 @@
+package org.snpeff.vcf;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.snpeff.fileIterator.VcfFileIterator;
+
+/**
+ * Genotypes for all samples in a VCF entry, kept as one raw
+ * (tab separated) string plus the offsets where each sample starts.
+ *
+ * GT codes (see 'VcfGenotype.getGenotypeCode()') are decoded for all
+ * samples directly from the raw string, without creating per-sample
+ * objects. Other FORMAT fields are decoded one column (i.e. one field
+ * for all samples) at a time, only when requested.
+ *
+ * @author pcingola
+ */
+public class VcfGenotypeBlock {
+
+	VcfEntry vcfEntry;
+	String genotypeFieldsStr; // Raw genotype fields (all samples, tab separated)
+	int sampleStart[]; // Start of each sample in 'genotypeFieldsStr' (last entry is 'length + 1')
+	int gtIdx; // Index of 'GT' sub-field in FORMAT (-1 if not present)
+	byte gtCodes[]; // Genotype codes (lazy decode)
+	HashMap<String, String[]> columns; // Decoded FORMAT fields, by name (lazy decode)
+
+	public VcfGenotypeBlock(VcfEntry vcfEntry, String genotypeFieldsStr) {
+		this.vcfEntry = vcfEntry;
+		this.genotypeFieldsStr = genotypeFieldsStr;
+		tokenize();
+
+		// Find 'GT' sub-field
+		gtIdx = -1;
+		String formatFields[] = vcfEntry.getFormatFields();
+		for (int i = 0; i < formatFields.length; i++)
+			if (formatFields[i].equals("GT")) gtIdx = i;
+	}
+
+	/**
+	 * Get a FORMAT field value for a sample
+	 * @return Field value or null if not present
+	 */
+	public String get(int sampleNum, String fieldName) {
+		return getColumn(fieldName)[sampleNum];
+	}
+
+	/**
+	 * Get a FORMAT field for all samples (e.g. 'DP')
+	 * @return An array of values, one per sample (values are null if not present)
+	 */
+	public String[] getColumn(String fieldName) {
+		if (columns == null) columns = new HashMap<>();
+
+		String column[] = columns.get(fieldName);
+		if (column == null) {
+			column = new String[size()];
+
+			// Find field index
+			int fieldIdx = -1;
+			String formatFields[] = vcfEntry.getFormatFields();
+			for (int i = 0; i < formatFields.length; i++)
+				if (formatFields[i].equals(fieldName)) fieldIdx = i;
+
+			if (fieldIdx >= 0) {
+				for (int i = 0; i < column.length; i++) {
+					int start = subFieldStart(i, fieldIdx);
+					if (start >= 0 && !isTrailingEmpty(i, start)) column[i] = genotypeFieldsStr.substring(start, subFieldEnd(i, start));
+				}
+			}
+
+			columns.put(fieldName, column);
+		}
+
+		return column;
+	}
+
+	/**
+	 * Genotype code for a sample
+	 */
+	public int getGenotypeCode(int sampleNum) {
+		return getGenotypeCodes()[sampleNum];
+	}
+
+	/**
+	 * Genotype codes for all samples (see 'VcfGenotype.getGenotypeCode()')
+	 */
+	public byte[] getGenotypeCodes() {
+		byte codes[] = gtCodes;
+		if (codes == null) {
+			codes = new byte[size()];
+			int maxAllele = vcfEntry.getAlts().length;
+			for (int i = 0; i < codes.length; i++) {
+				int code = gtCode(i, maxAllele);
+				if (code == Integer.MIN_VALUE) code = new VcfGenotype(vcfEntry, vcfEntry.getFormat(), getValues(i)).getGenotypeCode(); // Could not decode. Use slow (and strict) method
+				codes[i] = (byte) code;
+			}
+			gtCodes = codes;
+		}
+		return codes;
+	}
+
+	/**
+	 * Raw values for a sample (e.g. "0/1:23:99")
+	 * Note: A MISSING value ('.') is converted to an empty string
+	 */
+	public String getValues(int sampleNum) {
+		int start = sampleStart[sampleNum];
+		int end = sampleStart[sampleNum + 1] - 1;
+		if (end - start == 1 && genotypeFieldsStr.charAt(start) == '.') return "";
+		return genotypeFieldsStr.substring(start, end);
+	}
+
+	/**
+	 * Decode a genotype code directly from the raw string
+	 * @return Genotype code or Integer.MIN_VALUE if the GT field could not be decoded
+	 */
+	int gtCode(int sampleNum, int maxAllele) {
+		int start = subFieldStart(sampleNum, gtIdx);
+		if (start < 0) return -1; // No GT field: Missing genotype
+		int end = subFieldEnd(sampleNum, start);
+
+		int code = 0, allele = 0;
+		char phase = 0;
+		boolean missing = false, digits = false, dot = false;
+		for (int i = start; i <= end; i++) {
+			char c = (i < end ? genotypeFieldsStr.charAt(i) : 0);
+			if (c >= '0' && c <= '9') {
+				allele = 10 * allele + (c - '0');
+				digits = true;
+			} else if (c == '.') {
+				dot = true;
+			} else if (c == '/' || c == '|' || c == 0) {
+				// End of allele
+				if (digits == dot) return Integer.MIN_VALUE; // Empty allele or something like '.1'
+				if (c != 0) {
+					if (phase != 0 && phase != c) return Integer.MIN_VALUE; // Mixed phased and un-phased separators
+					phase = c;
+				}
+
+				if (dot) missing = true;
+				else if (allele > maxAllele) return Integer.MIN_VALUE; // Inconsistent genotype
+				else if (allele > 0) code++;
+
+				allele = 0;
+				digits = dot = false;
+			} else return Integer.MIN_VALUE; // Unexpected character
+		}
+
+		return missing ? -1 : code;
+	}
+
+	/**
+	 * Are all sub-fields from 'start' to the end of the sample empty?
+	 * Note: Trailing empty sub-fields are considered missing (e.g. 'DP' is missing in "0/1::")
+	 */
+	boolean isTrailingEmpty(int sampleNum, int start) {
+		int end = sampleStart[sampleNum + 1] - 1;
+		for (int i = start; i < end; i++)
+			if (genotypeFieldsStr.charAt(i) != ':') return false;
+		return true;
+	}
+
+	/**
+	 * Number of samples
+	 */
+	public int size() {
+		return sampleStart.length - 1;
+	}
+
+	/**
+	 * End of a sub-field (i.e. position of next ':' or end of sample)
+	 */
+	int subFieldEnd(int sampleNum, int start) {
+		int end = sampleStart[sampleNum + 1] - 1;
+		int sep = genotypeFieldsStr.indexOf(':', start);
+		return (sep < 0 || sep > end) ? end : sep;
+	}
+
+	/**
+	 * Start of a sub-field within a sample
+	 * @return Start position or -1 if the sample does not have that many sub-fields
+	 */
+	int subFieldStart(int sampleNum, int fieldIdx) {
+		if (fieldIdx < 0) return -1;
+
+		int start = sampleStart[sampleNum];
+		int end = sampleStart[sampleNum + 1] - 1;
+		if (end - start == 1 && genotypeFieldsStr.charAt(start) == '.') return -1; // Missing values
+
+		for (int i = 0; i < fieldIdx; i++) {
+			int sep = genotypeFieldsStr.indexOf(':', start);
+			if (sep < 0 || sep >= end) return -1;
+			start = sep + 1;
+		}
+
+		return start;
+	}
+
+	/**
+	 * Find where each sample starts
+	 */
+	void tokenize() {
+		int numSamples = 1;
+		for (int i = genotypeFieldsStr.indexOf('\t'); i >= 0; i = genotypeFieldsStr.indexOf('\t', i + 1))
+			numSamples++;
+
+		sampleStart = new int[numSamples + 1];
+		for (int i = 0, pos = 0; i < numSamples; i++) {
+			sampleStart[i] = pos;
+			int tab = genotypeFieldsStr.indexOf('\t', pos);
+			pos = (tab < 0 ? genotypeFieldsStr.length() : tab) + 1;
+		}
+		sampleStart[numSamples] = genotypeFieldsStr.length() + 1;
+
+		// Trailing empty samples are ignored (same as 'String.split()')
+		if (numSamples > 1) {
+			int num = numSamples;
+			while (num > 0 && sampleStart[num] - sampleStart[num - 1] == 1)
+				num--;
+			if (num < numSamples) sampleStart = Arrays.copyOf(sampleStart, num + 1);
+		}
+	}
+
+	/**
+	 * Append a sample's values to 'sb' (copied from the raw genotype string)
+	 */
+	public void toString(StringBuilder sb, int sampleNum) {
+		int start = sampleStart[sampleNum];
+		int end = sampleStart[sampleNum + 1] - 1;
+		if (start >= end) sb.append('.'); // Empty values
+		else sb.append(genotypeFieldsStr, start, end);
+	}
+
+	@Override
+	public String toString() {
+		return genotypeFieldsStr.isEmpty() ? VcfFileIterator.MISSING : genotypeFieldsStr;
+	}
+}